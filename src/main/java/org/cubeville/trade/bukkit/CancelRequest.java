@@ -22,16 +22,27 @@
 
 package org.cubeville.trade.bukkit;
 
+import java.util.UUID;
 import org.jetbrains.annotations.NotNull;
 
-final class CancelRequest {
+// A pending exit or cancel confirmation.
+final class CancelRequest implements Comparable<CancelRequest> {
     
+    private final UUID uniqueId;
     private final String type;
-    private final int taskId;
+    private final long deadline;
+    private final long sequence;
     
-    CancelRequest(@NotNull final String type, final int taskId) {
+    CancelRequest(@NotNull final UUID uniqueId, @NotNull final String type, final long deadline, final long sequence) {
+        this.uniqueId = uniqueId;
         this.type = type;
-        this.taskId = taskId;
+        this.deadline = deadline;
+        this.sequence = sequence;
+    }
+    
+    @NotNull
+    UUID getUniqueId() {
+        return this.uniqueId;
     }
     
     @NotNull
@@ -39,7 +50,17 @@ final class CancelRequest {
         return this.type;
     }
     
-    int getTaskId() {
-        return this.taskId;
+    long getDeadline() {
+        return this.deadline;
+    }
+    
+    @Override
+    public int compareTo(@NotNull final CancelRequest other) {
+        
+        final int compare = Long.compare(this.deadline, other.deadline);
+        if (compare != 0) {
+            return compare;
+        }
+        return Long.compare(this.sequence, other.sequence);
     }
 }
@@ -26,16 +26,40 @@ public final class Constants {
     
     public static final String FILE_TYPE = ".yml";
     
+    public static final String KEY_STORAGE = "storage";
+    public static final String STORAGE_BINARY = "binary";
+    public static final String STORAGE_SQLITE = "sqlite";
+    public static final String STORAGE_YAML = "yaml";
+    public static final String STORAGE_MEMORY = "memory";
+    public static final String FOLDER_YAML_STORE = "yaml_store";
+    public static final String FILE_DATABASE = "trade_data.db";
+    
     public static final String FILE_SERVER_STOP = "server_stop" + FILE_TYPE;
     public static final String KEY_SERVER_STOP_TIME = "server_stop_time";
     
+    public static final String FILE_TRADE_ROOMS = "trade_rooms.dat";
     public static final String FOLDER_TRADE_ROOMS = "trade_rooms";
+    public static final String FOLDER_IMPORTED = "imported";
+    public static final String FOLDER_EXPORT = "export";
+    
+    public static final String FILE_ROOM_BOARD = "room_board" + FILE_TYPE;
     
     public static final String FOLDER_BACKUP_INVENTORIES = "backup_inventories";
     public static final String KEY_TRADE_ROOM_NAME = "trade_room_name";
     public static final String KEY_BACKUP_ITEMS_1 = "backup_items_1";
     public static final String KEY_BACKUP_ITEMS_2 = "backup_items_2";
     
+    public static final String FOLDER_VIRTUAL_BACKUPS = "virtual_backups";
+    public static final String KEY_VIRTUAL_BACKUP_UUID = "virtual_backup_uuid";
+    public static final String KEY_VIRTUAL_BACKUP_ITEMS = "virtual_backup_items";
+    
+    public static final String FILE_MAILBOX = "offline_mailbox.dat";
+    public static final String FILE_ITEM_BLOBS = "item_blobs.dat";
+    
+    public static final String FOLDER_AUDIT = "audit";
+    public static final String FILE_TRADE_HISTORY = "trade_history.dat";
+    public static final String FILE_TRADE_JOURNAL = "trade_journal.dat";
+    
     public static final String FOLDER_OFFLINE_TRADERS = "offline_traders";
     
     public static final String FOLDER_OFFLINE_EXTRAS = "offline_extras";
@@ -0,0 +1,57 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit;
+
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+
+// Two players who agreed to trade while every trade room was in use.
+final class QueuedTrade {
+    
+    private final UUID uniqueId1;
+    private final UUID uniqueId2;
+    
+    QueuedTrade(@NotNull final UUID uniqueId1, @NotNull final UUID uniqueId2) {
+        this.uniqueId1 = uniqueId1;
+        this.uniqueId2 = uniqueId2;
+    }
+    
+    @NotNull
+    UUID getUniqueId1() {
+        return this.uniqueId1;
+    }
+    
+    @NotNull
+    UUID getUniqueId2() {
+        return this.uniqueId2;
+    }
+    
+    boolean contains(@NotNull final UUID uniqueId) {
+        return this.uniqueId1.equals(uniqueId) || this.uniqueId2.equals(uniqueId);
+    }
+    
+    @NotNull
+    UUID getOther(@NotNull final UUID uniqueId) {
+        return this.uniqueId1.equals(uniqueId) ? this.uniqueId2 : this.uniqueId1;
+    }
+}
@@ -26,44 +26,76 @@ import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.Server;
 import org.bukkit.World;
-import org.bukkit.block.BlockState;
-import org.bukkit.block.Chest;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.configuration.InvalidConfigurationException;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitScheduler;
 import org.bukkit.util.Vector;
 import org.cubeville.trade.bukkit.command.TradeAdminCommand;
+import org.cubeville.trade.bukkit.command.TradeCommand;
+import org.cubeville.trade.bukkit.listener.BuildListener;
 import org.cubeville.trade.bukkit.listener.TradeListener;
+import org.cubeville.trade.bukkit.storage.AuditLog;
+import org.cubeville.trade.bukkit.storage.BinaryTradeStore;
+import org.cubeville.trade.bukkit.storage.MemoryTradeStore;
+import org.cubeville.trade.bukkit.storage.SqliteTradeStore;
+import org.cubeville.trade.bukkit.storage.TradeHistory;
+import org.cubeville.trade.bukkit.storage.TradeJournal;
+import org.cubeville.trade.bukkit.storage.TradeStore;
+import org.cubeville.trade.bukkit.storage.YamlTradeStore;
 import org.cubeville.trade.bukkit.traderoom.BuildStep;
 import org.cubeville.trade.bukkit.traderoom.CompleteReason;
+import org.cubeville.trade.bukkit.traderoom.ItemStats;
 import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.RoomBoard;
+import org.cubeville.trade.bukkit.traderoom.RoomIndex;
 import org.cubeville.trade.bukkit.traderoom.Side;
 import org.cubeville.trade.bukkit.traderoom.TradeRoom;
 import org.cubeville.trade.bukkit.traderoom.TradeRoomBuilder;
+import org.cubeville.trade.bukkit.traderoom.TradeRecord;
 import org.cubeville.trade.bukkit.traderoom.TradeStatus;
 import org.cubeville.trade.bukkit.traderoom.Trader;
+import org.cubeville.trade.bukkit.traderoom.VirtualTrade;
+import org.cubeville.trade.bukkit.util.BlockKey;
+import org.cubeville.trade.bukkit.util.RateLimiter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -74,29 +106,64 @@ public final class TradePlugin extends JavaPlugin {
     
     private static final long OFFLINE_TIMEOUT = 1000L * 60L * 2L;
     
+    private static final int HISTORY_PAGE_SIZE = 8;
+    private static final int ITEM_STATS_LIMIT = 10;
+    private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    private static final long CANCEL_REQUEST_TIMEOUT = 600L;
+    
+    // Clicks allowed per player: bursts of up to 8, then 4 per second.
+    private static final int LIMITER_SLOTS = 4096;
+    private static final int LIMITER_BURST = 8;
+    private static final int LIMITER_RATE = 4;
+    
     private final Logger logger;
     private final Server server;
     private final BukkitScheduler scheduler;
     private final CommandSender console;
     
-    private final File serverStopFile;
+    private final TradeStore store;
+    private final Object flushLock;
+    private final TradeJournal journal;
+    private final Queue<Long> journalCommits;
+    private final AuditLog auditLog;
+    private final TradeHistory history;
+    private final ItemStats itemStats;
     
     private final File tradeRoomFolder;
     private final Map<UUID, TradeRoomBuilder> builders;
+    private final BuildListener buildListener;
+    private boolean buildListenerRegistered;
     private final Map<String, TradeRoom> tradeRooms;
+    private final RoomIndex roomIndex;
+    private final RoomBoard roomBoard;
     private final Map<UUID, CancelRequest> cancelRequests;
+    private final TreeSet<CancelRequest> cancelDeadlines;
+    private long cancelSequence;
+    private final RateLimiter interactLimiter;
+    private final RateLimiter clickLimiter;
     
     private final Set<UUID> recentJoins;
     private final Set<UUID> ignoredJoins;
     
-    private final File backupInventoryFolder;
     private final Map<UUID, Inventory> tradeInventories;
     
-    private final File offlineFolder;
+    private final Map<UUID, UUID> roomRequests;
+    private final ArrayDeque<QueuedTrade> roomQueue;
+    private final Set<UUID> queuedPlayers;
+    
+    private final Map<UUID, VirtualTrade> virtualTrades;
+    private final Map<UUID, UUID> virtualRequests;
+    
+    // Backups of virtual trades the server stopped during, returned on join.
+    private final Map<UUID, ItemStack[]> virtualBackups;
+    // Virtual trade inventories changed since the last tick.
+    private final Set<UUID> changedVirtualTrades;
+    
     private final Map<UUID, Offline> offlines;
+    private final Map<UUID, List<ItemStack>> extras;
     
+    private final File offlineFolder;
     private final File extraFolder;
-    private final Map<UUID, List<ItemStack>> extras;
     
     public TradePlugin() {
         super();
@@ -119,23 +186,39 @@ public final class TradePlugin extends JavaPlugin {
             throw new RuntimeException("Unable to validate Plugin data folder at " + dataFolder.getPath(), e);
         }
         
-        this.serverStopFile = new File(dataFolder, Constants.FILE_SERVER_STOP);
-        try {
-            if (!this.serverStopFile.exists()) {
-                if (!this.serverStopFile.createNewFile()) {
-                    throw new RuntimeException("Server Stop file not created at " + this.serverStopFile.getPath());
-                }
-            } else if (!this.serverStopFile.isFile()) {
-                throw new RuntimeException("Server Stop file is not a file. Location: " + this.serverStopFile.getPath());
-            }
-        } catch (SecurityException | IOException e) {
-            throw new RuntimeException("Unable to validate Server Stop file at " + this.serverStopFile.getPath(), e);
+        this.saveDefaultConfig();
+        final String storage = this.getConfig().getString(Constants.KEY_STORAGE, Constants.STORAGE_BINARY).trim().toLowerCase();
+        if (storage.equals(Constants.STORAGE_BINARY)) {
+            this.store = new BinaryTradeStore(this.server, dataFolder, this.logger);
+        } else if (storage.equals(Constants.STORAGE_SQLITE)) {
+            this.store = new SqliteTradeStore(this.server, new File(dataFolder, Constants.FILE_DATABASE), this.logger);
+        } else if (storage.equals(Constants.STORAGE_YAML)) {
+            this.store = new YamlTradeStore(this.server, new File(dataFolder, Constants.FOLDER_YAML_STORE), this.logger);
+        } else if (storage.equals(Constants.STORAGE_MEMORY)) {
+            this.store = new MemoryTradeStore(this.server, this.logger);
+        } else {
+            throw new RuntimeException("Unknown storage type " + storage + " in config.yml, expected one of " + Constants.STORAGE_BINARY + ", " + Constants.STORAGE_SQLITE + ", " + Constants.STORAGE_YAML + " or " + Constants.STORAGE_MEMORY + ".");
         }
-        
+        this.flushLock = new Object();
+        this.journal = new TradeJournal(new File(dataFolder, Constants.FILE_TRADE_JOURNAL), this.logger);
+        this.journalCommits = new ConcurrentLinkedQueue<Long>();
+        this.auditLog = new AuditLog(new File(dataFolder, Constants.FOLDER_AUDIT), this.logger);
+        this.history = new TradeHistory(new File(dataFolder, Constants.FILE_TRADE_HISTORY), this.logger);
+        this.itemStats = new ItemStats();
+        
+        // Only used to import and export trade rooms as YAML.
         this.tradeRoomFolder = new File(dataFolder, Constants.FOLDER_TRADE_ROOMS);
         this.builders = new ConcurrentHashMap<UUID, TradeRoomBuilder>();
+        this.buildListener = new BuildListener(this);
+        this.buildListenerRegistered = false;
         this.tradeRooms = new ConcurrentHashMap<String, TradeRoom>();
-        this.cancelRequests = new ConcurrentHashMap<UUID, CancelRequest>();
+        this.roomIndex = new RoomIndex();
+        this.roomBoard = new RoomBoard(this.server, new File(dataFolder, Constants.FILE_ROOM_BOARD), this.logger);
+        this.cancelRequests = new HashMap<UUID, CancelRequest>();
+        this.cancelDeadlines = new TreeSet<CancelRequest>();
+        this.cancelSequence = 0L;
+        this.interactLimiter = new RateLimiter(LIMITER_SLOTS, LIMITER_BURST, LIMITER_RATE);
+        this.clickLimiter = new RateLimiter(LIMITER_SLOTS, LIMITER_BURST, LIMITER_RATE);
         
         this.recentJoins = new HashSet<UUID>();
         this.ignoredJoins = new HashSet<UUID>();
@@ -148,36 +231,23 @@ public final class TradePlugin extends JavaPlugin {
             throw new RuntimeException("TradeChest folder is not a folder. Location: " + this.tradeRoomFolder.getPath());
         }
         
-        this.backupInventoryFolder = new File(dataFolder, Constants.FOLDER_BACKUP_INVENTORIES);
         this.tradeInventories = new ConcurrentHashMap<UUID, Inventory>();
-        if (!this.backupInventoryFolder.exists()) {
-            if (!this.backupInventoryFolder.mkdirs()) {
-                throw new RuntimeException("BackupInventory folder not created at " + this.backupInventoryFolder.getPath());
-            }
-        } else if (!this.backupInventoryFolder.isDirectory()) {
-            throw new RuntimeException("BackupInventory folder is not a folder. Location: " + this.backupInventoryFolder.getPath());
-        }
         
-        this.offlineFolder = new File(dataFolder, Constants.FOLDER_OFFLINE_TRADERS);
-        this.offlines = new ConcurrentHashMap<UUID, Offline>();
-        if (!this.offlineFolder.exists()) {
-            if (!this.offlineFolder.mkdirs()) {
-                throw new RuntimeException("OfflineTrader folder not created at " + this.offlineFolder.getPath());
-            }
-        } else if (!this.offlineFolder.isDirectory()) {
-            throw new RuntimeException("OfflineTrader folder is not a folder. Location: " + this.offlineFolder.getPath());
-        }
+        this.roomRequests = new HashMap<UUID, UUID>();
+        this.roomQueue = new ArrayDeque<QueuedTrade>();
+        this.queuedPlayers = new HashSet<UUID>();
         
-        this.extraFolder = new File(dataFolder, Constants.FOLDER_OFFLINE_EXTRAS);
+        this.virtualTrades = new HashMap<UUID, VirtualTrade>();
+        this.virtualRequests = new HashMap<UUID, UUID>();
+        this.virtualBackups = new ConcurrentHashMap<UUID, ItemStack[]>();
+        this.changedVirtualTrades = new HashSet<UUID>();
+        
+        this.offlines = new ConcurrentHashMap<UUID, Offline>();
         this.extras = new ConcurrentHashMap<UUID, List<ItemStack>>();
-        if (!this.extraFolder.exists()) {
-            if (!this.extraFolder.mkdirs()) {
-                throw new RuntimeException("ExtraInventory folder not created at " + this.extraFolder.getPath());
-            }
-        } else if (!this.extraFolder.isDirectory()) {
-            throw new RuntimeException("ExtraInventory folder is not a folder. Location: " + this.extraFolder.getPath());
-        }
         
+        // Only read to import offline traders saved before the offline storage existed.
+        this.offlineFolder = new File(dataFolder, Constants.FOLDER_OFFLINE_TRADERS);
+        this.extraFolder = new File(dataFolder, Constants.FOLDER_OFFLINE_EXTRAS);
     }
     
     @Override
@@ -208,14 +278,26 @@ public final class TradePlugin extends JavaPlugin {
         
         final long now = System.currentTimeMillis();
         
-        final YamlConfiguration stopConfig = new YamlConfiguration();
         try {
-            stopConfig.load(this.serverStopFile);
-        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
-            throw new RuntimeException("Unable to load server stop file at " + this.serverStopFile.getPath(), e);
+            this.store.open();
+        } catch (final IOException e) {
+            throw new RuntimeException("Unable to open trade storage.", e);
+        }
+        
+        try {
+            this.journal.open();
+        } catch (final IOException e) {
+            throw new RuntimeException("Unable to open the trade journal.", e);
+        }
+        
+        try {
+            this.auditLog.start();
+        } catch (final IOException e) {
+            throw new RuntimeException("Unable to start the audit log.", e);
         }
+        this.history.open();
         
-        final long serverStop = stopConfig.getLong(Constants.KEY_SERVER_STOP_TIME, -1L);
+        final long serverStop = this.store.loadServerStop();
         final long offlineTime;
         if (serverStop == -1L) {
             offlineTime = now - OFFLINE_TIMEOUT;
@@ -226,108 +308,30 @@ public final class TradePlugin extends JavaPlugin {
         // TradeRoom Initialization //
         // Load in the TradeRooms
         
-        final File[] tradeRoomFiles = this.tradeRoomFolder.listFiles();
-        if (tradeRoomFiles == null) {
-            throw new RuntimeException("Cannot list trade room files, null value returned.");
+        for (final TradeRoom room : this.store.loadRooms(offlineTime)) {
+            this.tradeRooms.put(room.getName().toLowerCase(), room);
         }
         
-        for (final File tradeRoomFile : tradeRoomFiles) {
-            
-            final YamlConfiguration config = new YamlConfiguration();
-            try {
-                config.load(tradeRoomFile);
-            } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
-                this.logger.log(Level.WARNING, "Unable to load trade room file at " + tradeRoomFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping trade room.");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                continue;
-            }
-            
-            final TradeRoom room;
-            try {
-                room = new TradeRoom(this.server, offlineTime, config);
-            } catch (final IllegalArgumentException e) {
-                this.logger.log(Level.WARNING, "Unable to deserialize trade room from file at " + tradeRoomFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping trade room.");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                continue;
-            }
-            
-            if (this.tradeRooms.containsKey(room.getName().toLowerCase())) {
-                this.logger.log(Level.WARNING, "Conflicting name of trade room. Duplicate already registered.");
-                this.logger.log(Level.WARNING, "Please remember that names are case-insensitive. Name: " + room.getName());
-                this.logger.log(Level.WARNING, "Skipping trade room.");
-                continue;
-            }
-            
-            this.tradeRooms.put(room.getName().toLowerCase(), room);
+        this.importRooms(offlineTime);
+        for (final TradeRoom room : this.tradeRooms.values()) {
+            this.roomIndex.add(room);
         }
         
-        // Backup Inventories
-        final File[] backupInventoryFiles = this.backupInventoryFolder.listFiles();
-        if (backupInventoryFiles == null) {
-            throw new RuntimeException("Cannot list backup inventory files, null value returned.");
+        this.roomBoard.load();
+        for (final TradeRoom room : this.tradeRooms.values()) {
+            this.roomBoard.watch(room);
         }
-        for (final File backupInventoryFile : backupInventoryFiles) {
-            
-            final YamlConfiguration config = new YamlConfiguration();
-            try {
-                config.load(backupInventoryFile);
-            } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
-                this.logger.log(Level.WARNING, "Unable to load backup inventory file at " + backupInventoryFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping backup inventory.");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                continue;
-            }
-            
-            final String roomName = config.getString(Constants.KEY_TRADE_ROOM_NAME, null);
-            if (roomName == null) {
-                this.logger.log(Level.WARNING, "Trade room name is null in backup inventory file at " + backupInventoryFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping backup inventory.");
-                continue;
-            }
-            
-            final TradeRoom room = this.tradeRooms.get(roomName);
-            if (room == null) {
-                this.logger.log(Level.WARNING, "Trade room name is invalid in backup inventory file at " + backupInventoryFile.getPath());
-                this.logger.log(Level.WARNING, "No trade room for name " + roomName);
-                this.logger.log(Level.WARNING, "Skipping backup inventory.");
-                continue;
-            }
-            
-            final List<?> rawItems1 = config.getList(Constants.KEY_BACKUP_ITEMS_1, null);
-            if (rawItems1 == null) {
-                this.logger.log(Level.WARNING, "Backup items for chest 1 are null in backup inventory file at " + backupInventoryFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping backup inventory.");
-                continue;
-            }
+        
+        // Backup Inventories
+        for (final TradeRoom room : this.tradeRooms.values()) {
             
-            final List<?> rawItems2 = config.getList(Constants.KEY_BACKUP_ITEMS_2, null);
-            if (rawItems2 == null) {
-                this.logger.log(Level.WARNING, "Backup items for chest 2 are null in backup inventory file at " + backupInventoryFile.getPath());
-                this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            final ItemStack[][] backup = this.store.loadBackup(room.getName());
+            if (backup == null) {
                 continue;
             }
             
-            final Inventory backupInventory1 = this.server.createInventory(null, 27);
-            final Inventory backupInventory2 = this.server.createInventory(null, 27);
-            
-            final List<Map<String, Object>> items1 = (List<Map<String, Object>>) rawItems1;
-            final List<Map<String, Object>> items2 = (List<Map<String, Object>>) rawItems2;
-            
-            int slot = 0;
-            for (final Map<String, Object> item : items1) {
-                backupInventory1.setItem(slot, item == null ? null : ItemStack.deserialize(item));
-                slot++;
-            }
-            slot = 0;
-            for (final Map<String, Object> item : items2) {
-                backupInventory2.setItem(slot, item == null ? null : ItemStack.deserialize(item));
-                slot++;
-            }
-            
-            final ItemStack[] backupItems1 = backupInventory1.getStorageContents();
-            final ItemStack[] backupItems2 = backupInventory2.getStorageContents();
+            final ItemStack[] backupItems1 = backup[0];
+            final ItemStack[] backupItems2 = backup[1];
             
             final Inventory chest1Inventory = room.getChest1().getInventory();
             final Inventory chest2Inventory = room.getChest2().getInventory();
@@ -335,26 +339,28 @@ public final class TradePlugin extends JavaPlugin {
             final ItemStack[] chest1Items = chest1Inventory.getStorageContents();
             final ItemStack[] chest2Items = chest2Inventory.getStorageContents();
             
-            for (slot = 0; slot < backupItems1.length; slot++) {
-                if (backupItems1[slot] == null && chest1Items[slot] == null) {
+            for (int slot = 0; slot < chest1Items.length; slot++) {
+                final ItemStack backupItem = slot < backupItems1.length ? backupItems1[slot] : null;
+                if (backupItem == null && chest1Items[slot] == null) {
                     // Do nothing.
-                } else if (backupItems1[slot] == null) {
-                    chest1Items[slot] = backupItems1[slot];
+                } else if (backupItem == null) {
+                    chest1Items[slot] = backupItem;
                 } else if (chest1Items[slot] == null) {
-                    chest1Items[slot] = backupItems1[slot];
-                } else if (!backupItems1[slot].equals(chest1Items[slot])) {
-                    chest1Items[slot] = backupItems1[slot];
+                    chest1Items[slot] = backupItem;
+                } else if (!backupItem.equals(chest1Items[slot])) {
+                    chest1Items[slot] = backupItem;
                 }
             }
-            for (slot = 0; slot < backupItems2.length; slot++) {
-                if (backupItems2[slot] == null && chest2Items[slot] == null) {
+            for (int slot = 0; slot < chest2Items.length; slot++) {
+                final ItemStack backupItem = slot < backupItems2.length ? backupItems2[slot] : null;
+                if (backupItem == null && chest2Items[slot] == null) {
                     // Do nothing.
-                } else if (backupItems2[slot] == null) {
-                    chest2Items[slot] = backupItems2[slot];
+                } else if (backupItem == null) {
+                    chest2Items[slot] = backupItem;
                 } else if (chest2Items[slot] == null) {
-                    chest2Items[slot] = backupItems2[slot];
-                } else if (!backupItems2[slot].equals(chest2Items[slot])) {
-                    chest2Items[slot] = backupItems2[slot];
+                    chest2Items[slot] = backupItem;
+                } else if (!backupItem.equals(chest2Items[slot])) {
+                    chest2Items[slot] = backupItem;
                 }
             }
             
@@ -386,6 +392,113 @@ public final class TradePlugin extends JavaPlugin {
         }
         
         // Offline Players Initialization //
+        final List<File> importedOfflines = this.importLegacyOfflines();
+        final List<File> importedExtras = this.importLegacyExtras();
+        
+        // The imported records must be saved before the files are deleted,
+        // and before the storage is loaded.
+        if (!importedOfflines.isEmpty() || !importedExtras.isEmpty()) {
+            try {
+                this.store.flush();
+            } catch (final IOException e) {
+                throw new RuntimeException("Unable to save the imported offline traders and extra inventories.", e);
+            }
+            this.deleteImported(importedOfflines, this.offlineFolder, "offline trader file", "OfflineTrader folder");
+            this.deleteImported(importedExtras, this.extraFolder, "extra inventory file", "ExtraInventory folder");
+        }
+        
+        for (final Offline offline : this.store.loadOfflines(offlineTime)) {
+            this.offlines.put(offline.getUniqueId(), offline);
+        }
+        this.extras.putAll(this.store.loadExtras());
+        this.virtualBackups.putAll(this.store.loadVirtualBackups());
+        
+        // Trades that were finishing when the server stopped //
+        this.recoverTrades(now, offlineTime);
+        
+        // Commands //
+        
+        this.registerCommand("trade", new TradeCommand(this));
+        this.registerCommand("tradeadmin", new TradeAdminCommand(this));
+        
+        // Server Events & Tasks //
+        
+        this.server.getPluginManager().registerEvents(new TradeListener(this), this);
+        
+        this.scheduler.runTaskTimer(this, () -> {
+            
+            for (final TradeRoom room : this.tradeRooms.values()) {
+                
+                if (!room.isActive()) {
+                    continue;
+                }
+                
+                final Trader trader1 = room.getTrader1();
+                final Trader trader2 = room.getTrader2();
+                
+                if (trader1 != null) {
+                    if (trader1.isOffline()) {
+                        this.processOfflineTrader(room, trader1, Side.SIDE_1);
+                    } else {
+                        this.processOnlineTrader(room, trader1, Side.SIDE_1);
+                    }
+                }
+                if (trader2 != null) {
+                    if (trader2.isOffline()) {
+                        this.processOfflineTrader(room, trader2, Side.SIDE_2);
+                    } else {
+                        this.processOnlineTrader(room, trader2, Side.SIDE_2);
+                    }
+                }
+            }
+            
+            final long time = System.currentTimeMillis();
+            for (final VirtualTrade trade : new HashSet<VirtualTrade>(this.virtualTrades.values())) {
+                
+                for (final Trader trader : new Trader[] {trade.getTrader1(), trade.getTrader2()}) {
+                    
+                    if (!trader.isOffline()) {
+                        final Player player = this.server.getPlayer(trader.getUniqueId());
+                        if (player != null && player.isOnline()) {
+                            continue;
+                        }
+                        trader.setOffline(true);
+                    }
+                    
+                    if (trader.getLogoutTime() + OFFLINE_TIMEOUT < time) {
+                        this.processOfflineVirtualTrader(trade, trader);
+                        break;
+                    }
+                }
+            }
+        }, 200L, 200L);
+        
+        this.scheduler.runTaskTimer(this, this::expireCancelRequests, 1L, 1L);
+        this.scheduler.runTaskTimer(this, this::pollRoomQueue, 20L, 20L);
+        this.scheduler.runTaskTimer(this, this.roomBoard::flush, 1L, 1L);
+        this.scheduler.runTaskTimer(this, this::saveVirtualBackups, 1L, 1L);
+        this.scheduler.runTaskTimerAsynchronously(this, this::flushStorage, 1L, 1L);
+        this.scheduler.runTaskTimerAsynchronously(this, this.roomBoard::write, 1L, 1L);
+    }
+    
+    private void registerCommand(@NotNull final String commandName, @NotNull final TabExecutor tabExecutor) throws RuntimeException {
+        
+        final PluginCommand command = this.getCommand(commandName);
+        if (command == null) {
+            throw new RuntimeException("Cannot find the command /" + commandName);
+        }
+        command.setExecutor(tabExecutor);
+        command.setTabCompleter(tabExecutor);
+    }
+    
+    @NotNull
+    private List<File> importLegacyOfflines() {
+        
+        final List<File> imported = new ArrayList<File>();
+        if (!this.offlineFolder.isDirectory()) {
+            return imported;
+        }
+        
         final File[] offlineFiles = this.offlineFolder.listFiles();
         if (offlineFiles == null) {
             throw new RuntimeException("Cannot list offline trader files, null value returned.");
@@ -404,7 +517,7 @@ public final class TradePlugin extends JavaPlugin {
             
             final Offline offline;
             try {
-                offline = new Offline(offlineTime, config);
+                offline = new Offline(0L, config);
             } catch (final IllegalArgumentException e) {
                 this.logger.log(Level.WARNING, "Unable to deserialize offline trader from file at " + offlineFile.getPath());
                 this.logger.log(Level.WARNING, "Skipping offline trader.");
@@ -412,10 +525,29 @@ public final class TradePlugin extends JavaPlugin {
                 continue;
             }
             
-            this.offlines.put(offline.getUniqueId(), offline);
+            try {
+                this.store.saveOffline(offline);
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to import offline trader file at " + offlineFile.getPath() + " into the trade storage.");
+                this.logger.log(Level.WARNING, "Skipping offline trader, the file has been left in place.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            imported.add(offlineFile);
+        }
+        
+        return imported;
+    }
+    
+    @NotNull
+    private List<File> importLegacyExtras() {
+        
+        final List<File> imported = new ArrayList<File>();
+        if (!this.extraFolder.isDirectory()) {
+            return imported;
         }
         
-        // Extra Offline Player Inventory //
         final File[] extraFiles = this.extraFolder.listFiles();
         if (extraFiles == null) {
             throw new RuntimeException("Cannot list extra inventory files, null value returned.");
@@ -434,18 +566,24 @@ public final class TradePlugin extends JavaPlugin {
             
             final String uuid = config.getString(Constants.KEY_EXTRA_UUID, null);
             if (uuid == null) {
-                throw new IllegalArgumentException("Cannot have null UUID for extra inventory.");
+                this.logger.log(Level.WARNING, "Cannot have null UUID for extra inventory file at " + extraFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                continue;
             }
             final UUID uniqueId;
             try {
                 uniqueId = UUID.fromString(uuid);
             } catch (final IllegalArgumentException e) {
-                throw new IllegalArgumentException("Unable to parse UUID " + uuid + " for extra inventory.", e);
+                this.logger.log(Level.WARNING, "Unable to parse UUID " + uuid + " for extra inventory file at " + extraFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                continue;
             }
             
             final List<?> rawItems = config.getList(Constants.KEY_EXTRA_ITEMS, null);
             if (rawItems == null) {
-                throw new IllegalArgumentException("Cannot have null item list for extra inventory.");
+                this.logger.log(Level.WARNING, "Cannot have null item list for extra inventory file at " + extraFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                continue;
             }
             final List<ItemStack> stacks = new ArrayList<ItemStack>();
             final List<Map<String, Object>> items = (List<Map<String, Object>>) rawItems;
@@ -453,105 +591,141 @@ public final class TradePlugin extends JavaPlugin {
                 stacks.add(ItemStack.deserialize(serialized));
             }
             
-            if (this.extras.containsKey(uniqueId)) {
-                this.extras.get(uniqueId).addAll(stacks);
-            } else {
-                this.extras.put(uniqueId, stacks);
+            try {
+                this.store.appendExtras(uniqueId, stacks.toArray(new ItemStack[0]));
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to import extra inventory file at " + extraFile.getPath() + " into the trade storage.");
+                this.logger.log(Level.WARNING, "Skipping extra inventory, the file has been left in place.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
             }
-        }
-        
-        // Commands //
-        
-        this.registerCommand("tradeadmin", new TradeAdminCommand(this));
-        
-        // Server Events & Tasks //
-        
-        this.server.getPluginManager().registerEvents(new TradeListener(this), this);
-        
-        this.scheduler.runTaskTimer(this, () -> {
             
-            for (final TradeRoom room : this.tradeRooms.values()) {
-                
-                if (!room.isActive()) {
-                    continue;
-                }
-                
-                final Trader trader1 = room.getTrader1();
-                final Trader trader2 = room.getTrader2();
-                
-                if (trader1 != null) {
-                    if (trader1.isOffline()) {
-                        this.processOfflineTrader(room, trader1, Side.SIDE_1);
-                    } else {
-                        this.processOnlineTrader(room, trader1, Side.SIDE_1);
-                    }
-                }
-                if (trader2 != null) {
-                    if (trader2.isOffline()) {
-                        this.processOfflineTrader(room, trader2, Side.SIDE_2);
-                    } else {
-                        this.processOnlineTrader(room, trader2, Side.SIDE_2);
-                    }
-                }
-            }
-        }, 200L, 200L);
-    }
-    
-    private void registerCommand(@NotNull final String commandName, @NotNull final TabExecutor tabExecutor) throws RuntimeException {
-        
-        final PluginCommand command = this.getCommand(commandName);
-        if (command == null) {
-            throw new RuntimeException("Cannot find the command /" + commandName);
+            imported.add(extraFile);
         }
-        command.setExecutor(tabExecutor);
-        command.setTabCompleter(tabExecutor);
+        
+        return imported;
     }
     
-    private void processOnlineTrader(@NotNull final TradeRoom room, @NotNull final Trader trader, @NotNull final Side side) {
+    private void deleteImported(@NotNull final List<File> files, @NotNull final File folder, @NotNull final String fileName, @NotNull final String folderName) {
         
-        final Player player = this.server.getPlayer(trader.getUniqueId());
-        if (player == null || !player.isOnline()) {
-            
-            if (!trader.isOffline()) {
-                trader.setOffline(true);
-                this.saveRoom(this.console, room);
+        for (final File file : files) {
+            if (!file.delete()) {
+                this.logger.log(Level.WARNING, "Imported " + fileName + " at " + file.getPath() + " could not be deleted.");
             }
-            
-            this.processOfflineTrader(room, trader, side);
-            return;
         }
         
-        final ProtectedRegion region = side == Side.SIDE_1 ? room.getRegion1() : room.getRegion2();
-        if (region.contains(BukkitAdapter.asBlockVector(player.getLocation()))) {
-            return;
+        final String[] remaining = folder.list();
+        if (remaining != null && remaining.length == 0 && !folder.delete()) {
+            this.logger.log(Level.WARNING, "Empty " + folderName + " at " + folder.getPath() + " could not be deleted.");
         }
-        
-        final Location teleport = side == Side.SIDE_1 ? room.getTeleportIn1() : room.getTeleportIn2();
-        player.teleport(teleport);
-        player.sendMessage("§6Not sure how you got out, but please finish or cancel your trade before you leave.");
     }
     
-    private void processOfflineTrader(@NotNull final TradeRoom room, @NotNull final Trader trader, @NotNull final Side side) {
-            
-        final long now = System.currentTimeMillis();
-        final long expire = trader.getLogoutTime() + OFFLINE_TIMEOUT;
+    private void importRooms(final long offlineTime) {
         
-        if (expire >= now) {
-            return;
+        final File[] tradeRoomFiles = this.tradeRoomFolder.listFiles();
+        if (tradeRoomFiles == null) {
+            throw new RuntimeException("Cannot list trade room files, null value returned.");
         }
         
+        final File importedFolder = new File(this.tradeRoomFolder, Constants.FOLDER_IMPORTED);
+        for (final File tradeRoomFile : tradeRoomFiles) {
+            
+            if (!tradeRoomFile.isFile() || !tradeRoomFile.getName().endsWith(Constants.FILE_TYPE)) {
+                continue;
+            }
+            
+            final YamlConfiguration config = new YamlConfiguration();
+            try {
+                config.load(tradeRoomFile);
+            } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to load trade room file at " + tradeRoomFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            final TradeRoom room;
+            try {
+                room = new TradeRoom(this.server, offlineTime, config);
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize trade room from file at " + tradeRoomFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            try {
+                this.store.saveRoom(room);
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to import trade room file at " + tradeRoomFile.getPath() + " into the trade storage.");
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            if (this.tradeRooms.put(room.getName().toLowerCase(), room) != null) {
+                this.logger.log(Level.INFO, "Trade room " + room.getName() + " replaced by the definition in " + tradeRoomFile.getPath());
+            }
+            
+            if (!importedFolder.exists() && !importedFolder.mkdirs()) {
+                this.logger.log(Level.WARNING, "Imported trade room folder not created at " + importedFolder.getPath());
+                this.logger.log(Level.WARNING, "The trade room file at " + tradeRoomFile.getPath() + " will be imported again on the next startup.");
+                continue;
+            }
+            if (!tradeRoomFile.renameTo(new File(importedFolder, tradeRoomFile.getName()))) {
+                this.logger.log(Level.WARNING, "Imported trade room file at " + tradeRoomFile.getPath() + " could not be moved to " + importedFolder.getPath());
+                this.logger.log(Level.WARNING, "The trade room file will be imported again on the next startup.");
+            }
+        }
+    }
+    
+    private void processOnlineTrader(@NotNull final TradeRoom room, @NotNull final Trader trader, @NotNull final Side side) {
+        
+        final Player player = this.server.getPlayer(trader.getUniqueId());
+        if (player == null || !player.isOnline()) {
+            
+            if (!trader.isOffline()) {
+                trader.setOffline(true);
+                this.saveRoom(this.console, room);
+            }
+            
+            this.processOfflineTrader(room, trader, side);
+            return;
+        }
+        
+        final ProtectedRegion region = side == Side.SIDE_1 ? room.getRegion1() : room.getRegion2();
+        if (region.contains(BukkitAdapter.asBlockVector(player.getLocation()))) {
+            return;
+        }
+        
+        final Location teleport = side == Side.SIDE_1 ? room.getTeleportIn1() : room.getTeleportIn2();
+        player.teleport(teleport);
+        player.sendMessage("§6Not sure how you got out, but please finish or cancel your trade before you leave.");
+    }
+    
+    private void processOfflineTrader(@NotNull final TradeRoom room, @NotNull final Trader trader, @NotNull final Side side) {
+            
+        final long now = System.currentTimeMillis();
+        final long expire = trader.getLogoutTime() + OFFLINE_TIMEOUT;
+        
+        if (expire >= now) {
+            return;
+        }
+        
+        this.auditRoom(room, CompleteReason.OFFLINE_SELF);
+        final long entry = this.journalRoom(room, CompleteReason.OFFLINE_SELF);
         final Offline offline = new Offline(trader);
         offline.setReason(CompleteReason.OFFLINE_SELF);
         offline.setTeleport(side == Side.SIDE_1 ? room.getTeleportOut1() : room.getTeleportOut2());
-        final Inventory extra = room.returnItems(this.server, offline);
-        
-        this.offlines.put(offline.getUniqueId(), offline);
-        this.saveOffline(offline, extra);
+        final ItemStack[] extra = room.returnItems(offline);
+        final TradeJournal.Delivery delivery = TradeJournal.Delivery.offline(offline, extra);
         
         room.setStatus(null);
         
         final Trader other = side == Side.SIDE_1 ? room.getTrader2() : room.getTrader1();
-        if (other != null) {
+        if (other == null) {
+            this.applyRoom(entry, side, delivery, null);
+        } else {
             
             final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
             if (otherPlayer == null || !otherPlayer.isOnline()) {
@@ -563,15 +737,16 @@ public final class TradePlugin extends JavaPlugin {
                 final Offline otherOffline = new Offline(other);
                 otherOffline.setReason(CompleteReason.OFFLINE_OTHER);
                 otherOffline.setTeleport(side == Side.SIDE_1 ? room.getTeleportOut2() : room.getTeleportOut1());
-                final Inventory extraOther = room.returnItems(this.server, otherOffline);
+                final ItemStack[] extraOther = room.returnItems(otherOffline);
+                this.applyRoom(entry, side, delivery, TradeJournal.Delivery.offline(otherOffline, extraOther));
                 
                 this.offlines.put(otherOffline.getUniqueId(), otherOffline);
                 this.saveOffline(otherOffline, extraOther);
                 
                 if (side == Side.SIDE_1) {
-                    room.setTrader2(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_2, null);
                 } else {
-                    room.setTrader1(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_1, null);
                 }
                 
             } else {
@@ -586,19 +761,25 @@ public final class TradePlugin extends JavaPlugin {
                 otherPlayer.sendMessage("§cPlease exit the trade room once all of your items have been returned. Be sure to check for any dropped and floating items.");
                 otherPlayer.sendMessage("§6Returning items...");
                 room.returnItems(otherPlayer);
+                this.applyRoom(entry, side, delivery, TradeJournal.Delivery.inventory());
                 
             }
             
+            this.checkItems(room.getName(), room.verifyItems());
             this.deleteChestInventories(this.console, room);
         }
         
+        this.offlines.put(offline.getUniqueId(), offline);
+        this.saveOffline(offline, extra);
+        
         if (side == Side.SIDE_1) {
-            room.setTrader1(null);
+            this.roomIndex.setTrader(room, Side.SIDE_1, null);
         } else {
-            room.setTrader2(null);
+            this.roomIndex.setTrader(room, Side.SIDE_2, null);
         }
         
         this.saveRoom(this.console, room);
+        this.commitTrade(entry);
     }
     
     @Override
@@ -612,27 +793,13 @@ public final class TradePlugin extends JavaPlugin {
                 continue;
             }
             
-            TradeRoom room = null;
-            Trader self = null;
-            Side side = null;
-            for (final TradeRoom check : this.tradeRooms.values()) {
-                
-                final Trader check1 = check.getTrader1();
-                final Trader check2 = check.getTrader2();
-                
-                if (check1 != null && uniqueId.equals(check1.getUniqueId())) {
-                    room = check;
-                    self = check1;
-                    side = Side.SIDE_1;
-                    break;
-                } else if (check2 != null && uniqueId.equals(check2.getUniqueId())) {
-                    room = check;
-                    self = check2;
-                    side = Side.SIDE_2;
-                    break;
-                }
+            final TradeRoom room = this.roomIndex.getTraderRoom(uniqueId);
+            if (room == null) {
+                continue;
             }
             
+            final Side side = room.isTrader1(uniqueId) ? Side.SIDE_1 : Side.SIDE_2;
+            final Trader self = room.getTrader(uniqueId);
             if (self == null) {
                 continue;
             }
@@ -641,40 +808,70 @@ public final class TradePlugin extends JavaPlugin {
             
             final Trader other = side == Side.SIDE_1 ? room.getTrader2() : room.getTrader1();
             if (other == null) {
-                this.saveRoom(this.console, room, true);
+                this.saveRoom(this.console, room);
                 continue;
             }
             
             if (!other.isOffline()) {
                 other.setOffline(true);
             }
-            this.saveRoom(this.console, room, true);
+            this.saveRoom(this.console, room);
             ignore.add(other.getUniqueId());
         }
         
+        for (final VirtualTrade trade : new HashSet<VirtualTrade>(this.virtualTrades.values())) {
+            this.saveVirtualBackup(trade, trade.getTrader1());
+            this.saveVirtualBackup(trade, trade.getTrader2());
+        }
+        
         final long now = System.currentTimeMillis();
-        final YamlConfiguration stopConfig = new YamlConfiguration();
-        stopConfig.set(Constants.KEY_SERVER_STOP_TIME, now);
-        try {
-            stopConfig.save(this.serverStopFile);
-        } catch (IOException | IllegalArgumentException e) {
-            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING SERVER STOP TIME.");
-            this.logger.log(Level.WARNING, "Details below:");
-            this.logger.log(Level.WARNING, "server_stop_time:" + now);
-            this.logger.log(Level.WARNING, "ISSUE:");
-            this.logger.log(Level.WARNING, "Attempted to save the Server Stop file.");
-            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        this.store.saveServerStop(now);
+        
+        synchronized (this.flushLock) {
+            
+            this.flushStorage();
+            
+            try {
+                this.store.close();
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE CLOSING TRADE STORAGE.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+            
+            try {
+                this.journal.close();
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE CLOSING TRADE JOURNAL.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
         }
+        
+        this.roomBoard.write();
+        this.auditLog.close();
+        this.history.close();
     }
     
     ///////////////////////////
     // EVENT HANDLER METHODS //
     ///////////////////////////
     
-    public boolean blockBreak(@NotNull final Location location) {
+    public boolean blockBreak(@NotNull final Block block) {
+        return this.roomIndex.isProtected(block);
+    }
+    
+    public void blockExplode(@NotNull final List<Block> blocks) {
+        blocks.removeIf(this.roomIndex::isProtected);
+    }
+    
+    public boolean blockPiston(@NotNull final Block piston, @NotNull final BlockFace direction, @NotNull final List<Block> blocks) {
         
-        for (final TradeRoom room : this.tradeRooms.values()) {
-            if (room.contains(location, false)) {
+        // The piston head, and anything in front of the moved blocks, gets
+        // replaced or broken as well.
+        if (this.roomIndex.isProtected(piston.getRelative(direction))) {
+            return true;
+        }
+        for (final Block block : blocks) {
+            if (this.roomIndex.isProtected(block) || this.roomIndex.isProtected(block.getRelative(direction))) {
                 return true;
             }
         }
@@ -682,55 +879,64 @@ public final class TradePlugin extends JavaPlugin {
         return false;
     }
     
-    public boolean blockPlace(@NotNull final Chest chest) {
+    public boolean blockPlace(@NotNull final Block block) {
+        
+        // Trade chests may not become part of a double chest.
+        final World world = block.getWorld();
+        final int x = block.getX();
+        final int y = block.getY();
+        final int z = block.getZ();
+        return this.roomIndex.getChestRoom(world, BlockKey.of(x + 1, y, z)) != null
+                || this.roomIndex.getChestRoom(world, BlockKey.of(x - 1, y, z)) != null
+                || this.roomIndex.getChestRoom(world, BlockKey.of(x, y, z + 1)) != null
+                || this.roomIndex.getChestRoom(world, BlockKey.of(x, y, z - 1)) != null;
+    }
+    
+    public void chunkUnload(@NotNull final Chunk chunk) {
         
-        final Location location = chest.getLocation();
+        final List<TradeRoom> rooms = this.roomIndex.getChunkRooms(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        if (rooms == null) {
+            return;
+        }
+        for (final TradeRoom room : rooms) {
+            room.unloadChunk(chunk.getX(), chunk.getZ());
+        }
+    }
+    
+    public boolean inventoryMove(@NotNull final Inventory inventory) {
         
-        for (final TradeRoom room : this.tradeRooms.values()) {
-            
-            final Location chest1Loc = room.getChest1().getLocation();
-            if (chest1Loc.equals(location.add(1.0D, 0.0D, 0.0D))) {
-                return true;
-            } else if (chest1Loc.equals(location.add(-2.0D, 0.0D, 0.0D))) {
-                return true;
-            } else if (chest1Loc.equals(location.add(1.0D, 0.0D, 1.0D))) {
-                return true;
-            } else if (chest1Loc.equals(location.add(0.0D, 0.0D, -2.0D))) {
-                return true;
-            }
-            
-            final Location chest2Loc = room.getChest2().getLocation();
-            if (chest2Loc.equals(location.add(1.0D, 0.0D, 0.0D))) {
-                return true;
-            } else if (chest2Loc.equals(location.add(-2.0D, 0.0D, 0.0D))) {
-                return true;
-            } else if (chest2Loc.equals(location.add(1.0D, 0.0D, 1.0D))) {
-                return true;
-            } else if (chest2Loc.equals(location.add(0.0D, 0.0D, -2.0D))) {
-                return true;
-            }
+        // Hoppers fire this constantly, so anything but a chest is dismissed
+        // before touching its location.
+        if (inventory.getType() != InventoryType.CHEST) {
+            return false;
         }
         
-        return false;
+        final Location location = inventory.getLocation();
+        if (location == null || location.getWorld() == null) {
+            return false;
+        }
+        return this.roomIndex.getChestRoom(location.getWorld(), BlockKey.of(location)) != null;
     }
     
     public boolean inventoryClick(@NotNull final Player player, @NotNull final Inventory inventory, final int slot) {
         
         final UUID uniqueId = player.getUniqueId();
         
-        TradeRoom room = null;
-        for (final TradeRoom check : this.tradeRooms.values()) {
-            if (check.isUsing(uniqueId)) {
-                room = check;
-                break;
-            }
+        // Over the limit, only keep the trade inventory locked.
+        if (!this.clickLimiter.tryAcquire(uniqueId)) {
+            return this.tradeInventories.containsKey(uniqueId);
         }
         
+        final TradeRoom room = this.roomIndex.getTraderRoom(uniqueId);
         if (room == null) {
-            return false;
+            final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+            return trade != null && this.virtualInventoryClick(player, trade, inventory, slot);
         }
         
-        final Trader self = new Trader(player);
+        final Trader self = room.getTrader(uniqueId);
+        if (self == null) {
+            return false;
+        }
         final Trader other;
         final Side otherSide;
         
@@ -780,15 +986,13 @@ public final class TradePlugin extends JavaPlugin {
             
             if (room.hasNotAccepted(uniqueId)) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 this.rejectTrade(player, room, otherSide, self, other);
                 return true;
             }
             
-            this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
+            this.removeCancelRequest(uniqueId);
             this.cancelTrade(player, room, otherSide, self, other);
             player.sendMessage("§aYou have cancelled the trade.");
             player.sendMessage("§6Please remember to pick up your items that may have fallen on the ground before you leave the trade room.");
@@ -797,7 +1001,7 @@ public final class TradePlugin extends JavaPlugin {
         } else if (slot == SLOT_ACCEPT) {
             
             if (this.cancelRequests.containsKey(uniqueId)) {
-                player.sendMessage("§6" + this.cancelRequests.remove(uniqueId).getType() + " request cancelled.");
+                player.sendMessage("§6" + this.removeCancelRequest(uniqueId).getType() + " request cancelled.");
             }
             player.sendMessage("§aYou have accepted the trade.");
             
@@ -836,21 +1040,23 @@ public final class TradePlugin extends JavaPlugin {
         return removals;
     }
     
-    public void buildRoom(@NotNull final Player player, @NotNull final BlockState state) {
+    public void buildRoom(@NotNull final Player player, @NotNull final Block block) {
         
-        if (state.getType() == Material.AIR) {
+        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
+        if (builder == null) {
             return;
         }
         
-        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
-        if (builder == null) {
+        if (block.getType() == Material.AIR) {
             return;
         }
         
+        final Location location = block.getLocation();
+        
         final BuildStep step = builder.getStep();
         if (step == BuildStep.CHEST_1) {
             
-            if (!builder.setChest1(state.getLocation())) {
+            if (!builder.setChest1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -862,7 +1068,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_IN_1) {
             
-            if (!builder.setButtonIn1(state.getLocation())) {
+            if (!builder.setButtonIn1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -875,7 +1081,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_OUT_1) {
             
-            if (!builder.setButtonOut1(state.getLocation())) {
+            if (!builder.setButtonOut1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -888,7 +1094,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_LOCK_1) {
             
-            if (!builder.setButtonLock1(state.getLocation())) {
+            if (!builder.setButtonLock1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -901,7 +1107,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_ACCEPT_1) {
             
-            if (!builder.setButtonAccept1(state.getLocation())) {
+            if (!builder.setButtonAccept1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -914,7 +1120,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_DENY_1) {
             
-            if (!builder.setButtonDeny1(state.getLocation())) {
+            if (!builder.setButtonDeny1(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -927,7 +1133,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.CHEST_2) {
             
-            if (!builder.setChest2(state.getLocation())) {
+            if (!builder.setChest2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -939,7 +1145,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_IN_2) {
             
-            if (!builder.setButtonIn2(state.getLocation())) {
+            if (!builder.setButtonIn2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -952,7 +1158,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_OUT_2) {
             
-            if (!builder.setButtonOut2(state.getLocation())) {
+            if (!builder.setButtonOut2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -965,7 +1171,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_LOCK_2) {
             
-            if (!builder.setButtonLock2(state.getLocation())) {
+            if (!builder.setButtonLock2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -978,7 +1184,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_ACCEPT_2) {
             
-            if (!builder.setButtonAccept2(state.getLocation())) {
+            if (!builder.setButtonAccept2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -991,7 +1197,7 @@ public final class TradePlugin extends JavaPlugin {
         
         if (step == BuildStep.BUTTON_DENY_2) {
             
-            if (!builder.setButtonDeny2(state.getLocation())) {
+            if (!builder.setButtonDeny2(location)) {
                 player.sendMessage("§cPlease try this step again.");
                 return;
             }
@@ -1008,8 +1214,10 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             this.tradeRooms.put(room.getName().toLowerCase(), room);
+            this.roomIndex.add(room);
+            this.roomBoard.watch(room);
             this.saveRoom(player, room);
-            this.builders.remove(player.getUniqueId());
+            this.removeBuilder(player.getUniqueId());
             player.sendMessage("§aTrade room§r §6" + room.getName() + "§r §acreated successfully.");
             
             return;
@@ -1019,9 +1227,19 @@ public final class TradePlugin extends JavaPlugin {
         player.sendMessage("§cYour current step is§r §6" + step.name().toLowerCase() + "§r§c.");
     }
     
-    public boolean rightClickedBlock(@NotNull final Player player, @NotNull final BlockState state) {
+    public boolean offHandInteract(@NotNull final Block block) {
+        return this.roomIndex.isProtected(block);
+    }
+    
+    public boolean rightClickedBlock(@NotNull final Player player, @NotNull final Block block) {
         
         final UUID uniqueId = player.getUniqueId();
+        
+        // Over the limit, only block the use of the trade room itself.
+        if (!this.interactLimiter.tryAcquire(uniqueId)) {
+            return this.roomIndex.isProtected(block);
+        }
+        
         final TradeRoomBuilder builder = this.builders.get(uniqueId);
         if (builder != null) {
             player.sendMessage("§cYou are currently building a trade room. You are on step§r §6" + builder.getStep().name().toLowerCase() + "§r§c.");
@@ -1029,20 +1247,13 @@ public final class TradePlugin extends JavaPlugin {
             return true;
         }
         
-        final Location location = state.getLocation();
-        TradeRoom room = null;
-        for (final TradeRoom check : this.tradeRooms.values()) {
-            if (check.contains(location, true)) {
-                room = check;
-                break;
-            }
-        }
-        
+        final TradeRoom room = this.roomIndex.getRoom(block, true);
         if (room == null) {
             return false;
         }
         
-        final Side side = room.getSide(location);
+        final long key = BlockKey.of(block);
+        final Side side = room.getSide(key);
         if (side == null) {
             return false;
         }
@@ -1053,7 +1264,7 @@ public final class TradePlugin extends JavaPlugin {
             if (side == Side.SIDE_1) {
                 
                 // Player is inside side 1, eject
-                if (!location.equals(room.getButtonIn1())) {
+                if (key != room.getButtonIn1()) {
                     player.sendMessage("§cYou cannot use these trade room functions because you are not using this trade room.");
                     player.sendMessage("§cTo start a trade, please use the button to enter this trade room.");
                     player.teleport(room.getTeleportOut1());
@@ -1066,7 +1277,7 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             // Player is inside side 2, eject
-            if (!location.equals(room.getButtonIn2())) {
+            if (key != room.getButtonIn2()) {
                 player.sendMessage("§cYou cannot use these trade room functions because you are not using this trade room.");
                 player.sendMessage("§cTo start a trade, please use the button to enter this trade room.");
                 player.teleport(room.getTeleportOut2());
@@ -1087,14 +1298,14 @@ public final class TradePlugin extends JavaPlugin {
                 player.sendMessage("§cPlease wait for the current players to finish, and then you can use this trade room.");
                 
                 // Player is in side 1, eject
-                if (side == Side.SIDE_1 && !location.equals(room.getButtonIn1())) {
+                if (side == Side.SIDE_1 && key != room.getButtonIn1()) {
                     player.sendMessage("§cYou were not supposed to be in there. Out you go!");
                     player.teleport(room.getTeleportOut1());
                     return true;
                 }
                 
                 // Player is in side 2, eject
-                if (side == Side.SIDE_2 && !location.equals(room.getButtonIn2())) {
+                if (side == Side.SIDE_2 && key != room.getButtonIn2()) {
                     player.sendMessage("§cYou were not supposed to be in there. Out you go!");
                     player.teleport(room.getTeleportOut2());
                     return true;
@@ -1104,14 +1315,14 @@ public final class TradePlugin extends JavaPlugin {
             
             // Player is one of the traders
             // Player is outside, supposed to be in side 1, send in
-            if (side == Side.SIDE_1 && location.equals(room.getButtonIn1())) {
+            if (side == Side.SIDE_1 && key == room.getButtonIn1()) {
                 player.sendMessage("§6Unsure how you got outside. Back in you go!");
                 player.teleport(room.isTrader1(uniqueId) ? room.getTeleportIn1() : room.getTeleportIn2());
                 return false;
             }
             
             // Player is outside, supposed to be in side 2, send in
-            if (side == Side.SIDE_2 && location.equals(room.getButtonIn2())) {
+            if (side == Side.SIDE_2 && key == room.getButtonIn2()) {
                 player.sendMessage("§6Unsure how you got outside. Back in you go!");
                 player.teleport(room.isTrader2(uniqueId) ? room.getTeleportIn2() : room.getTeleportIn1());
                 return false;
@@ -1132,7 +1343,7 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             // Player is in their assigned room, handle actions inside the room
-            return this.handleInsideRoom(player, state, room, side);
+            return this.handleInsideRoom(player, block, room, side);
         }
         
         // 1 player in the room
@@ -1145,21 +1356,21 @@ public final class TradePlugin extends JavaPlugin {
             if (side == Side.SIDE_1) {
                 
                 // Player is outside, supposed to be in side 1, send in
-                if (uniqueId.equals(uniqueId1) && location.equals(room.getButtonIn1())) {
+                if (uniqueId.equals(uniqueId1) && key == room.getButtonIn1()) {
                     player.sendMessage("§6Unsure how you got outside. Back in you go!");
                     player.teleport(room.getTeleportIn1());
                     return false;
                 }
                 
                 // Player is in side 1, is not the current trader, eject
-                if (!uniqueId.equals(uniqueId1) && !location.equals(room.getButtonIn1())) {
+                if (!uniqueId.equals(uniqueId1) && key != room.getButtonIn1()) {
                     player.sendMessage("§cYou were not supposed to be in there. Out you go!");
                     player.teleport(room.getTeleportOut1());
                     return true;
                 }
                 
                 // Player is outside, is not the current trader, deny
-                if (!uniqueId.equals(uniqueId1) && location.equals(room.getButtonIn1())) {
+                if (!uniqueId.equals(uniqueId1) && key == room.getButtonIn1()) {
                     player.sendMessage("§cSomeone else is already using that trade room.");
                     if (room.hasCompleted()) {
                         player.sendMessage("§cThey are completing their previous trade. Please wait until they leave to start your trade.");
@@ -1170,26 +1381,26 @@ public final class TradePlugin extends JavaPlugin {
                 }
                 
                 // Player is in their assigned room, handle actions inside the room
-                return this.handleInsideRoom(player, state, room, side);
+                return this.handleInsideRoom(player, block, room, side);
             }
             
             // Player is somewhere on side 2
             // Player is outside, supposed to be in side 1, send in
-            if (uniqueId.equals(uniqueId1) && location.equals(room.getButtonIn2())) {
+            if (uniqueId.equals(uniqueId1) && key == room.getButtonIn2()) {
                 player.sendMessage("§6Unsure how you got outside. Back in you go!");
                 player.teleport(room.getTeleportIn1());
                 return false;
             }
             
             // Player is in side 2, is not the current trader, eject
-            if (!uniqueId.equals(uniqueId1) && !location.equals(room.getButtonIn2())) {
+            if (!uniqueId.equals(uniqueId1) && key != room.getButtonIn2()) {
                 player.sendMessage("§cYou were not supposed to be in there. Out you go!");
                 player.teleport(room.getTeleportOut2());
                 return true;
             }
             
             // Player is in side 2, supposed to be in side 1, swap
-            if (uniqueId.equals(uniqueId1) && !location.equals(room.getButtonIn2())) {
+            if (uniqueId.equals(uniqueId1) && key != room.getButtonIn2()) {
                 player.sendMessage("§6Unsure how you got over there. Back to your side you go!");
                 player.teleport(room.getTeleportIn1());
                 return true;
@@ -1217,10 +1428,10 @@ public final class TradePlugin extends JavaPlugin {
             this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
             this.logger.log(Level.WARNING, "Player UUID: " + uniqueId.toString());
             this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-            this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-            this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-            this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-            this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+            this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+            this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+            this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+            this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
             this.logger.log(Level.WARNING, "Trader 1 UUID: null");
             this.logger.log(Level.WARNING, "Trader 1 Name: null");
             this.logger.log(Level.WARNING, "Trader 1 Status: null");
@@ -1237,21 +1448,21 @@ public final class TradePlugin extends JavaPlugin {
         if (side == Side.SIDE_2) {
             
             // Player is outside, supposed to be in side 2, send in
-            if (uniqueId.equals(uniqueId2) && location.equals(room.getButtonIn2())) {
+            if (uniqueId.equals(uniqueId2) && key == room.getButtonIn2()) {
                 player.sendMessage("§6Unsure how you got outside. Back in you go!");
                 player.teleport(room.getTeleportIn2());
                 return false;
             }
             
             // Player is in side 2, is not the current trader, eject
-            if (!uniqueId.equals(uniqueId2) && !location.equals(room.getButtonIn2())) {
+            if (!uniqueId.equals(uniqueId2) && key != room.getButtonIn2()) {
                 player.sendMessage("§cYou were not supposed to be in there. Out you go!");
                 player.teleport(room.getTeleportOut2());
                 return true;
             }
             
             // Player is outside, is not the current trader, deny
-            if (!uniqueId.equals(uniqueId2) && location.equals(room.getButtonIn2())) {
+            if (!uniqueId.equals(uniqueId2) && key == room.getButtonIn2()) {
                 player.sendMessage("§cSomeone else is already using that trade room.");
                 if (room.hasCompleted()) {
                     player.sendMessage("§cThey are completing their previous trade. Please wait until they leave to start your trade.");
@@ -1262,26 +1473,26 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             // Player is in their assigned room, handle actions inside the room
-            return this.handleInsideRoom(player, state, room, side);
+            return this.handleInsideRoom(player, block, room, side);
         }
         
         // Player is somewhere on side 1
         // Player is outside, supposed to be in side 2, send in
-        if (uniqueId.equals(uniqueId2) && location.equals(room.getButtonIn1())) {
+        if (uniqueId.equals(uniqueId2) && key == room.getButtonIn1()) {
             player.sendMessage("§6Unsure how you got outside. Back in you go!");
             player.teleport(room.getTeleportIn2());
             return false;
         }
         
         // Player is in side 1, is not the current trader, eject
-        if (!uniqueId.equals(uniqueId2) && !location.equals(room.getButtonIn1())) {
+        if (!uniqueId.equals(uniqueId2) && key != room.getButtonIn1()) {
             player.sendMessage("§cYou were not supposed to be in there. Out you go!");
             player.teleport(room.getTeleportOut1());
             return true;
         }
         
         // Player is in side 1, supposed to be in side 2, swap
-        if (uniqueId.equals(uniqueId2) && !location.equals(room.getButtonIn1())) {
+        if (uniqueId.equals(uniqueId2) && key != room.getButtonIn1()) {
             player.sendMessage("§6Unsure how you got over there. Back to your side you go!");
             player.teleport(room.getTeleportIn2());
             return true;
@@ -1298,9 +1509,9 @@ public final class TradePlugin extends JavaPlugin {
         return false;
     }
     
-    private boolean handleInsideRoom(@NotNull final Player player, @NotNull final BlockState state, @NotNull final TradeRoom room, @NotNull final Side side) {
+    private boolean handleInsideRoom(@NotNull final Player player, @NotNull final Block block, @NotNull final TradeRoom room, @NotNull final Side side) {
         
-        final Location location = state.getLocation();
+        final long key = BlockKey.of(block);
         final TradeStatus status = room.getStatus();
         final Trader self;
         final Trader other;
@@ -1325,10 +1536,10 @@ public final class TradePlugin extends JavaPlugin {
             this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
             this.logger.log(Level.WARNING, "Player UUID: " + player.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-            this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-            this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-            this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-            this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+            this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+            this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+            this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+            this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
             this.logger.log(Level.WARNING, "Trade Status: " + (room.getStatus() == null ? "null" : room.getStatus().name()));
             this.logger.log(Level.WARNING, "Trader 1 UUID: " + (trader1 == null ? "null" : trader1.getUniqueId().toString()));
             this.logger.log(Level.WARNING, "Trader 1 Name: " + (trader1 == null ? "null" : trader1.getName()));
@@ -1350,10 +1561,10 @@ public final class TradePlugin extends JavaPlugin {
             this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
             this.logger.log(Level.WARNING, "Player UUID: " + player.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-            this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-            this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-            this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-            this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+            this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+            this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+            this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+            this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
             this.logger.log(Level.WARNING, "Trade Status: null");
             this.logger.log(Level.WARNING, "Trader 1 UUID: " + (trader1 == null ? "null" : trader1.getUniqueId().toString()));
             this.logger.log(Level.WARNING, "Trader 1 Name: " + (trader1 == null ? "null" : trader1.getName()));
@@ -1365,13 +1576,11 @@ public final class TradePlugin extends JavaPlugin {
         
         final UUID uniqueId = player.getUniqueId();
         
-        if (room.isChest(location, side)) {
+        if (room.isChest(key, side)) {
             
             if (room.hasCompleted()) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 player.sendMessage("§6You cannot open the chest as you have already completed the trade.");
                 player.sendMessage("§6Please make sure you pick up any items you own, and please exit the room.");
@@ -1379,7 +1588,7 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             if (this.cancelRequests.containsKey(uniqueId)) {
-                player.sendMessage("§6" + this.cancelRequests.remove(uniqueId).getType() + " request cancelled.");
+                player.sendMessage("§6" + this.removeCancelRequest(uniqueId).getType() + " request cancelled.");
             }
             
             if (other == null) {
@@ -1406,10 +1615,10 @@ public final class TradePlugin extends JavaPlugin {
                     this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
                     this.logger.log(Level.WARNING, "Player UUID: " + player.getUniqueId().toString());
                     this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-                    this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-                    this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-                    this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-                    this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+                    this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+                    this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+                    this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+                    this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
                     this.logger.log(Level.WARNING, "Trade Status: " + status.name());
                     this.logger.log(Level.WARNING, "Trader 1 UUID: " + self.getUniqueId().toString());
                     this.logger.log(Level.WARNING, "Trader 1 Name: " + self.getName());
@@ -1436,21 +1645,19 @@ public final class TradePlugin extends JavaPlugin {
             return true;
         }
         
-        if (room.isButtonOut(location, side)) {
+        if (room.isButtonOut(key, side)) {
             
             if (room.hasCompleted()) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 player.sendMessage("§aThank you for using the trade room.");
                 if (side == Side.SIDE_1) {
                     player.teleport(room.getTeleportOut1());
-                    room.setTrader1(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_1, null);
                 } else {
                     player.teleport(room.getTeleportOut2());
-                    room.setTrader2(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_2, null);
                 }
                 
                 if (other == null) {
@@ -1462,11 +1669,7 @@ public final class TradePlugin extends JavaPlugin {
             
             if (!this.cancelRequests.containsKey(uniqueId)) {
                 
-                this.cancelRequests.put(uniqueId, new CancelRequest("Exit", this.scheduler.runTaskLater(this, () -> {
-                    if (this.cancelRequests.containsKey(uniqueId)) {
-                        player.sendMessage("§c" + this.cancelRequests.remove(uniqueId).getType() + " confirmation expired.");
-                    }
-                }, 600L).getTaskId()));
+                this.addCancelRequest(uniqueId, "Exit");
                 
                 player.sendMessage("§cAre you sure you want to exit the trade room?");
                 player.sendMessage("§6Press the exit button again within 30 seconds to exit the trade room.");
@@ -1487,12 +1690,12 @@ public final class TradePlugin extends JavaPlugin {
                 }
             }
             
-            this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
+            this.removeCancelRequest(uniqueId);
             this.cancelTrade(player, room, side.getOther(), self, other);
             
             room.setStatus(null);
-            room.setTrader1(null);
-            room.setTrader2(null);
+            this.roomIndex.setTrader(room, Side.SIDE_1, null);
+            this.roomIndex.setTrader(room, Side.SIDE_2, null);
             this.saveRoom(player, room);
             
             player.sendMessage("§aYou have exited the trade room.");
@@ -1503,13 +1706,11 @@ public final class TradePlugin extends JavaPlugin {
             return false;
         }
         
-        if (room.isButtonLock(location, side)) {
+        if (room.isButtonLock(key, side)) {
             
             if (room.hasCompleted()) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 player.sendMessage("§cYou have already completed your trade.");
                 player.sendMessage("§6Please make sure you pick up any items you own, and please exit the room.");
@@ -1517,7 +1718,7 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             if (this.cancelRequests.containsKey(uniqueId)) {
-                player.sendMessage("§6" + this.cancelRequests.remove(uniqueId).getType() + " request cancelled.");
+                player.sendMessage("§6" + this.removeCancelRequest(uniqueId).getType() + " request cancelled.");
             }
             
             if (other == null) {
@@ -1544,8 +1745,9 @@ public final class TradePlugin extends JavaPlugin {
                 }
                 
                 room.setStatus(TradeStatus.DECIDE);
+                room.lockItems();
                 this.saveRoom(player, room);
-                this.displayNewTrade(player, location, room, status, self, other);
+                this.displayNewTrade(player, block, room, status, self, other);
                 return false;
             }
             
@@ -1574,13 +1776,11 @@ public final class TradePlugin extends JavaPlugin {
             return true;
         }
         
-        if (room.isButtonAccept(location, side)) {
+        if (room.isButtonAccept(key, side)) {
             
             if (room.hasCompleted()) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 player.sendMessage("§6You cannot open the chest as you have already completed the trade.");
                 player.sendMessage("§6Please make sure you pick up any items you own, and please exit the room.");
@@ -1588,7 +1788,7 @@ public final class TradePlugin extends JavaPlugin {
             }
             
             if (this.cancelRequests.containsKey(uniqueId)) {
-                player.sendMessage("§6" + this.cancelRequests.remove(uniqueId).getType() + " request cancelled.");
+                player.sendMessage("§6" + this.removeCancelRequest(uniqueId).getType() + " request cancelled.");
             }
             
             if (other == null) {
@@ -1636,21 +1836,19 @@ public final class TradePlugin extends JavaPlugin {
             return true;
         }
         
-        if (room.isButtonDeny(location, side)) {
+        if (room.isButtonDeny(key, side)) {
             
             if (room.hasCompleted()) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 player.sendMessage("§aThank you for using the trade room.");
                 if (side == Side.SIDE_1) {
                     player.teleport(room.getTeleportOut1());
-                    room.setTrader1(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_1, null);
                 } else {
                     player.teleport(room.getTeleportOut2());
-                    room.setTrader2(null);
+                    this.roomIndex.setTrader(room, Side.SIDE_2, null);
                 }
                 
                 if (other == null) {
@@ -1664,11 +1862,7 @@ public final class TradePlugin extends JavaPlugin {
                 
                 if (!this.cancelRequests.containsKey(uniqueId)) {
                     
-                    this.cancelRequests.put(uniqueId, new CancelRequest("Cancel", this.scheduler.runTaskLater(this, () -> {
-                        if (this.cancelRequests.containsKey(uniqueId)) {
-                            player.sendMessage("§c" + this.cancelRequests.remove(uniqueId).getType() + " confirmation expired.");
-                        }
-                    }, 600L).getTaskId()));
+                    this.addCancelRequest(uniqueId, "Cancel");
                     
                     player.sendMessage("§cAre you sure you want to cancel the trade?");
                     player.sendMessage("§6Press the exit button again within 30 seconds to cancel the trade.");
@@ -1676,7 +1870,7 @@ public final class TradePlugin extends JavaPlugin {
                     return false;
                 }
                 
-                this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
+                this.removeCancelRequest(uniqueId);
                 this.cancelTrade(player, room, side.getOther(), self, other);
                 player.sendMessage("§aYou have cancelled the trade.");
                 player.sendMessage("§6Please remember to pick up your items that may have fallen on the ground before you leave the trade room.");
@@ -1685,9 +1879,7 @@ public final class TradePlugin extends JavaPlugin {
             
             if (room.hasNotAccepted(uniqueId)) {
                 
-                if (this.cancelRequests.containsKey(uniqueId)) {
-                    this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
-                }
+                this.removeCancelRequest(uniqueId);
                 
                 this.rejectTrade(player, room, side.getOther(), self, other);
                 return false;
@@ -1695,11 +1887,7 @@ public final class TradePlugin extends JavaPlugin {
             
             if (!this.cancelRequests.containsKey(uniqueId)) {
                 
-                this.cancelRequests.put(uniqueId, new CancelRequest("Cancel", this.scheduler.runTaskLater(this, () -> {
-                    if (this.cancelRequests.containsKey(uniqueId)) {
-                        player.sendMessage("§c" + this.cancelRequests.remove(uniqueId).getType() + " confirmation expired.");
-                    }
-                }, 600L).getTaskId()));
+                this.addCancelRequest(uniqueId, "Cancel");
                 
                 player.sendMessage("§cAre you sure you want to cancel the trade?");
                 player.sendMessage("§6Press the exit button again within 30 seconds to cancel the trade.");
@@ -1707,7 +1895,7 @@ public final class TradePlugin extends JavaPlugin {
                 return false;
             }
             
-            this.scheduler.cancelTask(this.cancelRequests.remove(uniqueId).getTaskId());
+            this.removeCancelRequest(uniqueId);
             this.cancelTrade(player, room, side.getOther(), self, other);
             player.sendMessage("§aYou have cancelled the trade.");
             player.sendMessage("§6Please remember to pick up your items that may have fallen on the ground before you leave the trade room.");
@@ -1722,9 +1910,8 @@ public final class TradePlugin extends JavaPlugin {
         this.recentJoins.add(uniqueId);
         final Offline offline = this.offlines.get(uniqueId);
         
-        if (offline != null) {
+        if (offline != null || this.virtualBackups.containsKey(uniqueId)) {
             
-            final CompleteReason reason = offline.getReason() == null ? CompleteReason.ERROR : offline.getReason();
             this.scheduler.runTaskLater(this, () -> {
                 
                 this.recentJoins.remove(uniqueId);
@@ -1733,22 +1920,40 @@ public final class TradePlugin extends JavaPlugin {
                     return;
                 }
                 
-                this.offlines.remove(uniqueId);
-                player.sendMessage(reason.getMessage());
-                
-                final Location teleport = offline.getTeleport();
-                if (teleport != null) {
-                    player.teleport(teleport);
-                    player.sendMessage("§aYou have been moved outside of the trade room.");
+                if (offline != null) {
+                    
+                    final CompleteReason reason = offline.getReason() == null ? CompleteReason.ERROR : offline.getReason();
+                    this.offlines.remove(uniqueId);
+                    player.sendMessage(reason.getMessage());
+                    
+                    final Location teleport = offline.getTeleport();
+                    if (teleport != null) {
+                        player.teleport(teleport);
+                        player.sendMessage("§aYou have been moved outside of the trade room.");
+                    }
+                    
+                    final ItemStack[] items = offline.getItems();
+                    if (items != null) {
+                        this.transferItems(player, items, reason);
+                    }
+                    
+                    final List<ItemStack> extra = this.extras.remove(uniqueId);
+                    if (extra != null) {
+                        for (int index = 0; index < extra.size(); index += Offline.SIZE) {
+                            this.transferItems(player, extra.subList(index, Math.min(index + Offline.SIZE, extra.size())).toArray(new ItemStack[0]), reason);
+                        }
+                    }
+                    
+                    this.deleteOffline(offline);
                 }
                 
-                final Inventory inventory = offline.getInventory();
-                if (inventory != null) {
-                    this.transferItems(player, inventory, reason);
+                final ItemStack[] backup = this.virtualBackups.remove(uniqueId);
+                if (backup != null) {
+                    player.sendMessage(CompleteReason.INTERRUPTED.getMessage());
+                    this.transferItems(player, backup, CompleteReason.INTERRUPTED);
+                    this.deleteVirtualBackup(uniqueId);
                 }
                 
-                this.deleteOffline(offline);
-                
             }, 60L);
             
             return;
@@ -1766,27 +1971,17 @@ public final class TradePlugin extends JavaPlugin {
                 return;
             }
             
-            TradeRoom room = null;
-            Trader self = null;
-            Side side = null;
-            for (final TradeRoom check : this.tradeRooms.values()) {
-                
-                final Trader check1 = check.getTrader1();
-                final Trader check2 = check.getTrader2();
-                
-                if (check1 != null && uniqueId.equals(check1.getUniqueId())) {
-                    room = check;
-                    self = check1;
-                    side = Side.SIDE_1;
-                    break;
-                } else if (check2 != null && uniqueId.equals(check2.getUniqueId())) {
-                    room = check;
-                    self = check2;
-                    side = Side.SIDE_2;
-                    break;
+            final TradeRoom room = this.roomIndex.getTraderRoom(uniqueId);
+            if (room == null) {
+                final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+                if (trade != null) {
+                    this.virtualJoin(player, trade);
                 }
+                return;
             }
             
+            final Side side = room.isTrader1(uniqueId) ? Side.SIDE_1 : Side.SIDE_2;
+            final Trader self = room.getTrader(uniqueId);
             if (self == null) {
                 return;
             }
@@ -1829,27 +2024,23 @@ public final class TradePlugin extends JavaPlugin {
     
     public void playerLeave(@NotNull final UUID uniqueId) {
         
-        TradeRoom room = null;
-        Trader self = null;
-        Side side = null;
-        for (final TradeRoom check : this.tradeRooms.values()) {
-            
-            final Trader check1 = check.getTrader1();
-            final Trader check2 = check.getTrader2();
-            
-            if (check1 != null && uniqueId.equals(check1.getUniqueId())) {
-                room = check;
-                self = check1;
-                side = Side.SIDE_1;
-                break;
-            } else if (check2 != null && uniqueId.equals(check2.getUniqueId())) {
-                room = check;
-                self = check2;
-                side = Side.SIDE_2;
-                break;
+        if (this.builders.containsKey(uniqueId)) {
+            this.removeBuilder(uniqueId);
+        }
+        this.virtualRequests.remove(uniqueId);
+        this.roomRequests.remove(uniqueId);
+        this.leaveRoomQueue(uniqueId);
+        final TradeRoom room = this.roomIndex.getTraderRoom(uniqueId);
+        if (room == null) {
+            final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+            if (trade != null) {
+                this.virtualLeave(uniqueId, trade);
             }
+            return;
         }
         
+        final Side side = room.isTrader1(uniqueId) ? Side.SIDE_1 : Side.SIDE_2;
+        final Trader self = room.getTrader(uniqueId);
         if (self == null) {
             return;
         }
@@ -1900,7 +2091,7 @@ public final class TradePlugin extends JavaPlugin {
             return;
         }
         
-        this.builders.put(player.getUniqueId(), TradeRoom.newBuilder(this, player));
+        this.addBuilder(player.getUniqueId(), TradeRoom.newBuilder(this, player));
         player.sendMessage("§aYou have started to build a new trade room.");
         player.sendMessage("§aPlease enter the name of the trade room with the command§r §b/tradeadmin setname§r §6<name>§r§a.");
     }
@@ -1913,7 +2104,7 @@ public final class TradePlugin extends JavaPlugin {
             return false;
         }
         
-        this.builders.remove(player.getUniqueId());
+        this.removeBuilder(player.getUniqueId());
         player.sendMessage("§aYou have stopped your active trade room builder.");
         return true;
     }
@@ -1924,61 +2115,245 @@ public final class TradePlugin extends JavaPlugin {
         }
     }
     
-    public void setName(@NotNull final Player player, @NotNull final String name) {
+    private void addBuilder(@NotNull final UUID uniqueId, @NotNull final TradeRoomBuilder builder) {
         
-        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
-        if (builder == null) {
-            player.sendMessage("§cYou do not have an active trade room builder.");
-            player.sendMessage("§cPlease start a trade room builder with the command§r §b/tradeadmin startbuilder§r§a.");
-            return;
+        this.builders.put(uniqueId, builder);
+        if (!this.buildListenerRegistered) {
+            this.server.getPluginManager().registerEvents(this.buildListener, this);
+            this.buildListenerRegistered = true;
         }
+    }
+    
+    private void removeBuilder(@NotNull final UUID uniqueId) {
         
-        final BuildStep step = builder.getStep();
-        if (step != BuildStep.NAME) {
-            player.sendMessage("§cYou are not on the correct step to set the trade room's name.");
-            player.sendMessage("§cYou are currently on the following step:§r §6" + step.name().toLowerCase());
-            return;
+        this.builders.remove(uniqueId);
+        if (this.buildListenerRegistered && this.builders.isEmpty()) {
+            HandlerList.unregisterAll(this.buildListener);
+            this.buildListenerRegistered = false;
         }
+    }
+    
+    public void exportRooms(@NotNull final Player player) {
         
-        if (!builder.setName(name)) {
-            player.sendMessage("§cPlease try this step again.");
-            return;
+        final Map<String, String> exports = new HashMap<String, String>();
+        for (final TradeRoom room : this.tradeRooms.values()) {
+            exports.put(room.getName().toLowerCase(), room.getConfig().saveToString());
         }
         
-        player.sendMessage("§aTrade room name set.§r");
-        player.sendMessage("§aPlease enter the trade room region names with the command§r §b/tradeadmin setregions§r §6<region 1> <region 2>§r§a.");
+        final File exportFolder = new File(this.tradeRoomFolder, Constants.FOLDER_EXPORT);
+        player.sendMessage("§aExporting§r §6" + exports.size() + "§r §atrade rooms...");
+        
+        this.scheduler.runTaskAsynchronously(this, () -> {
+            
+            if (!exportFolder.exists() && !exportFolder.mkdirs()) {
+                player.sendMessage("§cUnable to create the export folder. Please check the console for more details.");
+                this.logger.log(Level.WARNING, "Trade room export folder not created at " + exportFolder.getPath());
+                return;
+            }
+            
+            int failed = 0;
+            for (final Map.Entry<String, String> entry : exports.entrySet()) {
+                final File exportFile = new File(exportFolder, entry.getKey() + Constants.FILE_TYPE);
+                try {
+                    Files.write(exportFile.toPath(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+                } catch (final IOException e) {
+                    this.logger.log(Level.WARNING, "Unable to export trade room " + entry.getKey() + " to " + exportFile.getPath());
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    failed++;
+                }
+            }
+            
+            if (failed == 0) {
+                player.sendMessage("§aExported all trade rooms to§r §6" + exportFolder.getPath() + "§r§a.");
+            } else {
+                player.sendMessage("§cUnable to export§r §6" + failed + "§r §ctrade rooms. Please check the console for more details.");
+            }
+        });
     }
     
-    public void setRegions(@NotNull final Player player, @NotNull final String name1, @NotNull final String name2) {
+    public void queryHistory(@NotNull final Player player, @Nullable final String playerName, @Nullable final String materialName, @Nullable final String period, final int page) {
         
-        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
-        if (builder == null) {
-            player.sendMessage("§cYou do not have an active trade room builder.");
-            player.sendMessage("§cPlease start a trade room builder with the command§r §b/trade adminstartbuilder§r§a.");
-            return;
+        final UUID uniqueId;
+        if (playerName == null) {
+            uniqueId = null;
+        } else {
+            final OfflinePlayer target = this.server.getOfflinePlayerIfCached(playerName);
+            if (target == null) {
+                player.sendMessage("§cThe player§r §6" + playerName + "§r §chas never played on this server.");
+                return;
+            }
+            uniqueId = target.getUniqueId();
         }
         
-        final BuildStep step = builder.getStep();
-        if (step != BuildStep.REGIONS) {
-            player.sendMessage("§cYou are not on the correct step to set the trade room's regions.");
-            player.sendMessage("§cYou are currently on the following step:§r §6" + step.name().toLowerCase());
-            return;
+        final Material material;
+        if (materialName == null) {
+            material = null;
+        } else {
+            material = Material.matchMaterial(materialName);
+            if (material == null) {
+                player.sendMessage("§cThere is no item named§r §6" + materialName + "§r§c.");
+                return;
+            }
         }
         
-        if (!builder.setRegions(name1, name2)) {
-            player.sendMessage("§cPlease try this step again.");
-            return;
+        final long since;
+        if (period == null) {
+            since = 0L;
+        } else {
+            final long duration = this.parseDuration(period);
+            if (duration == -1L) {
+                player.sendMessage("§cInvalid time period§r §6" + period + "§r§c, please use for example§r §b30m§r§c,§r §b12h§r§c,§r §b7d§r §cor§r §b2w§r§c.");
+                return;
+            }
+            since = System.currentTimeMillis() - duration;
         }
         
-        player.sendMessage("§aTrade room regions set.§r");
-        player.sendMessage("§aPlease left click on the chest to use as the 1st trade chest.");
-        player.sendMessage("§6MAKE SURE YOU ARE NOT IN CREATIVE MODE (Survival is recommended).");
+        player.sendMessage("§bSearching the trade history...");
+        final UUID viewerId = player.getUniqueId();
+        this.history.query(uniqueId, material, since, page - 1, HISTORY_PAGE_SIZE).whenComplete((result, throwable) -> {
+            if (this.isEnabled()) {
+                this.scheduler.runTask(this, () -> this.showHistory(viewerId, page, result, throwable));
+            }
+        });
     }
     
-    public void setTeleport(@NotNull final Player player) {
+    private void showHistory(@NotNull final UUID viewerId, final int page, @Nullable final TradeHistory.Page result, @Nullable final Throwable throwable) {
         
-        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
-        if (builder == null) {
+        final Player player = this.server.getPlayer(viewerId);
+        if (player == null || !player.isOnline()) {
+            return;
+        }
+        
+        if (throwable != null || result == null) {
+            player.sendMessage("§cThere was an error while searching the trade history. Please report this error to a server administrator.");
+            this.logger.log(Level.WARNING, "ISSUE WHILE SEARCHING TRADE HISTORY");
+            this.logger.log(Level.WARNING, "Player Name: " + player.getName());
+            if (throwable != null) {
+                this.logger.log(Level.WARNING, throwable.getClass().getSimpleName() + " thrown.", throwable);
+            }
+            return;
+        }
+        
+        if (result.getTotal() == 0) {
+            player.sendMessage("§6No trades found.");
+            return;
+        }
+        
+        final int pages = (result.getTotal() + HISTORY_PAGE_SIZE - 1) / HISTORY_PAGE_SIZE;
+        if (result.getRecords().isEmpty()) {
+            player.sendMessage("§cThere are only§r §6" + pages + "§r §cpages of trades.");
+            return;
+        }
+        
+        player.sendMessage("§bTrade history, page§r §6" + page + "§r §bof§r §6" + pages + "§r §b(" + result.getTotal() + " trades):");
+        for (final TradeRecord record : result.getRecords()) {
+            player.sendMessage(this.formatRecord(record));
+        }
+        if (page < pages) {
+            player.sendMessage("§bUse§r §6page:" + (page + 1) + "§r §bto see the next page.");
+        }
+    }
+    
+    public void showItemStats(@NotNull final Player player, @NotNull final ItemStats.Window window) {
+        
+        final long now = System.currentTimeMillis();
+        final List<Map.Entry<Material, Long>> top = this.itemStats.getTop(window, now, ITEM_STATS_LIMIT);
+        if (top.isEmpty()) {
+            player.sendMessage("§6No items have been traded in the last " + window.name().toLowerCase() + ".");
+            return;
+        }
+        
+        player.sendMessage("§bMost traded items in the last " + window.name().toLowerCase() + " (" + this.itemStats.getTotal(window, now) + " items in total):");
+        int rank = 1;
+        for (final Map.Entry<Material, Long> entry : top) {
+            player.sendMessage(" §f" + rank + ".§r §6" + entry.getKey().name().toLowerCase() + "§r §f-§r §b" + entry.getValue().longValue());
+            rank++;
+        }
+    }
+    
+    public void addBoardSign(@NotNull final Player player, @NotNull final String name) {
+        
+        final TradeRoom room = this.tradeRooms.get(name.toLowerCase());
+        if (room == null) {
+            player.sendMessage("§cThere is no trade room named§r §6" + name + "§r§c.");
+            return;
+        }
+        
+        final Block block = player.getTargetBlockExact(5);
+        if (block == null || !this.roomBoard.addSign(room, block)) {
+            player.sendMessage("§cPlease look at the sign you want to use for the room board.");
+            return;
+        }
+        
+        player.sendMessage("§aThe sign now shows the trade room§r §6" + room.getName() + "§r§a.");
+    }
+    
+    public void removeBoardSign(@NotNull final Player player) {
+        
+        final Block block = player.getTargetBlockExact(5);
+        if (block == null || !this.roomBoard.removeSign(block)) {
+            player.sendMessage("§cPlease look at a sign on the room board.");
+            return;
+        }
+        
+        player.sendMessage("§aThe sign has been removed from the room board.");
+    }
+    
+    public void setName(@NotNull final Player player, @NotNull final String name) {
+        
+        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
+        if (builder == null) {
+            player.sendMessage("§cYou do not have an active trade room builder.");
+            player.sendMessage("§cPlease start a trade room builder with the command§r §b/tradeadmin startbuilder§r§a.");
+            return;
+        }
+        
+        final BuildStep step = builder.getStep();
+        if (step != BuildStep.NAME) {
+            player.sendMessage("§cYou are not on the correct step to set the trade room's name.");
+            player.sendMessage("§cYou are currently on the following step:§r §6" + step.name().toLowerCase());
+            return;
+        }
+        
+        if (!builder.setName(name)) {
+            player.sendMessage("§cPlease try this step again.");
+            return;
+        }
+        
+        player.sendMessage("§aTrade room name set.§r");
+        player.sendMessage("§aPlease enter the trade room region names with the command§r §b/tradeadmin setregions§r §6<region 1> <region 2>§r§a.");
+    }
+    
+    public void setRegions(@NotNull final Player player, @NotNull final String name1, @NotNull final String name2) {
+        
+        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
+        if (builder == null) {
+            player.sendMessage("§cYou do not have an active trade room builder.");
+            player.sendMessage("§cPlease start a trade room builder with the command§r §b/trade adminstartbuilder§r§a.");
+            return;
+        }
+        
+        final BuildStep step = builder.getStep();
+        if (step != BuildStep.REGIONS) {
+            player.sendMessage("§cYou are not on the correct step to set the trade room's regions.");
+            player.sendMessage("§cYou are currently on the following step:§r §6" + step.name().toLowerCase());
+            return;
+        }
+        
+        if (!builder.setRegions(name1, name2)) {
+            player.sendMessage("§cPlease try this step again.");
+            return;
+        }
+        
+        player.sendMessage("§aTrade room regions set.§r");
+        player.sendMessage("§aPlease left click on the chest to use as the 1st trade chest.");
+        player.sendMessage("§6MAKE SURE YOU ARE NOT IN CREATIVE MODE (Survival is recommended).");
+    }
+    
+    public void setTeleport(@NotNull final Player player) {
+        
+        final TradeRoomBuilder builder = this.builders.get(player.getUniqueId());
+        if (builder == null) {
             player.sendMessage("§cYou do not have an active trade room builder.");
             player.sendMessage("§cPlease start a trade room builder with the command§r §b/tradeadmin startbuilder§r§a.");
             return;
@@ -2050,11 +2425,11 @@ public final class TradePlugin extends JavaPlugin {
         
         if (side == Side.SIDE_1) {
             player.teleport(room.getTeleportIn1());
-            room.setTrader1(self);
+            this.roomIndex.setTrader(room, Side.SIDE_1, self);
             other = room.getTrader2();
         } else {
             player.teleport(room.getTeleportIn2());
-            room.setTrader2(self);
+            this.roomIndex.setTrader(room, Side.SIDE_2, self);
             other = room.getTrader1();
         }
         
@@ -2094,6 +2469,8 @@ public final class TradePlugin extends JavaPlugin {
     
     public void acceptTrade(@NotNull final Player player, @NotNull final TradeRoom room, @NotNull final Side otherSide, @NotNull final Trader self, @NotNull final Trader other) {
         
+        this.auditRoom(room, CompleteReason.ACCEPTED);
+        final long entry = this.journalRoom(room, CompleteReason.ACCEPTED);
         final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
         if (otherPlayer != null && otherPlayer.isOnline()) {
             
@@ -2106,9 +2483,12 @@ public final class TradePlugin extends JavaPlugin {
             otherPlayer.sendMessage("§aSwapping items...");
             
             room.swapItems(player, otherPlayer);
+            this.applyRoom(entry, otherSide, TradeJournal.Delivery.inventory(), TradeJournal.Delivery.inventory());
             room.setStatus(TradeStatus.COMPLETE);
+            this.checkItems(room.getName(), room.verifyItems());
             this.saveRoom(player, room);
             this.deleteChestInventories(player, room);
+            this.commitTrade(entry);
             
             if (this.tradeInventories.containsKey(self.getUniqueId())) {
                 if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
@@ -2130,15 +2510,17 @@ public final class TradePlugin extends JavaPlugin {
         final Offline offline = new Offline(other);
         offline.setReason(CompleteReason.ACCEPTED);
         
-        final Inventory extraOther = room.swapItems(player, offline);
+        final ItemStack[] extraOther = room.swapItems(player, offline);
+        this.applyRoom(entry, otherSide, TradeJournal.Delivery.offline(offline, extraOther), TradeJournal.Delivery.inventory());
         room.setStatus(TradeStatus.COMPLETE);
+        this.checkItems(room.getName(), room.verifyItems());
         
         if (otherSide == Side.SIDE_1) {
             offline.setTeleport(room.getTeleportOut1());
-            room.setTrader1(null);
+            this.roomIndex.setTrader(room, Side.SIDE_1, null);
         } else {
             offline.setTeleport(room.getTeleportOut2());
-            room.setTrader2(null);
+            this.roomIndex.setTrader(room, Side.SIDE_2, null);
         }
         
         this.saveRoom(player, room);
@@ -2153,10 +2535,13 @@ public final class TradePlugin extends JavaPlugin {
             }
         }
         this.tradeInventories.remove(offline.getUniqueId());
+        this.commitTrade(entry);
     }
     
     public void rejectTrade(@NotNull final Player player, @NotNull final TradeRoom room, @NotNull final Side otherSide, @NotNull final Trader self, @NotNull final Trader other) {
         
+        this.auditRoom(room, CompleteReason.REJECTED);
+        final long entry = this.journalRoom(room, CompleteReason.REJECTED);
         final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
         if (otherPlayer != null && otherPlayer.isOnline()) {
             
@@ -2169,9 +2554,12 @@ public final class TradePlugin extends JavaPlugin {
             otherPlayer.sendMessage("§6Returning items...");
             
             room.returnItems(player, otherPlayer);
+            this.applyRoom(entry, otherSide, TradeJournal.Delivery.inventory(), TradeJournal.Delivery.inventory());
             room.setStatus(TradeStatus.COMPLETE);
+            this.checkItems(room.getName(), room.verifyItems());
             this.saveRoom(player, room);
             this.deleteChestInventories(player, room);
+            this.commitTrade(entry);
             
             if (this.tradeInventories.containsKey(self.getUniqueId())) {
                 if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
@@ -2193,15 +2581,17 @@ public final class TradePlugin extends JavaPlugin {
         final Offline offline = new Offline(other);
         offline.setReason(CompleteReason.REJECTED);
         
-        final Inventory extra = room.returnItems(player, offline);
+        final ItemStack[] extra = room.returnItems(player, offline);
+        this.applyRoom(entry, otherSide, TradeJournal.Delivery.offline(offline, extra), TradeJournal.Delivery.inventory());
         room.setStatus(TradeStatus.COMPLETE);
+        this.checkItems(room.getName(), room.verifyItems());
         
         if (otherSide == Side.SIDE_1) {
             offline.setTeleport(room.getTeleportOut1());
-            room.setTrader1(null);
+            this.roomIndex.setTrader(room, Side.SIDE_1, null);
         } else {
             offline.setTeleport(room.getTeleportOut2());
-            room.setTrader2(null);
+            this.roomIndex.setTrader(room, Side.SIDE_2, null);
         }
         
         this.saveRoom(player, room);
@@ -2215,87 +2605,1095 @@ public final class TradePlugin extends JavaPlugin {
                 player.closeInventory();
             }
         }
-        this.tradeInventories.remove(offline.getUniqueId());
+        this.tradeInventories.remove(offline.getUniqueId());
+        this.commitTrade(entry);
+    }
+    
+    public void cancelTrade(@NotNull final Player player, @NotNull final TradeRoom room, @NotNull final Side otherSide, @NotNull final Trader self, @Nullable final Trader other) {
+        
+        this.auditRoom(room, CompleteReason.CANCELLED);
+        final long entry = this.journalRoom(room, CompleteReason.CANCELLED);
+        final Player otherPlayer = other == null ? null : this.server.getPlayer(other.getUniqueId());
+        if (otherPlayer != null && otherPlayer.isOnline()) {
+            
+            if (other.isOffline()) {
+                other.setOffline(false);
+            }
+            
+            otherPlayer.sendMessage("§c" + self.getName() + " has cancelled the trade.");
+            player.sendMessage("§6Returning items...");
+            otherPlayer.sendMessage("§6Returning items...");
+            
+            room.returnItems(player, otherPlayer);
+            this.applyRoom(entry, otherSide, TradeJournal.Delivery.inventory(), TradeJournal.Delivery.inventory());
+            room.setStatus(TradeStatus.COMPLETE);
+            this.checkItems(room.getName(), room.verifyItems());
+            this.saveRoom(player, room);
+            this.deleteChestInventories(player, room);
+            this.commitTrade(entry);
+            
+            if (this.tradeInventories.containsKey(self.getUniqueId())) {
+                if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
+                    player.closeInventory();
+                }
+            }
+            if (this.tradeInventories.containsKey(other.getUniqueId())) {
+                if (this.checkInventories(otherPlayer.getOpenInventory().getTopInventory(), this.tradeInventories.remove(other.getUniqueId()))) {
+                    otherPlayer.closeInventory();
+                }
+            }
+            
+            return;
+        }
+        
+        if (other != null) {
+            player.sendMessage("§6" + other.getName() + " will be notified that the trade was cancelled when the next log in.");
+        }
+        player.sendMessage("§6Returning items...");
+        
+        final Offline offline = other == null ? null : new Offline(other);
+        if (offline != null) {
+            offline.setReason(CompleteReason.CANCELLED);
+        }
+        
+        final ItemStack[] extraOther = room.returnItems(player, offline);
+        this.applyRoom(entry, otherSide, offline == null ? null : TradeJournal.Delivery.offline(offline, extraOther), TradeJournal.Delivery.inventory());
+        room.setStatus(TradeStatus.COMPLETE);
+        this.checkItems(room.getName(), room.verifyItems());
+        
+        if (offline != null) {
+            if (otherSide == Side.SIDE_1) {
+                offline.setTeleport(room.getTeleportOut1());
+                this.roomIndex.setTrader(room, Side.SIDE_1, null);
+            } else {
+                offline.setTeleport(room.getTeleportOut2());
+                this.roomIndex.setTrader(room, Side.SIDE_2, null);
+            }
+        }
+        
+        this.saveRoom(player, room);
+        this.deleteChestInventories(player, room);
+        
+        if (offline != null) {
+            this.offlines.put(offline.getUniqueId(), offline);
+        }
+        this.saveOffline(offline, extraOther);
+        
+        if (this.tradeInventories.containsKey(self.getUniqueId())) {
+            if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
+                player.closeInventory();
+            }
+        }
+        if (offline != null) {
+            this.tradeInventories.remove(offline.getUniqueId());
+        }
+        this.commitTrade(entry);
+    }
+    
+    ////////////////
+    // ROOM QUEUE //
+    ////////////////
+    
+    public void requestRoomTrade(@NotNull final Player player, @NotNull final String targetName) {
+        
+        final Player target = this.server.getPlayerExact(targetName);
+        if (target == null || !target.isOnline()) {
+            player.sendMessage("§cThe player§r §6" + targetName + "§r §cis not online.");
+            return;
+        }
+        
+        final UUID uniqueId = player.getUniqueId();
+        final UUID targetId = target.getUniqueId();
+        if (uniqueId.equals(targetId)) {
+            player.sendMessage("§cYou cannot trade with yourself.");
+            return;
+        }
+        
+        if (!this.canStartTrade(player, player) || !this.canStartTrade(player, target)) {
+            return;
+        }
+        
+        if (!uniqueId.equals(this.roomRequests.get(targetId))) {
+            
+            this.roomRequests.put(uniqueId, targetId);
+            player.sendMessage("§aYou have asked " + target.getName() + " to trade with you in a trade room.");
+            target.sendMessage("§a" + player.getName() + " wants to trade with you in a trade room.");
+            target.sendMessage("§aTo start the trade, use the command§r §b/trade " + player.getName() + "§r§a.");
+            return;
+        }
+        
+        this.roomRequests.remove(uniqueId);
+        this.roomRequests.remove(targetId);
+        
+        final TradeRoom room = this.roomIndex.getFreeRoom();
+        if (room != null && this.roomQueue.isEmpty()) {
+            this.startRoomTrade(room, target, player);
+            return;
+        }
+        
+        this.roomQueue.add(new QueuedTrade(targetId, uniqueId));
+        this.queuedPlayers.add(targetId);
+        this.queuedPlayers.add(uniqueId);
+        
+        for (final Player trader : new Player[] {player, target}) {
+            trader.sendMessage("§6All trade rooms are currently in use. You are number§r §b" + this.roomQueue.size() + "§r §6in line for the next free trade room.");
+            trader.sendMessage("§6To leave the line, use the command§r §b/trade leave§r§6.");
+        }
+    }
+    
+    public void leaveRoomQueue(@NotNull final Player player) {
+        
+        if (!this.leaveRoomQueue(player.getUniqueId())) {
+            player.sendMessage("§cYou are not waiting for a trade room.");
+            return;
+        }
+        
+        player.sendMessage("§aYou have left the line for a trade room.");
+    }
+    
+    private boolean leaveRoomQueue(@NotNull final UUID uniqueId) {
+        
+        if (!this.queuedPlayers.remove(uniqueId)) {
+            return false;
+        }
+        
+        final Iterator<QueuedTrade> iterator = this.roomQueue.iterator();
+        while (iterator.hasNext()) {
+            
+            final QueuedTrade queued = iterator.next();
+            if (!queued.contains(uniqueId)) {
+                continue;
+            }
+            
+            iterator.remove();
+            final UUID otherId = queued.getOther(uniqueId);
+            this.queuedPlayers.remove(otherId);
+            
+            final Player otherPlayer = this.server.getPlayer(otherId);
+            if (otherPlayer != null && otherPlayer.isOnline()) {
+                otherPlayer.sendMessage("§cThe player you were waiting to trade with has left the line for a trade room.");
+            }
+            break;
+        }
+        
+        return true;
+    }
+    
+    // Hands out free trade rooms to the players waiting in line, in the order
+    // they joined it.
+    private void pollRoomQueue() {
+        
+        while (!this.roomQueue.isEmpty()) {
+            
+            final TradeRoom room = this.roomIndex.getFreeRoom();
+            if (room == null) {
+                return;
+            }
+            
+            final QueuedTrade queued = this.roomQueue.poll();
+            this.queuedPlayers.remove(queued.getUniqueId1());
+            this.queuedPlayers.remove(queued.getUniqueId2());
+            
+            final Player player1 = this.server.getPlayer(queued.getUniqueId1());
+            final Player player2 = this.server.getPlayer(queued.getUniqueId2());
+            if (player1 == null || !player1.isOnline() || player2 == null || !player2.isOnline()) {
+                for (final Player player : new Player[] {player1, player2}) {
+                    if (player != null && player.isOnline()) {
+                        player.sendMessage("§cThe player you were waiting to trade with is no longer online.");
+                    }
+                }
+                continue;
+            }
+            
+            if (!this.canStartTrade(player1, player1) || !this.canStartTrade(player2, player2)) {
+                player1.sendMessage("§cYour trade with " + player2.getName() + " could not be started.");
+                player2.sendMessage("§cYour trade with " + player1.getName() + " could not be started.");
+                continue;
+            }
+            
+            this.startRoomTrade(room, player1, player2);
+        }
+    }
+    
+    private void startRoomTrade(@NotNull final TradeRoom room, @NotNull final Player player1, @NotNull final Player player2) {
+        
+        player1.sendMessage("§aMoving you to the trade room " + room.getName() + "...");
+        player2.sendMessage("§aMoving you to the trade room " + room.getName() + "...");
+        
+        this.startTrade(player1, room, Side.SIDE_1);
+        this.startTrade(player2, room, Side.SIDE_2);
+    }
+    
+    ////////////////////
+    // VIRTUAL TRADES //
+    ////////////////////
+    
+    public void requestVirtualTrade(@NotNull final Player player, @NotNull final String targetName) {
+        
+        final Player target = this.server.getPlayerExact(targetName);
+        if (target == null || !target.isOnline()) {
+            player.sendMessage("§cThe player§r §6" + targetName + "§r §cis not online.");
+            return;
+        }
+        
+        final UUID uniqueId = player.getUniqueId();
+        final UUID targetId = target.getUniqueId();
+        if (uniqueId.equals(targetId)) {
+            player.sendMessage("§cYou cannot trade with yourself.");
+            return;
+        }
+        
+        if (!this.canStartTrade(player, player) || !this.canStartTrade(player, target)) {
+            return;
+        }
+        
+        if (!uniqueId.equals(this.virtualRequests.get(targetId))) {
+            
+            this.virtualRequests.put(uniqueId, targetId);
+            player.sendMessage("§aYou have asked " + target.getName() + " to trade with you.");
+            target.sendMessage("§a" + player.getName() + " wants to trade with you.");
+            target.sendMessage("§aTo start the trade, use the command§r §b/trade virtual " + player.getName() + "§r§a.");
+            return;
+        }
+        
+        this.virtualRequests.remove(uniqueId);
+        this.virtualRequests.remove(targetId);
+        
+        final VirtualTrade trade = new VirtualTrade(this.server, new Trader(target), new Trader(player));
+        this.virtualTrades.put(targetId, trade);
+        this.virtualTrades.put(uniqueId, trade);
+        
+        player.sendMessage("§aYou have started a trade with " + target.getName() + ".");
+        target.sendMessage("§a" + player.getName() + " has started trading with you.");
+        for (final Player trader : new Player[] {player, target}) {
+            trader.sendMessage("§aUse§r §b/trade open§r §ato put in the items you want to trade, then§r §b/trade lock§r §ato lock them in.");
+            trader.sendMessage("§6You can cancel the trade at any time with§r §b/trade deny§r§6.");
+        }
+    }
+    
+    private boolean canStartTrade(@NotNull final Player player, @NotNull final Player check) {
+        
+        final UUID uniqueId = check.getUniqueId();
+        final String who = check == player ? "You are" : check.getName() + " is";
+        
+        if (this.roomIndex.getTraderRoom(uniqueId) != null || this.virtualTrades.containsKey(uniqueId)) {
+            player.sendMessage("§c" + who + " already trading. Please finish that trade first.");
+            return false;
+        }
+        if (this.queuedPlayers.contains(uniqueId)) {
+            player.sendMessage("§c" + who + " already waiting for a trade room.");
+            return false;
+        }
+        if (this.builders.containsKey(uniqueId)) {
+            player.sendMessage("§c" + who + " currently building a trade room.");
+            return false;
+        }
+        
+        return true;
+    }
+    
+    public void openVirtualTrade(@NotNull final Player player) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade == null) {
+            player.sendMessage("§cYou are not in a virtual trade.");
+            return;
+        }
+        
+        if (trade.hasNotLocked(uniqueId)) {
+            player.openInventory(trade.getInventory(uniqueId));
+            return;
+        }
+        
+        if (trade.hasLocked(uniqueId)) {
+            player.sendMessage("§cYou may not change your items, as you have locked your trade in.");
+            player.sendMessage("§cIf you wish to change your items, please cancel the trade and then re-start it.");
+            return;
+        }
+        
+        if (trade.hasNotAccepted(uniqueId)) {
+            
+            final Inventory tradeInventory = this.tradeInventories.get(uniqueId);
+            if (tradeInventory == null) {
+                player.sendMessage("§cAn unknown error occurred. Please report it to the system administrators.");
+                this.logger.log(Level.WARNING, "Virtual trade is in DECIDE phase, unable to open trade inventory.");
+                this.logger.log(Level.WARNING, "Player UUID: " + uniqueId.toString());
+                this.logger.log(Level.WARNING, "Player Name: " + player.getName());
+                this.logger.log(Level.WARNING, "Trade Status: " + trade.getStatus().name());
+                return;
+            }
+            
+            player.openInventory(tradeInventory);
+            return;
+        }
+        
+        player.sendMessage("§6You have already accepted the trade. Please wait for " + trade.getOther(uniqueId).getName() + " to make their decision.");
+    }
+    
+    public void lockVirtualTrade(@NotNull final Player player) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade == null) {
+            player.sendMessage("§cYou are not in a virtual trade.");
+            return;
+        }
+        
+        final Trader self = trade.getTrader(uniqueId);
+        final Trader other = trade.getOther(uniqueId);
+        
+        if (!trade.hasNotLocked(uniqueId)) {
+            if (trade.hasLocked(uniqueId)) {
+                player.sendMessage("§cYou have already locked in your trade. Please wait while " + other.getName() + " finishes selecting what they wish to trade.");
+            } else {
+                player.sendMessage("§cYou have already locked in your trade, you must choose whether to accept or reject the trade.");
+            }
+            return;
+        }
+        
+        if (player.getOpenInventory().getTopInventory() == trade.getInventory(uniqueId)) {
+            player.closeInventory();
+        }
+        this.saveVirtualBackup(trade, self);
+        player.sendMessage("§aYou have locked in your items for the trade.");
+        
+        if (trade.hasNotLocked(other.getUniqueId())) {
+            
+            if (other.isOffline()) {
+                player.sendMessage("§bPlease wait for " + other.getName() + " to log back in and finish selecting what they wish to trade.");
+            } else {
+                player.sendMessage("§bPlease wait while " + other.getName() + " finishes selecting what they wish to trade.");
+            }
+            
+            trade.setStatus(trade.isTrader1(uniqueId) ? TradeStatus.LOCKED_1 : TradeStatus.LOCKED_2);
+            return;
+        }
+        
+        trade.setStatus(TradeStatus.DECIDE);
+        trade.lockItems();
+        
+        final Trader trader1 = trade.getTrader1();
+        final Trader trader2 = trade.getTrader2();
+        final Inventory inventory1 = trade.createTradeInventory(this.server, trader1.getUniqueId());
+        final Inventory inventory2 = trade.createTradeInventory(this.server, trader2.getUniqueId());
+        this.tradeInventories.put(trader1.getUniqueId(), inventory2);
+        this.tradeInventories.put(trader2.getUniqueId(), inventory1);
+        
+        for (final Trader trader : new Trader[] {trader1, trader2}) {
+            
+            final Player traderPlayer = this.server.getPlayer(trader.getUniqueId());
+            if (traderPlayer == null || !traderPlayer.isOnline()) {
+                continue;
+            }
+            
+            traderPlayer.sendMessage("§aYou may now decide on the trade. Use the buttons, or§r §b/trade accept§r §aor§r §b/trade deny§r§a.");
+            traderPlayer.openInventory(this.tradeInventories.get(trader.getUniqueId()));
+        }
+    }
+    
+    public void acceptVirtualTrade(@NotNull final Player player) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade == null) {
+            player.sendMessage("§cYou are not in a virtual trade.");
+            return;
+        }
+        
+        if (trade.hasAccepted(uniqueId)) {
+            player.sendMessage("§aYou have already accepted the trade.");
+            return;
+        }
+        if (!trade.hasNotAccepted(uniqueId)) {
+            player.sendMessage("§cYou must select your items to trade and lock them in, and wait for " + trade.getOther(uniqueId).getName() + " to do the same.");
+            return;
+        }
+        
+        this.virtualAccept(player, trade);
+    }
+    
+    private void virtualAccept(@NotNull final Player player, @NotNull final VirtualTrade trade) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final Trader other = trade.getOther(uniqueId);
+        player.sendMessage("§aYou have accepted the trade.");
+        
+        if (trade.hasNotAccepted(other.getUniqueId())) {
+            
+            if (other.isOffline()) {
+                player.sendMessage("§bPlease wait for " + other.getName() + " to log back in and finish deciding on the trade.");
+            } else {
+                player.sendMessage("§bPlease wait while " + other.getName() + " finishes deciding on the trade.");
+            }
+            
+            trade.setStatus(trade.isTrader1(uniqueId) ? TradeStatus.ACCEPT_1 : TradeStatus.ACCEPT_2);
+            return;
+        }
+        
+        this.completeVirtualTrade(player, trade, CompleteReason.ACCEPTED);
+    }
+    
+    public void denyVirtualTrade(@NotNull final Player player) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade == null) {
+            player.sendMessage("§cYou are not in a virtual trade.");
+            return;
+        }
+        
+        this.completeVirtualTrade(player, trade, trade.hasNotAccepted(uniqueId) ? CompleteReason.REJECTED : CompleteReason.CANCELLED);
+    }
+    
+    private boolean virtualInventoryClick(@NotNull final Player player, @NotNull final VirtualTrade trade, @NotNull final Inventory inventory, final int slot) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        if (trade.getStatus().ordinal() < TradeStatus.DECIDE.ordinal()) {
+            return false;
+        }
+        
+        if (trade.hasAccepted(uniqueId)) {
+            if (slot == SLOT_REJECT) {
+                player.sendMessage("§cYou have already accepted the trade. You may not reject it.");
+            } else if (slot == SLOT_ACCEPT) {
+                player.sendMessage("§aYou have already accepted the trade.");
+            }
+            return true;
+        }
+        
+        final Inventory tradeInventory = this.tradeInventories.get(uniqueId);
+        if (tradeInventory == null || !this.checkInventories(inventory, tradeInventory)) {
+            return false;
+        }
+        
+        if (slot == SLOT_REJECT) {
+            this.completeVirtualTrade(player, trade, CompleteReason.REJECTED);
+        } else if (slot == SLOT_ACCEPT) {
+            this.virtualAccept(player, trade);
+        }
+        return true;
+    }
+    
+    // Finishes a virtual trade started by the given player, either swapping
+    // the items (CompleteReason.ACCEPTED) or returning them.
+    private void completeVirtualTrade(@NotNull final Player player, @NotNull final VirtualTrade trade, @NotNull final CompleteReason reason) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final Trader self = trade.getTrader(uniqueId);
+        final Trader other = trade.getOther(uniqueId);
+        this.auditVirtual(trade, reason);
+        final long entry = this.journalVirtual(trade, reason);
+        this.endVirtualTrade(trade);
+        
+        final String action = reason == CompleteReason.ACCEPTED ? "accepted" : reason == CompleteReason.REJECTED ? "rejected" : "cancelled";
+        final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
+        if (otherPlayer != null && otherPlayer.isOnline()) {
+            
+            if (other.isOffline()) {
+                other.setOffline(false);
+            }
+            
+            otherPlayer.sendMessage((reason == CompleteReason.ACCEPTED ? "§a" : "§c") + self.getName() + " has " + action + " the trade.");
+            if (reason == CompleteReason.ACCEPTED) {
+                player.sendMessage("§aSwapping items...");
+                otherPlayer.sendMessage("§aSwapping items...");
+                trade.swapItems(player, otherPlayer);
+            } else {
+                player.sendMessage("§6Returning items...");
+                otherPlayer.sendMessage("§6Returning items...");
+                trade.returnItems(player);
+                trade.returnItems(otherPlayer);
+            }
+            
+            this.applyVirtual(entry, trade, other, TradeJournal.Delivery.inventory(), TradeJournal.Delivery.inventory());
+            this.checkItems(this.getVirtualName(trade), trade.verifyItems());
+            this.deleteVirtualBackup(self.getUniqueId());
+            this.deleteVirtualBackup(other.getUniqueId());
+            this.commitTrade(entry);
+            return;
+        }
+        
+        final Offline offline = new Offline(other);
+        offline.setReason(reason);
+        
+        final ItemStack[] extra;
+        if (reason == CompleteReason.ACCEPTED) {
+            player.sendMessage("§a" + other.getName() + " has accepted the trade before they went offline.");
+            player.sendMessage("§aSwapping items...");
+            extra = trade.swapItems(player, offline);
+        } else {
+            player.sendMessage("§6" + other.getName() + " will be notified that the trade was " + action + " when they next log in.");
+            player.sendMessage("§6Returning items...");
+            trade.returnItems(player);
+            extra = trade.returnItems(offline);
+        }
+        this.applyVirtual(entry, trade, other, TradeJournal.Delivery.offline(offline, extra), TradeJournal.Delivery.inventory());
+        this.checkItems(this.getVirtualName(trade), trade.verifyItems());
+        
+        // The delivery now holds the items of the offline trader.
+        this.deleteVirtualBackup(self.getUniqueId());
+        this.deleteVirtualBackup(other.getUniqueId());
+        this.offlines.put(offline.getUniqueId(), offline);
+        this.saveOffline(offline, extra);
+        this.commitTrade(entry);
+    }
+    
+    private void processOfflineVirtualTrader(@NotNull final VirtualTrade trade, @NotNull final Trader trader) {
+        
+        final Trader other = trade.getOther(trader.getUniqueId());
+        this.auditVirtual(trade, CompleteReason.OFFLINE_SELF);
+        final long entry = this.journalVirtual(trade, CompleteReason.OFFLINE_SELF);
+        this.endVirtualTrade(trade);
+        
+        final Offline offline = new Offline(trader);
+        offline.setReason(CompleteReason.OFFLINE_SELF);
+        final ItemStack[] extra = trade.returnItems(offline);
+        final TradeJournal.Delivery delivery = TradeJournal.Delivery.offline(offline, extra);
+        
+        final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
+        if (otherPlayer == null || !otherPlayer.isOnline()) {
+            
+            if (!other.isOffline()) {
+                other.setOffline(true);
+            }
+            
+            final Offline otherOffline = new Offline(other);
+            otherOffline.setReason(CompleteReason.OFFLINE_OTHER);
+            final ItemStack[] extraOther = trade.returnItems(otherOffline);
+            this.applyVirtual(entry, trade, trader, delivery, TradeJournal.Delivery.offline(otherOffline, extraOther));
+            
+            this.offlines.put(offline.getUniqueId(), offline);
+            this.saveOffline(offline, extra);
+            this.deleteVirtualBackup(trader.getUniqueId());
+            this.offlines.put(otherOffline.getUniqueId(), otherOffline);
+            this.saveOffline(otherOffline, extraOther);
+            this.deleteVirtualBackup(other.getUniqueId());
+            this.checkItems(this.getVirtualName(trade), trade.verifyItems());
+            this.commitTrade(entry);
+            return;
+        }
+        
+        otherPlayer.sendMessage("§cYour trade with " + trader.getName() + " has been cancelled because they were offline for too long.");
+        otherPlayer.sendMessage("§6Returning items...");
+        trade.returnItems(otherPlayer);
+        this.applyVirtual(entry, trade, trader, delivery, TradeJournal.Delivery.inventory());
+        
+        this.offlines.put(offline.getUniqueId(), offline);
+        this.saveOffline(offline, extra);
+        this.deleteVirtualBackup(trader.getUniqueId());
+        this.checkItems(this.getVirtualName(trade), trade.verifyItems());
+        this.deleteVirtualBackup(other.getUniqueId());
+        this.commitTrade(entry);
+    }
+    
+    // Removes a virtual trade from both of its traders, and closes any of its
+    // inventories they still have open.
+    private void endVirtualTrade(@NotNull final VirtualTrade trade) {
+        
+        for (final Trader trader : new Trader[] {trade.getTrader1(), trade.getTrader2()}) {
+            
+            final UUID uniqueId = trader.getUniqueId();
+            this.virtualTrades.remove(uniqueId, trade);
+            this.removeCancelRequest(uniqueId);
+            final Inventory tradeInventory = this.tradeInventories.remove(uniqueId);
+            
+            final Player player = this.server.getPlayer(uniqueId);
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+            
+            final Inventory top = player.getOpenInventory().getTopInventory();
+            if (top == trade.getInventory(uniqueId) || tradeInventory != null && this.checkInventories(top, tradeInventory)) {
+                player.closeInventory();
+            }
+        }
+    }
+    
+    private void virtualJoin(@NotNull final Player player, @NotNull final VirtualTrade trade) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final Trader self = trade.getTrader(uniqueId);
+        final Trader other = trade.getOther(uniqueId);
+        self.setOffline(false);
+        
+        final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
+        if (otherPlayer == null || !otherPlayer.isOnline()) {
+            
+            if (!other.isOffline()) {
+                other.setOffline(true);
+            }
+            
+            player.sendMessage("§aYou have re-joined your virtual trade.");
+            player.sendMessage("§6" + other.getName() + " is offline, the trade will restart when they log back in.");
+            player.sendMessage("§6If they do not log in within the next§r §b" + this.formatTime(other.getLogoutTime()) + "§r§6, the trade will automatically be cancelled.");
+            return;
+        }
+        
+        if (other.isOffline()) {
+            other.setOffline(false);
+        }
+        
+        player.sendMessage("§aYou have re-joined your virtual trade. " + other.getName() + " is online, use§r §b/trade open§r §ato continue where you left off.");
+        otherPlayer.sendMessage("§a" + self.getName() + " has logged in and re-joined your virtual trade, you can continue where you left off.");
+    }
+    
+    private void virtualLeave(@NotNull final UUID uniqueId, @NotNull final VirtualTrade trade) {
+        
+        final Trader self = trade.getTrader(uniqueId);
+        final Trader other = trade.getOther(uniqueId);
+        self.setOffline(true);
+        
+        final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
+        if (otherPlayer == null || !otherPlayer.isOnline()) {
+            if (!other.isOffline()) {
+                other.setOffline(true);
+            }
+            return;
+        }
+        
+        otherPlayer.sendMessage("§a" + self.getName() + " has logged out during your virtual trade. The trade will automatically resume when they log back in.");
+        otherPlayer.sendMessage("§6If they do not log in within the next§r §b" + this.formatTime(self.getLogoutTime()) + "§r§6, the trade will automatically be cancelled.");
+    }
+    
+    public void inventoryClose(@NotNull final Player player, @NotNull final Inventory inventory) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade == null || inventory != trade.getInventory(uniqueId)) {
+            return;
+        }
+        
+        this.changedVirtualTrades.remove(uniqueId);
+        this.saveVirtualBackup(trade, trade.getTrader(uniqueId));
+    }
+    
+    public void inventoryChange(@NotNull final Player player, @NotNull final Inventory inventory) {
+        
+        final UUID uniqueId = player.getUniqueId();
+        final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+        if (trade != null && inventory == trade.getInventory(uniqueId)) {
+            this.changedVirtualTrades.add(uniqueId);
+        }
+    }
+    
+    // Saves the backups of the virtual trade inventories changed since the
+    // last tick, so a crash with the inventory open does not lose items.
+    private void saveVirtualBackups() {
+        
+        if (this.changedVirtualTrades.isEmpty()) {
+            return;
+        }
+        
+        for (final UUID uniqueId : this.changedVirtualTrades) {
+            final VirtualTrade trade = this.virtualTrades.get(uniqueId);
+            if (trade != null) {
+                this.saveVirtualBackup(trade, trade.getTrader(uniqueId));
+            }
+        }
+        this.changedVirtualTrades.clear();
+    }
+    
+    // Backs up the items a trader has put into a virtual trade, so they are
+    // returned on their next login if the server stops before the trade
+    // finishes.
+    private void saveVirtualBackup(@NotNull final VirtualTrade trade, @NotNull final Trader trader) {
+        
+        try {
+            this.store.saveVirtualBackup(trader.getUniqueId(), trade.getInventory(trader.getUniqueId()).getStorageContents());
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING VIRTUAL TRADE BACKUP");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "uuid: " + trader.getUniqueId().toString());
+            this.logger.log(Level.WARNING, "name: " + trader.getName());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to save virtual trade backup.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    private void deleteVirtualBackup(@NotNull final UUID uniqueId) {
+        
+        try {
+            this.store.deleteVirtualBackup(uniqueId);
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE DELETING VIRTUAL TRADE BACKUP");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "uuid: " + uniqueId.toString());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to delete virtual trade backup.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    ////////////////////
+    // TRADE RECOVERY //
+    ////////////////////
+    
+    // Recovers every trade that was journaled but not committed before the
+    // server stopped, once the trade rooms, chest backups and offline traders
+    // have been loaded.
+    private void recoverTrades(final long now, final long offlineTime) {
+        
+        final List<TradeJournal.Entry> pending = this.journal.getPending();
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        this.logger.log(Level.WARNING, "Recovering " + pending.size() + " trade(s) that did not finish before the server stopped.");
+        for (final TradeJournal.Entry entry : pending) {
+            
+            final String roomName = entry.getRoomName();
+            final String name = roomName == null ? "virtual (" + entry.getName1() + ", " + entry.getName2() + ")" : roomName;
+            
+            // Nothing it changed was saved, its items are still in the chests
+            // or the backups.
+            if (entry.getState() == TradeJournal.State.PREPARED) {
+                this.logger.log(Level.WARNING, "Rolled back trade " + name + " (" + entry.getReason().name() + "), its items were not moved.");
+                continue;
+            }
+            
+            final TradeRoom room = roomName == null ? null : this.tradeRooms.get(roomName.toLowerCase());
+            if (room != null) {
+                this.recoverChests(room, entry);
+            } else if (roomName == null) {
+                this.recoverVirtualBackup(entry.getUniqueId1(), entry.getItems1());
+                this.recoverVirtualBackup(entry.getUniqueId2(), entry.getItems2());
+            }
+            
+            this.replayDelivery(entry, name, entry.getUniqueId1(), entry.getName1(), entry.getDelivery1(), room == null ? null : room.getTeleportOut1(), now, offlineTime);
+            this.replayDelivery(entry, name, entry.getUniqueId2(), entry.getName2(), entry.getDelivery2(), room == null ? null : room.getTeleportOut2(), now, offlineTime);
+            this.logger.log(Level.WARNING, "Replayed trade " + name + " (" + entry.getReason().name() + ").");
+        }
+        
+        try {
+            this.store.flush();
+            this.journal.clear();
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE RECOVERING TRADES");
+            this.logger.log(Level.WARNING, "The recovered trades could not be saved, they will be recovered again on the next start.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    // Empties the chests and drops the backup of an applied trade, but only
+    // while they still hold exactly the items it journaled, so the items of a
+    // later trade in the room are left alone.
+    private void recoverChests(@NotNull final TradeRoom room, @NotNull final TradeJournal.Entry entry) {
+        
+        final ItemStack[][] backup = this.store.loadBackup(room.getName());
+        if (backup != null && this.sameItems(backup[0], entry.getItems1()) && this.sameItems(backup[1], entry.getItems2())) {
+            this.deleteChestInventories(this.console, room);
+        }
+        
+        final Inventory chest1Inventory = room.getChest1().getInventory();
+        final Inventory chest2Inventory = room.getChest2().getInventory();
+        if (this.sameItems(chest1Inventory.getStorageContents(), entry.getItems1()) && this.sameItems(chest2Inventory.getStorageContents(), entry.getItems2())) {
+            chest1Inventory.clear();
+            chest2Inventory.clear();
+        } else if (!chest1Inventory.isEmpty() || !chest2Inventory.isEmpty()) {
+            this.logger.log(Level.WARNING, "The chests of trade room " + room.getName() + " do not hold the items of the recovered trade, they have been left as they are.");
+        }
+    }
+    
+    // Drops the virtual trade backup of a trader in an applied trade, but only
+    // while it still holds exactly the items they journaled.
+    private void recoverVirtualBackup(@Nullable final UUID uniqueId, @NotNull final ItemStack[] items) {
+        
+        if (uniqueId == null) {
+            return;
+        }
+        
+        final ItemStack[] backup = this.virtualBackups.get(uniqueId);
+        if (backup != null && this.sameItems(backup, items)) {
+            this.virtualBackups.remove(uniqueId);
+            this.deleteVirtualBackup(uniqueId);
+        }
+    }
+    
+    // Saves again the delivery of one trader in an applied trade, merged into
+    // anything already waiting for them. A trader who got the items in their
+    // inventory is left alone.
+    private void replayDelivery(@NotNull final TradeJournal.Entry entry, @NotNull final String name, @Nullable final UUID uniqueId, @Nullable final String playerName, @Nullable final TradeJournal.Delivery delivery, @Nullable final Location teleport, final long now, final long offlineTime) {
+        
+        if (uniqueId == null || delivery == null) {
+            return;
+        }
+        
+        if (!delivery.isOffline()) {
+            this.logger.log(Level.WARNING, playerName + " (" + uniqueId.toString() + ") got the items of trade " + name + " in their inventory, they are not redelivered.");
+            this.logger.log(Level.WARNING, "If their inventory was not saved before the server stopped, they may have lost these items.");
+            
+            // Traders get the other chest when the trade was accepted, and their own otherwise.
+            final boolean swap = entry.getReason() == CompleteReason.ACCEPTED;
+            this.logger.log(Level.WARNING, "Items: " + Arrays.toString(uniqueId.equals(entry.getUniqueId1()) != swap ? entry.getItems1() : entry.getItems2()));
+            return;
+        }
+        
+        final List<ItemStack> items = new ArrayList<ItemStack>();
+        if (delivery.getItems() != null) {
+            items.addAll(Arrays.asList(delivery.getItems()));
+        }
+        final List<ItemStack> extra = new ArrayList<ItemStack>();
+        if (delivery.getExtra() != null) {
+            extra.addAll(Arrays.asList(delivery.getExtra()));
+        }
+        
+        final Offline offline = this.offlines.get(uniqueId);
+        if (offline == null) {
+            
+            final Offline replayed = new Offline(new Trader(uniqueId, playerName == null ? "" : playerName, now));
+            replayed.setReason(delivery.getReason());
+            replayed.setItems(delivery.getItems());
+            replayed.setTeleport(teleport);
+            this.offlines.put(uniqueId, replayed);
+            this.saveOffline(replayed, delivery.getExtra());
+            
+        } else if (offline.getReason() == delivery.getReason() && offline.getLogoutTime() == delivery.getLogoutTime() + offlineTime) {
+            
+            // The delivery itself was saved, its extra items are saved after it.
+            if (this.endsWith(this.extras.get(uniqueId), extra)) {
+                return;
+            }
+            this.appendExtras(uniqueId, extra);
+            
+        } else {
+            
+            // An older delivery is waiting, the items are added to it.
+            items.addAll(extra);
+            this.appendExtras(uniqueId, items);
+        }
+        
+        this.logger.log(Level.WARNING, "Redelivering the items of trade " + name + " to " + playerName + " (" + uniqueId.toString() + ") on their next login.");
+        this.logger.log(Level.WARNING, "Items: " + items.toString());
+        this.logger.log(Level.WARNING, "Extra Items: " + extra.toString());
+    }
+    
+    // Checks whether two sets of slots hold the same items, ignoring empty
+    // slots past the end of the shorter one.
+    private boolean sameItems(@Nullable final ItemStack[] items1, @Nullable final ItemStack[] items2) {
+        
+        final int length1 = items1 == null ? 0 : items1.length;
+        final int length2 = items2 == null ? 0 : items2.length;
+        for (int slot = 0; slot < Math.max(length1, length2); slot++) {
+            
+            ItemStack item1 = slot < length1 ? items1[slot] : null;
+            ItemStack item2 = slot < length2 ? items2[slot] : null;
+            if (item1 != null && item1.getType().isAir()) {
+                item1 = null;
+            }
+            if (item2 != null && item2.getType().isAir()) {
+                item2 = null;
+            }
+            
+            if (item1 == null ? item2 != null : !item1.equals(item2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean endsWith(@Nullable final List<ItemStack> stored, @NotNull final List<ItemStack> items) {
+        
+        final List<ItemStack> tail = new ArrayList<ItemStack>();
+        for (final ItemStack item : items) {
+            if (item != null && !item.getType().isAir()) {
+                tail.add(item);
+            }
+        }
+        
+        if (tail.isEmpty()) {
+            return true;
+        }
+        if (stored == null || stored.size() < tail.size()) {
+            return false;
+        }
+        return stored.subList(stored.size() - tail.size(), stored.size()).equals(tail);
+    }
+    
+    ////////////////////
+    // HELPER METHODS //
+    ////////////////////
+    
+    private void auditRoom(@NotNull final TradeRoom room, @NotNull final CompleteReason reason) {
+        this.recordTrade(new TradeRecord(reason, room.getName(), room.getTrader1(), room.getChest1().getInventory().getStorageContents(), room.getTrader2(), room.getChest2().getInventory().getStorageContents()));
+    }
+    
+    private void auditVirtual(@NotNull final VirtualTrade trade, @NotNull final CompleteReason reason) {
+        final Trader trader1 = trade.getTrader1();
+        final Trader trader2 = trade.getTrader2();
+        this.recordTrade(new TradeRecord(reason, null, trader1, trade.getInventory(trader1.getUniqueId()).getStorageContents(), trader2, trade.getInventory(trader2.getUniqueId()).getStorageContents()));
+    }
+    
+    // Reports a trade that did not give out exactly the items that were locked
+    // into it, to the log and to any online admins.
+    private void checkItems(@NotNull final String name, @Nullable final String mismatch) {
+        
+        if (mismatch == null) {
+            return;
+        }
+        
+        this.logger.log(Level.WARNING, "ITEM COUNT MISMATCH AFTER TRADE");
+        this.logger.log(Level.WARNING, "Trade: " + name);
+        this.logger.log(Level.WARNING, "Items: " + mismatch);
+        this.logger.log(Level.WARNING, "Please check the trade audit log and the traders' inventories.");
+        
+        for (final Player player : this.server.getOnlinePlayers()) {
+            if (player.hasPermission("cvtrade.tradeadmin")) {
+                player.sendMessage("§cItem count mismatch after trade §6" + name + "§c: §f" + mismatch + "§c. Please check the server log.");
+            }
+        }
+    }
+    
+    @NotNull
+    private String getVirtualName(@NotNull final VirtualTrade trade) {
+        return "virtual (" + trade.getTrader1().getName() + ", " + trade.getTrader2().getName() + ")";
+    }
+    
+    private long journalRoom(@NotNull final TradeRoom room, @NotNull final CompleteReason reason) {
+        return this.prepareTrade(room.getName(), reason, room.getTrader1(), room.getChest1().getInventory().getStorageContents(), room.getTrader2(), room.getChest2().getInventory().getStorageContents());
+    }
+    
+    private long journalVirtual(@NotNull final VirtualTrade trade, @NotNull final CompleteReason reason) {
+        final Trader trader1 = trade.getTrader1();
+        final Trader trader2 = trade.getTrader2();
+        return this.prepareTrade(null, reason, trader1, trade.getInventory(trader1.getUniqueId()).getStorageContents(), trader2, trade.getInventory(trader2.getUniqueId()).getStorageContents());
+    }
+    
+    // Journals a trade before it moves any items.
+    private long prepareTrade(@Nullable final String roomName, @NotNull final CompleteReason reason, @Nullable final Trader trader1, @NotNull final ItemStack[] items1, @Nullable final Trader trader2, @NotNull final ItemStack[] items2) {
+        
+        try {
+            return this.journal.prepare(roomName, reason, trader1, items1, trader2, items2);
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE JOURNALING TRADE");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "Trade Room Name: " + (roomName == null ? "virtual" : roomName));
+            this.logger.log(Level.WARNING, "Complete Reason: " + reason.name());
+            this.logger.log(Level.WARNING, "Trader 1 Items: " + Arrays.toString(items1));
+            this.logger.log(Level.WARNING, "Trader 2 Items: " + Arrays.toString(items2));
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to journal trade, it will finish without being recoverable.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return -1L;
+        }
+    }
+    
+    // Journals where the items of a trade room went, given the delivery of the
+    // trader on the given side and of the trader on the other side.
+    private void applyRoom(final long id, @NotNull final Side side, @Nullable final TradeJournal.Delivery delivery, @Nullable final TradeJournal.Delivery otherDelivery) {
+        if (side == Side.SIDE_1) {
+            this.applyTrade(id, delivery, otherDelivery);
+        } else {
+            this.applyTrade(id, otherDelivery, delivery);
+        }
+    }
+    
+    // Journals where the items of a virtual trade went, given the delivery of
+    // the given trader and of the other trader.
+    private void applyVirtual(final long id, @NotNull final VirtualTrade trade, @NotNull final Trader trader, @Nullable final TradeJournal.Delivery delivery, @Nullable final TradeJournal.Delivery otherDelivery) {
+        if (trade.isTrader1(trader.getUniqueId())) {
+            this.applyTrade(id, delivery, otherDelivery);
+        } else {
+            this.applyTrade(id, otherDelivery, delivery);
+        }
     }
     
-    public void cancelTrade(@NotNull final Player player, @NotNull final TradeRoom room, @NotNull final Side otherSide, @NotNull final Trader self, @Nullable final Trader other) {
+    // Journals that a trade moved its items, before anything it changed is
+    // saved.
+    private void applyTrade(final long id, @Nullable final TradeJournal.Delivery delivery1, @Nullable final TradeJournal.Delivery delivery2) {
         
-        final Player otherPlayer = other == null ? null : this.server.getPlayer(other.getUniqueId());
-        if (otherPlayer != null && otherPlayer.isOnline()) {
-            
-            if (other.isOffline()) {
-                other.setOffline(false);
-            }
-            
-            otherPlayer.sendMessage("§c" + self.getName() + " has cancelled the trade.");
-            player.sendMessage("§6Returning items...");
-            otherPlayer.sendMessage("§6Returning items...");
-            
-            room.returnItems(player, otherPlayer);
-            room.setStatus(TradeStatus.COMPLETE);
-            this.saveRoom(player, room);
-            this.deleteChestInventories(player, room);
-            
-            if (this.tradeInventories.containsKey(self.getUniqueId())) {
-                if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
-                    player.closeInventory();
-                }
-            }
-            if (this.tradeInventories.containsKey(other.getUniqueId())) {
-                if (this.checkInventories(otherPlayer.getOpenInventory().getTopInventory(), this.tradeInventories.remove(other.getUniqueId()))) {
-                    otherPlayer.closeInventory();
-                }
-            }
-            
+        if (id == -1L) {
             return;
         }
         
-        if (other != null) {
-            player.sendMessage("§6" + other.getName() + " will be notified that the trade was cancelled when the next log in.");
+        try {
+            this.journal.apply(id, delivery1, delivery2);
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE JOURNALING TRADE");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "Trade Journal ID: " + id);
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to journal the applied trade, it will finish without being recoverable.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
         }
-        player.sendMessage("§6Returning items...");
-        
-        final Offline offline = other == null ? null : new Offline(other);
-        if (offline != null) {
-            offline.setReason(CompleteReason.CANCELLED);
+    }
+    
+    // Marks a journaled trade as finished.
+    private void commitTrade(final long id) {
+        if (id != -1L) {
+            this.journalCommits.add(id);
         }
+    }
+    
+    private void recordTrade(@NotNull final TradeRecord record) {
+        this.auditLog.log(record);
+        this.history.add(record);
+        this.itemStats.add(record);
+    }
+    
+    @NotNull
+    private String formatRecord(@NotNull final TradeRecord record) {
         
-        final Inventory extraOther = room.returnItems(player, offline);
-        room.setStatus(TradeStatus.COMPLETE);
+        final StringBuilder builder = new StringBuilder();
+        builder.append("§7").append(HISTORY_TIME_FORMAT.format(Instant.ofEpochMilli(record.getTime())));
+        builder.append(" §f").append(record.getReason().name().toLowerCase());
+        builder.append(" §6").append(record.getRoomName() == null ? "virtual" : record.getRoomName());
+        builder.append("§r §a").append(record.getName1() == null ? "nobody" : record.getName1()).append("§f: ");
+        this.formatItems(builder, record.getItems1());
+        builder.append(" §f|§r §a").append(record.getName2() == null ? "nobody" : record.getName2()).append("§f: ");
+        this.formatItems(builder, record.getItems2());
+        return builder.toString();
+    }
+    
+    private void formatItems(@NotNull final StringBuilder builder, @NotNull final Map<Material, Integer> items) {
         
-        if (offline != null) {
-            if (otherSide == Side.SIDE_1) {
-                offline.setTeleport(room.getTeleportOut1());
-                room.setTrader1(null);
-            } else {
-                offline.setTeleport(room.getTeleportOut2());
-                room.setTrader2(null);
-            }
+        if (items.isEmpty()) {
+            builder.append("§7nothing");
+            return;
         }
         
-        this.saveRoom(player, room);
-        this.deleteChestInventories(player, room);
+        boolean first = true;
+        for (final Map.Entry<Material, Integer> entry : items.entrySet()) {
+            if (!first) {
+                builder.append("§f, ");
+            }
+            builder.append("§b").append(entry.getValue().intValue()).append("x ").append(entry.getKey().name().toLowerCase());
+            first = false;
+        }
+    }
+    
+    // Parses a duration like 30m, 12h, 7d or 2w.
+    private long parseDuration(@NotNull final String text) {
         
-        if (offline != null) {
-            this.offlines.put(offline.getUniqueId(), offline);
+        if (text.length() < 2) {
+            return -1L;
         }
-        this.saveOffline(offline, extraOther);
         
-        if (this.tradeInventories.containsKey(self.getUniqueId())) {
-            if (this.checkInventories(player.getOpenInventory().getTopInventory(), this.tradeInventories.remove(self.getUniqueId()))) {
-                player.closeInventory();
-            }
+        final long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1));
+        } catch (final NumberFormatException e) {
+            return -1L;
         }
-        if (offline != null) {
-            this.tradeInventories.remove(offline.getUniqueId());
+        if (amount <= 0L) {
+            return -1L;
+        }
+        
+        final char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+        if (unit == 'm') {
+            return amount * 1000L * 60L;
+        } else if (unit == 'h') {
+            return amount * 1000L * 60L * 60L;
+        } else if (unit == 'd') {
+            return amount * 1000L * 60L * 60L * 24L;
+        } else if (unit == 'w') {
+            return amount * 1000L * 60L * 60L * 24L * 7L;
         }
+        return -1L;
     }
     
-    ////////////////////
-    // HELPER METHODS //
-    ////////////////////
-    
-    private void displayNewTrade(@NotNull final Player player, @NotNull final Location location, @NotNull final TradeRoom room, @NotNull final TradeStatus status, @NotNull final Trader self, @NotNull final Trader other) {
+    private void displayNewTrade(@NotNull final Player player, @NotNull final Block block, @NotNull final TradeRoom room, @NotNull final TradeStatus status, @NotNull final Trader self, @NotNull final Trader other) {
         
         final Player otherPlayer = this.server.getPlayer(other.getUniqueId());
         if (otherPlayer == null || !otherPlayer.isOnline()) {
@@ -2314,10 +3712,10 @@ public final class TradePlugin extends JavaPlugin {
             this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
             this.logger.log(Level.WARNING, "Player UUID: " + player.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-            this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-            this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-            this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-            this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+            this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+            this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+            this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+            this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
             this.logger.log(Level.WARNING, "Trade Status: " + status.name());
             this.logger.log(Level.WARNING, "Trader 1 UUID: " + self.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Trader 1 Name: " + self.getName());
@@ -2334,10 +3732,10 @@ public final class TradePlugin extends JavaPlugin {
             this.logger.log(Level.WARNING, "Trade Room: " + room.getName());
             this.logger.log(Level.WARNING, "Player UUID: " + player.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Player Name: " + player.getName());
-            this.logger.log(Level.WARNING, "Activating World: " + (location.getWorld() == null ? "null" : location.getWorld().getName()));
-            this.logger.log(Level.WARNING, "Activating X: " + location.getBlockX());
-            this.logger.log(Level.WARNING, "Activating Y: " + location.getBlockY());
-            this.logger.log(Level.WARNING, "Activating Z: " + location.getBlockZ());
+            this.logger.log(Level.WARNING, "Activating World: " + block.getWorld().getName());
+            this.logger.log(Level.WARNING, "Activating X: " + block.getX());
+            this.logger.log(Level.WARNING, "Activating Y: " + block.getY());
+            this.logger.log(Level.WARNING, "Activating Z: " + block.getZ());
             this.logger.log(Level.WARNING, "Trade Status: " + status.name());
             this.logger.log(Level.WARNING, "Trader 1 UUID: " + self.getUniqueId().toString());
             this.logger.log(Level.WARNING, "Trader 1 Name: " + self.getName());
@@ -2353,11 +3751,10 @@ public final class TradePlugin extends JavaPlugin {
         this.tradeInventories.put(other.getUniqueId(), selfInventory);
     }
     
-    private void transferItems(@NotNull final Player player, @NotNull final Inventory from, @NotNull final CompleteReason reason) {
+    private void transferItems(@NotNull final Player player, @NotNull final ItemStack[] fromItems, @NotNull final CompleteReason reason) {
         
         final Inventory to = player.getInventory();
         final ItemStack[] toItems = to.getStorageContents();
-        final ItemStack[] fromItems = from.getStorageContents();
         
         boolean slotOpen = true;
         for (int f = 0; f < fromItems.length && slotOpen; f++) {
@@ -2442,7 +3839,6 @@ public final class TradePlugin extends JavaPlugin {
         }
         
         if (!dropRequired) {
-            from.setStorageContents(fromItems);
             return;
         }
         
@@ -2457,8 +3853,6 @@ public final class TradePlugin extends JavaPlugin {
                 fromItems[slot] = null;
             }
         }
-        
-        from.setStorageContents(fromItems);
     }
     
     @NotNull
@@ -2528,309 +3922,135 @@ public final class TradePlugin extends JavaPlugin {
         return true;
     }
     
-    /////////////////
-    // FILE SAVING //
-    /////////////////
+    private void addCancelRequest(@NotNull final UUID uniqueId, @NotNull final String type) {
+        
+        this.removeCancelRequest(uniqueId);
+        
+        final CancelRequest request = new CancelRequest(uniqueId, type, this.server.getCurrentTick() + CANCEL_REQUEST_TIMEOUT, this.cancelSequence++);
+        this.cancelRequests.put(uniqueId, request);
+        this.cancelDeadlines.add(request);
+    }
     
-    private void saveRoom(@NotNull final CommandSender sender, @NotNull final TradeRoom room) {
-        this.saveRoom(sender, room, false);
+    @Nullable
+    private CancelRequest removeCancelRequest(@NotNull final UUID uniqueId) {
+        
+        final CancelRequest request = this.cancelRequests.remove(uniqueId);
+        if (request != null) {
+            this.cancelDeadlines.remove(request);
+        }
+        return request;
     }
     
-    private void saveRoom(@NotNull final CommandSender sender, @NotNull final TradeRoom room, final boolean shutdown) {
+    private void expireCancelRequests() {
         
-        final Runnable runnable = () -> {
-            synchronized (this.tradeRoomFolder) {
-                
-                final File tradeRoomFile = new File(this.tradeRoomFolder, room.getName() + Constants.FILE_TYPE);
-                final FileConfiguration config = room.getConfig();
-                
-                try {
-                    if (!tradeRoomFile.exists()) {
-                        if (!tradeRoomFile.createNewFile()) {
-                            sender.sendMessage("There was an error while updating the TradeChest. Please report this error to a server administrator.");
-                            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING TRADECHEST FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "TradeChest File Location: " + tradeRoomFile.getPath());
-                            this.logger.log(Level.WARNING, "TradeChest YAML Data: " + config.toString());
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "TradeChest file not created successfully.");
-                            return;
-                        }
-                    }
-                } catch (SecurityException | IOException e) {
-                    sender.sendMessage("There was an error while updating the TradeChest. Please report this error to a server administrator.");
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING TRADECHEST FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "TradeChest File Location: " + tradeRoomFile.getPath());
-                    this.logger.log(Level.WARNING, "TradeChest YAML Data: " + config.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to create TradeChest file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
-                
-                
-                try {
-                    config.save(tradeRoomFile);
-                } catch (IOException | IllegalArgumentException e) {
-                    sender.sendMessage("There was an error while updating the TradeChest. Please report this error to a server administrator.");
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING TRADECHEST FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "TradeChest File Location: " + tradeRoomFile.getPath());
-                    this.logger.log(Level.WARNING, "TradeChest YAML Data: " + config.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to save TradeChest configuration file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
+        final long tick = this.server.getCurrentTick();
+        while (!this.cancelDeadlines.isEmpty() && this.cancelDeadlines.first().getDeadline() <= tick) {
+            
+            final CancelRequest request = this.cancelDeadlines.pollFirst();
+            this.cancelRequests.remove(request.getUniqueId());
+            
+            final Player player = this.server.getPlayer(request.getUniqueId());
+            if (player != null && player.isOnline()) {
+                player.sendMessage("§c" + request.getType() + " confirmation expired.");
             }
-        };
+        }
+    }
+    
+    /////////////////
+    // FILE SAVING //
+    /////////////////
+    
+    private void saveRoom(@NotNull final CommandSender sender, @NotNull final TradeRoom room) {
         
-        if (shutdown) {
-            runnable.run();
-        } else {
-            this.scheduler.runTaskAsynchronously(this, runnable);
+        try {
+            this.store.saveRoom(room);
+        } catch (final IOException | IllegalArgumentException e) {
+            sender.sendMessage("There was an error while updating the TradeChest. Please report this error to a server administrator.");
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING TRADECHEST RECORD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "TradeChest YAML Data: " + room.getConfig().saveToString());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to write TradeChest record.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
         }
     }
     
     private void saveChestInventories(@NotNull final CommandSender sender, @NotNull final TradeRoom room) {
         
-        this.scheduler.runTaskAsynchronously(this, () -> {
-            synchronized (this.backupInventoryFolder) {
-                
-                final List<Map<String, Object>> items1 = new ArrayList<Map<String, Object>>();
-                for (final ItemStack item : room.getChest1().getInventory().getStorageContents()) {
-                    items1.add(item == null ? null : item.serialize());
-                }
-                final List<Map<String, Object>> items2 = new ArrayList<Map<String, Object>>();
-                for (final ItemStack item : room.getChest2().getInventory().getStorageContents()) {
-                    items2.add(item == null ? null : item.serialize());
-                }
-                
-                final File backupInventoryFile = new File(this.backupInventoryFolder, room.getName() + Constants.FILE_TYPE);
-                try {
-                    if (!backupInventoryFile.exists()) {
-                        if (!backupInventoryFile.createNewFile()) {
-                            sender.sendMessage("§cThere was an error while updating your trade. Please report this error to a server administrator.");
-                            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING BACKUP INVENTORY FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "Backup Inventory File Location: " + backupInventoryFile.getPath());
-                            this.logger.log(Level.WARNING, "Backup Inventory YAML Data:");
-                            this.logger.log(Level.WARNING, "Trade Room Name:" + room.getName());
-                            this.logger.log(Level.WARNING, "Chest 1 Items: " + items1.toString());
-                            this.logger.log(Level.WARNING, "Chest 2 Items: " + items2.toString());
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "Backup Inventory file not created successfully.");
-                            return;
-                        }
-                    }
-                } catch (SecurityException | IOException e) {
-                    sender.sendMessage("§cThere was an error while updating your trade. Please report this error to a server administrator.");
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING BACKUP INVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "Backup Inventory File Location: " + backupInventoryFile.getPath());
-                    this.logger.log(Level.WARNING, "Backup Inventory YAML Data:");
-                    this.logger.log(Level.WARNING, "Trade Room Name:" + room.getName());
-                    this.logger.log(Level.WARNING, "Chest 1 Items: " + items1.toString());
-                    this.logger.log(Level.WARNING, "Chest 2 Items: " + items2.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to create Backup Inventory file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
-                
-                final YamlConfiguration config = new YamlConfiguration();
-                config.set(Constants.KEY_TRADE_ROOM_NAME, room.getName());
-                config.set(Constants.KEY_BACKUP_ITEMS_1, items1);
-                config.set(Constants.KEY_BACKUP_ITEMS_2, items2);
-                
-                try {
-                    config.save(backupInventoryFile);
-                } catch (IOException | IllegalArgumentException e) {
-                    sender.sendMessage("§cThere was an error while updating your trade. Please report this error to a server administrator.");
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING BACKUP INVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "Backup Inventory File Location: " + backupInventoryFile.getPath());
-                    this.logger.log(Level.WARNING, "Backup Inventory YAML Data:");
-                    this.logger.log(Level.WARNING, "Trade Room Name:" + room.getName());
-                    this.logger.log(Level.WARNING, "Chest 1 Items: " + items1.toString());
-                    this.logger.log(Level.WARNING, "Chest 2 Items: " + items2.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to save Backup Inventory configuration file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
-            }
-        });
+        final ItemStack[] items1 = room.getChest1().getInventory().getStorageContents();
+        final ItemStack[] items2 = room.getChest2().getInventory().getStorageContents();
+        
+        try {
+            this.store.saveBackup(room.getName(), items1, items2);
+        } catch (final IOException | IllegalArgumentException e) {
+            sender.sendMessage("§cThere was an error while updating your trade. Please report this error to a server administrator.");
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING BACKUP INVENTORY");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "Trade Room Name:" + room.getName());
+            this.logger.log(Level.WARNING, "Chest 1 Items: " + Arrays.toString(items1));
+            this.logger.log(Level.WARNING, "Chest 2 Items: " + Arrays.toString(items2));
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to save Backup Inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
     }
     
-    private void saveOffline(@Nullable final Offline offline, @Nullable final Inventory extra) {
+    private void saveOffline(@Nullable final Offline offline, @Nullable final ItemStack[] extra) {
         
         if (offline == null) {
             return;
         }
         
+        try {
+            this.store.saveOffline(offline);
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING OFFLINETRADER RECORD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
+            this.logger.log(Level.WARNING, "name:" + offline.getName());
+            this.logger.log(Level.WARNING, "logout_time:" + offline.getLogoutTime());
+            this.logger.log(Level.WARNING, "complete_reason: " + (offline.getReason() == null ? "null" : offline.getReason().name()));
+            this.logger.log(Level.WARNING, "items: " + Arrays.toString(offline.getItems()));
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to save OfflineTrader record.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
         if (extra != null) {
-            
-            final List<ItemStack> items = new ArrayList<ItemStack>();
-            for (final ItemStack item : extra.getStorageContents()) {
-                if (item != null && item.getType() != Material.AIR) {
-                    items.add(item);
-                }
-            }
-            
-            if (this.extras.containsKey(offline.getUniqueId())) {
-                this.extras.get(offline.getUniqueId()).addAll(items);
-            } else {
-                this.extras.put(offline.getUniqueId(), items);
-            }
+            this.appendExtras(offline.getUniqueId(), Arrays.asList(extra));
         }
+    }
+    
+    private void appendExtras(@NotNull final UUID uniqueId, @NotNull final List<ItemStack> extra) {
         
-        this.scheduler.runTaskAsynchronously(this, () -> {
-            synchronized (this.offlineFolder) {
-                
-                final File offlineFile = new File(this.offlineFolder, offline.getUniqueId().toString() + Constants.FILE_TYPE);
-                try {
-                    if (!offlineFile.exists()) {
-                        if (!offlineFile.createNewFile()) {
-                            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING OFFLINETRADER FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "OfflineTrader File Location: " + offlineFile.getPath());
-                            this.logger.log(Level.WARNING, "OfflineTrader YAML Data:");
-                            this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                            this.logger.log(Level.WARNING, "name:" + offline.getName());
-                            this.logger.log(Level.WARNING, "logout_time:" + offline.getLogoutTime());
-                            this.logger.log(Level.WARNING, "complete_reason: " + (offline.getReason() == null ? "null" : offline.getReason().name()));
-                            this.logger.log(Level.WARNING, "items: " + (offline.getInventory() == null ? "null" : offline.getInventory().toString()));
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "OfflineTrader file not created successfully.");
-                            return;
-                        }
-                    }
-                } catch (SecurityException | IOException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING OFFLINETRADER FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "OfflineTrader File Location: " + offlineFile.getPath());
-                    this.logger.log(Level.WARNING, "OfflineTrader YAML Data:");
-                    this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                    this.logger.log(Level.WARNING, "name:" + offline.getName());
-                    this.logger.log(Level.WARNING, "logout_time:" + offline.getLogoutTime());
-                    this.logger.log(Level.WARNING, "complete_reason: " + (offline.getReason() == null ? "null" : offline.getReason().name()));
-                    this.logger.log(Level.WARNING, "items: " + (offline.getInventory() == null ? "null" : offline.getInventory().toString()));
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to create OfflineTrader file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
-                
-                final FileConfiguration config = offline.getConfig();
-                try {
-                    config.save(offlineFile);
-                } catch (IOException | IllegalArgumentException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING OFFLINETRADER FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "OfflineTrader File Location: " + offlineFile.getPath());
-                    this.logger.log(Level.WARNING, "OfflineTrader YAML Data:");
-                    this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                    this.logger.log(Level.WARNING, "name:" + offline.getName());
-                    this.logger.log(Level.WARNING, "logout_time:" + offline.getLogoutTime());
-                    this.logger.log(Level.WARNING, "complete_reason: " + (offline.getReason() == null ? "null" : offline.getReason().name()));
-                    this.logger.log(Level.WARNING, "items: " + (offline.getInventory() == null ? "null" : offline.getInventory().toString()));
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to save OfflineTrader configuration file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
-                
-                if (extra == null) {
-                    return;
-                }
-                
-                final File extraFile = new File(this.extraFolder, offline.getUniqueId().toString() + Constants.FILE_TYPE);
-                try {
-                    if (!extraFile.exists()) {
-                        if (!extraFile.createNewFile()) {
-                            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING EXTRAINVENTORY FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "ExtraInventory File Location: " + extraFile.getPath());
-                            this.logger.log(Level.WARNING, "ExtraInventory YAML Data:");
-                            this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                            this.logger.log(Level.WARNING, "items: " + extra.toString());
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "ExtraInventory file not created successfully.");
-                            return;
-                        }
-                    }
-                } catch (SecurityException | IOException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING EXTRAINVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "ExtraInventory File Location: " + extraFile.getPath());
-                    this.logger.log(Level.WARNING, "ExtraInventory YAML Data:");
-                    this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                    this.logger.log(Level.WARNING, "items: " + extra.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to create ExtraInventory file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
-                
-                final FileConfiguration extraConfig = new YamlConfiguration();
-                try {
-                    extraConfig.load(extraFile);
-                } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE LOADING EXTRAINVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "ExtraInventory File Location: " + extraFile.getPath());
-                    this.logger.log(Level.WARNING, "ExtraInventory YAML Data:");
-                    this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                    this.logger.log(Level.WARNING, "items: " + extra.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to load ExtraInventory file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
-                
-                if (extraConfig.isSet(Constants.KEY_EXTRA_UUID)) {
-                    if (!offline.getUniqueId().toString().equalsIgnoreCase(extraConfig.getString(Constants.KEY_EXTRA_UUID, null))) {
-                        this.logger.log(Level.WARNING, "ISSUE WHILE VALIDATING EXTRAINVENTORY FILE");
-                        this.logger.log(Level.WARNING, "Details below:");
-                        this.logger.log(Level.WARNING, "ExtraInventory File Location: " + extraFile.getPath());
-                        this.logger.log(Level.WARNING, "ExtraInventory YAML Data:");
-                        this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                        this.logger.log(Level.WARNING, "items: " + extra.toString());
-                        this.logger.log(Level.WARNING, "ISSUE:");
-                        this.logger.log(Level.WARNING, "UUID does not match existing.");
-                        return;
-                    }
-                } else {
-                    extraConfig.set(Constants.KEY_EXTRA_UUID, offline.getUniqueId().toString());
-                }
-                
-                List<Map<String, Object>> items = (List<Map<String, Object>>) extraConfig.getList(Constants.KEY_EXTRA_ITEMS, null);
-                if (items == null) {
-                    items = new ArrayList<Map<String, Object>>();
-                }
-                
-                for (final ItemStack item : extra.getStorageContents()) {
-                    if (item != null && item.getType() != Material.AIR) {
-                        items.add(item.serialize());
-                    }
-                }
-                
-                extraConfig.set(Constants.KEY_EXTRA_ITEMS, items);
-                
-                try {
-                    extraConfig.save(extraFile);
-                } catch (IOException | IllegalArgumentException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE SAVING EXTRAINVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "ExtraInventory File Location: " + extraFile.getPath());
-                    this.logger.log(Level.WARNING, "ExtraInventory YAML Data:");
-                    this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
-                    this.logger.log(Level.WARNING, "items: " + extra.toString());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to save ExtraInventory configuration file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
+        final List<ItemStack> items = new ArrayList<ItemStack>();
+        for (final ItemStack item : extra) {
+            if (item != null && item.getType() != Material.AIR) {
+                items.add(item);
             }
-        });
+        }
+        
+        if (items.isEmpty()) {
+            return;
+        }
+        
+        if (this.extras.containsKey(uniqueId)) {
+            this.extras.get(uniqueId).addAll(items);
+        } else {
+            this.extras.put(uniqueId, new ArrayList<ItemStack>(items));
+        }
+        
+        try {
+            this.store.appendExtras(uniqueId, items.toArray(new ItemStack[0]));
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING EXTRAINVENTORY RECORD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "uuid: " + uniqueId.toString());
+            this.logger.log(Level.WARNING, "items: " + items.toString());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to save ExtraInventory record.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
     }
     
     ///////////////////
@@ -2839,59 +4059,59 @@ public final class TradePlugin extends JavaPlugin {
     
     private void deleteChestInventories(@NotNull final CommandSender sender, @NotNull final TradeRoom room) {
         
-        this.scheduler.runTaskAsynchronously(this, () -> {
-            synchronized (this.backupInventoryFolder) {
-                
-                final File backupInventoryFile = new File(this.backupInventoryFolder, room.getName() + Constants.FILE_TYPE);
-                try {
-                    if (backupInventoryFile.exists()) {
-                        if (!backupInventoryFile.delete()) {
-                            sender.sendMessage("§cThere was an error while completing your trade. Please report this error to a server administrator.");
-                            this.logger.log(Level.WARNING, "ISSUE WHILE DELETING BACKUP INVENTORY FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "Backup Inventory File Location: " + backupInventoryFile.getPath());
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "Backup Inventory file not deleted successfully.");
-                        }
-                    }
-                } catch (SecurityException e) {
-                    sender.sendMessage("§cThere was an error while completing your trade. Please report this error to a server administrator.");
-                    this.logger.log(Level.WARNING, "ISSUE WHILE DELETING BACKUP INVENTORY FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "Backup Inventory File Location: " + backupInventoryFile.getPath());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to delete Backup Inventory file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
-            }
-        });
+        try {
+            this.store.deleteBackup(room.getName());
+        } catch (final IOException e) {
+            sender.sendMessage("§cThere was an error while completing your trade. Please report this error to a server administrator.");
+            this.logger.log(Level.WARNING, "ISSUE WHILE DELETING BACKUP INVENTORY");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "Trade Room Name:" + room.getName());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to delete Backup Inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
     }
     
     private void deleteOffline(@NotNull final Offline offline) {
         
-        this.scheduler.runTaskAsynchronously(this, () -> {
-            synchronized (this.offlineFolder) {
-                
-                final File offlineFile = new File(this.offlineFolder, offline.getUniqueId().toString() + Constants.FILE_TYPE);
-                try {
-                    if (offlineFile.exists()) {
-                        if (!offlineFile.delete()) {
-                            this.logger.log(Level.WARNING, "ISSUE WHILE DELETING OFFLINETRADER FILE");
-                            this.logger.log(Level.WARNING, "Details below:");
-                            this.logger.log(Level.WARNING, "OfflineTrader File Location: " + offlineFile.getPath());
-                            this.logger.log(Level.WARNING, "ISSUE:");
-                            this.logger.log(Level.WARNING, "OfflineTrader file not deleted successfully.");
-                        }
-                    }
-                } catch (SecurityException e) {
-                    this.logger.log(Level.WARNING, "ISSUE WHILE DELETING OFFLINETRADER FILE");
-                    this.logger.log(Level.WARNING, "Details below:");
-                    this.logger.log(Level.WARNING, "OfflineTrader File Location: " + offlineFile.getPath());
-                    this.logger.log(Level.WARNING, "ISSUE:");
-                    this.logger.log(Level.WARNING, "Unable to delete OfflineTrader file.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                }
+        try {
+            this.store.deleteOffline(offline.getUniqueId());
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE DELETING OFFLINETRADER RECORD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "uuid: " + offline.getUniqueId().toString());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to delete OfflineTrader record.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    // Flushes everything saved since the last flush to the trade storage.
+    private void flushStorage() {
+        synchronized (this.flushLock) {
+            
+            final List<Long> commits = new ArrayList<Long>();
+            Long id;
+            while ((id = this.journalCommits.poll()) != null) {
+                commits.add(id);
             }
-        });
+            
+            try {
+                this.store.flush();
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE FLUSHING TRADE STORAGE.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                this.journalCommits.addAll(commits);
+                return;
+            }
+            
+            try {
+                this.journal.commit(commits);
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE COMMITTING TRADES TO THE TRADE JOURNAL.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                this.journalCommits.addAll(commits);
+            }
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
 import org.cubeville.trade.bukkit.TradePlugin;
+import org.cubeville.trade.bukkit.traderoom.ItemStats;
 import org.jetbrains.annotations.NotNull;
 
 public final class TradeAdminCommand implements TabExecutor {
@@ -63,6 +64,11 @@ public final class TradeAdminCommand implements TabExecutor {
             player.sendMessage(" §f-§r §b/tradeadmin setname§r §a<trade room name>");
             player.sendMessage(" §f-§r §b/tradeadmin setregions§r §a<region 1> <region 2>");
             player.sendMessage(" §f-§r §b/tradeadmin setteleport");
+            player.sendMessage(" §f-§r §b/tradeadmin exportrooms");
+        player.sendMessage(" §f-§r §b/tradeadmin addboard§r §a<trade room name>");
+        player.sendMessage(" §f-§r §b/tradeadmin removeboard");
+        player.sendMessage(" §f-§r §b/tradeadmin history§r §a[player:<name>] [item:<item>] [since:<time>] [page:<page>]");
+        player.sendMessage(" §f-§r §b/tradeadmin stats items§r §a[hour|day|week]");
             return true;
         }
         
@@ -144,6 +150,115 @@ public final class TradeAdminCommand implements TabExecutor {
             this.plugin.setTeleport(player);
             return true;
         }
+        if (arg.equalsIgnoreCase("exportrooms")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin exportrooms");
+                return true;
+            }
+            
+            this.plugin.exportRooms(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("addboard")) {
+            
+            if (args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin addboard§r §a<trade room name>");
+                return true;
+            }
+            
+            final String name = args.remove(0);
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin addboard§r §a<trade room name>");
+                return true;
+            }
+            
+            this.plugin.addBoardSign(player, name);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("removeboard")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin removeboard");
+                return true;
+            }
+            
+            this.plugin.removeBoardSign(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("stats")) {
+            
+            if (args.isEmpty() || !args.remove(0).equalsIgnoreCase("items")) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin stats items§r §a[hour|day|week]");
+                return true;
+            }
+            
+            ItemStats.Window window = ItemStats.Window.DAY;
+            if (!args.isEmpty()) {
+                final String windowName = args.remove(0);
+                window = null;
+                for (final ItemStats.Window value : ItemStats.Window.values()) {
+                    if (value.name().equalsIgnoreCase(windowName)) {
+                        window = value;
+                    }
+                }
+            }
+            if (window == null || !args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/tradeadmin stats items§r §a[hour|day|week]");
+                return true;
+            }
+            
+            this.plugin.showItemStats(player, window);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("history")) {
+            
+            String playerName = null;
+            String materialName = null;
+            String period = null;
+            String pageText = null;
+            
+            for (final String filter : args) {
+                
+                final int split = filter.indexOf(':');
+                final String key = split == -1 ? "" : filter.substring(0, split).toLowerCase();
+                final String value = split == -1 ? "" : filter.substring(split + 1);
+                
+                if (value.isEmpty()) {
+                    player.sendMessage("§cSyntax:§r §b/tradeadmin history§r §a[player:<name>] [item:<item>] [since:<time>] [page:<page>]");
+                    return true;
+                }
+                
+                if (key.equals("player") && playerName == null) {
+                    playerName = value;
+                } else if (key.equals("item") && materialName == null) {
+                    materialName = value;
+                } else if (key.equals("since") && period == null) {
+                    period = value;
+                } else if (key.equals("page") && pageText == null) {
+                    pageText = value;
+                } else {
+                    player.sendMessage("§cSyntax:§r §b/tradeadmin history§r §a[player:<name>] [item:<item>] [since:<time>] [page:<page>]");
+                    return true;
+                }
+            }
+            
+            int page = 1;
+            if (pageText != null) {
+                try {
+                    page = Integer.parseInt(pageText);
+                } catch (final NumberFormatException e) {
+                    page = 0;
+                }
+                if (page < 1) {
+                    player.sendMessage("§cThe page must be a positive number.");
+                    return true;
+                }
+            }
+            
+            this.plugin.queryHistory(player, playerName, materialName, period, page);
+            return true;
+        }
         
         player.sendMessage("§bAvailable commands:");
         player.sendMessage(" §f-§r §b/tradeadmin startbuilder");
@@ -152,6 +267,11 @@ public final class TradeAdminCommand implements TabExecutor {
         player.sendMessage(" §f-§r §b/tradeadmin setname§r §a<trade room name>");
         player.sendMessage(" §f-§r §b/tradeadmin setregions§r §a<region 1> <region 2>");
         player.sendMessage(" §f-§r §b/tradeadmin setteleport");
+        player.sendMessage(" §f-§r §b/tradeadmin exportrooms");
+        player.sendMessage(" §f-§r §b/tradeadmin addboard§r §a<trade room name>");
+        player.sendMessage(" §f-§r §b/tradeadmin removeboard");
+        player.sendMessage(" §f-§r §b/tradeadmin history§r §a[player:<name>] [item:<item>] [since:<time>] [page:<page>]");
+        player.sendMessage(" §f-§r §b/tradeadmin stats items§r §a[hour|day|week]");
         return true;
     }
     
@@ -175,6 +295,11 @@ public final class TradeAdminCommand implements TabExecutor {
         completions.add("setname");
         completions.add("setregions");
         completions.add("setteleport");
+        completions.add("exportrooms");
+        completions.add("addboard");
+        completions.add("removeboard");
+        completions.add("history");
+        completions.add("stats");
         
         if (args.isEmpty()) {
             return completions;
@@ -186,6 +311,39 @@ public final class TradeAdminCommand implements TabExecutor {
             return completions;
         }
         
+        if (arg.equalsIgnoreCase("stats")) {
+            
+            final String statsArg = args.remove(0);
+            completions.clear();
+            if (args.isEmpty()) {
+                completions.add("items");
+                completions.removeIf(completion -> !completion.startsWith(statsArg.toLowerCase()));
+                return completions;
+            }
+            
+            final String windowArg = args.remove(0);
+            if (!args.isEmpty() || !statsArg.equalsIgnoreCase("items")) {
+                return Collections.emptyList();
+            }
+            for (final ItemStats.Window window : ItemStats.Window.values()) {
+                completions.add(window.name().toLowerCase());
+            }
+            completions.removeIf(completion -> !completion.startsWith(windowArg.toLowerCase()));
+            return completions;
+        }
+        
+        if (arg.equalsIgnoreCase("history")) {
+            
+            final String filter = args.get(args.size() - 1);
+            completions.clear();
+            completions.add("player:");
+            completions.add("item:");
+            completions.add("since:");
+            completions.add("page:");
+            completions.removeIf(completion -> !completion.startsWith(filter.toLowerCase()));
+            return completions;
+        }
+        
         return Collections.emptyList();
     }
 }
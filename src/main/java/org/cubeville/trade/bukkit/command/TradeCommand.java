@@ -0,0 +1,211 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+import org.cubeville.trade.bukkit.TradePlugin;
+import org.jetbrains.annotations.NotNull;
+
+public final class TradeCommand implements TabExecutor {
+    
+    private final TradePlugin plugin;
+    
+    public TradeCommand(@NotNull final TradePlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onCommand(@NotNull final CommandSender sender, @NotNull final Command command, @NotNull final String label, @NotNull final String[] rawArgs) {
+        
+        if (!(sender instanceof Player)) {
+            sender.sendMessage("§cOnly Players may execute this command. The console sender may not execute this command.");
+            return true;
+        }
+        
+        final Player player = (Player) sender;
+        final List<String> args = new ArrayList<String>(Arrays.asList(rawArgs));
+        
+        if (args.isEmpty()) {
+            this.sendUsage(player);
+            return true;
+        }
+        
+        final String arg = args.remove(0);
+        if (arg.equalsIgnoreCase("virtual")) {
+            
+            if (args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade virtual§r §a<player>");
+                return true;
+            }
+            
+            final String name = args.remove(0);
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade virtual§r §a<player>");
+                return true;
+            }
+            
+            this.plugin.requestVirtualTrade(player, name);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("open")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade open");
+                return true;
+            }
+            
+            this.plugin.openVirtualTrade(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("lock")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade lock");
+                return true;
+            }
+            
+            this.plugin.lockVirtualTrade(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("accept")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade accept");
+                return true;
+            }
+            
+            this.plugin.acceptVirtualTrade(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("deny")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade deny");
+                return true;
+            }
+            
+            this.plugin.denyVirtualTrade(player);
+            return true;
+        }
+        if (arg.equalsIgnoreCase("leave")) {
+            
+            if (!args.isEmpty()) {
+                player.sendMessage("§cSyntax:§r §b/trade leave");
+                return true;
+            }
+            
+            this.plugin.leaveRoomQueue(player);
+            return true;
+        }
+        
+        if (!args.isEmpty()) {
+            this.sendUsage(player);
+            return true;
+        }
+        
+        this.plugin.requestRoomTrade(player, arg);
+        return true;
+    }
+    
+    private void sendUsage(@NotNull final Player player) {
+        player.sendMessage("§bAvailable commands:");
+        player.sendMessage(" §f-§r §b/trade§r §a<player>");
+        player.sendMessage(" §f-§r §b/trade leave");
+        player.sendMessage(" §f-§r §b/trade virtual§r §a<player>");
+        player.sendMessage(" §f-§r §b/trade open");
+        player.sendMessage(" §f-§r §b/trade lock");
+        player.sendMessage(" §f-§r §b/trade accept");
+        player.sendMessage(" §f-§r §b/trade deny");
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public List<String> onTabComplete(@NotNull final CommandSender sender, @NotNull final Command command, @NotNull final String label, @NotNull final String[] rawArgs) {
+        
+        if (!(sender instanceof Player)) {
+            return Collections.emptyList();
+        }
+        
+        final Player player = (Player) sender;
+        final List<String> args = new ArrayList<String>(Arrays.asList(rawArgs));
+        final List<String> completions = new ArrayList<String>();
+        
+        completions.add("virtual");
+        completions.add("open");
+        completions.add("lock");
+        completions.add("accept");
+        completions.add("deny");
+        completions.add("leave");
+        
+        if (args.isEmpty()) {
+            completions.addAll(this.getPlayerNames(player));
+            return completions;
+        }
+        
+        final String arg = args.remove(0);
+        if (args.isEmpty()) {
+            completions.addAll(this.getPlayerNames(player));
+            completions.removeIf(completion -> !completion.toLowerCase().startsWith(arg.toLowerCase()));
+            return completions;
+        }
+        
+        if (!arg.equalsIgnoreCase("virtual")) {
+            return Collections.emptyList();
+        }
+        
+        final String name = args.remove(0);
+        if (!args.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        completions.clear();
+        completions.addAll(this.getPlayerNames(player));
+        completions.removeIf(completion -> !completion.toLowerCase().startsWith(name.toLowerCase()));
+        return completions;
+    }
+    
+    @NotNull
+    private List<String> getPlayerNames(@NotNull final Player player) {
+        
+        final List<String> names = new ArrayList<String>();
+        for (final Player online : player.getServer().getOnlinePlayers()) {
+            if (online != player && player.canSee(online)) {
+                names.add(online.getName());
+            }
+        }
+        return names;
+    }
+}
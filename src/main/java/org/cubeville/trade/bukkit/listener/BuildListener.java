@@ -0,0 +1,61 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.listener;
+
+import org.bukkit.block.Block;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.cubeville.trade.bukkit.TradePlugin;
+import org.jetbrains.annotations.NotNull;
+
+// Handles the left clicks used to select the blocks of a new trade room.
+public final class BuildListener implements Listener {
+    
+    private final TradePlugin plugin;
+    
+    public BuildListener(@NotNull final TradePlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onPlayerInteract(final PlayerInteractEvent event) {
+        
+        if (event.getAction() != Action.LEFT_CLICK_BLOCK) {
+            return;
+        }
+        if (event.useInteractedBlock() == Event.Result.DENY) {
+            return;
+        }
+        
+        final Block block = event.getClickedBlock();
+        if (block == null) {
+            return;
+        }
+        
+        this.plugin.buildRoom(event.getPlayer(), block);
+    }
+}
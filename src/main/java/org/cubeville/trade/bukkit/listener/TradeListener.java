@@ -24,23 +24,30 @@ package org.cubeville.trade.bukkit.listener;
 
 import org.bukkit.Material;
 import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
-import org.bukkit.block.Chest;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
-import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
 import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.event.player.PlayerCommandSendEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.inventory.EquipmentSlot;
 import org.cubeville.trade.bukkit.TradePlugin;
 import org.jetbrains.annotations.NotNull;
 
@@ -59,35 +66,80 @@ public final class TradeListener implements Listener {
             return;
         }
         
-        if (this.plugin.blockBreak(event.getBlock().getState().getLocation())) {
+        if (this.plugin.blockBreak(event.getBlock())) {
             event.setCancelled(true);
             event.getPlayer().sendMessage("§cYou may not break that item: it is part of a trade room.");
         }
     }
     
     @EventHandler(priority = EventPriority.HIGHEST)
-    public void onBlockPlace(final BlockPlaceEvent event) {
+    public void onBlockExplode(final BlockExplodeEvent event) {
         
         if (event.isCancelled()) {
             return;
         }
         
-        final Block block = event.getBlock();
-        if (block.getType() == Material.AIR) {
+        this.plugin.blockExplode(event.blockList());
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onBlockPistonExtend(final BlockPistonExtendEvent event) {
+        
+        if (event.isCancelled()) {
             return;
         }
         
-        final BlockState state = block.getState();
-        if (!(state instanceof Chest)) {
+        if (this.plugin.blockPiston(event.getBlock(), event.getDirection(), event.getBlocks())) {
+            event.setCancelled(true);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onBlockPistonRetract(final BlockPistonRetractEvent event) {
+        
+        if (event.isCancelled()) {
             return;
         }
         
-        if (this.plugin.blockPlace((Chest) state)) {
+        if (this.plugin.blockPiston(event.getBlock(), event.getDirection(), event.getBlocks())) {
+            event.setCancelled(true);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onBlockPlace(final BlockPlaceEvent event) {
+        
+        if (event.isCancelled()) {
+            return;
+        }
+        
+        final Block block = event.getBlock();
+        final Material type = block.getType();
+        if (type != Material.CHEST && type != Material.TRAPPED_CHEST) {
+            return;
+        }
+        
+        if (this.plugin.blockPlace(block)) {
             event.setCancelled(true);
             event.getPlayer().sendMessage("§cYou may not place that chest: the chest that would connect to it is a trade chest, and they are not allowed to be double chests.");
         }
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(final ChunkUnloadEvent event) {
+        this.plugin.chunkUnload(event.getChunk());
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onEntityExplode(final EntityExplodeEvent event) {
+        
+        if (event.isCancelled()) {
+            return;
+        }
+        
+        this.plugin.blockExplode(event.blockList());
+    }
+    
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onInventoryClick(final InventoryClickEvent event) {
         
@@ -114,6 +166,45 @@ public final class TradeListener implements Listener {
         }
     }
     
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryChange(final InventoryClickEvent event) {
+        
+        final HumanEntity human = event.getWhoClicked();
+        if (human instanceof Player) {
+            this.plugin.inventoryChange((Player) human, event.getView().getTopInventory());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(final InventoryDragEvent event) {
+        
+        final HumanEntity human = event.getWhoClicked();
+        if (human instanceof Player) {
+            this.plugin.inventoryChange((Player) human, event.getView().getTopInventory());
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onInventoryMoveItem(final InventoryMoveItemEvent event) {
+        
+        if (event.isCancelled()) {
+            return;
+        }
+        
+        if (this.plugin.inventoryMove(event.getSource()) || this.plugin.inventoryMove(event.getDestination())) {
+            event.setCancelled(true);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClose(final InventoryCloseEvent event) {
+        
+        final HumanEntity human = event.getPlayer();
+        if (human instanceof Player) {
+            this.plugin.inventoryClose((Player) human, event.getInventory());
+        }
+    }
+    
     @EventHandler
     public void onPlayerCommandSend(final PlayerCommandSendEvent event) {
         event.getCommands().removeAll(this.plugin.playerCommandSend(event.getPlayer()));
@@ -122,28 +213,25 @@ public final class TradeListener implements Listener {
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerInteract(final PlayerInteractEvent event) {
         
-        switch (event.getAction()) {
-            case LEFT_CLICK_BLOCK:
-                if (event.useInteractedBlock() == Event.Result.DENY) {
-                    return;
-                }
-                if (event.getClickedBlock() == null) {
-                    return;
-                }
-                
-                this.plugin.buildRoom(event.getPlayer(), event.getClickedBlock().getState());
-                break;
-            case RIGHT_CLICK_BLOCK:
-                if (event.getClickedBlock() == null) {
-                    return;
-                }
-                
-                if (this.plugin.rightClickedBlock(event.getPlayer(), event.getClickedBlock().getState())) {
-                    event.setCancelled(true);
-                }
-                break;
-            default:
-                break;
+        // Left clicks only matter while building, see BuildListener.
+        if (event.getAction() != Action.RIGHT_CLICK_BLOCK) {
+            return;
+        }
+        if (event.getClickedBlock() == null) {
+            return;
+        }
+        
+        // The off hand fires a second event for the same click. It is never
+        // handled on its own, only kept from using the trade room blocks.
+        if (event.getHand() != EquipmentSlot.HAND) {
+            if (this.plugin.offHandInteract(event.getClickedBlock())) {
+                event.setCancelled(true);
+            }
+            return;
+        }
+        
+        if (this.plugin.rightClickedBlock(event.getPlayer(), event.getClickedBlock())) {
+            event.setCancelled(true);
         }
     }
     
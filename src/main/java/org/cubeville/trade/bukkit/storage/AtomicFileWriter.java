@@ -0,0 +1,261 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Writes text files atomically, batching the disk flushes of every file staged
+// since the previous flush().
+public final class AtomicFileWriter {
+    
+    public static final String TEMP_SUFFIX = ".tmp";
+    
+    private static final String CHECKSUM_PREFIX = "# crc32: ";
+    
+    private final Logger logger;
+    private final Object flushLock;
+    
+    private Map<File, byte[]> staged;
+    
+    public AtomicFileWriter(@NotNull final Logger logger) {
+        this.logger = logger;
+        this.flushLock = new Object();
+        this.staged = new LinkedHashMap<File, byte[]>();
+    }
+    
+    // Stages the content of a file, replacing anything staged for the same
+    // file since the last flush.
+    public synchronized void write(@NotNull final File file, @NotNull final String content) {
+        
+        final StringBuilder builder = new StringBuilder(content);
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
+            builder.append('\n');
+        }
+        
+        final byte[] body = builder.toString().getBytes(StandardCharsets.UTF_8);
+        final byte[] footer = (CHECKSUM_PREFIX + String.format("%08x", checksum(body, body.length)) + "\n").getBytes(StandardCharsets.UTF_8);
+        
+        final byte[] bytes = new byte[body.length + footer.length];
+        System.arraycopy(body, 0, bytes, 0, body.length);
+        System.arraycopy(footer, 0, bytes, body.length, footer.length);
+        
+        this.staged.put(file.getAbsoluteFile(), bytes);
+    }
+    
+    // Stages the deletion of a file, replacing anything staged for the same
+    // file since the last flush.
+    public synchronized void delete(@NotNull final File file) {
+        this.staged.put(file.getAbsoluteFile(), null);
+    }
+    
+    // Writes out everything staged since the last flush.
+    public void flush() throws IOException {
+        
+        synchronized (this.flushLock) {
+            
+            final Map<File, byte[]> batch;
+            synchronized (this) {
+                if (this.staged.isEmpty()) {
+                    return;
+                }
+                batch = this.staged;
+                this.staged = new LinkedHashMap<File, byte[]>();
+            }
+            
+            final Map<File, byte[]> failed = new LinkedHashMap<File, byte[]>();
+            final List<File> written = new ArrayList<File>();
+            final List<File> done = new ArrayList<File>();
+            final Set<File> folders = new HashSet<File>();
+            IOException exception = null;
+            
+            for (final Map.Entry<File, byte[]> entry : batch.entrySet()) {
+                
+                final File file = entry.getKey();
+                final byte[] bytes = entry.getValue();
+                if (bytes == null) {
+                    try {
+                        if (Files.deleteIfExists(file.toPath())) {
+                            folders.add(file.getParentFile());
+                        }
+                        done.add(file);
+                    } catch (final IOException | SecurityException e) {
+                        this.logger.log(Level.WARNING, "Unable to delete file at " + file.getPath());
+                        this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                        failed.put(file, null);
+                        exception = addFailure(exception, "Unable to delete file at " + file.getPath(), e);
+                    }
+                    continue;
+                }
+                
+                final File temp = new File(file.getPath() + TEMP_SUFFIX);
+                try (final FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                    written.add(file);
+                } catch (final IOException | SecurityException e) {
+                    this.logger.log(Level.WARNING, "Unable to write temporary file at " + temp.getPath());
+                    this.logger.log(Level.WARNING, "The file at " + file.getPath() + " has not been updated.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    failed.put(file, bytes);
+                    exception = addFailure(exception, "Unable to write temporary file at " + temp.getPath(), e);
+                }
+            }
+            
+            for (final File file : written) {
+                final File temp = new File(file.getPath() + TEMP_SUFFIX);
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    folders.add(file.getParentFile());
+                    done.add(file);
+                } catch (final IOException | SecurityException e) {
+                    this.logger.log(Level.WARNING, "Unable to replace file at " + file.getPath() + " with " + temp.getPath());
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    failed.put(file, batch.get(file));
+                    exception = addFailure(exception, "Unable to replace file at " + file.getPath(), e);
+                }
+            }
+            
+            for (final File folder : folders) {
+                try {
+                    this.syncFolder(folder);
+                } catch (final IOException | SecurityException e) {
+                    this.logger.log(Level.WARNING, "Unable to flush folder at " + folder.getPath());
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    exception = addFailure(exception, "Unable to flush folder at " + folder.getPath(), e);
+                    
+                    // The renames and deletions in it are not durable yet.
+                    for (final File file : done) {
+                        if (folder.equals(file.getParentFile())) {
+                            failed.put(file, batch.get(file));
+                        }
+                    }
+                }
+            }
+            
+            if (exception == null) {
+                return;
+            }
+            
+            synchronized (this) {
+                for (final Map.Entry<File, byte[]> entry : failed.entrySet()) {
+                    if (!this.staged.containsKey(entry.getKey())) {
+                        this.staged.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            throw exception;
+        }
+    }
+    
+    // Reads a file written by this writer, verifying its checksum.
+    @NotNull
+    public static String read(@NotNull final File file) throws IOException {
+        
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final int footer = findFooter(bytes);
+        if (footer == -1) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        final String expected = new String(bytes, footer + CHECKSUM_PREFIX.length(), bytes.length - footer - CHECKSUM_PREFIX.length(), StandardCharsets.UTF_8).trim();
+        final String actual = String.format("%08x", checksum(bytes, footer));
+        if (!expected.equalsIgnoreCase(actual)) {
+            throw new IOException("Checksum mismatch in file at " + file.getPath() + " (expected " + expected + ", found " + actual + ").");
+        }
+        
+        return new String(bytes, 0, footer, StandardCharsets.UTF_8);
+    }
+    
+    private static int findFooter(@NotNull final byte[] bytes) {
+        
+        int end = bytes.length;
+        if (end > 0 && bytes[end - 1] == '\n') {
+            end--;
+        }
+        
+        int start = end;
+        while (start > 0 && bytes[start - 1] != '\n') {
+            start--;
+        }
+        
+        final byte[] prefix = CHECKSUM_PREFIX.getBytes(StandardCharsets.UTF_8);
+        if (end - start < prefix.length) {
+            return -1;
+        }
+        for (int index = 0; index < prefix.length; index++) {
+            if (bytes[start + index] != prefix[index]) {
+                return -1;
+            }
+        }
+        return start;
+    }
+    
+    private static long checksum(@NotNull final byte[] bytes, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+    
+    private void syncFolder(@Nullable final File folder) throws IOException {
+        
+        if (folder == null) {
+            return;
+        }
+        
+        try (final FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+    
+    @NotNull
+    private static IOException addFailure(@Nullable final IOException exception, @NotNull final String message, @NotNull final Exception cause) {
+        
+        final IOException failure = cause instanceof IOException ? (IOException) cause : new IOException(message, cause);
+        if (exception == null) {
+            return failure;
+        }
+        exception.addSuppressed(failure);
+        return exception;
+    }
+}
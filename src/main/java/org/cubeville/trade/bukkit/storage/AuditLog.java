@@ -0,0 +1,266 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.cubeville.trade.bukkit.traderoom.TradeRecord;
+import org.cubeville.trade.bukkit.util.RingBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// An append-only log of every finished trade.
+public final class AuditLog {
+    
+    public static final String FILE_PREFIX = "trades-";
+    public static final String FILE_SUFFIX = ".log.gz";
+    
+    private static final int CAPACITY = 8192;
+    private static final long MAX_FILE_SIZE = 16L * 1024L * 1024L;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long CLOSE_MILLIS = 5000L;
+    
+    private final File folder;
+    private final Logger logger;
+    private final RingBuffer<TradeRecord> buffer;
+    private final Thread thread;
+    
+    private volatile boolean running;
+    
+    // Only used by the writer thread.
+    private Writer writer;
+    private File file;
+    private LocalDate date;
+    private long reportedDrops;
+    
+    public AuditLog(@NotNull final File folder, @NotNull final Logger logger) {
+        this.folder = folder;
+        this.logger = logger;
+        this.buffer = new RingBuffer<TradeRecord>(CAPACITY);
+        this.thread = new Thread(this::run, "CVTrade-AuditLog");
+        this.thread.setDaemon(true);
+        
+        this.running = false;
+        
+        this.writer = null;
+        this.file = null;
+        this.date = null;
+        this.reportedDrops = 0L;
+    }
+    
+    public void start() throws IOException {
+        
+        if (!this.folder.exists()) {
+            if (!this.folder.mkdirs()) {
+                throw new IOException("Audit log folder not created at " + this.folder.getPath());
+            }
+        } else if (!this.folder.isDirectory()) {
+            throw new IOException("Audit log folder is not a directory. Location: " + this.folder.getPath());
+        }
+        
+        this.running = true;
+        this.thread.start();
+    }
+    
+    // Queues a record to be written.
+    public void log(@NotNull final TradeRecord record) {
+        this.buffer.offer(record);
+    }
+    
+    // Stops the writer thread after it wrote every queued record.
+    public void close() {
+        
+        if (!this.running) {
+            return;
+        }
+        
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(CLOSE_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    ///////////////////
+    // WRITER THREAD //
+    ///////////////////
+    
+    private void run() {
+        
+        while (this.running || !this.buffer.isEmpty()) {
+            
+            TradeRecord record = this.buffer.poll();
+            if (record == null) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            
+            final StringBuilder batch = new StringBuilder();
+            while (record != null) {
+                format(batch, record);
+                record = this.buffer.poll();
+            }
+            
+            this.write(batch.toString());
+            this.reportDrops();
+        }
+        
+        this.closeWriter();
+    }
+    
+    private void write(@NotNull final String batch) {
+        
+        try {
+            
+            final LocalDate today = LocalDate.now();
+            if (this.writer == null || !today.equals(this.date) || this.file.length() >= MAX_FILE_SIZE) {
+                this.closeWriter();
+                this.openWriter(today);
+            }
+            
+            this.writer.write(batch);
+            this.writer.flush();
+            
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE WRITING AUDIT LOG");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "File: " + (this.file == null ? "none" : this.file.getPath()));
+            this.logger.log(Level.WARNING, "Lost Records:" + System.lineSeparator() + batch);
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to write to the audit log.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            this.closeWriter();
+        }
+    }
+    
+    private void openWriter(@NotNull final LocalDate today) throws IOException {
+        
+        int index = 0;
+        File file = new File(this.folder, FILE_PREFIX + today + FILE_SUFFIX);
+        while (file.exists() && file.length() >= MAX_FILE_SIZE) {
+            index++;
+            file = new File(this.folder, FILE_PREFIX + today + "-" + index + FILE_SUFFIX);
+        }
+        
+        final FileOutputStream output = new FileOutputStream(file, true);
+        try {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(output, 8192, true), StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            output.close();
+            throw e;
+        }
+        this.file = file;
+        this.date = today;
+    }
+    
+    private void closeWriter() {
+        
+        if (this.writer == null) {
+            return;
+        }
+        
+        try {
+            this.writer.close();
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE CLOSING AUDIT LOG");
+            this.logger.log(Level.WARNING, "File: " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        this.writer = null;
+        this.file = null;
+        this.date = null;
+    }
+    
+    private void reportDrops() {
+        
+        final long dropped = this.buffer.getDropped();
+        if (dropped == this.reportedDrops) {
+            return;
+        }
+        
+        this.logger.log(Level.WARNING, "Audit log buffer was full, " + (dropped - this.reportedDrops) + " trade records were not logged.");
+        this.reportedDrops = dropped;
+    }
+    
+    private static void format(@NotNull final StringBuilder builder, @NotNull final TradeRecord record) {
+        
+        builder.append(Instant.ofEpochMilli(record.getTime()).toString());
+        builder.append('\t').append(record.getReason().name());
+        builder.append('\t').append(record.getRoomName() == null ? "-" : record.getRoomName());
+        formatTrader(builder, record.getUniqueId1(), record.getName1());
+        formatTrader(builder, record.getUniqueId2(), record.getName2());
+        formatItems(builder, record.getStacks1());
+        formatItems(builder, record.getStacks2());
+        builder.append('\n');
+    }
+    
+    private static void formatTrader(@NotNull final StringBuilder builder, @Nullable final UUID uniqueId, @Nullable final String name) {
+        builder.append('\t').append(uniqueId == null ? "-" : uniqueId.toString());
+        builder.append('\t').append(name == null ? "-" : name);
+    }
+    
+    // Logs every stack with its meta, which holds the enchantments, names and
+    // the contents of containers such as shulker boxes.
+    private static void formatItems(@NotNull final StringBuilder builder, @NotNull final List<ItemStack> items) {
+        
+        builder.append('\t');
+        if (items.isEmpty()) {
+            builder.append('-');
+            return;
+        }
+        
+        boolean first = true;
+        for (final ItemStack item : items) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(item.getType().name()).append('*').append(item.getAmount());
+            if (item.hasItemMeta()) {
+                final ItemMeta meta = item.getItemMeta();
+                if (meta != null) {
+                    builder.append(meta.getAsString().replace('\t', ' ').replace('\n', ' '));
+                }
+            }
+            first = false;
+        }
+    }
+}
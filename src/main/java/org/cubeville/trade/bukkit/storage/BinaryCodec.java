@@ -0,0 +1,311 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public final class BinaryCodec {
+    
+    // Serialized items at least this large are deflated. Most items are far
+    // smaller, but shulker boxes, books and enchanted gear are not.
+    private static final int COMPRESS_MIN_BYTES = 512;
+    
+    // Deflaters and inflaters are costly to create, so each thread keeps one.
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    
+    private BinaryCodec() {
+        // Do nothing.
+    }
+    
+    public static void writeUniqueId(@NotNull final DataOutput output, @NotNull final UUID uniqueId) throws IOException {
+        output.writeLong(uniqueId.getMostSignificantBits());
+        output.writeLong(uniqueId.getLeastSignificantBits());
+    }
+    
+    @NotNull
+    public static UUID readUniqueId(@NotNull final DataInput input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+    
+    // Writes an item as its length followed by its serialized bytes, or -1 for
+    // no item.
+    public static void writeItem(@NotNull final DataOutput output, @Nullable final ItemStack item) throws IOException {
+        
+        if (item == null || item.getType() == Material.AIR) {
+            output.writeInt(-1);
+            return;
+        }
+        
+        final byte[] bytes = item.serializeAsBytes();
+        if (bytes.length >= COMPRESS_MIN_BYTES) {
+            final byte[] compressed = deflate(bytes);
+            if (compressed != null) {
+                output.writeInt(-2 - compressed.length);
+                output.writeInt(bytes.length);
+                output.write(compressed);
+                return;
+            }
+        }
+        
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    
+    @Nullable
+    public static ItemStack readItem(@NotNull final DataInput input) throws IOException, IllegalArgumentException {
+        
+        final int length = input.readInt();
+        if (length == -1) {
+            return null;
+        } else if (length < -1) {
+            
+            final byte[] compressed = new byte[-2 - length];
+            final int size = input.readInt();
+            if (size < 0) {
+                throw new IllegalArgumentException("Cannot have negative item length " + size + ".");
+            }
+            input.readFully(compressed);
+            return ItemStack.deserializeBytes(inflate(compressed, size));
+        }
+        
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return ItemStack.deserializeBytes(bytes);
+    }
+    
+    // Deflates serialized item bytes.
+    @Nullable
+    private static byte[] deflate(@NotNull final byte[] bytes) {
+        
+        final Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        
+        final byte[] buffer = new byte[bytes.length];
+        int length = 0;
+        while (!deflater.finished() && length < buffer.length) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        
+        if (!deflater.finished()) {
+            return null;
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+    
+    @NotNull
+    private static byte[] inflate(@NotNull final byte[] compressed, final int size) throws IllegalArgumentException {
+        
+        final Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        
+        final byte[] bytes = new byte[size];
+        int length = 0;
+        try {
+            while (length < size) {
+                final int inflated = inflater.inflate(bytes, length, size - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("Cannot inflate damaged item data.", e);
+        }
+        
+        if (length != size) {
+            throw new IllegalArgumentException("Cannot inflate item data to " + size + " bytes, only " + length + " bytes were inflated.");
+        }
+        return bytes;
+    }
+    
+    @NotNull
+    public static byte[] encodeItem(@NotNull final ItemStack item) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        writeItem(output, item);
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    @Nullable
+    public static ItemStack decodeItem(@NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        return readItem(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+    
+    public static void writeItems(@NotNull final DataOutput output, @NotNull final ItemStack[] items) throws IOException {
+        
+        output.writeInt(items.length);
+        for (final ItemStack item : items) {
+            writeItem(output, item);
+        }
+    }
+    
+    @NotNull
+    public static ItemStack[] readItems(@NotNull final DataInput input) throws IOException, IllegalArgumentException {
+        
+        final int count = input.readInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot have negative item count " + count + ".");
+        }
+        
+        final ItemStack[] items = new ItemStack[count];
+        for (int slot = 0; slot < count; slot++) {
+            items[slot] = readItem(input);
+        }
+        return items;
+    }
+    
+    @NotNull
+    public static byte[] encodeItems(@NotNull final ItemStack[] items) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        writeItems(output, items);
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    @NotNull
+    public static ItemStack[] decodeItems(@NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        return readItems(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+    
+    @NotNull
+    public static byte[] encodeOffline(@NotNull final Offline offline) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        offline.write(output);
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    @NotNull
+    public static Offline decodeOffline(final long offlineTime, @NotNull final UUID uniqueId, @NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        return new Offline(offlineTime, uniqueId, new DataInputStream(new ByteArrayInputStream(data)));
+    }
+    
+    public static void writeLocation(@NotNull final DataOutput output, @Nullable final Location location) throws IOException {
+        
+        if (location == null || location.getWorld() == null) {
+            output.writeBoolean(false);
+            return;
+        }
+        
+        output.writeBoolean(true);
+        writeUniqueId(output, location.getWorld().getUID());
+        output.writeDouble(location.getX());
+        output.writeDouble(location.getY());
+        output.writeDouble(location.getZ());
+        output.writeFloat(location.getYaw());
+        output.writeFloat(location.getPitch());
+    }
+    
+    @Nullable
+    public static Location readLocation(@NotNull final DataInput input) throws IOException, IllegalArgumentException {
+        
+        if (!input.readBoolean()) {
+            return null;
+        }
+        
+        final UUID worldId = readUniqueId(input);
+        final double x = input.readDouble();
+        final double y = input.readDouble();
+        final double z = input.readDouble();
+        final float yaw = input.readFloat();
+        final float pitch = input.readFloat();
+        
+        final World world = Bukkit.getWorld(worldId);
+        if (world == null) {
+            throw new IllegalArgumentException("Unknown world " + worldId.toString() + " for location.");
+        }
+        
+        return new Location(world, x, y, z, yaw, pitch);
+    }
+    
+    public static void putUniqueId(@NotNull final ByteBuffer buffer, final int offset, @NotNull final UUID uniqueId) {
+        buffer.putLong(offset, uniqueId.getMostSignificantBits());
+        buffer.putLong(offset + 8, uniqueId.getLeastSignificantBits());
+    }
+    
+    @NotNull
+    public static UUID getUniqueId(@NotNull final ByteBuffer buffer, final int offset) {
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+    }
+    
+    // Writes a string into a fixed-size field: one length byte followed by at
+    // most size - 1 bytes of UTF-8, with the rest of the field zeroed.
+    public static void putString(@NotNull final ByteBuffer buffer, final int offset, final int size, @Nullable final String value) throws IllegalArgumentException {
+        
+        final byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > size - 1) {
+            throw new IllegalArgumentException("Cannot fit " + bytes.length + " bytes of \"" + value + "\" into a " + (size - 1) + " byte field.");
+        }
+        
+        buffer.put(offset, (byte) bytes.length);
+        for (int index = 0; index < size - 1; index++) {
+            buffer.put(offset + 1 + index, index < bytes.length ? bytes[index] : 0);
+        }
+    }
+    
+    @Nullable
+    public static String getString(@NotNull final ByteBuffer buffer, final int offset) {
+        
+        final int length = buffer.get(offset) & 0xFF;
+        if (length == 0) {
+            return null;
+        }
+        
+        final byte[] bytes = new byte[length];
+        for (int index = 0; index < length; index++) {
+            bytes[index] = buffer.get(offset + 1 + index);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,803 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.Constants;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.TradeRoom;
+import org.cubeville.trade.bukkit.traderoom.Trader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// The default TradeStore: trade rooms in a memory-mapped RecordStore, offline
+// deliveries in a Mailbox, and chest backups and the server stop time as YAML
+// files written through an AtomicFileWriter.
+public final class BinaryTradeStore implements TradeStore {
+    
+    // Records written before the item blob store start with a name length
+    // or an item count, never with a negative number.
+    private static final int FORMAT_BLOBS = -1;
+    
+    private final Server server;
+    private final Logger logger;
+    
+    private final File serverStopFile;
+    private final File backupInventoryFolder;
+    private final File virtualBackupFolder;
+    private final AtomicFileWriter fileWriter;
+    private final RecordStore roomStore;
+    private final Mailbox mailbox;
+    private final ItemBlobStore blobStore;
+    
+    // The blobs each stored record refers to, released when the record is
+    // replaced or deleted. Only used from the main thread, like the saves.
+    private final Map<String, List<ItemBlobStore.Hash>> backupRefs;
+    private final Map<UUID, List<ItemBlobStore.Hash>> virtualRefs;
+    private final Map<UUID, List<ItemBlobStore.Hash>> offlineRefs;
+    private final Map<UUID, List<ItemBlobStore.Hash>> extraRefs;
+    
+    // Mailbox changes waiting for the next flush, in order.
+    private final Object pendingLock;
+    private List<PendingWrite> pendingWrites;
+    
+    public BinaryTradeStore(@NotNull final Server server, @NotNull final File dataFolder, @NotNull final Logger logger) {
+        this.server = server;
+        this.logger = logger;
+        
+        this.serverStopFile = new File(dataFolder, Constants.FILE_SERVER_STOP);
+        this.backupInventoryFolder = new File(dataFolder, Constants.FOLDER_BACKUP_INVENTORIES);
+        this.virtualBackupFolder = new File(dataFolder, Constants.FOLDER_VIRTUAL_BACKUPS);
+        this.fileWriter = new AtomicFileWriter(logger);
+        this.roomStore = new RecordStore(new File(dataFolder, Constants.FILE_TRADE_ROOMS), TradeRoom.RECORD_SIZE, logger);
+        this.mailbox = new Mailbox(new File(dataFolder, Constants.FILE_MAILBOX), logger);
+        this.blobStore = new ItemBlobStore(new File(dataFolder, Constants.FILE_ITEM_BLOBS), logger);
+        
+        this.backupRefs = new HashMap<String, List<ItemBlobStore.Hash>>();
+        this.virtualRefs = new HashMap<UUID, List<ItemBlobStore.Hash>>();
+        this.offlineRefs = new HashMap<UUID, List<ItemBlobStore.Hash>>();
+        this.extraRefs = new HashMap<UUID, List<ItemBlobStore.Hash>>();
+        
+        this.pendingLock = new Object();
+        this.pendingWrites = new ArrayList<PendingWrite>();
+    }
+    
+    @Override
+    public void open() throws IOException {
+        
+        final File[] backupInventoryFiles = this.createFolder(this.backupInventoryFolder, "BackupInventory", "backup inventory");
+        final File[] virtualBackupFiles = this.createFolder(this.virtualBackupFolder, "VirtualBackup", "virtual trade backup");
+        
+        this.roomStore.open();
+        this.blobStore.open();
+        this.mailbox.open();
+        
+        this.retainBlobs(backupInventoryFiles, virtualBackupFiles);
+        this.blobStore.collect();
+    }
+    
+    @Nullable
+    private File[] createFolder(@NotNull final File folder, @NotNull final String folderName, @NotNull final String type) throws IOException {
+        
+        if (!folder.exists()) {
+            if (!folder.mkdirs()) {
+                throw new IOException(folderName + " folder not created at " + folder.getPath());
+            }
+        } else if (!folder.isDirectory()) {
+            throw new IOException(folderName + " folder is not a folder. Location: " + folder.getPath());
+        }
+        
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                // Left behind by a crash before the rename, the original file is intact.
+                if (file.getName().endsWith(AtomicFileWriter.TEMP_SUFFIX) && !file.delete()) {
+                    this.logger.log(Level.WARNING, "Unable to delete temporary " + type + " file at " + file.getPath());
+                }
+            }
+        }
+        return files;
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        
+        // Blobs first, so no record reaches the disk before its items.
+        this.blobStore.sync();
+        
+        IOException exception = null;
+        try {
+            this.writeMailbox();
+        } catch (final IOException e) {
+            exception = e;
+        }
+        try {
+            this.fileWriter.flush();
+        } catch (final IOException e) {
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        try {
+            this.mailbox.sync();
+        } catch (final IOException e) {
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        try {
+            this.roomStore.sync();
+        } catch (final IOException e) {
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        
+        if (exception != null) {
+            throw exception;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        
+        try {
+            this.flush();
+        } finally {
+            try {
+                this.mailbox.close();
+            } finally {
+                try {
+                    this.roomStore.close();
+                } finally {
+                    this.blobStore.close();
+                }
+            }
+        }
+    }
+    
+    /////////////////////////
+    // SERVER STOP & ROOMS //
+    /////////////////////////
+    
+    @Override
+    public long loadServerStop() {
+        
+        if (!this.serverStopFile.exists()) {
+            return -1L;
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(AtomicFileWriter.read(this.serverStopFile));
+        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load server stop file at " + this.serverStopFile.getPath());
+            this.logger.log(Level.WARNING, "Treating the server stop time as unknown.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return -1L;
+        }
+        
+        return config.getLong(Constants.KEY_SERVER_STOP_TIME, -1L);
+    }
+    
+    @Override
+    public void saveServerStop(final long time) {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_SERVER_STOP_TIME, time);
+        this.fileWriter.write(this.serverStopFile, config.saveToString());
+    }
+    
+    @Override
+    @NotNull
+    public List<TradeRoom> loadRooms(final long offlineTime) {
+        
+        final List<TradeRoom> rooms = new ArrayList<TradeRoom>();
+        for (final Map.Entry<String, ByteBuffer> entry : this.roomStore.read().entrySet()) {
+            try {
+                rooms.add(new TradeRoom(this.server, offlineTime, entry.getKey(), entry.getValue()));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize trade room " + entry.getKey() + " from " + Constants.FILE_TRADE_ROOMS);
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return rooms;
+    }
+    
+    @Override
+    public void saveRoom(@NotNull final TradeRoom room) throws IOException {
+        this.roomStore.put(room.getName().toLowerCase(), room.toRecord());
+    }
+    
+    ////////////////////////
+    // BACKUP INVENTORIES //
+    ////////////////////////
+    
+    @Override
+    @Nullable
+    public ItemStack[][] loadBackup(@NotNull final String roomName) {
+        
+        final File backupInventoryFile = new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE);
+        if (!backupInventoryFile.exists()) {
+            return null;
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(AtomicFileWriter.read(backupInventoryFile));
+        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load backup inventory file at " + backupInventoryFile.getPath());
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+        
+        final List<?> rawItems1 = config.getList(Constants.KEY_BACKUP_ITEMS_1, null);
+        if (rawItems1 == null) {
+            this.logger.log(Level.WARNING, "Backup items for chest 1 are null in backup inventory file at " + backupInventoryFile.getPath());
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            return null;
+        }
+        
+        final List<?> rawItems2 = config.getList(Constants.KEY_BACKUP_ITEMS_2, null);
+        if (rawItems2 == null) {
+            this.logger.log(Level.WARNING, "Backup items for chest 2 are null in backup inventory file at " + backupInventoryFile.getPath());
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            return null;
+        }
+        
+        try {
+            return new ItemStack[][] {this.deserialize(rawItems1), this.deserialize(rawItems2)};
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to deserialize backup items in backup inventory file at " + backupInventoryFile.getPath());
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+    }
+    
+    // Deserializes backup items, either hashes of items in the blob store or
+    // items serialized into the YAML by older versions.
+    @NotNull
+    private ItemStack[] deserialize(@NotNull final List<?> rawItems) throws IOException, IllegalArgumentException {
+        
+        final ItemStack[] stacks = new ItemStack[rawItems.size()];
+        for (int slot = 0; slot < stacks.length; slot++) {
+            final Object item = rawItems.get(slot);
+            if (item instanceof String) {
+                stacks[slot] = this.blobStore.get(ItemBlobStore.Hash.fromString((String) item));
+            } else if (item instanceof Map) {
+                stacks[slot] = ItemStack.deserialize((Map<String, Object>) item);
+            } else {
+                stacks[slot] = null;
+            }
+        }
+        return stacks;
+    }
+    
+    @Override
+    public void saveBackup(@NotNull final String roomName, @NotNull final ItemStack[] items1, @NotNull final ItemStack[] items2) throws IOException {
+        
+        final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_TRADE_ROOM_NAME, roomName);
+        config.set(Constants.KEY_BACKUP_ITEMS_1, this.serialize(items1, refs));
+        config.set(Constants.KEY_BACKUP_ITEMS_2, this.serialize(items2, refs));
+        
+        this.fileWriter.write(new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE), config.saveToString());
+        this.release(this.backupRefs.put(roomName, refs));
+    }
+    
+    @NotNull
+    private List<String> serialize(@NotNull final ItemStack[] items, @NotNull final List<ItemBlobStore.Hash> refs) throws IOException {
+        
+        final List<String> serialized = new ArrayList<String>();
+        for (final ItemStack item : items) {
+            if (item == null || item.getType().isAir()) {
+                serialized.add(null);
+            } else {
+                final ItemBlobStore.Hash hash = this.blobStore.put(item);
+                refs.add(hash);
+                serialized.add(hash.toString());
+            }
+        }
+        return serialized;
+    }
+    
+    @Override
+    public void deleteBackup(@NotNull final String roomName) {
+        this.fileWriter.delete(new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE));
+        this.release(this.backupRefs.remove(roomName));
+    }
+    
+    @Override
+    @NotNull
+    public Map<UUID, ItemStack[]> loadVirtualBackups() {
+        
+        final Map<UUID, ItemStack[]> backups = new HashMap<UUID, ItemStack[]>();
+        final File[] virtualBackupFiles = this.virtualBackupFolder.listFiles((dir, name) -> name.endsWith(Constants.FILE_TYPE));
+        if (virtualBackupFiles == null) {
+            return backups;
+        }
+        
+        for (final File virtualBackupFile : virtualBackupFiles) {
+            
+            final YamlConfiguration config = new YamlConfiguration();
+            try {
+                config.loadFromString(AtomicFileWriter.read(virtualBackupFile));
+            } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to load virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            final UUID uniqueId;
+            try {
+                uniqueId = UUID.fromString(config.getString(Constants.KEY_VIRTUAL_BACKUP_UUID, ""));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to parse UUID for virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                continue;
+            }
+            
+            final List<?> rawItems = config.getList(Constants.KEY_VIRTUAL_BACKUP_ITEMS, null);
+            if (rawItems == null) {
+                this.logger.log(Level.WARNING, "Backup items are null in virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                continue;
+            }
+            
+            try {
+                backups.put(uniqueId, this.deserialize(rawItems));
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize backup items in virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return backups;
+    }
+    
+    @Override
+    public void saveVirtualBackup(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_VIRTUAL_BACKUP_UUID, uniqueId.toString());
+        config.set(Constants.KEY_VIRTUAL_BACKUP_ITEMS, this.serialize(items, refs));
+        
+        this.fileWriter.write(new File(this.virtualBackupFolder, uniqueId.toString() + Constants.FILE_TYPE), config.saveToString());
+        this.release(this.virtualRefs.put(uniqueId, refs));
+    }
+    
+    @Override
+    public void deleteVirtualBackup(@NotNull final UUID uniqueId) {
+        this.fileWriter.delete(new File(this.virtualBackupFolder, uniqueId.toString() + Constants.FILE_TYPE));
+        this.release(this.virtualRefs.remove(uniqueId));
+    }
+    
+    //////////////////////
+    // OFFLINE DELIVERY //
+    //////////////////////
+    
+    @Override
+    @NotNull
+    public List<Offline> loadOfflines(final long offlineTime) {
+        
+        final List<Offline> offlines = new ArrayList<Offline>();
+        for (final UUID uniqueId : this.mailbox.getUniqueIds()) {
+            try {
+                final byte[] data = this.mailbox.readOffline(uniqueId);
+                if (data != null) {
+                    offlines.add(this.decodeOffline(offlineTime, uniqueId, data));
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize offline trader from mailbox for UUID " + uniqueId.toString());
+                this.logger.log(Level.WARNING, "Skipping offline trader.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return offlines;
+    }
+    
+    @Override
+    @NotNull
+    public Map<UUID, List<ItemStack>> loadExtras() {
+        
+        final Map<UUID, List<ItemStack>> extras = new HashMap<UUID, List<ItemStack>>();
+        for (final UUID uniqueId : this.mailbox.getUniqueIds()) {
+            
+            final List<byte[]> extraData;
+            try {
+                extraData = this.mailbox.readExtras(uniqueId);
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "Unable to read extra inventories from mailbox for UUID " + uniqueId.toString());
+                this.logger.log(Level.WARNING, "Skipping extra inventories.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                continue;
+            }
+            
+            for (final byte[] data : extraData) {
+                
+                final ItemStack[] items;
+                try {
+                    items = this.decodeItems(data);
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize extra inventory from mailbox for UUID " + uniqueId.toString());
+                    this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    continue;
+                }
+                
+                final List<ItemStack> stacks = extras.computeIfAbsent(uniqueId, key -> new ArrayList<ItemStack>());
+                for (final ItemStack item : items) {
+                    if (item != null) {
+                        stacks.add(item);
+                    }
+                }
+            }
+        }
+        
+        return extras;
+    }
+    
+    @Override
+    public void saveOffline(@NotNull final Offline offline) throws IOException {
+        
+        final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        this.writeItemRefs(output, offline.getItems(), refs);
+        
+        // The items are only written as hashes, above.
+        final Offline details = new Offline(new Trader(offline.getUniqueId(), offline.getName(), offline.getLogoutTime()));
+        details.setReason(offline.getReason());
+        details.setTeleport(offline.getTeleport());
+        details.write(output);
+        output.flush();
+        
+        this.queue(new PendingWrite(PendingWrite.PUT_OFFLINE, offline.getUniqueId(), bytes.toByteArray()));
+        this.release(this.offlineRefs.put(offline.getUniqueId(), refs));
+    }
+    
+    @Override
+    public void appendExtras(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        this.writeItemRefs(output, items, refs);
+        output.flush();
+        
+        this.queue(new PendingWrite(PendingWrite.APPEND_EXTRAS, uniqueId, bytes.toByteArray()));
+        this.extraRefs.computeIfAbsent(uniqueId, key -> new ArrayList<ItemBlobStore.Hash>()).addAll(refs);
+    }
+    
+    @Override
+    public void deleteOffline(@NotNull final UUID uniqueId) throws IOException {
+        this.queue(new PendingWrite(PendingWrite.DELETE, uniqueId, null));
+        this.release(this.offlineRefs.remove(uniqueId));
+        this.release(this.extraRefs.remove(uniqueId));
+    }
+    
+    private void queue(@NotNull final PendingWrite write) {
+        synchronized (this.pendingLock) {
+            this.pendingWrites.add(write);
+        }
+    }
+    
+    // Changes from a failed one onward are kept, ahead of any newer ones.
+    private void writeMailbox() throws IOException {
+        
+        final List<PendingWrite> writes;
+        synchronized (this.pendingLock) {
+            if (this.pendingWrites.isEmpty()) {
+                return;
+            }
+            writes = this.pendingWrites;
+            this.pendingWrites = new ArrayList<PendingWrite>();
+        }
+        
+        for (int index = 0; index < writes.size(); index++) {
+            try {
+                writes.get(index).apply(this.mailbox);
+            } catch (final IOException e) {
+                synchronized (this.pendingLock) {
+                    final List<PendingWrite> retry = new ArrayList<PendingWrite>(writes.subList(index, writes.size()));
+                    retry.addAll(this.pendingWrites);
+                    this.pendingWrites = retry;
+                }
+                throw e;
+            }
+        }
+    }
+    
+    ////////////////
+    // ITEM BLOBS //
+    ////////////////
+    
+    // Retains every blob the stored backups and deliveries refer to, so the
+    // blob store can drop the rest.
+    private void retainBlobs(@Nullable final File[] backupInventoryFiles, @Nullable final File[] virtualBackupFiles) {
+        
+        if (backupInventoryFiles != null) {
+            for (final File backupInventoryFile : backupInventoryFiles) {
+                
+                final String fileName = backupInventoryFile.getName();
+                final List<ItemBlobStore.Hash> refs = this.retainBackup(backupInventoryFile, Constants.KEY_BACKUP_ITEMS_1, Constants.KEY_BACKUP_ITEMS_2);
+                if (refs != null) {
+                    this.backupRefs.put(fileName.substring(0, fileName.length() - Constants.FILE_TYPE.length()), refs);
+                }
+            }
+        }
+        
+        if (virtualBackupFiles != null) {
+            for (final File virtualBackupFile : virtualBackupFiles) {
+                
+                final String fileName = virtualBackupFile.getName();
+                final List<ItemBlobStore.Hash> refs = this.retainBackup(virtualBackupFile, Constants.KEY_VIRTUAL_BACKUP_ITEMS);
+                if (refs == null) {
+                    continue;
+                }
+                try {
+                    this.virtualRefs.put(UUID.fromString(fileName.substring(0, fileName.length() - Constants.FILE_TYPE.length())), refs);
+                } catch (final IllegalArgumentException e) {
+                    // Logged again when the backup is loaded.
+                    this.release(refs);
+                }
+            }
+        }
+        
+        for (final UUID uniqueId : this.mailbox.getUniqueIds()) {
+            
+            try {
+                final byte[] data = this.mailbox.readOffline(uniqueId);
+                if (data != null && isBlobFormat(data)) {
+                    final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+                    this.retainAll(this.readItemRefs(data), refs, "offline delivery for UUID " + uniqueId.toString());
+                    this.offlineRefs.put(uniqueId, refs);
+                }
+                
+                for (final byte[] extraData : this.mailbox.readExtras(uniqueId)) {
+                    if (isBlobFormat(extraData)) {
+                        final List<ItemBlobStore.Hash> refs = this.extraRefs.computeIfAbsent(uniqueId, key -> new ArrayList<ItemBlobStore.Hash>());
+                        this.retainAll(this.readItemRefs(extraData), refs, "extra inventory for UUID " + uniqueId.toString());
+                    }
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                // Logged again when the delivery is loaded.
+            }
+        }
+    }
+    
+    @Nullable
+    private List<ItemBlobStore.Hash> retainBackup(@NotNull final File file, @NotNull final String... keys) {
+        
+        if (!file.getName().endsWith(Constants.FILE_TYPE)) {
+            return null;
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(AtomicFileWriter.read(file));
+        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            // Logged again when the backup is loaded.
+            return null;
+        }
+        
+        final List<ItemBlobStore.Hash> refs = new ArrayList<ItemBlobStore.Hash>();
+        for (final String key : keys) {
+            final List<?> rawItems = config.getList(key, null);
+            if (rawItems == null) {
+                continue;
+            }
+            for (final Object item : rawItems) {
+                if (item instanceof String) {
+                    try {
+                        this.retain(ItemBlobStore.Hash.fromString((String) item), refs, file.getPath());
+                    } catch (final IllegalArgumentException e) {
+                        this.logger.log(Level.WARNING, "Invalid item hash " + item + " in backup file at " + file.getPath());
+                    }
+                }
+            }
+        }
+        
+        return refs.isEmpty() ? null : refs;
+    }
+    
+    private void retainAll(@Nullable final ItemBlobStore.Hash[] hashes, @NotNull final List<ItemBlobStore.Hash> refs, @NotNull final String owner) {
+        
+        if (hashes == null) {
+            return;
+        }
+        for (final ItemBlobStore.Hash hash : hashes) {
+            if (hash != null) {
+                this.retain(hash, refs, owner);
+            }
+        }
+    }
+    
+    private void retain(@NotNull final ItemBlobStore.Hash hash, @NotNull final List<ItemBlobStore.Hash> refs, @NotNull final String owner) {
+        
+        if (this.blobStore.retain(hash)) {
+            refs.add(hash);
+        } else {
+            this.logger.log(Level.WARNING, "Item " + hash.toString() + " is missing from the item blob store, referred to by " + owner);
+        }
+    }
+    
+    private void release(@Nullable final List<ItemBlobStore.Hash> refs) {
+        
+        if (refs == null) {
+            return;
+        }
+        for (final ItemBlobStore.Hash hash : refs) {
+            this.blobStore.release(hash);
+        }
+    }
+    
+    private static boolean isBlobFormat(@NotNull final byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt(0) == FORMAT_BLOBS;
+    }
+    
+    // Writes items as hashes of blobs, storing every item that is not stored
+    // yet.
+    private void writeItemRefs(@NotNull final DataOutputStream output, @Nullable final ItemStack[] items, @NotNull final List<ItemBlobStore.Hash> refs) throws IOException {
+        
+        output.writeInt(FORMAT_BLOBS);
+        if (items == null) {
+            output.writeInt(-1);
+            return;
+        }
+        
+        output.writeInt(items.length);
+        for (final ItemStack item : items) {
+            if (item == null || item.getType().isAir()) {
+                output.writeBoolean(false);
+            } else {
+                final ItemBlobStore.Hash hash = this.blobStore.put(item);
+                refs.add(hash);
+                output.writeBoolean(true);
+                hash.write(output);
+            }
+        }
+    }
+    
+    @Nullable
+    private ItemBlobStore.Hash[] readItemRefs(@NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        return this.readItemRefs(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+    
+    @Nullable
+    private ItemBlobStore.Hash[] readItemRefs(@NotNull final DataInputStream input) throws IOException, IllegalArgumentException {
+        
+        if (input.readInt() != FORMAT_BLOBS) {
+            throw new IllegalArgumentException("Cannot read item hashes from a record without them.");
+        }
+        
+        final int count = input.readInt();
+        if (count == -1) {
+            return null;
+        } else if (count < 0) {
+            throw new IllegalArgumentException("Cannot have negative item count " + count + ".");
+        }
+        
+        final ItemBlobStore.Hash[] hashes = new ItemBlobStore.Hash[count];
+        for (int slot = 0; slot < count; slot++) {
+            hashes[slot] = input.readBoolean() ? ItemBlobStore.Hash.read(input) : null;
+        }
+        return hashes;
+    }
+    
+    @NotNull
+    private ItemStack[] resolve(@NotNull final ItemBlobStore.Hash[] hashes) throws IOException, IllegalArgumentException {
+        
+        final ItemStack[] items = new ItemStack[hashes.length];
+        for (int slot = 0; slot < hashes.length; slot++) {
+            items[slot] = hashes[slot] == null ? null : this.blobStore.get(hashes[slot]);
+        }
+        return items;
+    }
+    
+    @NotNull
+    private Offline decodeOffline(final long offlineTime, @NotNull final UUID uniqueId, @NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        
+        if (!isBlobFormat(data)) {
+            return BinaryCodec.decodeOffline(offlineTime, uniqueId, data);
+        }
+        
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        final ItemBlobStore.Hash[] hashes = this.readItemRefs(input);
+        final Offline offline = new Offline(offlineTime, uniqueId, input);
+        offline.setItems(hashes == null ? null : this.resolve(hashes));
+        return offline;
+    }
+    
+    @NotNull
+    private ItemStack[] decodeItems(@NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        
+        if (!isBlobFormat(data)) {
+            return BinaryCodec.decodeItems(data);
+        }
+        
+        final ItemBlobStore.Hash[] hashes = this.readItemRefs(data);
+        return hashes == null ? new ItemStack[0] : this.resolve(hashes);
+    }
+    
+    private static final class PendingWrite {
+        
+        private static final byte PUT_OFFLINE = 1;
+        private static final byte APPEND_EXTRAS = 2;
+        private static final byte DELETE = 3;
+        
+        private final byte type;
+        private final UUID uniqueId;
+        private final byte[] payload;
+        
+        private PendingWrite(final byte type, @NotNull final UUID uniqueId, @Nullable final byte[] payload) {
+            this.type = type;
+            this.uniqueId = uniqueId;
+            this.payload = payload;
+        }
+        
+        private void apply(@NotNull final Mailbox mailbox) throws IOException {
+            
+            if (this.type == PUT_OFFLINE) {
+                mailbox.putOffline(this.uniqueId, this.payload);
+            } else if (this.type == APPEND_EXTRAS) {
+                mailbox.appendExtras(this.uniqueId, this.payload);
+            } else {
+                mailbox.deleteOffline(this.uniqueId);
+                mailbox.deleteExtras(this.uniqueId);
+            }
+        }
+    }
+}
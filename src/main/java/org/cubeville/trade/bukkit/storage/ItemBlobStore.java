@@ -0,0 +1,456 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Content-addressed store for encoded items, so an item that is saved in
+// several records (a chest backup, an offline delivery, extra items) is only
+// written once.
+// Record layout: int length, byte[32] hash, int crc, byte[length] payload,
+// where the CRC covers the hash and the payload.
+public final class ItemBlobStore {
+    
+    public static final int HASH_SIZE = 32;
+    
+    private static final int MAGIC = 0x43565442;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + HASH_SIZE + 4;
+    
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024L * 1024L;
+    
+    private final File file;
+    private final Logger logger;
+    private final Map<Hash, Blob> blobs;
+    private final MessageDigest digest;
+    
+    private FileChannel channel;
+    private long size;
+    private long deadBytes;
+    private boolean dirty;
+    
+    public ItemBlobStore(@NotNull final File file, @NotNull final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.blobs = new HashMap<Hash, Blob>();
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available for the item blob store.", e);
+        }
+        
+        this.channel = null;
+        this.size = 0L;
+        this.deadBytes = 0L;
+        this.dirty = false;
+    }
+    
+    public synchronized void open() throws IOException {
+        
+        if (this.channel != null) {
+            throw new IOException("Item blob store is already open at " + this.file.getPath());
+        }
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (this.channel.size() == 0L) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            this.write(header, 0L);
+            this.size = FILE_HEADER_SIZE;
+            return;
+        }
+        
+        this.scan();
+    }
+    
+    public synchronized void close() throws IOException {
+        
+        if (this.channel == null) {
+            return;
+        }
+        
+        this.channel.force(true);
+        this.channel.close();
+        this.channel = null;
+        this.dirty = false;
+        this.blobs.clear();
+    }
+    
+    // Flushes every blob added since the last sync to disk.
+    public void sync() throws IOException {
+        
+        final FileChannel channel;
+        synchronized (this) {
+            if (this.channel == null || !this.dirty) {
+                return;
+            }
+            channel = this.channel;
+            this.dirty = false;
+        }
+        
+        try {
+            channel.force(true);
+        } catch (final IOException e) {
+            synchronized (this) {
+                this.dirty = true;
+            }
+            throw e;
+        }
+    }
+    
+    // Adds a reference to an item, storing it if it is not stored yet.
+    @NotNull
+    public synchronized Hash put(@NotNull final ItemStack item) throws IOException {
+        
+        final byte[] payload = BinaryCodec.encodeItem(item);
+        final Hash hash = new Hash(this.digest.digest(payload));
+        
+        Blob blob = this.blobs.get(hash);
+        if (blob == null) {
+            blob = new Blob(this.append(hash, payload), payload.length);
+            this.blobs.put(hash, blob);
+        }
+        blob.refs++;
+        return hash;
+    }
+    
+    // Adds a reference to an item that is already stored, for records that
+    // were loaded from disk.
+    public synchronized boolean retain(@NotNull final Hash hash) {
+        
+        final Blob blob = this.blobs.get(hash);
+        if (blob == null) {
+            return false;
+        }
+        blob.refs++;
+        return true;
+    }
+    
+    // Drops a reference to an item. A blob without references is kept until
+    // the next collect(), so a record saved right after the one it was
+    // released from (a delivery replacing a backup) still reuses it.
+    public synchronized void release(@NotNull final Hash hash) {
+        
+        final Blob blob = this.blobs.get(hash);
+        if (blob != null && blob.refs > 0) {
+            blob.refs--;
+        }
+    }
+    
+    @NotNull
+    public synchronized ItemStack get(@NotNull final Hash hash) throws IOException, IllegalArgumentException {
+        
+        final Blob blob = this.blobs.get(hash);
+        if (blob == null) {
+            throw new IllegalArgumentException("Cannot find item " + hash.toString() + " in the item blob store.");
+        }
+        
+        final ByteBuffer payload = ByteBuffer.allocate(blob.length);
+        this.read(payload, blob.position + RECORD_HEADER_SIZE);
+        final ItemStack item = BinaryCodec.decodeItem(payload.array());
+        if (item == null) {
+            throw new IllegalArgumentException("Cannot have an empty item " + hash.toString() + " in the item blob store.");
+        }
+        return item;
+    }
+    
+    // Drops every blob without a reference, and compacts the file if enough of
+    // it is dead.
+    public synchronized void collect() throws IOException {
+        
+        final Iterator<Blob> iterator = this.blobs.values().iterator();
+        while (iterator.hasNext()) {
+            final Blob blob = iterator.next();
+            if (blob.refs <= 0) {
+                this.deadBytes += RECORD_HEADER_SIZE + (long) blob.length;
+                iterator.remove();
+            }
+        }
+        
+        final long liveBytes = this.size - FILE_HEADER_SIZE - this.deadBytes;
+        if (this.deadBytes >= COMPACT_MIN_DEAD_BYTES && this.deadBytes > liveBytes) {
+            this.compact();
+        }
+    }
+    
+    ///////////////////
+    // FILE HANDLING //
+    ///////////////////
+    
+    private void scan() throws IOException {
+        
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        this.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Item blob file at " + this.file.getPath() + " is not an item blob file.");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Item blob file at " + this.file.getPath() + " has unsupported version " + version + ".");
+        }
+        
+        final long fileSize = this.channel.size();
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = FILE_HEADER_SIZE;
+        
+        while (position < fileSize) {
+            
+            if (fileSize - position < RECORD_HEADER_SIZE) {
+                this.truncate(position, "incomplete record header");
+                break;
+            }
+            
+            recordHeader.clear();
+            this.read(recordHeader, position);
+            recordHeader.flip();
+            
+            final int length = recordHeader.getInt();
+            final byte[] hashBytes = new byte[HASH_SIZE];
+            recordHeader.get(hashBytes);
+            final int crc = recordHeader.getInt();
+            
+            if (length < 0 || fileSize - position - RECORD_HEADER_SIZE < length) {
+                this.truncate(position, "incomplete record payload");
+                break;
+            }
+            
+            final ByteBuffer payload = ByteBuffer.allocate(length);
+            this.read(payload, position + RECORD_HEADER_SIZE);
+            if (checksum(hashBytes, payload.array()) != crc) {
+                this.truncate(position, "checksum mismatch");
+                break;
+            }
+            
+            // A blob stored again after it was released, the old copy is dead.
+            final Blob old = this.blobs.put(new Hash(hashBytes), new Blob(position, length));
+            if (old != null) {
+                this.deadBytes += RECORD_HEADER_SIZE + (long) old.length;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        
+        this.size = position;
+    }
+    
+    private void truncate(final long position, @NotNull final String reason) throws IOException {
+        
+        this.logger.log(Level.WARNING, "Item blob file at " + this.file.getPath() + " has a damaged record at position " + position + " (" + reason + ").");
+        this.logger.log(Level.WARNING, "Discarding " + (this.channel.size() - position) + " bytes from the end of the item blob store.");
+        this.channel.truncate(position);
+        this.channel.force(true);
+    }
+    
+    private void compact() throws IOException {
+        
+        final File compactFile = new File(this.file.getPath() + ".compact");
+        final Map<Hash, Blob> compacted = new HashMap<Hash, Blob>();
+        
+        try (final FileChannel target = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            long position = 0L;
+            while (header.hasRemaining()) {
+                position += target.write(header, position);
+            }
+            
+            for (final Map.Entry<Hash, Blob> entry : this.blobs.entrySet()) {
+                
+                final Blob blob = entry.getValue();
+                final Blob moved = new Blob(position, blob.length);
+                moved.refs = blob.refs;
+                
+                final long recordSize = RECORD_HEADER_SIZE + (long) blob.length;
+                long copied = 0L;
+                while (copied < recordSize) {
+                    copied += this.channel.transferTo(blob.position + copied, recordSize - copied, target.position(position + copied));
+                }
+                position += recordSize;
+                
+                compacted.put(entry.getKey(), moved);
+            }
+            
+            target.force(true);
+        }
+        
+        this.channel.close();
+        Files.move(compactFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = this.channel.size();
+        this.deadBytes = 0L;
+        this.blobs.clear();
+        this.blobs.putAll(compacted);
+        
+        this.logger.log(Level.INFO, "Compacted item blob file at " + this.file.getPath() + " to " + this.size + " bytes.");
+    }
+    
+    private long append(@NotNull final Hash hash, @NotNull final byte[] payload) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Item blob store is not open at " + this.file.getPath());
+        }
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.put(hash.bytes);
+        buffer.putInt(checksum(hash.bytes, payload));
+        buffer.put(payload);
+        buffer.flip();
+        
+        final long position = this.size;
+        this.write(buffer, position);
+        this.size = position + RECORD_HEADER_SIZE + payload.length;
+        this.dirty = true;
+        return position;
+    }
+    
+    private void read(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of item blob file at " + this.file.getPath());
+            }
+            offset += read;
+        }
+    }
+    
+    private void write(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += this.channel.write(buffer, offset);
+        }
+    }
+    
+    private static int checksum(@NotNull final byte[] hash, @NotNull final byte[] payload) {
+        
+        final CRC32 crc = new CRC32();
+        crc.update(hash);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private static final class Blob {
+        
+        private final long position;
+        private final int length;
+        private int refs;
+        
+        private Blob(final long position, final int length) {
+            this.position = position;
+            this.length = length;
+            this.refs = 0;
+        }
+    }
+    
+    // The SHA-256 hash of an encoded item.
+    public static final class Hash {
+        
+        private final byte[] bytes;
+        private final int hashCode;
+        
+        private Hash(@NotNull final byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+        
+        @NotNull
+        public static Hash read(@NotNull final DataInput input) throws IOException {
+            final byte[] bytes = new byte[HASH_SIZE];
+            input.readFully(bytes);
+            return new Hash(bytes);
+        }
+        
+        @NotNull
+        public static Hash fromString(@NotNull final String value) throws IllegalArgumentException {
+            
+            if (value.length() != HASH_SIZE * 2) {
+                throw new IllegalArgumentException("Cannot have item hash of length " + value.length() + ", expected " + (HASH_SIZE * 2) + ".");
+            }
+            
+            final byte[] bytes = new byte[HASH_SIZE];
+            for (int index = 0; index < HASH_SIZE; index++) {
+                bytes[index] = (byte) Integer.parseInt(value.substring(index * 2, index * 2 + 2), 16);
+            }
+            return new Hash(bytes);
+        }
+        
+        public void write(@NotNull final DataOutput output) throws IOException {
+            output.write(this.bytes);
+        }
+        
+        @Override
+        public boolean equals(@Nullable final Object object) {
+            
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof Hash)) {
+                return false;
+            }
+            return Arrays.equals(this.bytes, ((Hash) object).bytes);
+        }
+        
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+        
+        @Override
+        @NotNull
+        public String toString() {
+            
+            final StringBuilder builder = new StringBuilder(HASH_SIZE * 2);
+            for (final byte value : this.bytes) {
+                builder.append(Character.forDigit((value >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(value & 0xF, 16));
+            }
+            return builder.toString();
+        }
+    }
+}
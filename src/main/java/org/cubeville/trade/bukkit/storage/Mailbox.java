@@ -0,0 +1,466 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Append-only store for items waiting to be delivered to offline traders.
+// Record layout: int length, byte type, long msb, long lsb, int crc,
+// byte[length] payload, where the CRC covers the type, the UUID and the
+// payload.
+public final class Mailbox {
+    
+    private static final int MAGIC = 0x4356544D;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8 + 4;
+    
+    private static final byte TYPE_OFFLINE = 1;
+    private static final byte TYPE_EXTRA = 2;
+    private static final byte TYPE_DELETE_OFFLINE = 3;
+    private static final byte TYPE_DELETE_EXTRAS = 4;
+    
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024L * 1024L;
+    
+    private final File file;
+    private final Logger logger;
+    private final Map<UUID, Entry> index;
+    
+    private FileChannel channel;
+    private long size;
+    private long deadBytes;
+    private boolean dirty;
+    
+    public Mailbox(@NotNull final File file, @NotNull final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.index = new HashMap<UUID, Entry>();
+        
+        this.channel = null;
+        this.size = 0L;
+        this.deadBytes = 0L;
+        this.dirty = false;
+    }
+    
+    public synchronized void open() throws IOException {
+        
+        if (this.channel != null) {
+            throw new IOException("Mailbox is already open at " + this.file.getPath());
+        }
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (this.channel.size() == 0L) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            this.write(header, 0L);
+            this.size = FILE_HEADER_SIZE;
+            return;
+        }
+        
+        this.scan();
+        
+        final long liveBytes = this.size - FILE_HEADER_SIZE - this.deadBytes;
+        if (this.deadBytes >= COMPACT_MIN_DEAD_BYTES && this.deadBytes > liveBytes) {
+            this.compact();
+        }
+    }
+    
+    public synchronized void close() throws IOException {
+        
+        if (this.channel == null) {
+            return;
+        }
+        
+        this.channel.force(true);
+        this.channel.close();
+        this.channel = null;
+        this.dirty = false;
+        this.index.clear();
+    }
+    
+    // Flushes every record appended since the last sync to disk.
+    public void sync() throws IOException {
+        
+        final FileChannel channel;
+        synchronized (this) {
+            if (this.channel == null || !this.dirty) {
+                return;
+            }
+            channel = this.channel;
+            this.dirty = false;
+        }
+        
+        try {
+            channel.force(true);
+        } catch (final IOException e) {
+            synchronized (this) {
+                this.dirty = true;
+            }
+            throw e;
+        }
+    }
+    
+    @NotNull
+    public synchronized Set<UUID> getUniqueIds() {
+        return Collections.unmodifiableSet(new HashSet<UUID>(this.index.keySet()));
+    }
+    
+    public synchronized boolean contains(@NotNull final UUID uniqueId) {
+        return this.index.containsKey(uniqueId);
+    }
+    
+    @Nullable
+    public synchronized byte[] readOffline(@NotNull final UUID uniqueId) throws IOException {
+        
+        final Entry entry = this.index.get(uniqueId);
+        if (entry == null || entry.offline == -1L) {
+            return null;
+        }
+        return this.readPayload(entry.offline);
+    }
+    
+    @NotNull
+    public synchronized List<byte[]> readExtras(@NotNull final UUID uniqueId) throws IOException {
+        
+        final Entry entry = this.index.get(uniqueId);
+        if (entry == null || entry.extras.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        final List<byte[]> payloads = new ArrayList<byte[]>(entry.extras.size());
+        for (final long position : entry.extras) {
+            payloads.add(this.readPayload(position));
+        }
+        return payloads;
+    }
+    
+    public synchronized void putOffline(@NotNull final UUID uniqueId, @NotNull final byte[] payload) throws IOException {
+        
+        final long position = this.append(TYPE_OFFLINE, uniqueId, payload);
+        final Entry entry = this.index.computeIfAbsent(uniqueId, key -> new Entry());
+        if (entry.offline != -1L) {
+            this.deadBytes += this.recordSize(entry.offline);
+        }
+        entry.offline = position;
+    }
+    
+    public synchronized void appendExtras(@NotNull final UUID uniqueId, @NotNull final byte[] payload) throws IOException {
+        
+        final long position = this.append(TYPE_EXTRA, uniqueId, payload);
+        this.index.computeIfAbsent(uniqueId, key -> new Entry()).extras.add(position);
+    }
+    
+    public synchronized void deleteOffline(@NotNull final UUID uniqueId) throws IOException {
+        
+        final Entry entry = this.index.get(uniqueId);
+        if (entry == null || entry.offline == -1L) {
+            return;
+        }
+        
+        this.deadBytes += this.recordSize(entry.offline);
+        this.append(TYPE_DELETE_OFFLINE, uniqueId, new byte[0]);
+        this.deadBytes += RECORD_HEADER_SIZE;
+        entry.offline = -1L;
+        if (entry.isEmpty()) {
+            this.index.remove(uniqueId);
+        }
+    }
+    
+    public synchronized void deleteExtras(@NotNull final UUID uniqueId) throws IOException {
+        
+        final Entry entry = this.index.get(uniqueId);
+        if (entry == null || entry.extras.isEmpty()) {
+            return;
+        }
+        
+        for (final long position : entry.extras) {
+            this.deadBytes += this.recordSize(position);
+        }
+        this.append(TYPE_DELETE_EXTRAS, uniqueId, new byte[0]);
+        this.deadBytes += RECORD_HEADER_SIZE;
+        entry.extras.clear();
+        if (entry.isEmpty()) {
+            this.index.remove(uniqueId);
+        }
+    }
+    
+    ///////////////////
+    // FILE HANDLING //
+    ///////////////////
+    
+    private void scan() throws IOException {
+        
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        this.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Mailbox file at " + this.file.getPath() + " is not a mailbox file.");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Mailbox file at " + this.file.getPath() + " has unsupported version " + version + ".");
+        }
+        
+        final long fileSize = this.channel.size();
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = FILE_HEADER_SIZE;
+        
+        while (position < fileSize) {
+            
+            if (fileSize - position < RECORD_HEADER_SIZE) {
+                this.truncate(position, "incomplete record header");
+                break;
+            }
+            
+            recordHeader.clear();
+            this.read(recordHeader, position);
+            recordHeader.flip();
+            
+            final int length = recordHeader.getInt();
+            final byte type = recordHeader.get();
+            final UUID uniqueId = new UUID(recordHeader.getLong(), recordHeader.getLong());
+            final int crc = recordHeader.getInt();
+            
+            if (length < 0 || fileSize - position - RECORD_HEADER_SIZE < length) {
+                this.truncate(position, "incomplete record payload");
+                break;
+            }
+            
+            final ByteBuffer payload = ByteBuffer.allocate(length);
+            this.read(payload, position + RECORD_HEADER_SIZE);
+            if (this.checksum(type, uniqueId, payload.array()) != crc) {
+                this.truncate(position, "checksum mismatch");
+                break;
+            }
+            
+            this.apply(type, uniqueId, position, RECORD_HEADER_SIZE + length);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        
+        this.size = position;
+    }
+    
+    private void apply(final byte type, @NotNull final UUID uniqueId, final long position, final long recordSize) throws IOException {
+        
+        final Entry entry = this.index.computeIfAbsent(uniqueId, key -> new Entry());
+        if (type == TYPE_OFFLINE) {
+            if (entry.offline != -1L) {
+                this.deadBytes += this.recordSize(entry.offline);
+            }
+            entry.offline = position;
+        } else if (type == TYPE_EXTRA) {
+            entry.extras.add(position);
+        } else if (type == TYPE_DELETE_OFFLINE) {
+            if (entry.offline != -1L) {
+                this.deadBytes += this.recordSize(entry.offline);
+            }
+            entry.offline = -1L;
+            this.deadBytes += recordSize;
+        } else if (type == TYPE_DELETE_EXTRAS) {
+            for (final long extra : entry.extras) {
+                this.deadBytes += this.recordSize(extra);
+            }
+            entry.extras.clear();
+            this.deadBytes += recordSize;
+        } else {
+            throw new IOException("Unknown mailbox record type " + type + " at position " + position + " in " + this.file.getPath());
+        }
+        
+        if (entry.isEmpty()) {
+            this.index.remove(uniqueId);
+        }
+    }
+    
+    private void truncate(final long position, @NotNull final String reason) throws IOException {
+        
+        this.logger.log(Level.WARNING, "Mailbox file at " + this.file.getPath() + " has a damaged record at position " + position + " (" + reason + ").");
+        this.logger.log(Level.WARNING, "Discarding " + (this.channel.size() - position) + " bytes from the end of the mailbox.");
+        this.channel.truncate(position);
+        this.channel.force(true);
+    }
+    
+    private void compact() throws IOException {
+        
+        final File compactFile = new File(this.file.getPath() + ".compact");
+        final Map<UUID, Entry> compacted = new HashMap<UUID, Entry>();
+        
+        try (final FileChannel target = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            long position = 0L;
+            while (header.hasRemaining()) {
+                position += target.write(header, position);
+            }
+            
+            for (final Map.Entry<UUID, Entry> mapEntry : this.index.entrySet()) {
+                
+                final Entry entry = mapEntry.getValue();
+                final Entry moved = new Entry();
+                
+                if (entry.offline != -1L) {
+                    moved.offline = position;
+                    position = this.copyRecord(entry.offline, target, position);
+                }
+                for (final long extra : entry.extras) {
+                    moved.extras.add(position);
+                    position = this.copyRecord(extra, target, position);
+                }
+                
+                compacted.put(mapEntry.getKey(), moved);
+            }
+            
+            target.force(true);
+        }
+        
+        this.channel.close();
+        Files.move(compactFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.size = this.channel.size();
+        this.deadBytes = 0L;
+        this.index.clear();
+        this.index.putAll(compacted);
+        
+        this.logger.log(Level.INFO, "Compacted mailbox file at " + this.file.getPath() + " to " + this.size + " bytes.");
+    }
+    
+    private long copyRecord(final long position, @NotNull final FileChannel target, final long targetPosition) throws IOException {
+        
+        final long recordSize = this.recordSize(position);
+        long copied = 0L;
+        while (copied < recordSize) {
+            copied += this.channel.transferTo(position + copied, recordSize - copied, target.position(targetPosition + copied));
+        }
+        return targetPosition + recordSize;
+    }
+    
+    private long append(final byte type, @NotNull final UUID uniqueId, @NotNull final byte[] payload) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Mailbox is not open at " + this.file.getPath());
+        }
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.put(type);
+        buffer.putLong(uniqueId.getMostSignificantBits());
+        buffer.putLong(uniqueId.getLeastSignificantBits());
+        buffer.putInt(this.checksum(type, uniqueId, payload));
+        buffer.put(payload);
+        buffer.flip();
+        
+        final long position = this.size;
+        this.write(buffer, position);
+        this.size = position + RECORD_HEADER_SIZE + payload.length;
+        this.dirty = true;
+        return position;
+    }
+    
+    @NotNull
+    private byte[] readPayload(final long position) throws IOException {
+        
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        this.read(length, position);
+        length.flip();
+        
+        final ByteBuffer payload = ByteBuffer.allocate(length.getInt());
+        this.read(payload, position + RECORD_HEADER_SIZE);
+        return payload.array();
+    }
+    
+    private long recordSize(final long position) throws IOException {
+        
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        this.read(length, position);
+        length.flip();
+        return RECORD_HEADER_SIZE + (long) length.getInt();
+    }
+    
+    private void read(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of mailbox file at " + this.file.getPath());
+            }
+            offset += read;
+        }
+    }
+    
+    private void write(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += this.channel.write(buffer, offset);
+        }
+    }
+    
+    private int checksum(final byte type, @NotNull final UUID uniqueId, @NotNull final byte[] payload) {
+        
+        final ByteBuffer key = ByteBuffer.allocate(1 + 8 + 8);
+        key.put(type);
+        key.putLong(uniqueId.getMostSignificantBits());
+        key.putLong(uniqueId.getLeastSignificantBits());
+        
+        final CRC32 crc = new CRC32();
+        crc.update(key.array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private static final class Entry {
+        
+        private long offline;
+        private final List<Long> extras;
+        
+        private Entry() {
+            this.offline = -1L;
+            this.extras = new ArrayList<Long>();
+        }
+        
+        private boolean isEmpty() {
+            return this.offline == -1L && this.extras.isEmpty();
+        }
+    }
+}
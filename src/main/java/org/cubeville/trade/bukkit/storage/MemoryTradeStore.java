@@ -0,0 +1,263 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.TradeRoom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A TradeStore that never touches the disk, for benchmarks and load tests.
+public final class MemoryTradeStore implements TradeStore {
+    
+    private final Server server;
+    private final Logger logger;
+    
+    private long serverStop;
+    private final Map<String, byte[]> rooms;
+    private final Map<String, byte[][]> backups;
+    private final Map<UUID, byte[]> virtualBackups;
+    private final Map<UUID, byte[]> offlines;
+    private final Map<UUID, List<byte[]>> extras;
+    
+    public MemoryTradeStore(@NotNull final Server server, @NotNull final Logger logger) {
+        this.server = server;
+        this.logger = logger;
+        
+        this.serverStop = -1L;
+        this.rooms = new HashMap<String, byte[]>();
+        this.backups = new HashMap<String, byte[][]>();
+        this.virtualBackups = new HashMap<UUID, byte[]>();
+        this.offlines = new HashMap<UUID, byte[]>();
+        this.extras = new HashMap<UUID, List<byte[]>>();
+    }
+    
+    @Override
+    public void open() {
+        this.logger.log(Level.WARNING, "Using in-memory storage, no trade data will survive a restart.");
+    }
+    
+    @Override
+    public void flush() {
+        // Nothing to make durable.
+    }
+    
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+    
+    /////////////////////////
+    // SERVER STOP & ROOMS //
+    /////////////////////////
+    
+    @Override
+    public synchronized long loadServerStop() {
+        return this.serverStop;
+    }
+    
+    @Override
+    public synchronized void saveServerStop(final long time) {
+        this.serverStop = time;
+    }
+    
+    @Override
+    @NotNull
+    public synchronized List<TradeRoom> loadRooms(final long offlineTime) {
+        
+        final List<TradeRoom> rooms = new ArrayList<TradeRoom>();
+        for (final Map.Entry<String, byte[]> entry : this.rooms.entrySet()) {
+            try {
+                rooms.add(new TradeRoom(this.server, offlineTime, entry.getKey(), ByteBuffer.wrap(entry.getValue()).asReadOnlyBuffer()));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize trade room " + entry.getKey() + " from memory.");
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return rooms;
+    }
+    
+    @Override
+    public void saveRoom(@NotNull final TradeRoom room) {
+        
+        final byte[] record = room.toRecord();
+        synchronized (this) {
+            this.rooms.put(room.getName().toLowerCase(), record);
+        }
+    }
+    
+    ////////////////////////
+    // BACKUP INVENTORIES //
+    ////////////////////////
+    
+    @Override
+    @Nullable
+    public synchronized ItemStack[][] loadBackup(@NotNull final String roomName) {
+        
+        final byte[][] backup = this.backups.get(roomName);
+        if (backup == null) {
+            return null;
+        }
+        
+        try {
+            return new ItemStack[][] {BinaryCodec.decodeItems(backup[0]), BinaryCodec.decodeItems(backup[1])};
+        } catch (final IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load backup inventory for trade room " + roomName + " from memory.");
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+    }
+    
+    @Override
+    public void saveBackup(@NotNull final String roomName, @NotNull final ItemStack[] items1, @NotNull final ItemStack[] items2) throws IOException {
+        
+        final byte[][] backup = new byte[][] {BinaryCodec.encodeItems(items1), BinaryCodec.encodeItems(items2)};
+        synchronized (this) {
+            this.backups.put(roomName, backup);
+        }
+    }
+    
+    @Override
+    public synchronized void deleteBackup(@NotNull final String roomName) {
+        this.backups.remove(roomName);
+    }
+    
+    @Override
+    @NotNull
+    public synchronized Map<UUID, ItemStack[]> loadVirtualBackups() {
+        
+        final Map<UUID, ItemStack[]> backups = new HashMap<UUID, ItemStack[]>();
+        for (final Map.Entry<UUID, byte[]> entry : this.virtualBackups.entrySet()) {
+            try {
+                backups.put(entry.getKey(), BinaryCodec.decodeItems(entry.getValue()));
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize virtual trade backup from memory for UUID " + entry.getKey().toString());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return backups;
+    }
+    
+    @Override
+    public void saveVirtualBackup(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final byte[] data = BinaryCodec.encodeItems(items);
+        synchronized (this) {
+            this.virtualBackups.put(uniqueId, data);
+        }
+    }
+    
+    @Override
+    public synchronized void deleteVirtualBackup(@NotNull final UUID uniqueId) {
+        this.virtualBackups.remove(uniqueId);
+    }
+    
+    //////////////////////
+    // OFFLINE DELIVERY //
+    //////////////////////
+    
+    @Override
+    @NotNull
+    public synchronized List<Offline> loadOfflines(final long offlineTime) {
+        
+        final List<Offline> offlines = new ArrayList<Offline>();
+        for (final Map.Entry<UUID, byte[]> entry : this.offlines.entrySet()) {
+            try {
+                offlines.add(BinaryCodec.decodeOffline(offlineTime, entry.getKey(), entry.getValue()));
+            } catch (final IOException | IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize offline trader from memory for UUID " + entry.getKey().toString());
+                this.logger.log(Level.WARNING, "Skipping offline trader.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return offlines;
+    }
+    
+    @Override
+    @NotNull
+    public synchronized Map<UUID, List<ItemStack>> loadExtras() {
+        
+        final Map<UUID, List<ItemStack>> extras = new HashMap<UUID, List<ItemStack>>();
+        for (final Map.Entry<UUID, List<byte[]>> entry : this.extras.entrySet()) {
+            
+            final List<ItemStack> stacks = new ArrayList<ItemStack>();
+            for (final byte[] data : entry.getValue()) {
+                try {
+                    for (final ItemStack item : BinaryCodec.decodeItems(data)) {
+                        if (item != null) {
+                            stacks.add(item);
+                        }
+                    }
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize extra inventory from memory for UUID " + entry.getKey().toString());
+                    this.logger.log(Level.WARNING, "Skipping extra items.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                }
+            }
+            extras.put(entry.getKey(), stacks);
+        }
+        
+        return extras;
+    }
+    
+    @Override
+    public void saveOffline(@NotNull final Offline offline) throws IOException {
+        
+        final byte[] data = BinaryCodec.encodeOffline(offline);
+        synchronized (this) {
+            this.offlines.put(offline.getUniqueId(), data);
+        }
+    }
+    
+    @Override
+    public void appendExtras(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final byte[] data = BinaryCodec.encodeItems(items);
+        synchronized (this) {
+            this.extras.computeIfAbsent(uniqueId, key -> new ArrayList<byte[]>()).add(data);
+        }
+    }
+    
+    @Override
+    public synchronized void deleteOffline(@NotNull final UUID uniqueId) {
+        this.offlines.remove(uniqueId);
+        this.extras.remove(uniqueId);
+    }
+}
@@ -0,0 +1,293 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.jetbrains.annotations.NotNull;
+
+// Memory-mapped store of fixed-size records, keyed by a short string.
+// Record layout: int crc, byte used, byte[3] padding, long sequence, byte[64]
+// key, byte[payloadSize] payload, where the CRC covers the sequence, the key
+// and the payload.
+public final class RecordStore {
+    
+    public static final int MAX_KEY_LENGTH = 63;
+    
+    private static final int MAGIC = 0x43565452;
+    private static final int VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 16;
+    
+    private static final int OFFSET_CRC = 0;
+    private static final int OFFSET_USED = 4;
+    private static final int OFFSET_SEQUENCE = 8;
+    private static final int OFFSET_KEY = 16;
+    private static final int KEY_SIZE = MAX_KEY_LENGTH + 1;
+    private static final int RECORD_HEADER_SIZE = OFFSET_KEY + KEY_SIZE;
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private final File file;
+    private final int payloadSize;
+    private final int recordSize;
+    private final Logger logger;
+    private final Map<String, Integer> index;
+    private final List<Integer> freeSlots;
+    private final List<Integer> releasedSlots;
+    
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private long sequence;
+    private boolean dirty;
+    
+    public RecordStore(@NotNull final File file, final int payloadSize, @NotNull final Logger logger) {
+        this.file = file;
+        this.payloadSize = payloadSize;
+        this.recordSize = RECORD_HEADER_SIZE + payloadSize;
+        this.logger = logger;
+        this.index = new HashMap<String, Integer>();
+        this.freeSlots = new ArrayList<Integer>();
+        this.releasedSlots = new ArrayList<Integer>();
+        
+        this.channel = null;
+        this.buffer = null;
+        this.capacity = 0;
+        this.sequence = 0L;
+        this.dirty = false;
+    }
+    
+    public synchronized void open() throws IOException {
+        
+        if (this.channel != null) {
+            throw new IOException("Record store is already open at " + this.file.getPath());
+        }
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = this.channel.size();
+        if (size == 0L) {
+            this.map(INITIAL_CAPACITY);
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(4, VERSION);
+            this.buffer.putInt(8, this.payloadSize);
+            this.buffer.force(0, FILE_HEADER_SIZE);
+            for (int slot = INITIAL_CAPACITY - 1; slot >= 0; slot--) {
+                this.freeSlots.add(slot);
+            }
+            return;
+        }
+        
+        if (size < FILE_HEADER_SIZE) {
+            this.channel.close();
+            this.channel = null;
+            throw new IOException("Record store " + this.file.getPath() + " is too short to be valid.");
+        }
+        
+        this.map((int) ((size - FILE_HEADER_SIZE) / this.recordSize));
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION || this.buffer.getInt(8) != this.payloadSize) {
+            this.buffer = null;
+            this.channel.close();
+            this.channel = null;
+            throw new IOException("Record store " + this.file.getPath() + " has an unknown format.");
+        }
+        
+        for (int slot = this.capacity - 1; slot >= 0; slot--) {
+            
+            final int position = this.position(slot);
+            if (this.buffer.get(position + OFFSET_USED) == 0) {
+                this.freeSlots.add(slot);
+                continue;
+            }
+            
+            final String key = BinaryCodec.getString(this.buffer, position + OFFSET_KEY);
+            if (key == null || this.buffer.getInt(position + OFFSET_CRC) != this.checksum(position)) {
+                this.logger.log(Level.WARNING, "Discarding damaged record in slot " + slot + " of " + this.file.getPath() + (key == null ? "." : " (key " + key + ")."));
+                this.buffer.put(position + OFFSET_USED, (byte) 0);
+                this.freeSlots.add(slot);
+                continue;
+            }
+            
+            final long sequence = this.buffer.getLong(position + OFFSET_SEQUENCE);
+            this.sequence = Math.max(this.sequence, sequence);
+            
+            final Integer previous = this.index.get(key);
+            if (previous == null) {
+                this.index.put(key, slot);
+                continue;
+            }
+            
+            // An update was interrupted before the old copy was released.
+            final int stale;
+            if (this.buffer.getLong(this.position(previous) + OFFSET_SEQUENCE) < sequence) {
+                this.index.put(key, slot);
+                stale = previous;
+            } else {
+                stale = slot;
+            }
+            this.buffer.put(this.position(stale) + OFFSET_USED, (byte) 0);
+            this.freeSlots.add(stale);
+        }
+        
+        this.buffer.force();
+    }
+    
+    public synchronized void close() throws IOException {
+        
+        if (this.channel == null) {
+            return;
+        }
+        
+        this.buffer.force();
+        this.buffer = null;
+        this.channel.close();
+        this.channel = null;
+        this.index.clear();
+        this.freeSlots.clear();
+        this.releasedSlots.clear();
+        this.capacity = 0;
+        this.dirty = false;
+    }
+    
+    // Flushes every record written since the last sync to disk, then releases
+    // the slots of the records they replaced.
+    public void sync() throws IOException {
+        
+        final MappedByteBuffer buffer;
+        final List<Integer> released;
+        synchronized (this) {
+            if (this.channel == null || !this.dirty) {
+                return;
+            }
+            buffer = this.buffer;
+            released = new ArrayList<Integer>(this.releasedSlots);
+            this.releasedSlots.clear();
+            this.dirty = false;
+        }
+        
+        try {
+            buffer.force();
+        } catch (final UncheckedIOException e) {
+            synchronized (this) {
+                this.releasedSlots.addAll(released);
+                this.dirty = true;
+            }
+            throw e.getCause();
+        }
+        
+        synchronized (this) {
+            if (this.channel == null || released.isEmpty()) {
+                return;
+            }
+            for (final int slot : released) {
+                this.buffer.put(this.position(slot) + OFFSET_USED, (byte) 0);
+                this.freeSlots.add(slot);
+            }
+            this.dirty = true;
+        }
+    }
+    
+    // Gets read-only views of every record payload.
+    @NotNull
+    public synchronized Map<String, ByteBuffer> read() {
+        
+        final Map<String, ByteBuffer> records = new HashMap<String, ByteBuffer>();
+        for (final Map.Entry<String, Integer> entry : this.index.entrySet()) {
+            final ByteBuffer payload = this.buffer.duplicate();
+            final int position = this.position(entry.getValue()) + RECORD_HEADER_SIZE;
+            payload.limit(position + this.payloadSize).position(position);
+            records.put(entry.getKey(), payload.slice().asReadOnlyBuffer());
+        }
+        return records;
+    }
+    
+    public synchronized void put(@NotNull final String key, @NotNull final byte[] payload) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Record store is not open at " + this.file.getPath());
+        }
+        if (payload.length != this.payloadSize) {
+            throw new IOException("Payload for " + key + " is " + payload.length + " bytes, expected " + this.payloadSize + ".");
+        }
+        
+        if (this.freeSlots.isEmpty()) {
+            this.grow();
+        }
+        final int slot = this.freeSlots.remove(this.freeSlots.size() - 1);
+        
+        final int position = this.position(slot);
+        try {
+            BinaryCodec.putString(this.buffer, position + OFFSET_KEY, KEY_SIZE, key);
+        } catch (IllegalArgumentException e) {
+            this.freeSlots.add(slot);
+            throw new IOException("Key " + key + " is too long for " + this.file.getPath(), e);
+        }
+        this.buffer.putLong(position + OFFSET_SEQUENCE, ++this.sequence);
+        this.buffer.put(position + RECORD_HEADER_SIZE, payload);
+        this.buffer.putInt(position + OFFSET_CRC, this.checksum(position));
+        this.buffer.put(position + OFFSET_USED, (byte) 1);
+        this.dirty = true;
+        
+        final Integer previous = this.index.put(key, slot);
+        if (previous != null) {
+            this.releasedSlots.add(previous);
+        }
+    }
+    
+    private void grow() throws IOException {
+        
+        final int oldCapacity = this.capacity;
+        this.map(oldCapacity * 2);
+        for (int slot = this.capacity - 1; slot >= oldCapacity; slot--) {
+            this.freeSlots.add(slot);
+        }
+    }
+    
+    private void map(final int capacity) throws IOException {
+        this.capacity = Math.max(capacity, INITIAL_CAPACITY);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0L, FILE_HEADER_SIZE + (long) this.capacity * this.recordSize);
+    }
+    
+    private int position(final int slot) {
+        return FILE_HEADER_SIZE + slot * this.recordSize;
+    }
+    
+    private int checksum(final int position) {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer view = this.buffer.duplicate();
+        view.limit(position + this.recordSize).position(position + OFFSET_SEQUENCE);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,475 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.TradeRoom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A TradeStore backed by an embedded SQLite database, using the driver bundled
+// with the server.
+public final class SqliteTradeStore implements TradeStore {
+    
+    private static final String DRIVER = "org.sqlite.JDBC";
+    
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS server_stop (id INTEGER PRIMARY KEY CHECK (id = 0), time INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS trade_rooms (name TEXT PRIMARY KEY, record BLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS backup_inventories (room TEXT PRIMARY KEY, items_1 BLOB NOT NULL, items_2 BLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS virtual_backups (uuid TEXT PRIMARY KEY, items BLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS offline_traders (uuid TEXT PRIMARY KEY, data BLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS offline_extras (id INTEGER PRIMARY KEY AUTOINCREMENT, uuid TEXT NOT NULL, items BLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS offline_extras_uuid ON offline_extras (uuid)"
+    };
+    
+    private final Server server;
+    private final File file;
+    private final Logger logger;
+    private final List<Operation> pending;
+    
+    private Connection connection;
+    private PreparedStatement saveServerStop;
+    private PreparedStatement saveRoom;
+    private PreparedStatement saveBackup;
+    private PreparedStatement deleteBackup;
+    private PreparedStatement saveVirtualBackup;
+    private PreparedStatement deleteVirtualBackup;
+    private PreparedStatement saveOffline;
+    private PreparedStatement appendExtras;
+    private PreparedStatement deleteOffline;
+    private PreparedStatement deleteExtras;
+    
+    public SqliteTradeStore(@NotNull final Server server, @NotNull final File file, @NotNull final Logger logger) {
+        this.server = server;
+        this.file = file;
+        this.logger = logger;
+        this.pending = new ArrayList<Operation>();
+        
+        this.connection = null;
+    }
+    
+    @Override
+    public synchronized void open() throws IOException {
+        
+        if (this.connection != null) {
+            throw new IOException("Database is already open at " + this.file.getPath());
+        }
+        
+        try {
+            Class.forName(DRIVER);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("SQLite driver " + DRIVER + " is not available on this server.", e);
+        }
+        
+        try {
+            this.connection = DriverManager.getConnection("jdbc:sqlite:" + this.file.getAbsolutePath());
+            try (final Statement statement = this.connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = FULL");
+                for (final String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            this.connection.setAutoCommit(false);
+            
+            this.saveServerStop = this.connection.prepareStatement("INSERT OR REPLACE INTO server_stop (id, time) VALUES (0, ?)");
+            this.saveRoom = this.connection.prepareStatement("INSERT OR REPLACE INTO trade_rooms (name, record) VALUES (?, ?)");
+            this.saveBackup = this.connection.prepareStatement("INSERT OR REPLACE INTO backup_inventories (room, items_1, items_2) VALUES (?, ?, ?)");
+            this.deleteBackup = this.connection.prepareStatement("DELETE FROM backup_inventories WHERE room = ?");
+            this.saveVirtualBackup = this.connection.prepareStatement("INSERT OR REPLACE INTO virtual_backups (uuid, items) VALUES (?, ?)");
+            this.deleteVirtualBackup = this.connection.prepareStatement("DELETE FROM virtual_backups WHERE uuid = ?");
+            this.saveOffline = this.connection.prepareStatement("INSERT OR REPLACE INTO offline_traders (uuid, data) VALUES (?, ?)");
+            this.appendExtras = this.connection.prepareStatement("INSERT INTO offline_extras (uuid, items) VALUES (?, ?)");
+            this.deleteOffline = this.connection.prepareStatement("DELETE FROM offline_traders WHERE uuid = ?");
+            this.deleteExtras = this.connection.prepareStatement("DELETE FROM offline_extras WHERE uuid = ?");
+        } catch (final SQLException e) {
+            this.closeQuietly();
+            throw new IOException("Unable to open database at " + this.file.getPath(), e);
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        
+        final List<Operation> batch;
+        synchronized (this.pending) {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<Operation>(this.pending);
+            this.pending.clear();
+        }
+        
+        synchronized (this) {
+            
+            if (this.connection == null) {
+                throw new IOException("Database is not open at " + this.file.getPath());
+            }
+            
+            try {
+                for (final Operation operation : batch) {
+                    operation.execute();
+                }
+                this.connection.commit();
+            } catch (final SQLException e) {
+                
+                try {
+                    this.connection.rollback();
+                } catch (final SQLException e1) {
+                    e.addSuppressed(e1);
+                }
+                
+                // Keep the batch ahead of anything queued since, to retry on the next flush.
+                synchronized (this.pending) {
+                    this.pending.addAll(0, batch);
+                }
+                throw new IOException("Unable to commit " + batch.size() + " changes to the database at " + this.file.getPath(), e);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        
+        if (this.connection == null) {
+            return;
+        }
+        
+        synchronized (this.pending) {
+            if (!this.pending.isEmpty()) {
+                this.logger.log(Level.WARNING, "Closing the database at " + this.file.getPath() + " with " + this.pending.size() + " uncommitted changes.");
+            }
+        }
+        
+        try {
+            this.connection.close();
+        } catch (final SQLException e) {
+            throw new IOException("Unable to close database at " + this.file.getPath(), e);
+        } finally {
+            this.connection = null;
+        }
+    }
+    
+    private void closeQuietly() {
+        
+        if (this.connection == null) {
+            return;
+        }
+        
+        try {
+            this.connection.close();
+        } catch (final SQLException e) {
+            this.logger.log(Level.FINE, "Unable to close database at " + this.file.getPath(), e);
+        }
+        this.connection = null;
+    }
+    
+    private void queue(@NotNull final Operation operation) {
+        synchronized (this.pending) {
+            this.pending.add(operation);
+        }
+    }
+    
+    /////////////////////////
+    // SERVER STOP & ROOMS //
+    /////////////////////////
+    
+    @Override
+    public synchronized long loadServerStop() {
+        
+        try (final Statement statement = this.connection.createStatement(); final ResultSet result = statement.executeQuery("SELECT time FROM server_stop WHERE id = 0")) {
+            return result.next() ? result.getLong(1) : -1L;
+        } catch (final SQLException e) {
+            this.logger.log(Level.WARNING, "Unable to load the server stop time from the database at " + this.file.getPath());
+            this.logger.log(Level.WARNING, "Treating the server stop time as unknown.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return -1L;
+        }
+    }
+    
+    @Override
+    public void saveServerStop(final long time) {
+        this.queue(() -> {
+            this.saveServerStop.setLong(1, time);
+            this.saveServerStop.executeUpdate();
+        });
+    }
+    
+    @Override
+    @NotNull
+    public synchronized List<TradeRoom> loadRooms(final long offlineTime) {
+        
+        final List<TradeRoom> rooms = new ArrayList<TradeRoom>();
+        try (final Statement statement = this.connection.createStatement(); final ResultSet result = statement.executeQuery("SELECT name, record FROM trade_rooms")) {
+            while (result.next()) {
+                
+                final String name = result.getString(1);
+                final byte[] record = result.getBytes(2);
+                if (record.length != TradeRoom.RECORD_SIZE) {
+                    this.logger.log(Level.WARNING, "Trade room " + name + " has a record of " + record.length + " bytes, expected " + TradeRoom.RECORD_SIZE + ".");
+                    this.logger.log(Level.WARNING, "Skipping trade room.");
+                    continue;
+                }
+                
+                try {
+                    rooms.add(new TradeRoom(this.server, offlineTime, name, ByteBuffer.wrap(record)));
+                } catch (final IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize trade room " + name + " from the database.");
+                    this.logger.log(Level.WARNING, "Skipping trade room.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                }
+            }
+        } catch (final SQLException e) {
+            this.logger.log(Level.WARNING, "Unable to load trade rooms from the database at " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        return rooms;
+    }
+    
+    @Override
+    public void saveRoom(@NotNull final TradeRoom room) {
+        
+        final String name = room.getName().toLowerCase();
+        final byte[] record = room.toRecord();
+        this.queue(() -> {
+            this.saveRoom.setString(1, name);
+            this.saveRoom.setBytes(2, record);
+            this.saveRoom.executeUpdate();
+        });
+    }
+    
+    ////////////////////////
+    // BACKUP INVENTORIES //
+    ////////////////////////
+    
+    @Override
+    @Nullable
+    public synchronized ItemStack[][] loadBackup(@NotNull final String roomName) {
+        
+        try (final PreparedStatement statement = this.connection.prepareStatement("SELECT items_1, items_2 FROM backup_inventories WHERE room = ?")) {
+            statement.setString(1, roomName);
+            try (final ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+                return new ItemStack[][] {BinaryCodec.decodeItems(result.getBytes(1)), BinaryCodec.decodeItems(result.getBytes(2))};
+            }
+        } catch (final SQLException | IOException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load backup inventory for trade room " + roomName + " from the database.");
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+    }
+    
+    @Override
+    public void saveBackup(@NotNull final String roomName, @NotNull final ItemStack[] items1, @NotNull final ItemStack[] items2) throws IOException {
+        
+        final byte[] data1 = BinaryCodec.encodeItems(items1);
+        final byte[] data2 = BinaryCodec.encodeItems(items2);
+        this.queue(() -> {
+            this.saveBackup.setString(1, roomName);
+            this.saveBackup.setBytes(2, data1);
+            this.saveBackup.setBytes(3, data2);
+            this.saveBackup.executeUpdate();
+        });
+    }
+    
+    @Override
+    public void deleteBackup(@NotNull final String roomName) {
+        this.queue(() -> {
+            this.deleteBackup.setString(1, roomName);
+            this.deleteBackup.executeUpdate();
+        });
+    }
+    
+    @Override
+    @NotNull
+    public synchronized Map<UUID, ItemStack[]> loadVirtualBackups() {
+        
+        final Map<UUID, ItemStack[]> backups = new HashMap<UUID, ItemStack[]>();
+        try (final Statement statement = this.connection.createStatement(); final ResultSet result = statement.executeQuery("SELECT uuid, items FROM virtual_backups")) {
+            while (result.next()) {
+                
+                final String uuid = result.getString(1);
+                try {
+                    backups.put(UUID.fromString(uuid), BinaryCodec.decodeItems(result.getBytes(2)));
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize virtual trade backup from the database for UUID " + uuid);
+                    this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                }
+            }
+        } catch (final SQLException e) {
+            this.logger.log(Level.WARNING, "Unable to load virtual trade backups from the database at " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        return backups;
+    }
+    
+    @Override
+    public void saveVirtualBackup(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final byte[] data = BinaryCodec.encodeItems(items);
+        this.queue(() -> {
+            this.saveVirtualBackup.setString(1, uniqueId.toString());
+            this.saveVirtualBackup.setBytes(2, data);
+            this.saveVirtualBackup.executeUpdate();
+        });
+    }
+    
+    @Override
+    public void deleteVirtualBackup(@NotNull final UUID uniqueId) {
+        this.queue(() -> {
+            this.deleteVirtualBackup.setString(1, uniqueId.toString());
+            this.deleteVirtualBackup.executeUpdate();
+        });
+    }
+    
+    //////////////////////
+    // OFFLINE DELIVERY //
+    //////////////////////
+    
+    @Override
+    @NotNull
+    public synchronized List<Offline> loadOfflines(final long offlineTime) {
+        
+        final List<Offline> offlines = new ArrayList<Offline>();
+        try (final Statement statement = this.connection.createStatement(); final ResultSet result = statement.executeQuery("SELECT uuid, data FROM offline_traders")) {
+            while (result.next()) {
+                
+                final String uuid = result.getString(1);
+                try {
+                    offlines.add(BinaryCodec.decodeOffline(offlineTime, UUID.fromString(uuid), result.getBytes(2)));
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize offline trader from the database for UUID " + uuid);
+                    this.logger.log(Level.WARNING, "Skipping offline trader.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                }
+            }
+        } catch (final SQLException e) {
+            this.logger.log(Level.WARNING, "Unable to load offline traders from the database at " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        return offlines;
+    }
+    
+    @Override
+    @NotNull
+    public synchronized Map<UUID, List<ItemStack>> loadExtras() {
+        
+        final Map<UUID, List<ItemStack>> extras = new HashMap<UUID, List<ItemStack>>();
+        try (final Statement statement = this.connection.createStatement(); final ResultSet result = statement.executeQuery("SELECT uuid, items FROM offline_extras ORDER BY id")) {
+            while (result.next()) {
+                
+                final String uuid = result.getString(1);
+                final UUID uniqueId;
+                final ItemStack[] items;
+                try {
+                    uniqueId = UUID.fromString(uuid);
+                    items = BinaryCodec.decodeItems(result.getBytes(2));
+                } catch (final IOException | IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to deserialize extra inventory from the database for UUID " + uuid);
+                    this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                    continue;
+                }
+                
+                final List<ItemStack> stacks = extras.computeIfAbsent(uniqueId, key -> new ArrayList<ItemStack>());
+                for (final ItemStack item : items) {
+                    if (item != null) {
+                        stacks.add(item);
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            this.logger.log(Level.WARNING, "Unable to load extra inventories from the database at " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        return extras;
+    }
+    
+    @Override
+    public void saveOffline(@NotNull final Offline offline) throws IOException {
+        
+        final String uuid = offline.getUniqueId().toString();
+        final byte[] data = BinaryCodec.encodeOffline(offline);
+        this.queue(() -> {
+            this.saveOffline.setString(1, uuid);
+            this.saveOffline.setBytes(2, data);
+            this.saveOffline.executeUpdate();
+        });
+    }
+    
+    @Override
+    public void appendExtras(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException {
+        
+        final String uuid = uniqueId.toString();
+        final byte[] data = BinaryCodec.encodeItems(items);
+        this.queue(() -> {
+            this.appendExtras.setString(1, uuid);
+            this.appendExtras.setBytes(2, data);
+            this.appendExtras.executeUpdate();
+        });
+    }
+    
+    @Override
+    public void deleteOffline(@NotNull final UUID uniqueId) {
+        
+        final String uuid = uniqueId.toString();
+        this.queue(() -> {
+            this.deleteOffline.setString(1, uuid);
+            this.deleteOffline.executeUpdate();
+            this.deleteExtras.setString(1, uuid);
+            this.deleteExtras.executeUpdate();
+        });
+    }
+    
+    // A queued change, executed inside the transaction of a flush.
+    private interface Operation {
+        void execute() throws SQLException;
+    }
+}
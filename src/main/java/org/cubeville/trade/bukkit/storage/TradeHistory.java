@@ -0,0 +1,542 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bukkit.Material;
+import org.cubeville.trade.bukkit.traderoom.CompleteReason;
+import org.cubeville.trade.bukkit.traderoom.TradeRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// An append-only file of every finished trade, with in-memory indexes by
+// player UUID, by Material and by time, for moderators to look up past trades.
+// Record layout: int length, int crc, byte[length] payload, where the CRC
+// covers the payload.
+public final class TradeHistory {
+    
+    private static final int MAGIC = 0x43565448;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    
+    private static final long CLOSE_SECONDS = 5L;
+    
+    private final File file;
+    private final Logger logger;
+    private final ExecutorService executor;
+    
+    // Only used by the history thread.
+    private FileChannel channel;
+    private long size;
+    private long[] positions;
+    private long[] times;
+    private int count;
+    private final Map<UUID, IntList> byPlayer;
+    private final Map<Material, IntList> byMaterial;
+    
+    public TradeHistory(@NotNull final File file, @NotNull final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "CVTrade-TradeHistory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        this.channel = null;
+        this.size = 0L;
+        this.positions = new long[1024];
+        this.times = new long[1024];
+        this.count = 0;
+        this.byPlayer = new HashMap<UUID, IntList>();
+        this.byMaterial = new EnumMap<Material, IntList>(Material.class);
+    }
+    
+    // Opens the history file and rebuilds the indexes in the background.
+    public void open() {
+        this.executor.execute(() -> {
+            try {
+                this.openFile();
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE OPENING TRADE HISTORY");
+                this.logger.log(Level.WARNING, "File: " + this.file.getPath());
+                this.logger.log(Level.WARNING, "Trade history will not be recorded until the next restart.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                this.closeFile();
+            }
+        });
+    }
+    
+    public void close() {
+        
+        this.executor.execute(this::closeFile);
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(CLOSE_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public void add(@NotNull final TradeRecord record) {
+        this.executor.execute(() -> {
+            try {
+                this.append(record);
+            } catch (final IOException e) {
+                this.logger.log(Level.WARNING, "ISSUE WHILE ADDING TO TRADE HISTORY");
+                this.logger.log(Level.WARNING, "File: " + this.file.getPath());
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        });
+    }
+    
+    // Finds the trades matching every given filter, newest first.
+    @NotNull
+    public CompletableFuture<Page> query(@Nullable final UUID uniqueId, @Nullable final Material material, final long since, final int page, final int pageSize) {
+        
+        final CompletableFuture<Page> future = new CompletableFuture<Page>();
+        this.executor.execute(() -> {
+            try {
+                future.complete(this.find(uniqueId, material, since, page, pageSize));
+            } catch (final IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+    
+    ///////////////////
+    // QUERY METHODS //
+    ///////////////////
+    
+    @NotNull
+    private Page find(@Nullable final UUID uniqueId, @Nullable final Material material, final long since, final int page, final int pageSize) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Trade history is not open at " + this.file.getPath());
+        }
+        
+        // Scan the shortest index, and check the other one alongside it.
+        IntList scan = null;
+        IntList check = null;
+        if (uniqueId != null) {
+            scan = this.byPlayer.get(uniqueId);
+            if (scan == null) {
+                return new Page(page, 0, Collections.emptyList());
+            }
+        }
+        if (material != null) {
+            final IntList materialList = this.byMaterial.get(material);
+            if (materialList == null) {
+                return new Page(page, 0, Collections.emptyList());
+            }
+            if (scan == null) {
+                scan = materialList;
+            } else if (materialList.size < scan.size) {
+                check = scan;
+                scan = materialList;
+            } else {
+                check = materialList;
+            }
+        }
+        
+        final int first = page * pageSize;
+        final int[] found = new int[pageSize];
+        int foundCount = 0;
+        int total = 0;
+        
+        int checkIndex = check == null ? -1 : check.size - 1;
+        for (int index = (scan == null ? this.count : scan.size) - 1; index >= 0; index--) {
+            
+            final int number = scan == null ? index : scan.values[index];
+            if (this.times[number] < since) {
+                break;
+            }
+            
+            if (check != null) {
+                while (checkIndex >= 0 && check.values[checkIndex] > number) {
+                    checkIndex--;
+                }
+                if (checkIndex < 0) {
+                    break;
+                }
+                if (check.values[checkIndex] != number) {
+                    continue;
+                }
+            }
+            
+            if (total >= first && foundCount < pageSize) {
+                found[foundCount++] = number;
+            }
+            total++;
+        }
+        
+        final List<TradeRecord> records = new ArrayList<TradeRecord>(foundCount);
+        for (int index = 0; index < foundCount; index++) {
+            records.add(decode(this.readPayload(this.positions[found[index]])));
+        }
+        return new Page(page, total, records);
+    }
+    
+    ///////////////////
+    // FILE HANDLING //
+    ///////////////////
+    
+    private void openFile() throws IOException {
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (this.channel.size() == 0L) {
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            this.write(header, 0L);
+            this.size = FILE_HEADER_SIZE;
+            return;
+        }
+        
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        this.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Trade history file at " + this.file.getPath() + " is not a trade history file.");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Trade history file at " + this.file.getPath() + " has unsupported version " + version + ".");
+        }
+        
+        final long fileSize = this.channel.size();
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = FILE_HEADER_SIZE;
+        
+        while (position < fileSize) {
+            
+            if (fileSize - position < RECORD_HEADER_SIZE) {
+                this.truncate(position, "incomplete record header");
+                break;
+            }
+            
+            recordHeader.clear();
+            this.read(recordHeader, position);
+            recordHeader.flip();
+            
+            final int length = recordHeader.getInt();
+            final int crc = recordHeader.getInt();
+            if (length < 0 || fileSize - position - RECORD_HEADER_SIZE < length) {
+                this.truncate(position, "incomplete record payload");
+                break;
+            }
+            
+            final ByteBuffer payload = ByteBuffer.allocate(length);
+            this.read(payload, position + RECORD_HEADER_SIZE);
+            if (checksum(payload.array()) != crc) {
+                this.truncate(position, "checksum mismatch");
+                break;
+            }
+            
+            this.index(position, decode(payload.array()));
+            position += RECORD_HEADER_SIZE + length;
+        }
+        
+        this.size = position;
+        this.logger.log(Level.INFO, "Loaded " + this.count + " trades from the trade history.");
+    }
+    
+    private void closeFile() {
+        
+        if (this.channel == null) {
+            return;
+        }
+        
+        try {
+            this.channel.force(true);
+            this.channel.close();
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE CLOSING TRADE HISTORY");
+            this.logger.log(Level.WARNING, "File: " + this.file.getPath());
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        this.channel = null;
+    }
+    
+    private void truncate(final long position, @NotNull final String reason) throws IOException {
+        
+        this.logger.log(Level.WARNING, "Trade history file at " + this.file.getPath() + " has a damaged record at position " + position + " (" + reason + ").");
+        this.logger.log(Level.WARNING, "Discarding " + (this.channel.size() - position) + " bytes from the end of the trade history.");
+        this.channel.truncate(position);
+        this.channel.force(true);
+    }
+    
+    private void append(@NotNull final TradeRecord record) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Trade history is not open at " + this.file.getPath());
+        }
+        
+        final byte[] payload = encode(record);
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        buffer.flip();
+        
+        final long position = this.size;
+        this.write(buffer, position);
+        this.size = position + RECORD_HEADER_SIZE + payload.length;
+        this.index(position, record);
+    }
+    
+    private void index(final long position, @NotNull final TradeRecord record) {
+        
+        if (this.count == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, this.count * 2);
+            this.times = Arrays.copyOf(this.times, this.count * 2);
+        }
+        
+        final int number = this.count++;
+        this.positions[number] = position;
+        this.times[number] = record.getTime();
+        
+        if (record.getUniqueId1() != null) {
+            this.byPlayer.computeIfAbsent(record.getUniqueId1(), key -> new IntList()).add(number);
+        }
+        if (record.getUniqueId2() != null) {
+            this.byPlayer.computeIfAbsent(record.getUniqueId2(), key -> new IntList()).add(number);
+        }
+        
+        // Items inside containers are indexed as well, so they can be found.
+        final Set<Material> materials = EnumSet.noneOf(Material.class);
+        materials.addAll(record.getItems1().keySet());
+        materials.addAll(record.getItems2().keySet());
+        materials.addAll(record.getContents());
+        for (final Material material : materials) {
+            this.byMaterial.computeIfAbsent(material, key -> new IntList()).add(number);
+        }
+    }
+    
+    @NotNull
+    private byte[] readPayload(final long position) throws IOException {
+        
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        this.read(length, position);
+        length.flip();
+        
+        final ByteBuffer payload = ByteBuffer.allocate(length.getInt());
+        this.read(payload, position + RECORD_HEADER_SIZE);
+        return payload.array();
+    }
+    
+    private void read(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of trade history file at " + this.file.getPath());
+            }
+            offset += read;
+        }
+    }
+    
+    private void write(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += this.channel.write(buffer, offset);
+        }
+    }
+    
+    private static int checksum(@NotNull final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    //////////////
+    // ENCODING //
+    //////////////
+    
+    @NotNull
+    private static byte[] encode(@NotNull final TradeRecord record) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        
+        output.writeLong(record.getTime());
+        output.writeUTF(record.getReason().name());
+        output.writeUTF(record.getRoomName() == null ? "" : record.getRoomName());
+        encodeTrader(output, record.getUniqueId1(), record.getName1(), record.getItems1());
+        encodeTrader(output, record.getUniqueId2(), record.getName2(), record.getItems2());
+        
+        output.writeInt(record.getContents().size());
+        for (final Material material : record.getContents()) {
+            output.writeUTF(material.name());
+        }
+        
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    private static void encodeTrader(@NotNull final DataOutputStream output, @Nullable final UUID uniqueId, @Nullable final String name, @NotNull final Map<Material, Integer> items) throws IOException {
+        
+        output.writeBoolean(uniqueId != null);
+        if (uniqueId != null) {
+            output.writeLong(uniqueId.getMostSignificantBits());
+            output.writeLong(uniqueId.getLeastSignificantBits());
+            output.writeUTF(name == null ? "" : name);
+        }
+        
+        output.writeInt(items.size());
+        for (final Map.Entry<Material, Integer> entry : items.entrySet()) {
+            output.writeUTF(entry.getKey().name());
+            output.writeInt(entry.getValue().intValue());
+        }
+    }
+    
+    @NotNull
+    private static TradeRecord decode(@NotNull final byte[] payload) throws IOException {
+        
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        
+        final long time = input.readLong();
+        final String reasonName = input.readUTF();
+        final CompleteReason reason;
+        try {
+            reason = CompleteReason.valueOf(reasonName);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Complete reason " + reasonName + " is not a valid complete reason for trade.", e);
+        }
+        final String roomName = input.readUTF();
+        
+        final UUID uniqueId1 = input.readBoolean() ? new UUID(input.readLong(), input.readLong()) : null;
+        final String name1 = uniqueId1 == null ? null : input.readUTF();
+        final Map<Material, Integer> items1 = decodeItems(input);
+        
+        final UUID uniqueId2 = input.readBoolean() ? new UUID(input.readLong(), input.readLong()) : null;
+        final String name2 = uniqueId2 == null ? null : input.readUTF();
+        final Map<Material, Integer> items2 = decodeItems(input);
+        
+        // Records written before the container contents were kept end here.
+        final Set<Material> contents = EnumSet.noneOf(Material.class);
+        if (input.available() > 0) {
+            final int size = input.readInt();
+            for (int index = 0; index < size; index++) {
+                final Material material = Material.getMaterial(input.readUTF());
+                if (material != null) {
+                    contents.add(material);
+                }
+            }
+        }
+        
+        return new TradeRecord(time, reason, roomName.isEmpty() ? null : roomName, uniqueId1, name1, items1, uniqueId2, name2, items2, contents);
+    }
+    
+    @NotNull
+    private static Map<Material, Integer> decodeItems(@NotNull final DataInputStream input) throws IOException {
+        
+        final Map<Material, Integer> items = new EnumMap<Material, Integer>(Material.class);
+        final int size = input.readInt();
+        for (int index = 0; index < size; index++) {
+            
+            final String materialName = input.readUTF();
+            final int amount = input.readInt();
+            
+            // Materials removed by a server update are skipped.
+            final Material material = Material.getMaterial(materialName);
+            if (material != null) {
+                items.merge(material, amount, Integer::sum);
+            }
+        }
+        return items;
+    }
+    
+    // One page of the results of a query.
+    public static final class Page {
+        
+        private final int page;
+        private final int total;
+        private final List<TradeRecord> records;
+        
+        private Page(final int page, final int total, @NotNull final List<TradeRecord> records) {
+            this.page = page;
+            this.total = total;
+            this.records = Collections.unmodifiableList(records);
+        }
+        
+        public int getPage() {
+            return this.page;
+        }
+        
+        public int getTotal() {
+            return this.total;
+        }
+        
+        @NotNull
+        public List<TradeRecord> getRecords() {
+            return this.records;
+        }
+    }
+    
+    private static final class IntList {
+        
+        private int[] values;
+        private int size;
+        
+        private IntList() {
+            this.values = new int[8];
+            this.size = 0;
+        }
+        
+        private void add(final int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+    }
+}
@@ -0,0 +1,663 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.traderoom.CompleteReason;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.Trader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Write-ahead journal for finishing trades. A trade is prepared before it
+// moves any items, applied once they moved, and committed once every record it
+// saved is durable.
+// Record layout: int length, byte type, long id, int crc, byte[length]
+// payload, where the CRC covers the type, the id and the payload.
+public final class TradeJournal {
+    
+    private static final int MAGIC = 0x4356544A;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 4;
+    
+    private static final byte TYPE_PREPARE = 1;
+    private static final byte TYPE_COMMIT = 2;
+    private static final byte TYPE_APPLY = 3;
+    
+    private static final long RESET_MIN_BYTES = 1024L * 1024L;
+    
+    private final File file;
+    private final Logger logger;
+    private final Map<Long, Entry> pending;
+    
+    private FileChannel channel;
+    private long size;
+    private long nextId;
+    
+    public TradeJournal(@NotNull final File file, @NotNull final Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.pending = new LinkedHashMap<Long, Entry>();
+        
+        this.channel = null;
+        this.size = 0L;
+        this.nextId = 1L;
+    }
+    
+    public synchronized void open() throws IOException {
+        
+        if (this.channel != null) {
+            throw new IOException("Trade journal is already open at " + this.file.getPath());
+        }
+        
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (this.channel.size() == 0L) {
+            this.reset();
+            return;
+        }
+        
+        this.scan();
+    }
+    
+    public synchronized void close() throws IOException {
+        
+        if (this.channel == null) {
+            return;
+        }
+        
+        this.channel.force(true);
+        this.channel.close();
+        this.channel = null;
+        this.pending.clear();
+    }
+    
+    // Gets every trade that was prepared but not committed.
+    @NotNull
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<Entry>(this.pending.values());
+    }
+    
+    // Journals a trade that is about to move its items. It is not forced, as
+    // nothing the trade changes can reach the disk before it is applied.
+    public synchronized long prepare(@Nullable final String roomName, @NotNull final CompleteReason reason, @Nullable final Trader trader1, @NotNull final ItemStack[] items1, @Nullable final Trader trader2, @NotNull final ItemStack[] items2) throws IOException {
+        
+        final Entry entry = new Entry(this.nextId, roomName, reason, trader1 == null ? null : trader1.getUniqueId(), trader1 == null ? null : trader1.getName(), items1, trader2 == null ? null : trader2.getUniqueId(), trader2 == null ? null : trader2.getName(), items2);
+        this.append(this.record(TYPE_PREPARE, entry.id, encode(entry)));
+        
+        // Pending from here on, so the journal is not reset under it.
+        this.pending.put(entry.id, entry);
+        this.nextId++;
+        return entry.id;
+    }
+    
+    // Journals where the items of each trader went once a trade moved them,
+    // and waits for it to reach the disk. Must be called before anything the
+    // trade changed is saved.
+    public void apply(final long id, @Nullable final Delivery delivery1, @Nullable final Delivery delivery2) throws IOException {
+        
+        final FileChannel channel;
+        synchronized (this) {
+            final Entry entry = this.pending.get(id);
+            if (entry == null) {
+                throw new IOException("Trade " + id + " is not pending in the trade journal at " + this.file.getPath());
+            }
+            this.append(this.record(TYPE_APPLY, id, encode(delivery1, delivery2)));
+            this.pending.put(id, entry.apply(delivery1, delivery2));
+            channel = this.channel;
+        }
+        
+        // Forced outside the lock, so other trades do not wait on it.
+        try {
+            channel.force(false);
+        } catch (final IOException e) {
+            
+            // The trade goes ahead unjournaled, so it must not be replayed.
+            synchronized (this) {
+                this.pending.remove(id);
+                try {
+                    this.append(this.record(TYPE_COMMIT, id, new byte[0]));
+                } catch (final IOException e1) {
+                    e.addSuppressed(e1);
+                }
+            }
+            throw e;
+        }
+    }
+    
+    // Commits trades whose results are durable, with a single write. Only
+    // called by one thread at a time.
+    public void commit(@NotNull final Collection<Long> ids) throws IOException {
+        
+        if (ids.isEmpty()) {
+            return;
+        }
+        
+        final FileChannel channel;
+        synchronized (this) {
+            
+            final List<ByteBuffer> records = new ArrayList<ByteBuffer>(ids.size());
+            int length = 0;
+            for (final long id : ids) {
+                final ByteBuffer record = this.record(TYPE_COMMIT, id, new byte[0]);
+                records.add(record);
+                length += record.remaining();
+            }
+            
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (final ByteBuffer record : records) {
+                buffer.put(record);
+            }
+            buffer.flip();
+            this.append(buffer);
+            channel = this.channel;
+        }
+        
+        // Forced outside the lock, so prepares do not wait on it.
+        channel.force(false);
+        
+        synchronized (this) {
+            for (final long id : ids) {
+                this.pending.remove(id);
+            }
+            
+            if (this.channel != null && this.pending.isEmpty() && this.size >= RESET_MIN_BYTES) {
+                this.reset();
+            }
+        }
+    }
+    
+    // Forgets every pending trade, once they have been recovered.
+    public synchronized void clear() throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Trade journal is not open at " + this.file.getPath());
+        }
+        
+        this.pending.clear();
+        this.reset();
+    }
+    
+    ///////////////////
+    // FILE HANDLING //
+    ///////////////////
+    
+    private void scan() throws IOException {
+        
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        this.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Trade journal file at " + this.file.getPath() + " is not a trade journal file.");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Trade journal file at " + this.file.getPath() + " has unsupported version " + version + ".");
+        }
+        
+        final long fileSize = this.channel.size();
+        final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = FILE_HEADER_SIZE;
+        
+        while (position < fileSize) {
+            
+            if (fileSize - position < RECORD_HEADER_SIZE) {
+                this.truncate(position, "incomplete record header");
+                break;
+            }
+            
+            recordHeader.clear();
+            this.read(recordHeader, position);
+            recordHeader.flip();
+            
+            final int length = recordHeader.getInt();
+            final byte type = recordHeader.get();
+            final long id = recordHeader.getLong();
+            final int crc = recordHeader.getInt();
+            
+            if (length < 0 || fileSize - position - RECORD_HEADER_SIZE < length) {
+                this.truncate(position, "incomplete record payload");
+                break;
+            }
+            
+            final ByteBuffer payload = ByteBuffer.allocate(length);
+            this.read(payload, position + RECORD_HEADER_SIZE);
+            if (checksum(type, id, payload.array()) != crc) {
+                this.truncate(position, "checksum mismatch");
+                break;
+            }
+            
+            if (type == TYPE_PREPARE) {
+                try {
+                    this.pending.put(id, decode(id, payload.array()));
+                } catch (final IllegalArgumentException e) {
+                    this.logger.log(Level.WARNING, "Unable to decode prepared trade " + id + " in the trade journal at " + this.file.getPath());
+                    this.logger.log(Level.WARNING, "Skipping trade.");
+                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                }
+            } else if (type == TYPE_APPLY) {
+                final Entry entry = this.pending.get(id);
+                if (entry != null) {
+                    try {
+                        this.pending.put(id, decodeApply(entry, payload.array()));
+                    } catch (final IllegalArgumentException e) {
+                        this.logger.log(Level.WARNING, "Unable to decode applied trade " + id + " in the trade journal at " + this.file.getPath());
+                        this.logger.log(Level.WARNING, "Skipping trade.");
+                        this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                        this.pending.remove(id);
+                    }
+                }
+            } else if (type == TYPE_COMMIT) {
+                this.pending.remove(id);
+            } else {
+                throw new IOException("Unknown trade journal record type " + type + " at position " + position + " in " + this.file.getPath());
+            }
+            
+            this.nextId = Math.max(this.nextId, id + 1L);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        
+        this.size = position;
+    }
+    
+    private void reset() throws IOException {
+        
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        this.channel.truncate(0L);
+        this.write(header, 0L);
+        this.channel.force(true);
+        this.size = FILE_HEADER_SIZE;
+    }
+    
+    private void truncate(final long position, @NotNull final String reason) throws IOException {
+        
+        this.logger.log(Level.WARNING, "Trade journal file at " + this.file.getPath() + " has a damaged record at position " + position + " (" + reason + ").");
+        this.logger.log(Level.WARNING, "Discarding " + (this.channel.size() - position) + " bytes from the end of the trade journal.");
+        this.channel.truncate(position);
+        this.channel.force(true);
+    }
+    
+    @NotNull
+    private ByteBuffer record(final byte type, final long id, @NotNull final byte[] payload) {
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.put(type);
+        buffer.putLong(id);
+        buffer.putInt(checksum(type, id, payload));
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+    
+    private void append(@NotNull final ByteBuffer buffer) throws IOException {
+        
+        if (this.channel == null) {
+            throw new IOException("Trade journal is not open at " + this.file.getPath());
+        }
+        
+        final long position = this.size;
+        final int length = buffer.remaining();
+        this.write(buffer, position);
+        this.size = position + length;
+    }
+    
+    private void read(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = this.channel.read(buffer, offset);
+            if (read == -1) {
+                throw new IOException("Unexpected end of trade journal file at " + this.file.getPath());
+            }
+            offset += read;
+        }
+    }
+    
+    private void write(@NotNull final ByteBuffer buffer, final long position) throws IOException {
+        
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += this.channel.write(buffer, offset);
+        }
+    }
+    
+    private static int checksum(final byte type, final long id, @NotNull final byte[] payload) {
+        
+        final ByteBuffer key = ByteBuffer.allocate(1 + 8);
+        key.put(type);
+        key.putLong(id);
+        
+        final CRC32 crc = new CRC32();
+        crc.update(key.array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    //////////////
+    // ENCODING //
+    //////////////
+    
+    @NotNull
+    private static byte[] encode(@NotNull final Entry entry) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        
+        output.writeBoolean(entry.roomName != null);
+        if (entry.roomName != null) {
+            output.writeUTF(entry.roomName);
+        }
+        output.writeUTF(entry.reason.name());
+        writeTrader(output, entry.uniqueId1, entry.name1);
+        BinaryCodec.writeItems(output, entry.items1);
+        writeTrader(output, entry.uniqueId2, entry.name2);
+        BinaryCodec.writeItems(output, entry.items2);
+        
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    @NotNull
+    private static byte[] encode(@Nullable final Delivery delivery1, @Nullable final Delivery delivery2) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        
+        writeDelivery(output, delivery1);
+        writeDelivery(output, delivery2);
+        
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    private static void writeDelivery(@NotNull final DataOutputStream output, @Nullable final Delivery delivery) throws IOException {
+        
+        if (delivery == null) {
+            output.writeByte(Delivery.TARGET_NONE);
+            return;
+        }
+        
+        output.writeByte(delivery.target);
+        if (delivery.target != Delivery.TARGET_OFFLINE) {
+            return;
+        }
+        
+        output.writeUTF(delivery.reason == null ? "" : delivery.reason.name());
+        output.writeLong(delivery.logoutTime);
+        output.writeBoolean(delivery.items != null);
+        if (delivery.items != null) {
+            BinaryCodec.writeItems(output, delivery.items);
+        }
+        output.writeBoolean(delivery.extra != null);
+        if (delivery.extra != null) {
+            BinaryCodec.writeItems(output, delivery.extra);
+        }
+    }
+    
+    private static void writeTrader(@NotNull final DataOutputStream output, @Nullable final UUID uniqueId, @Nullable final String name) throws IOException {
+        
+        output.writeBoolean(uniqueId != null);
+        if (uniqueId != null) {
+            BinaryCodec.writeUniqueId(output, uniqueId);
+            output.writeUTF(name == null ? "" : name);
+        }
+    }
+    
+    @NotNull
+    private static Entry decode(final long id, @NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        
+        final String roomName = input.readBoolean() ? input.readUTF() : null;
+        final CompleteReason reason = CompleteReason.valueOf(input.readUTF());
+        final UUID uniqueId1 = input.readBoolean() ? BinaryCodec.readUniqueId(input) : null;
+        final String name1 = uniqueId1 == null ? null : input.readUTF();
+        final ItemStack[] items1 = BinaryCodec.readItems(input);
+        final UUID uniqueId2 = input.readBoolean() ? BinaryCodec.readUniqueId(input) : null;
+        final String name2 = uniqueId2 == null ? null : input.readUTF();
+        final ItemStack[] items2 = BinaryCodec.readItems(input);
+        
+        return new Entry(id, roomName, reason, uniqueId1, name1, items1, uniqueId2, name2, items2);
+    }
+    
+    @NotNull
+    private static Entry decodeApply(@NotNull final Entry entry, @NotNull final byte[] data) throws IOException, IllegalArgumentException {
+        
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        
+        final Delivery delivery1 = readDelivery(input);
+        final Delivery delivery2 = readDelivery(input);
+        return entry.apply(delivery1, delivery2);
+    }
+    
+    @Nullable
+    private static Delivery readDelivery(@NotNull final DataInputStream input) throws IOException, IllegalArgumentException {
+        
+        final byte target = input.readByte();
+        if (target == Delivery.TARGET_NONE) {
+            return null;
+        } else if (target == Delivery.TARGET_INVENTORY) {
+            return Delivery.inventory();
+        } else if (target != Delivery.TARGET_OFFLINE) {
+            throw new IllegalArgumentException("Unknown delivery target " + target + " for trade.");
+        }
+        
+        final String reasonName = input.readUTF();
+        final CompleteReason reason = reasonName.isEmpty() ? null : CompleteReason.valueOf(reasonName);
+        final long logoutTime = input.readLong();
+        final ItemStack[] items = input.readBoolean() ? BinaryCodec.readItems(input) : null;
+        final ItemStack[] extra = input.readBoolean() ? BinaryCodec.readItems(input) : null;
+        return new Delivery(Delivery.TARGET_OFFLINE, reason, logoutTime, items, extra);
+    }
+    
+    // How far a pending trade got before the server stopped.
+    public enum State {
+        
+        // Journaled before any items moved, nothing it changed was saved.
+        PREPARED,
+        
+        // Its items moved, and may have been saved in part.
+        APPLIED
+    }
+    
+    // A trade as it was journaled before it moved any items, with where they
+    // went once it was applied.
+    public static final class Entry {
+        
+        private final long id;
+        private final String roomName;
+        private final CompleteReason reason;
+        private final UUID uniqueId1;
+        private final String name1;
+        private final ItemStack[] items1;
+        private final UUID uniqueId2;
+        private final String name2;
+        private final ItemStack[] items2;
+        
+        private final State state;
+        private final Delivery delivery1;
+        private final Delivery delivery2;
+        
+        private Entry(final long id, @Nullable final String roomName, @NotNull final CompleteReason reason, @Nullable final UUID uniqueId1, @Nullable final String name1, @NotNull final ItemStack[] items1, @Nullable final UUID uniqueId2, @Nullable final String name2, @NotNull final ItemStack[] items2) {
+            this(id, roomName, reason, uniqueId1, name1, items1, uniqueId2, name2, items2, State.PREPARED, null, null);
+        }
+        
+        private Entry(final long id, @Nullable final String roomName, @NotNull final CompleteReason reason, @Nullable final UUID uniqueId1, @Nullable final String name1, @NotNull final ItemStack[] items1, @Nullable final UUID uniqueId2, @Nullable final String name2, @NotNull final ItemStack[] items2, @NotNull final State state, @Nullable final Delivery delivery1, @Nullable final Delivery delivery2) {
+            this.id = id;
+            this.roomName = roomName;
+            this.reason = reason;
+            this.uniqueId1 = uniqueId1;
+            this.name1 = name1;
+            this.items1 = items1;
+            this.uniqueId2 = uniqueId2;
+            this.name2 = name2;
+            this.items2 = items2;
+            
+            this.state = state;
+            this.delivery1 = delivery1;
+            this.delivery2 = delivery2;
+        }
+        
+        @NotNull
+        private Entry apply(@Nullable final Delivery delivery1, @Nullable final Delivery delivery2) {
+            return new Entry(this.id, this.roomName, this.reason, this.uniqueId1, this.name1, this.items1, this.uniqueId2, this.name2, this.items2, State.APPLIED, delivery1, delivery2);
+        }
+        
+        public long getId() {
+            return this.id;
+        }
+        
+        @Nullable
+        public String getRoomName() {
+            return this.roomName;
+        }
+        
+        @NotNull
+        public CompleteReason getReason() {
+            return this.reason;
+        }
+        
+        @Nullable
+        public UUID getUniqueId1() {
+            return this.uniqueId1;
+        }
+        
+        @Nullable
+        public String getName1() {
+            return this.name1;
+        }
+        
+        @NotNull
+        public ItemStack[] getItems1() {
+            return this.items1;
+        }
+        
+        @Nullable
+        public UUID getUniqueId2() {
+            return this.uniqueId2;
+        }
+        
+        @Nullable
+        public String getName2() {
+            return this.name2;
+        }
+        
+        @NotNull
+        public ItemStack[] getItems2() {
+            return this.items2;
+        }
+        
+        @NotNull
+        public State getState() {
+            return this.state;
+        }
+        
+        // Gets where the items of the first trader went, or null if the trade
+        // was not applied or had no first trader.
+        @Nullable
+        public Delivery getDelivery1() {
+            return this.delivery1;
+        }
+        
+        @Nullable
+        public Delivery getDelivery2() {
+            return this.delivery2;
+        }
+    }
+    
+    // Where the items of one trader went when a trade was applied: into their
+    // live inventory, or into a delivery for when they next log in.
+    public static final class Delivery {
+        
+        private static final byte TARGET_NONE = 0;
+        private static final byte TARGET_INVENTORY = 1;
+        private static final byte TARGET_OFFLINE = 2;
+        
+        private final byte target;
+        private final CompleteReason reason;
+        private final long logoutTime;
+        private final ItemStack[] items;
+        private final ItemStack[] extra;
+        
+        private Delivery(final byte target, @Nullable final CompleteReason reason, final long logoutTime, @Nullable final ItemStack[] items, @Nullable final ItemStack[] extra) {
+            this.target = target;
+            this.reason = reason;
+            this.logoutTime = logoutTime;
+            this.items = items;
+            this.extra = extra;
+        }
+        
+        @NotNull
+        public static Delivery inventory() {
+            return new Delivery(TARGET_INVENTORY, null, 0L, null, null);
+        }
+        
+        @NotNull
+        public static Delivery offline(@NotNull final Offline offline, @Nullable final ItemStack[] extra) {
+            return new Delivery(TARGET_OFFLINE, offline.getReason(), offline.getLogoutTime(), offline.getItems(), extra);
+        }
+        
+        public boolean isOffline() {
+            return this.target == TARGET_OFFLINE;
+        }
+        
+        @Nullable
+        public CompleteReason getReason() {
+            return this.reason;
+        }
+        
+        public long getLogoutTime() {
+            return this.logoutTime;
+        }
+        
+        @Nullable
+        public ItemStack[] getItems() {
+            return this.items;
+        }
+        
+        @Nullable
+        public ItemStack[] getExtra() {
+            return this.extra;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.TradeRoom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Persistent storage for trade rooms, the chest backups of active trades, and
+// deliveries waiting for offline traders.
+public interface TradeStore {
+    
+    void open() throws IOException;
+    
+    // Flushes every change made since the last flush.
+    void flush() throws IOException;
+    
+    void close() throws IOException;
+    
+    // Gets the time the server was last stopped.
+    long loadServerStop();
+    
+    void saveServerStop(final long time);
+    
+    // Loads every stored trade room.
+    @NotNull
+    List<TradeRoom> loadRooms(final long offlineTime);
+    
+    void saveRoom(@NotNull final TradeRoom room) throws IOException;
+    
+    // Loads the chest backup of a trade room.
+    @Nullable
+    ItemStack[][] loadBackup(@NotNull final String roomName);
+    
+    void saveBackup(@NotNull final String roomName, @NotNull final ItemStack[] items1, @NotNull final ItemStack[] items2) throws IOException;
+    
+    void deleteBackup(@NotNull final String roomName) throws IOException;
+    
+    // Virtual trades are not restored on start, so their backups are only
+    // loaded to return the items to their traders.
+    @NotNull
+    Map<UUID, ItemStack[]> loadVirtualBackups();
+    
+    void saveVirtualBackup(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException;
+    
+    void deleteVirtualBackup(@NotNull final UUID uniqueId) throws IOException;
+    
+    @NotNull
+    List<Offline> loadOfflines(final long offlineTime);
+    
+    @NotNull
+    Map<UUID, List<ItemStack>> loadExtras();
+    
+    void saveOffline(@NotNull final Offline offline) throws IOException;
+    
+    void appendExtras(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) throws IOException;
+    
+    // Deletes an offline trader and every extra item waiting for them.
+    void deleteOffline(@NotNull final UUID uniqueId) throws IOException;
+}
@@ -0,0 +1,403 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.Constants;
+import org.cubeville.trade.bukkit.traderoom.Offline;
+import org.cubeville.trade.bukkit.traderoom.TradeRoom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A TradeStore keeping one YAML file per trade room, chest backup, virtual
+// trade backup, offline trader and extra inventory, in the layout used before
+// the binary formats existed.
+public final class YamlTradeStore implements TradeStore {
+    
+    private final Server server;
+    private final Logger logger;
+    
+    private final File serverStopFile;
+    private final File tradeRoomFolder;
+    private final File backupInventoryFolder;
+    private final File virtualBackupFolder;
+    private final File offlineFolder;
+    private final File extraFolder;
+    private final AtomicFileWriter fileWriter;
+    private final Map<UUID, List<Map<String, Object>>> extras;
+    
+    public YamlTradeStore(@NotNull final Server server, @NotNull final File folder, @NotNull final Logger logger) {
+        this.server = server;
+        this.logger = logger;
+        
+        this.serverStopFile = new File(folder, Constants.FILE_SERVER_STOP);
+        this.tradeRoomFolder = new File(folder, Constants.FOLDER_TRADE_ROOMS);
+        this.backupInventoryFolder = new File(folder, Constants.FOLDER_BACKUP_INVENTORIES);
+        this.virtualBackupFolder = new File(folder, Constants.FOLDER_VIRTUAL_BACKUPS);
+        this.offlineFolder = new File(folder, Constants.FOLDER_OFFLINE_TRADERS);
+        this.extraFolder = new File(folder, Constants.FOLDER_OFFLINE_EXTRAS);
+        this.fileWriter = new AtomicFileWriter(logger);
+        this.extras = new HashMap<UUID, List<Map<String, Object>>>();
+    }
+    
+    @Override
+    public void open() throws IOException {
+        this.createFolder(this.tradeRoomFolder);
+        this.createFolder(this.backupInventoryFolder);
+        this.createFolder(this.virtualBackupFolder);
+        this.createFolder(this.offlineFolder);
+        this.createFolder(this.extraFolder);
+    }
+    
+    private void createFolder(@NotNull final File folder) throws IOException {
+        
+        if (!folder.exists()) {
+            if (!folder.mkdirs()) {
+                throw new IOException("Folder not created at " + folder.getPath());
+            }
+        } else if (!folder.isDirectory()) {
+            throw new IOException("Folder is not a folder. Location: " + folder.getPath());
+        }
+        
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list files in folder " + folder.getPath());
+        }
+        for (final File file : files) {
+            // Left behind by a crash before the rename, the original file is intact.
+            if (file.getName().endsWith(AtomicFileWriter.TEMP_SUFFIX) && !file.delete()) {
+                this.logger.log(Level.WARNING, "Unable to delete temporary file at " + file.getPath());
+            }
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        this.fileWriter.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        this.fileWriter.flush();
+    }
+    
+    @Nullable
+    private YamlConfiguration load(@NotNull final File file, @NotNull final String type) {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(AtomicFileWriter.read(file));
+        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load " + type + " file at " + file.getPath());
+            this.logger.log(Level.WARNING, "Skipping " + type + ".");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+        return config;
+    }
+    
+    @NotNull
+    private File[] list(@NotNull final File folder) {
+        final File[] files = folder.listFiles((dir, name) -> name.endsWith(Constants.FILE_TYPE));
+        return files == null ? new File[0] : files;
+    }
+    
+    /////////////////////////
+    // SERVER STOP & ROOMS //
+    /////////////////////////
+    
+    @Override
+    public long loadServerStop() {
+        
+        if (!this.serverStopFile.exists()) {
+            return -1L;
+        }
+        
+        final YamlConfiguration config = this.load(this.serverStopFile, "server stop");
+        return config == null ? -1L : config.getLong(Constants.KEY_SERVER_STOP_TIME, -1L);
+    }
+    
+    @Override
+    public void saveServerStop(final long time) {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_SERVER_STOP_TIME, time);
+        this.fileWriter.write(this.serverStopFile, config.saveToString());
+    }
+    
+    @Override
+    @NotNull
+    public List<TradeRoom> loadRooms(final long offlineTime) {
+        
+        final List<TradeRoom> rooms = new ArrayList<TradeRoom>();
+        for (final File tradeRoomFile : this.list(this.tradeRoomFolder)) {
+            
+            final YamlConfiguration config = this.load(tradeRoomFile, "trade room");
+            if (config == null) {
+                continue;
+            }
+            
+            try {
+                rooms.add(new TradeRoom(this.server, offlineTime, config));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize trade room from file at " + tradeRoomFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping trade room.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return rooms;
+    }
+    
+    @Override
+    public void saveRoom(@NotNull final TradeRoom room) {
+        this.fileWriter.write(new File(this.tradeRoomFolder, room.getName().toLowerCase() + Constants.FILE_TYPE), room.getConfig().saveToString());
+    }
+    
+    ////////////////////////
+    // BACKUP INVENTORIES //
+    ////////////////////////
+    
+    @Override
+    @Nullable
+    public ItemStack[][] loadBackup(@NotNull final String roomName) {
+        
+        final File backupInventoryFile = new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE);
+        if (!backupInventoryFile.exists()) {
+            return null;
+        }
+        
+        final YamlConfiguration config = this.load(backupInventoryFile, "backup inventory");
+        if (config == null) {
+            return null;
+        }
+        
+        final List<?> rawItems1 = config.getList(Constants.KEY_BACKUP_ITEMS_1, null);
+        final List<?> rawItems2 = config.getList(Constants.KEY_BACKUP_ITEMS_2, null);
+        if (rawItems1 == null || rawItems2 == null) {
+            this.logger.log(Level.WARNING, "Backup items are null in backup inventory file at " + backupInventoryFile.getPath());
+            this.logger.log(Level.WARNING, "Skipping backup inventory.");
+            return null;
+        }
+        
+        return new ItemStack[][] {this.deserialize(rawItems1), this.deserialize(rawItems2)};
+    }
+    
+    @Override
+    public void saveBackup(@NotNull final String roomName, @NotNull final ItemStack[] items1, @NotNull final ItemStack[] items2) {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_TRADE_ROOM_NAME, roomName);
+        config.set(Constants.KEY_BACKUP_ITEMS_1, this.serialize(items1));
+        config.set(Constants.KEY_BACKUP_ITEMS_2, this.serialize(items2));
+        
+        this.fileWriter.write(new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE), config.saveToString());
+    }
+    
+    @Override
+    public void deleteBackup(@NotNull final String roomName) {
+        this.fileWriter.delete(new File(this.backupInventoryFolder, roomName + Constants.FILE_TYPE));
+    }
+    
+    @Override
+    @NotNull
+    public Map<UUID, ItemStack[]> loadVirtualBackups() {
+        
+        final Map<UUID, ItemStack[]> backups = new HashMap<UUID, ItemStack[]>();
+        for (final File virtualBackupFile : this.list(this.virtualBackupFolder)) {
+            
+            final YamlConfiguration config = this.load(virtualBackupFile, "virtual trade backup");
+            if (config == null) {
+                continue;
+            }
+            
+            final UUID uniqueId;
+            try {
+                uniqueId = UUID.fromString(config.getString(Constants.KEY_VIRTUAL_BACKUP_UUID, ""));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to parse UUID for virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                continue;
+            }
+            
+            final List<?> rawItems = config.getList(Constants.KEY_VIRTUAL_BACKUP_ITEMS, null);
+            if (rawItems == null) {
+                this.logger.log(Level.WARNING, "Backup items are null in virtual trade backup file at " + virtualBackupFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping virtual trade backup.");
+                continue;
+            }
+            
+            backups.put(uniqueId, this.deserialize(rawItems));
+        }
+        
+        return backups;
+    }
+    
+    @Override
+    public void saveVirtualBackup(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_VIRTUAL_BACKUP_UUID, uniqueId.toString());
+        config.set(Constants.KEY_VIRTUAL_BACKUP_ITEMS, this.serialize(items));
+        
+        this.fileWriter.write(new File(this.virtualBackupFolder, uniqueId.toString() + Constants.FILE_TYPE), config.saveToString());
+    }
+    
+    @Override
+    public void deleteVirtualBackup(@NotNull final UUID uniqueId) {
+        this.fileWriter.delete(new File(this.virtualBackupFolder, uniqueId.toString() + Constants.FILE_TYPE));
+    }
+    
+    //////////////////////
+    // OFFLINE DELIVERY //
+    //////////////////////
+    
+    @Override
+    @NotNull
+    public List<Offline> loadOfflines(final long offlineTime) {
+        
+        final List<Offline> offlines = new ArrayList<Offline>();
+        for (final File offlineFile : this.list(this.offlineFolder)) {
+            
+            final YamlConfiguration config = this.load(offlineFile, "offline trader");
+            if (config == null) {
+                continue;
+            }
+            
+            try {
+                offlines.add(new Offline(offlineTime, config));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to deserialize offline trader from file at " + offlineFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping offline trader.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+        
+        return offlines;
+    }
+    
+    @Override
+    @NotNull
+    public synchronized Map<UUID, List<ItemStack>> loadExtras() {
+        
+        final Map<UUID, List<ItemStack>> extras = new HashMap<UUID, List<ItemStack>>();
+        for (final File extraFile : this.list(this.extraFolder)) {
+            
+            final YamlConfiguration config = this.load(extraFile, "extra inventory");
+            if (config == null) {
+                continue;
+            }
+            
+            final UUID uniqueId;
+            try {
+                uniqueId = UUID.fromString(config.getString(Constants.KEY_EXTRA_UUID, ""));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unable to parse UUID for extra inventory file at " + extraFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                continue;
+            }
+            
+            final List<?> rawItems = config.getList(Constants.KEY_EXTRA_ITEMS, null);
+            if (rawItems == null) {
+                this.logger.log(Level.WARNING, "Cannot have null item list for extra inventory file at " + extraFile.getPath());
+                this.logger.log(Level.WARNING, "Skipping extra inventory.");
+                continue;
+            }
+            
+            final List<Map<String, Object>> items = (List<Map<String, Object>>) rawItems;
+            this.extras.put(uniqueId, new ArrayList<Map<String, Object>>(items));
+            
+            final List<ItemStack> stacks = new ArrayList<ItemStack>();
+            for (final ItemStack item : this.deserialize(items)) {
+                if (item != null) {
+                    stacks.add(item);
+                }
+            }
+            extras.put(uniqueId, stacks);
+        }
+        
+        return extras;
+    }
+    
+    @Override
+    public void saveOffline(@NotNull final Offline offline) {
+        this.fileWriter.write(new File(this.offlineFolder, offline.getUniqueId().toString() + Constants.FILE_TYPE), offline.getConfig().saveToString());
+    }
+    
+    @Override
+    public synchronized void appendExtras(@NotNull final UUID uniqueId, @NotNull final ItemStack[] items) {
+        
+        final List<Map<String, Object>> serialized = this.extras.computeIfAbsent(uniqueId, key -> new ArrayList<Map<String, Object>>());
+        for (final ItemStack item : items) {
+            if (item != null) {
+                serialized.add(item.serialize());
+            }
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(Constants.KEY_EXTRA_UUID, uniqueId.toString());
+        config.set(Constants.KEY_EXTRA_ITEMS, serialized);
+        this.fileWriter.write(new File(this.extraFolder, uniqueId.toString() + Constants.FILE_TYPE), config.saveToString());
+    }
+    
+    @Override
+    public synchronized void deleteOffline(@NotNull final UUID uniqueId) {
+        this.extras.remove(uniqueId);
+        this.fileWriter.delete(new File(this.offlineFolder, uniqueId.toString() + Constants.FILE_TYPE));
+        this.fileWriter.delete(new File(this.extraFolder, uniqueId.toString() + Constants.FILE_TYPE));
+    }
+    
+    @NotNull
+    private ItemStack[] deserialize(@NotNull final List<?> rawItems) {
+        
+        final List<Map<String, Object>> items = (List<Map<String, Object>>) rawItems;
+        final ItemStack[] stacks = new ItemStack[items.size()];
+        for (int slot = 0; slot < stacks.length; slot++) {
+            final Map<String, Object> item = items.get(slot);
+            stacks[slot] = item == null ? null : ItemStack.deserialize(item);
+        }
+        return stacks;
+    }
+    
+    @NotNull
+    private List<Map<String, Object>> serialize(@NotNull final ItemStack[] items) {
+        
+        final List<Map<String, Object>> serialized = new ArrayList<Map<String, Object>>();
+        for (final ItemStack item : items) {
+            serialized.add(item == null ? null : item.serialize());
+        }
+        return serialized;
+    }
+}
@@ -22,33 +22,43 @@
 
 package org.cubeville.trade.bukkit.traderoom;
 
-import org.bukkit.Location;
+import java.util.UUID;
+import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.data.Directional;
+import org.cubeville.trade.bukkit.util.BlockKey;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 final class Button {
     
-    private final Location location;
-    private final Location attachedBlock;
+    private final UUID worldId;
+    private final long key;
+    private final long attachedKey;
     
     Button(@NotNull final BlockState state) {
-        this.location = state.getLocation();
-        this.attachedBlock = state.getBlock().getRelative(((Directional) state.getBlockData()).getFacing().getOppositeFace()).getLocation();
+        this.worldId = state.getWorld().getUID();
+        this.key = BlockKey.of(state.getX(), state.getY(), state.getZ());
+        
+        final Block attachedBlock = state.getBlock().getRelative(((Directional) state.getBlockData()).getFacing().getOppositeFace());
+        this.attachedKey = BlockKey.of(attachedBlock);
     }
     
     @NotNull
-    Location getLocation() {
-        return this.location;
+    UUID getWorldId() {
+        return this.worldId;
     }
     
-    boolean contains(@NotNull final Location location, final boolean exact) {
-        if (exact) {
-            return this.location.equals(location);
-        } else {
-            return this.location.equals(location) || this.attachedBlock.equals(location);
-        }
+    long getKey() {
+        return this.key;
+    }
+    
+    long getAttachedKey() {
+        return this.attachedKey;
+    }
+    
+    boolean contains(final long key, final boolean exact) {
+        return this.key == key || !exact && this.attachedKey == key;
     }
     
     @Override
@@ -66,6 +76,6 @@ final class Button {
         }
         
         final Button other = (Button) object;
-        return this.getLocation().equals(other.getLocation()) && this.attachedBlock.equals(other.attachedBlock);
+        return this.key == other.key && this.attachedKey == other.attachedKey && this.worldId.equals(other.worldId);
     }
 }
@@ -31,6 +31,7 @@ public enum CompleteReason {
     CANCELLED("§cYour trade has been cancelled because the other player cancelled the trade while you were offline."),
     REJECTED("§cYour trade has been cancelled because the other player rejected your trade offer while you were offline."),
     ACCEPTED("§aYour trade has been finished because the other player accepted your trade offer while you were offline."),
+    INTERRUPTED("§cYour virtual trade has been cancelled because the server stopped during the trade."),
     ERROR("§cYour trade has been cancelled because there was a system error. Please report this to a server administrator.");
     
     private final String message;
@@ -0,0 +1,85 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// An order-independent digest of a multiset of items: the number of items, and
+// the sum of a mixed hash of each item's type and meta times its amount.
+public final class ItemDigest {
+    
+    private long count;
+    private long sum;
+    
+    public ItemDigest() {
+        this.count = 0L;
+        this.sum = 0L;
+    }
+    
+    // Gets the key of an item, ignoring its amount.
+    public static long key(@NotNull final ItemStack item) {
+        return mix(31L * item.getType().ordinal() + (item.hasItemMeta() ? item.getItemMeta().hashCode() : 0));
+    }
+    
+    public void add(final long key, final int amount) {
+        this.count += amount;
+        this.sum += key * amount;
+    }
+    
+    public void addAll(@Nullable final ItemStack[] items) {
+        
+        if (items == null) {
+            return;
+        }
+        
+        for (final ItemStack item : items) {
+            if (item != null && !item.getType().isAir()) {
+                this.add(key(item), item.getAmount());
+            }
+        }
+    }
+    
+    public long getCount() {
+        return this.count;
+    }
+    
+    public boolean matches(@NotNull final ItemDigest other) {
+        return this.count == other.count && this.sum == other.sum;
+    }
+    
+    @Override
+    @NotNull
+    public String toString() {
+        return this.count + " items, digest " + Long.toHexString(this.sum);
+    }
+    
+    // The finalizer of SplitMix64, so similar keys give unrelated hashes.
+    private static long mix(final long value) {
+        long mixed = value;
+        mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+        return mixed ^ (mixed >>> 31);
+    }
+}
@@ -0,0 +1,166 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+// Counts the items moved by accepted trades per Material, over sliding windows
+// of the current hour, the last day and the last week.
+public final class ItemStats {
+    
+    private static final long HOUR = 1000L * 60L * 60L;
+    private static final long DAY = HOUR * 24L;
+    private static final int HOURS = 24;
+    private static final int DAYS = 7;
+    
+    public enum Window {
+        HOUR,
+        DAY,
+        WEEK;
+    }
+    
+    private final Material[] materials;
+    private final long[][] hourCounts;
+    private final long[] hourIds;
+    private final long[][] dayCounts;
+    private final long[] dayIds;
+    
+    public ItemStats() {
+        this.materials = Material.values();
+        this.hourCounts = new long[HOURS][this.materials.length];
+        this.hourIds = new long[HOURS];
+        this.dayCounts = new long[DAYS][this.materials.length];
+        this.dayIds = new long[DAYS];
+        
+        Arrays.fill(this.hourIds, -1L);
+        Arrays.fill(this.dayIds, -1L);
+    }
+    
+    // Counts the items of an accepted trade.
+    public void add(@NotNull final TradeRecord record) {
+        
+        if (record.getReason() != CompleteReason.ACCEPTED) {
+            return;
+        }
+        
+        final long hour = record.getTime() / HOUR;
+        final long day = record.getTime() / DAY;
+        final long[] hourBucket = bucket(this.hourCounts, this.hourIds, hour);
+        final long[] dayBucket = bucket(this.dayCounts, this.dayIds, day);
+        
+        count(record.getItems1(), hourBucket, dayBucket);
+        count(record.getItems2(), hourBucket, dayBucket);
+    }
+    
+    private static void count(@NotNull final Map<Material, Integer> items, @NotNull final long[] hourBucket, @NotNull final long[] dayBucket) {
+        for (final Map.Entry<Material, Integer> entry : items.entrySet()) {
+            final int ordinal = entry.getKey().ordinal();
+            hourBucket[ordinal] += entry.getValue().intValue();
+            dayBucket[ordinal] += entry.getValue().intValue();
+        }
+    }
+    
+    @NotNull
+    private static long[] bucket(@NotNull final long[][] counts, @NotNull final long[] ids, final long id) {
+        
+        final int index = (int) (id % ids.length);
+        if (ids[index] != id) {
+            Arrays.fill(counts[index], 0L);
+            ids[index] = id;
+        }
+        return counts[index];
+    }
+    
+    // Gets the materials moved the most within the given window, most moved
+    // first.
+    @NotNull
+    public List<Map.Entry<Material, Long>> getTop(@NotNull final Window window, final long now, final int limit) {
+        
+        final long[] totals = this.getTotals(window, now);
+        
+        // Keep the largest counts in a min-heap of the limit's size.
+        final PriorityQueue<Map.Entry<Material, Long>> top = new PriorityQueue<Map.Entry<Material, Long>>(limit + 1, Map.Entry.comparingByValue());
+        for (int ordinal = 0; ordinal < totals.length; ordinal++) {
+            
+            if (totals[ordinal] == 0L) {
+                continue;
+            }
+            if (top.size() == limit && top.peek().getValue().longValue() >= totals[ordinal]) {
+                continue;
+            }
+            
+            top.add(new AbstractMap.SimpleImmutableEntry<Material, Long>(this.materials[ordinal], totals[ordinal]));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        
+        final List<Map.Entry<Material, Long>> sorted = new ArrayList<Map.Entry<Material, Long>>(top);
+        sorted.sort(Map.Entry.<Material, Long>comparingByValue().reversed());
+        return sorted;
+    }
+    
+    public long getTotal(@NotNull final Window window, final long now) {
+        
+        long total = 0L;
+        for (final long count : this.getTotals(window, now)) {
+            total += count;
+        }
+        return total;
+    }
+    
+    @NotNull
+    private long[] getTotals(@NotNull final Window window, final long now) {
+        
+        final long[] totals = new long[this.materials.length];
+        if (window == Window.WEEK) {
+            sum(totals, this.dayCounts, this.dayIds, now / DAY, DAYS);
+        } else {
+            sum(totals, this.hourCounts, this.hourIds, now / HOUR, window == Window.DAY ? HOURS : 1);
+        }
+        return totals;
+    }
+    
+    private static void sum(@NotNull final long[] totals, @NotNull final long[][] counts, @NotNull final long[] ids, final long current, final int size) {
+        
+        for (int index = 0; index < ids.length; index++) {
+            
+            final long id = ids[index];
+            if (id == -1L || id > current || id <= current - size) {
+                continue;
+            }
+            
+            final long[] bucket = counts[index];
+            for (int ordinal = 0; ordinal < totals.length; ordinal++) {
+                totals[ordinal] += bucket[ordinal];
+            }
+        }
+    }
+}
@@ -22,22 +22,28 @@
 
 package org.cubeville.trade.bukkit.traderoom;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
+import org.cubeville.trade.bukkit.storage.BinaryCodec;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public final class Offline {
     
+    // Number of item slots held for a trader, the size of a trade chest.
+    public static final int SIZE = 27;
+    
     private static final String KEY_UUID = "uuid";
     private static final String KEY_NAME = "name";
     private static final String KEY_LOGOUT_TIME = "logout_time";
@@ -50,7 +56,7 @@ public final class Offline {
     private final long logoutTime;
     
     private CompleteReason reason;
-    private Inventory inventory;
+    private ItemStack[] items;
     private Location teleport;
     
     public Offline(@NotNull final Trader trader) {
@@ -60,7 +66,7 @@ public final class Offline {
         this.logoutTime = Math.max(trader.getLogoutTime(), 0L);
         
         this.reason = null;
-        this.inventory = null;
+        this.items = null;
         this.teleport = null;
     }
     
@@ -106,20 +112,18 @@ public final class Offline {
         }
         
         final List<?> rawItems = config.getList(KEY_ITEMS, null);
-        final Inventory inventory;
+        final ItemStack[] items;
         if (rawItems == null) {
-            inventory = null;
+            items = null;
         } else {
-            inventory = Bukkit.getServer().createInventory(null, 27);
-            final List<Map<String, Object>> items = (List<Map<String, Object>>) rawItems;
+            items = new ItemStack[SIZE];
+            final List<Map<String, Object>> serialized = (List<Map<String, Object>>) rawItems;
             
-            for (int index = 0; index < items.size() && index < 27; index++) {
-                final Map<String, Object> item = items.get(index);
-                ItemStack itemStack = null;
+            for (int index = 0; index < serialized.size() && index < SIZE; index++) {
+                final Map<String, Object> item = serialized.get(index);
                 if (item != null) {
-                    itemStack = ItemStack.deserialize(item);
+                    items[index] = ItemStack.deserialize(item);
                 }
-                inventory.setItem(index, itemStack);
             }
         }
         
@@ -130,7 +134,50 @@ public final class Offline {
         
         this.logoutTime = logoutTime;
         this.reason = reason;
-        this.inventory = inventory;
+        this.items = items;
+        this.teleport = teleport;
+    }
+    
+    public Offline(final long offlineTime, @NotNull final UUID uniqueId, @NotNull final DataInput input) throws IOException, IllegalArgumentException {
+        
+        final String name = input.readUTF();
+        if (name.trim().isBlank()) {
+            throw new IllegalArgumentException("Cannot have blank name for trader.");
+        }
+        
+        long logoutTime = input.readLong();
+        if (logoutTime <= 0L) {
+            throw new IllegalArgumentException("Cannot have invalid logout time for trader.");
+        }
+        logoutTime += offlineTime;
+        
+        final String reasonName = input.readUTF();
+        final CompleteReason reason;
+        if (reasonName.isEmpty()) {
+            reason = null;
+        } else {
+            try {
+                reason = CompleteReason.valueOf(reasonName);
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Complete reason " + reasonName + " is not a valid complete reason for trade.", e);
+            }
+        }
+        
+        final ItemStack[] items;
+        if (input.readBoolean()) {
+            items = Arrays.copyOf(BinaryCodec.readItems(input), SIZE);
+        } else {
+            items = null;
+        }
+        
+        final Location teleport = BinaryCodec.readLocation(input);
+        
+        this.uniqueId = uniqueId;
+        this.name = name;
+        
+        this.logoutTime = logoutTime;
+        this.reason = reason;
+        this.items = items;
         this.teleport = teleport;
     }
     
@@ -157,24 +204,14 @@ public final class Offline {
         this.reason = reason;
     }
     
+    // Gets the items waiting for the trader, as SIZE slots.
     @Nullable
-    public Inventory getInventory() {
-        return this.inventory;
+    public ItemStack[] getItems() {
+        return this.items;
     }
     
-    public void setInventory(@Nullable final Inventory inventory) {
-        
-        if (inventory == null) {
-            this.inventory = null;
-            return;
-        }
-        
-        this.inventory = Bukkit.getServer().createInventory(null, 27);
-        
-        final ItemStack[] items = inventory.getStorageContents();
-        for (int slot = 0; slot < items.length; slot++) {
-            this.inventory.setItem(slot, items[slot]);
-        }
+    public void setItems(@Nullable final ItemStack[] items) {
+        this.items = items == null ? null : Arrays.copyOf(items, SIZE);
     }
     
     @Nullable
@@ -198,9 +235,9 @@ public final class Offline {
         if (this.getReason() != null) {
             config.set(KEY_COMPLETE_REASON, this.getReason().name());
         }
-        if (this.getInventory() != null) {
+        if (this.getItems() != null) {
             final List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
-            for (final ItemStack item : this.getInventory().getStorageContents()) {
+            for (final ItemStack item : this.getItems()) {
                 items.add(item == null ? null : item.serialize());
             }
             config.set(KEY_ITEMS, items);
@@ -210,6 +247,22 @@ public final class Offline {
         return config;
     }
     
+    public void write(@NotNull final DataOutput output) throws IOException {
+        
+        output.writeUTF(this.getName());
+        output.writeLong(this.getLogoutTime());
+        output.writeUTF(this.getReason() == null ? "" : this.getReason().name());
+        
+        if (this.getItems() == null) {
+            output.writeBoolean(false);
+        } else {
+            output.writeBoolean(true);
+            BinaryCodec.writeItems(output, this.getItems());
+        }
+        
+        BinaryCodec.writeLocation(output, this.getTeleport());
+    }
+    
     @Override
     public boolean equals(@Nullable final Object object) {
         
@@ -0,0 +1,280 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.block.sign.SignSide;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.cubeville.trade.bukkit.storage.AtomicFileWriter;
+import org.cubeville.trade.bukkit.util.BlockKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Shows on signs whether each TradeRoom is free or in use.
+public final class RoomBoard {
+    
+    private static final String KEY_SIGNS = "signs";
+    
+    private final Server server;
+    private final File file;
+    private final Logger logger;
+    private final AtomicFileWriter fileWriter;
+    
+    private final Map<String, List<BoardSign>> signs;
+    private final LinkedHashSet<TradeRoom> changed;
+    
+    public RoomBoard(@NotNull final Server server, @NotNull final File file, @NotNull final Logger logger) {
+        this.server = server;
+        this.file = file;
+        this.logger = logger;
+        this.fileWriter = new AtomicFileWriter(logger);
+        
+        this.signs = new HashMap<String, List<BoardSign>>();
+        this.changed = new LinkedHashSet<TradeRoom>();
+    }
+    
+    public void load() {
+        
+        if (!this.file.exists()) {
+            return;
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(AtomicFileWriter.read(this.file));
+        } catch (final IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE LOADING ROOM BOARD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "file: " + this.file.getPath());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to load room board file.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return;
+        }
+        
+        for (final String value : config.getStringList(KEY_SIGNS)) {
+            
+            final String[] split = value.split(":", 5);
+            if (split.length != 5) {
+                this.logger.log(Level.WARNING, "Skipping invalid room board sign " + value);
+                continue;
+            }
+            
+            final UUID worldId;
+            final long key;
+            try {
+                worldId = UUID.fromString(split[0]);
+                key = BlockKey.of(Integer.parseInt(split[1]), Integer.parseInt(split[2]), Integer.parseInt(split[3]));
+            } catch (final IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Skipping invalid room board sign " + value, e);
+                continue;
+            }
+            
+            this.signs.computeIfAbsent(split[4], name -> new ArrayList<BoardSign>()).add(new BoardSign(worldId, key));
+        }
+    }
+    
+    private void save() {
+        
+        final List<String> values = new ArrayList<String>();
+        for (final Map.Entry<String, List<BoardSign>> entry : this.signs.entrySet()) {
+            for (final BoardSign sign : entry.getValue()) {
+                values.add(sign.worldId.toString() + ":" + BlockKey.getX(sign.key) + ":" + BlockKey.getY(sign.key) + ":" + BlockKey.getZ(sign.key) + ":" + entry.getKey());
+            }
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.set(KEY_SIGNS, values);
+        this.fileWriter.write(this.file, config.saveToString());
+    }
+    
+    // Writes out the board file if it changed, off the main thread.
+    public void write() {
+        
+        try {
+            this.fileWriter.flush();
+        } catch (final IOException e) {
+            this.logger.log(Level.WARNING, "ISSUE WHILE SAVING ROOM BOARD");
+            this.logger.log(Level.WARNING, "Details below:");
+            this.logger.log(Level.WARNING, "file: " + this.file.getPath());
+            this.logger.log(Level.WARNING, "ISSUE:");
+            this.logger.log(Level.WARNING, "Unable to save room board file.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    // Starts showing the given room on its signs, and draws them on the next
+    // tick.
+    public void watch(@NotNull final TradeRoom room) {
+        room.setListener(this.changed::add);
+        this.changed.add(room);
+    }
+    
+    // Adds the given sign block to the board of the given room.
+    public boolean addSign(@NotNull final TradeRoom room, @NotNull final Block block) {
+        
+        if (!(block.getState(false) instanceof Sign)) {
+            return false;
+        }
+        
+        this.removeSign(block, false);
+        this.signs.computeIfAbsent(room.getName().toLowerCase(), name -> new ArrayList<BoardSign>()).add(new BoardSign(block.getWorld().getUID(), BlockKey.of(block)));
+        this.save();
+        
+        this.changed.add(room);
+        return true;
+    }
+    
+    // Removes the given sign block from the board.
+    public boolean removeSign(@NotNull final Block block) {
+        return this.removeSign(block, true);
+    }
+    
+    private boolean removeSign(@NotNull final Block block, final boolean save) {
+        
+        final UUID worldId = block.getWorld().getUID();
+        final long key = BlockKey.of(block);
+        
+        boolean removed = false;
+        final Iterator<List<BoardSign>> iterator = this.signs.values().iterator();
+        while (iterator.hasNext()) {
+            
+            final List<BoardSign> roomSigns = iterator.next();
+            removed |= roomSigns.removeIf(sign -> sign.key == key && sign.worldId.equals(worldId));
+            if (roomSigns.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        
+        if (removed && save) {
+            this.save();
+        }
+        return removed;
+    }
+    
+    // Redraws the signs of every room that changed since the last call.
+    public void flush() {
+        
+        final Iterator<TradeRoom> iterator = this.changed.iterator();
+        while (iterator.hasNext()) {
+            
+            final TradeRoom room = iterator.next();
+            final List<BoardSign> roomSigns = this.signs.get(room.getName().toLowerCase());
+            if (roomSigns == null) {
+                iterator.remove();
+                continue;
+            }
+            
+            final String[] lines = getLines(room);
+            final String text = String.join("\n", lines);
+            
+            boolean pending = false;
+            for (final BoardSign sign : roomSigns) {
+                
+                if (text.equals(sign.text)) {
+                    continue;
+                }
+                
+                final World world = this.server.getWorld(sign.worldId);
+                if (world == null) {
+                    continue;
+                }
+                
+                final int x = BlockKey.getX(sign.key);
+                final int y = BlockKey.getY(sign.key);
+                final int z = BlockKey.getZ(sign.key);
+                if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                    pending = true;
+                    continue;
+                }
+                
+                final BlockState state = world.getBlockAt(x, y, z).getState(false);
+                if (!(state instanceof Sign)) {
+                    continue;
+                }
+                
+                final SignSide side = ((Sign) state).getSide(org.bukkit.block.sign.Side.FRONT);
+                for (int line = 0; line < lines.length; line++) {
+                    side.setLine(line, lines[line]);
+                }
+                state.update(false, false);
+                sign.text = text;
+            }
+            
+            if (!pending) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    @NotNull
+    private static String[] getLines(@NotNull final TradeRoom room) {
+        
+        final String state;
+        if (!room.isActive()) {
+            state = "§2§lFREE";
+        } else if (room.getStatus() == TradeStatus.COMPLETE) {
+            state = "§6§lFINISHING";
+        } else if (room.isFull()) {
+            state = "§4§lIN USE";
+        } else {
+            state = "§6§lWAITING";
+        }
+        
+        final int traders = (room.getTrader1() == null ? 0 : 1) + (room.getTrader2() == null ? 0 : 1);
+        return new String[] {"§1" + room.getName(), state, "§8" + traders + "/2 traders", ""};
+    }
+    
+    private static final class BoardSign {
+        
+        private final UUID worldId;
+        private final long key;
+        
+        // The text last drawn on the sign, or null if not drawn yet.
+        @Nullable
+        private String text;
+        
+        private BoardSign(@NotNull final UUID worldId, final long key) {
+            this.worldId = worldId;
+            this.key = key;
+            this.text = null;
+        }
+    }
+}
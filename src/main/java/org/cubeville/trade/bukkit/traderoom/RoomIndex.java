@@ -0,0 +1,207 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.cubeville.trade.bukkit.util.BlockKey;
+import org.cubeville.trade.bukkit.util.LongHashSet;
+import org.cubeville.trade.bukkit.util.LongObjectMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// Maps the blocks of every TradeRoom (chests, buttons and the blocks the
+// buttons are attached to) to their room, per world, so block events can find
+// the room of a block without scanning all rooms or taking a block snapshot.
+public final class RoomIndex {
+    
+    private final Map<UUID, LongObjectMap<TradeRoom>> chests;
+    private final Map<UUID, LongObjectMap<TradeRoom>> buttons;
+    private final Map<UUID, LongObjectMap<TradeRoom>> attached;
+    private final Map<UUID, LongHashSet> protectedBlocks;
+    private final Map<UUID, LongObjectMap<List<TradeRoom>>> chunks;
+    private final Map<UUID, TradeRoom> traders;
+    private final LinkedHashSet<TradeRoom> freeRooms;
+    
+    public RoomIndex() {
+        this.chests = new HashMap<UUID, LongObjectMap<TradeRoom>>();
+        this.buttons = new HashMap<UUID, LongObjectMap<TradeRoom>>();
+        this.attached = new HashMap<UUID, LongObjectMap<TradeRoom>>();
+        this.protectedBlocks = new HashMap<UUID, LongHashSet>();
+        this.chunks = new HashMap<UUID, LongObjectMap<List<TradeRoom>>>();
+        this.traders = new HashMap<UUID, TradeRoom>();
+        this.freeRooms = new LinkedHashSet<TradeRoom>();
+    }
+    
+    public void add(@NotNull final TradeRoom room) {
+        
+        final UUID worldId = room.getWorldId();
+        
+        final LongObjectMap<TradeRoom> chests = this.chests.computeIfAbsent(worldId, key -> new LongObjectMap<TradeRoom>());
+        chests.putIfAbsent(room.getChest1Key(), room);
+        chests.putIfAbsent(room.getChest2Key(), room);
+        
+        final LongObjectMap<TradeRoom> buttons = this.buttons.computeIfAbsent(worldId, key -> new LongObjectMap<TradeRoom>());
+        final LongObjectMap<TradeRoom> attached = this.attached.computeIfAbsent(worldId, key -> new LongObjectMap<TradeRoom>());
+        final LongObjectMap<List<TradeRoom>> chunks = this.chunks.computeIfAbsent(worldId, key -> new LongObjectMap<List<TradeRoom>>());
+        for (final long chestKey : new long[] {room.getChest1Key(), room.getChest2Key()}) {
+            
+            final long chunkKey = chunkKey(BlockKey.getX(chestKey) >> 4, BlockKey.getZ(chestKey) >> 4);
+            List<TradeRoom> chunkRooms = chunks.get(chunkKey);
+            if (chunkRooms == null) {
+                chunkRooms = new ArrayList<TradeRoom>();
+                chunks.put(chunkKey, chunkRooms);
+            }
+            if (!chunkRooms.contains(room)) {
+                chunkRooms.add(room);
+            }
+        }
+        
+        final LongHashSet protectedBlocks = this.protectedBlocks.computeIfAbsent(worldId, key -> new LongHashSet());
+        protectedBlocks.add(room.getChest1Key());
+        protectedBlocks.add(room.getChest2Key());
+        
+        for (final Button button : room.getButtons()) {
+            buttons.putIfAbsent(button.getKey(), room);
+            attached.putIfAbsent(button.getAttachedKey(), room);
+            protectedBlocks.add(button.getKey());
+            protectedBlocks.add(button.getAttachedKey());
+        }
+        
+        final Trader trader1 = room.getTrader1();
+        if (trader1 != null) {
+            this.traders.put(trader1.getUniqueId(), room);
+        }
+        final Trader trader2 = room.getTrader2();
+        if (trader2 != null) {
+            this.traders.put(trader2.getUniqueId(), room);
+        }
+        
+        if (!room.isActive()) {
+            this.freeRooms.add(room);
+        }
+    }
+    
+    public void clear() {
+        this.chests.clear();
+        this.buttons.clear();
+        this.attached.clear();
+        this.protectedBlocks.clear();
+        this.chunks.clear();
+        this.traders.clear();
+        this.freeRooms.clear();
+    }
+    
+    // Sets the trader on the given side of the room, and keeps the trader
+    // index in sync with it.
+    public void setTrader(@NotNull final TradeRoom room, @NotNull final Side side, @Nullable final Trader trader) {
+        
+        final Trader previous = side == Side.SIDE_1 ? room.getTrader1() : room.getTrader2();
+        if (previous != null) {
+            this.traders.remove(previous.getUniqueId(), room);
+        }
+        
+        if (side == Side.SIDE_1) {
+            room.setTrader1(trader);
+        } else {
+            room.setTrader2(trader);
+        }
+        
+        if (trader != null) {
+            this.traders.put(trader.getUniqueId(), room);
+        }
+        
+        if (room.isActive()) {
+            this.freeRooms.remove(room);
+        } else {
+            this.freeRooms.add(room);
+        }
+    }
+    
+    // Gets the room the given player is currently trading in.
+    @Nullable
+    public TradeRoom getTraderRoom(@NotNull final UUID uniqueId) {
+        return this.traders.get(uniqueId);
+    }
+    
+    // Gets the room that has been free for the longest time.
+    @Nullable
+    public TradeRoom getFreeRoom() {
+        final Iterator<TradeRoom> iterator = this.freeRooms.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+    
+    // Checks if the given block may not be broken or moved, because it is a
+    // trade chest, a button or the block a button is attached to.
+    public boolean isProtected(@NotNull final Block block) {
+        final LongHashSet protectedBlocks = this.protectedBlocks.get(block.getWorld().getUID());
+        return protectedBlocks != null && protectedBlocks.contains(BlockKey.of(block));
+    }
+    
+    // Gets the room with a trade chest at the given block.
+    @Nullable
+    public TradeRoom getChestRoom(@NotNull final World world, final long key) {
+        return get(this.chests, world, key);
+    }
+    
+    // Gets the room the given block is part of.
+    @Nullable
+    public TradeRoom getRoom(@NotNull final Block block, final boolean exact) {
+        
+        final World world = block.getWorld();
+        final long key = BlockKey.of(block);
+        
+        TradeRoom room = get(this.chests, world, key);
+        if (room == null) {
+            room = get(this.buttons, world, key);
+        }
+        if (room == null && !exact) {
+            room = get(this.attached, world, key);
+        }
+        return room;
+    }
+    
+    // Gets the rooms with a trade chest in the given chunk.
+    @Nullable
+    public List<TradeRoom> getChunkRooms(@NotNull final World world, final int chunkX, final int chunkZ) {
+        final LongObjectMap<List<TradeRoom>> chunks = this.chunks.get(world.getUID());
+        return chunks == null ? null : chunks.get(chunkKey(chunkX, chunkZ));
+    }
+    
+    private static long chunkKey(final int chunkX, final int chunkZ) {
+        return (long) chunkX << 32 | (long) chunkZ & 0xFFFFFFFFL;
+    }
+    
+    @Nullable
+    private static TradeRoom get(@NotNull final Map<UUID, LongObjectMap<TradeRoom>> index, @NotNull final World world, final long key) {
+        final LongObjectMap<TradeRoom> rooms = index.get(world.getUID());
+        return rooms == null ? null : rooms.get(key);
+    }
+}
@@ -0,0 +1,229 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.bukkit.Material;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.BundleMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A summary of a finished trade: who traded, where, how it finished and the
+// items each trader put in, counted per Material, along with the materials
+// held inside container items. Records of trades finishing now also keep a
+// copy of every stack, with its meta.
+public final class TradeRecord {
+    
+    private final long time;
+    private final CompleteReason reason;
+    private final String roomName;
+    
+    private final UUID uniqueId1;
+    private final String name1;
+    private final Map<Material, Integer> items1;
+    private final List<ItemStack> stacks1;
+    
+    private final UUID uniqueId2;
+    private final String name2;
+    private final Map<Material, Integer> items2;
+    private final List<ItemStack> stacks2;
+    
+    private final Set<Material> contents;
+    
+    // Creates a new record of a trade finishing now.
+    public TradeRecord(@NotNull final CompleteReason reason, @Nullable final String roomName, @Nullable final Trader trader1, @Nullable final ItemStack[] items1, @Nullable final Trader trader2, @Nullable final ItemStack[] items2) {
+        this(System.currentTimeMillis(), reason, roomName, trader1 == null ? null : trader1.getUniqueId(), trader1 == null ? null : trader1.getName(), count(items1), copy(items1), trader2 == null ? null : trader2.getUniqueId(), trader2 == null ? null : trader2.getName(), count(items2), copy(items2), contents(items1, items2));
+    }
+    
+    public TradeRecord(final long time, @NotNull final CompleteReason reason, @Nullable final String roomName, @Nullable final UUID uniqueId1, @Nullable final String name1, @NotNull final Map<Material, Integer> items1, @Nullable final UUID uniqueId2, @Nullable final String name2, @NotNull final Map<Material, Integer> items2, @NotNull final Set<Material> contents) {
+        this(time, reason, roomName, uniqueId1, name1, items1, Collections.emptyList(), uniqueId2, name2, items2, Collections.emptyList(), contents);
+    }
+    
+    private TradeRecord(final long time, @NotNull final CompleteReason reason, @Nullable final String roomName, @Nullable final UUID uniqueId1, @Nullable final String name1, @NotNull final Map<Material, Integer> items1, @NotNull final List<ItemStack> stacks1, @Nullable final UUID uniqueId2, @Nullable final String name2, @NotNull final Map<Material, Integer> items2, @NotNull final List<ItemStack> stacks2, @NotNull final Set<Material> contents) {
+        this.time = time;
+        this.reason = reason;
+        this.roomName = roomName;
+        
+        this.uniqueId1 = uniqueId1;
+        this.name1 = name1;
+        this.items1 = Collections.unmodifiableMap(items1);
+        this.stacks1 = Collections.unmodifiableList(stacks1);
+        
+        this.uniqueId2 = uniqueId2;
+        this.name2 = name2;
+        this.items2 = Collections.unmodifiableMap(items2);
+        this.stacks2 = Collections.unmodifiableList(stacks2);
+        
+        this.contents = Collections.unmodifiableSet(contents);
+    }
+    
+    @NotNull
+    private static Map<Material, Integer> count(@Nullable final ItemStack[] items) {
+        
+        final Map<Material, Integer> counts = new EnumMap<Material, Integer>(Material.class);
+        if (items == null) {
+            return counts;
+        }
+        
+        for (final ItemStack item : items) {
+            if (item != null && !item.getType().isAir()) {
+                counts.merge(item.getType(), item.getAmount(), Integer::sum);
+            }
+        }
+        return counts;
+    }
+    
+    // Copies the stacks, as the inventories they come from are cleared or
+    // handed out once the trade finishes.
+    @NotNull
+    private static List<ItemStack> copy(@Nullable final ItemStack[] items) {
+        
+        final List<ItemStack> stacks = new ArrayList<ItemStack>();
+        if (items == null) {
+            return stacks;
+        }
+        
+        for (final ItemStack item : items) {
+            if (item != null && !item.getType().isAir()) {
+                stacks.add(item.clone());
+            }
+        }
+        return stacks;
+    }
+    
+    @NotNull
+    private static Set<Material> contents(@Nullable final ItemStack[] items1, @Nullable final ItemStack[] items2) {
+        
+        final Set<Material> contents = EnumSet.noneOf(Material.class);
+        for (final ItemStack[] items : new ItemStack[][] {items1, items2}) {
+            if (items == null) {
+                continue;
+            }
+            for (final ItemStack item : items) {
+                addContents(contents, item);
+            }
+        }
+        return contents;
+    }
+    
+    // Adds the materials inside a shulker box, bundle or other container item,
+    // and inside any containers nested in it.
+    private static void addContents(@NotNull final Set<Material> contents, @Nullable final ItemStack item) {
+        
+        if (item == null || item.getType().isAir() || !item.hasItemMeta()) {
+            return;
+        }
+        
+        final ItemMeta meta = item.getItemMeta();
+        final ItemStack[] nested;
+        if (meta instanceof BundleMeta) {
+            nested = ((BundleMeta) meta).getItems().toArray(new ItemStack[0]);
+        } else if (meta instanceof BlockStateMeta && ((BlockStateMeta) meta).hasBlockState()) {
+            final BlockState state = ((BlockStateMeta) meta).getBlockState();
+            if (!(state instanceof Container)) {
+                return;
+            }
+            nested = ((Container) state).getSnapshotInventory().getContents();
+        } else {
+            return;
+        }
+        
+        for (final ItemStack content : nested) {
+            if (content != null && !content.getType().isAir()) {
+                contents.add(content.getType());
+                addContents(contents, content);
+            }
+        }
+    }
+    
+    public long getTime() {
+        return this.time;
+    }
+    
+    @NotNull
+    public CompleteReason getReason() {
+        return this.reason;
+    }
+    
+    @Nullable
+    public String getRoomName() {
+        return this.roomName;
+    }
+    
+    @Nullable
+    public UUID getUniqueId1() {
+        return this.uniqueId1;
+    }
+    
+    @Nullable
+    public String getName1() {
+        return this.name1;
+    }
+    
+    @NotNull
+    public Map<Material, Integer> getItems1() {
+        return this.items1;
+    }
+    
+    @NotNull
+    public List<ItemStack> getStacks1() {
+        return this.stacks1;
+    }
+    
+    @Nullable
+    public UUID getUniqueId2() {
+        return this.uniqueId2;
+    }
+    
+    @Nullable
+    public String getName2() {
+        return this.name2;
+    }
+    
+    @NotNull
+    public Map<Material, Integer> getItems2() {
+        return this.items2;
+    }
+    
+    @NotNull
+    public List<ItemStack> getStacks2() {
+        return this.stacks2;
+    }
+    
+    @NotNull
+    public Set<Material> getContents() {
+        return this.contents;
+    }
+}
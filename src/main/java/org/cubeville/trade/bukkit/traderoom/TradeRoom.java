@@ -26,9 +26,12 @@ import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldguard.WorldGuard;
 import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Server;
@@ -45,11 +48,34 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.util.Vector;
 import org.cubeville.trade.bukkit.TradePlugin;
+import org.cubeville.trade.bukkit.storage.BinaryCodec;
+import org.cubeville.trade.bukkit.storage.RecordStore;
+import org.cubeville.trade.bukkit.util.BlockKey;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public final class TradeRoom {
     
+    public static final int MAX_NAME_LENGTH = RecordStore.MAX_KEY_LENGTH;
+    
+    // Size of the fixed record holding the geometry and state of a trade room,
+    // excluding its name (which is the record key).
+    public static final int RECORD_SIZE = 576;
+    
+    private static final int OFFSET_WORLD = 0;
+    private static final int OFFSET_CHEST_1 = 16;
+    private static final int OFFSET_CHEST_2 = 24;
+    private static final int OFFSET_BUTTONS = 32;
+    private static final int OFFSET_TELEPORTS = 112;
+    private static final int TELEPORT_SIZE = 48;
+    private static final int OFFSET_REGION_1 = 304;
+    private static final int OFFSET_REGION_2 = 368;
+    private static final int REGION_SIZE = 64;
+    private static final int OFFSET_STATUS = 432;
+    private static final int OFFSET_TRADER_1 = 440;
+    private static final int OFFSET_TRADER_2 = 488;
+    private static final int TRADER_NAME_SIZE = 24;
+    
     private static final String KEY_NAME = "name";
     
     private static final String KEY_CHEST_1 = "chest_1";
@@ -84,9 +110,13 @@ public final class TradeRoom {
     private static final String KEY_TRADER_2_NAME = "trader_2_name";
     private static final String KEY_TRADER_2_LOGOUT_TIME = "trader_2_logout_time";
     
+    private static final String[] KEYS_BUTTONS = {KEY_BUTTON_IN_1, KEY_BUTTON_OUT_1, KEY_BUTTON_LOCK_1, KEY_BUTTON_ACCEPT_1, KEY_BUTTON_DENY_1, KEY_BUTTON_IN_2, KEY_BUTTON_OUT_2, KEY_BUTTON_LOCK_2, KEY_BUTTON_ACCEPT_2, KEY_BUTTON_DENY_2};
+    private static final String[] KEYS_TELEPORTS = {KEY_TELEPORT_IN_1, KEY_TELEPORT_OUT_1, KEY_TELEPORT_IN_2, KEY_TELEPORT_OUT_2};
+    
     private final String name;
+    private final UUID worldId;
     
-    private final Chest chest1;
+    private final long chest1Key;
     private final ProtectedRegion region1;
     private final Location teleportIn1;
     private final Location teleportOut1;
@@ -96,7 +126,7 @@ public final class TradeRoom {
     private final Button buttonAccept1;
     private final Button buttonDeny1;
     
-    private final Chest chest2;
+    private final long chest2Key;
     private final ProtectedRegion region2;
     private final Location teleportIn2;
     private final Location teleportOut2;
@@ -106,10 +136,23 @@ public final class TradeRoom {
     private final Button buttonAccept2;
     private final Button buttonDeny2;
     
+    // Live (non-snapshot) handles of the chests, looked up on first use and
+    // dropped when their chunk unloads.
+    private Chest chest1;
+    private Chest chest2;
+    
     private TradeStatus status;
     private Trader trader1;
     private Trader trader2;
     
+    // Told about every status and trader change, used by the room board.
+    private Consumer<TradeRoom> listener;
+    
+    // The items in both chests once both traders locked, and the items
+    // taken out of the chests since, for the conservation check.
+    private ItemDigest lockedItems;
+    private ItemDigest movedItems;
+    
     @NotNull
     public static TradeRoomBuilder newBuilder(@NotNull final TradePlugin plugin, @NotNull final Player player) {
         return new TradeRoomBuilder(plugin, player);
@@ -138,9 +181,10 @@ public final class TradeRoom {
     ) {
         
         this.name = name;
+        this.worldId = chest1.getWorld().getUID();
         
         this.region1 = region1;
-        this.chest1 = chest1;
+        this.chest1Key = BlockKey.of(chest1.getX(), chest1.getY(), chest1.getZ());
         this.teleportIn1 = teleportIn1;
         this.teleportOut1 = teleportOut1;
         this.buttonIn1 = buttonIn1;
@@ -150,7 +194,7 @@ public final class TradeRoom {
         this.buttonDeny1 = buttonDeny1;
         
         this.region2 = region2;
-        this.chest2 = chest2;
+        this.chest2Key = BlockKey.of(chest2.getX(), chest2.getY(), chest2.getZ());
         this.teleportIn2 = teleportIn2;
         this.teleportOut2 = teleportOut2;
         this.buttonIn2 = buttonIn2;
@@ -159,9 +203,17 @@ public final class TradeRoom {
         this.buttonAccept2 = buttonAccept2;
         this.buttonDeny2 = buttonDeny2;
         
+        this.chest1 = null;
+        this.chest2 = null;
+        
         this.status = null;
         this.trader1 = null;
         this.trader2 = null;
+        
+        this.listener = null;
+        
+        this.lockedItems = null;
+        this.movedItems = null;
     }
     
     public TradeRoom(@NotNull final Server server, final long offlineTime, @NotNull final Configuration config) throws IllegalArgumentException {
@@ -175,7 +227,7 @@ public final class TradeRoom {
         }
         
         final Location chest1Location = this.getLocation(config, KEY_CHEST_1, "chest 1");
-        final BlockState chest1State = chest1Location.getWorld().getBlockAt(chest1Location).getState();
+        final BlockState chest1State = chest1Location.getWorld().getBlockAt(chest1Location).getState(false);
         if (!(chest1State instanceof Chest)) {
             throw new IllegalArgumentException("Cannot have non-chest at chest 1 location.");
         }
@@ -188,7 +240,7 @@ public final class TradeRoom {
         if (chest2Location.equals(chest1Location)) {
             throw new IllegalArgumentException("Chest 1 and chest 2 cannot be the same chest.");
         }
-        final BlockState chest2State = chest2Location.getWorld().getBlockAt(chest2Location).getState();
+        final BlockState chest2State = chest2Location.getWorld().getBlockAt(chest2Location).getState(false);
         if (!(chest2State instanceof Chest)) {
             throw new IllegalArgumentException("Cannot have non-chest at chest 2 location.");
         }
@@ -371,8 +423,9 @@ public final class TradeRoom {
         }
         
         this.name = name;
+        this.worldId = world.getUID();
         
-        this.chest1 = chest1;
+        this.chest1Key = BlockKey.of(chest1.getX(), chest1.getY(), chest1.getZ());
         this.region1 = region1;
         this.teleportIn1 = teleportIn1;
         this.teleportOut1 = teleportOut1;
@@ -382,7 +435,7 @@ public final class TradeRoom {
         this.buttonAccept1 = buttonAccept1;
         this.buttonDeny1 = buttonDeny1;
         
-        this.chest2 = chest2;
+        this.chest2Key = BlockKey.of(chest2.getX(), chest2.getY(), chest2.getZ());
         this.region2 = region2;
         this.teleportIn2 = teleportIn2;
         this.teleportOut2 = teleportOut2;
@@ -392,9 +445,73 @@ public final class TradeRoom {
         this.buttonAccept2 = buttonAccept2;
         this.buttonDeny2 = buttonDeny2;
         
+        this.chest1 = null;
+        this.chest2 = null;
+        
         this.status = status;
         this.trader1 = trader1;
         this.trader2 = trader2;
+        
+        this.listener = null;
+        
+        this.lockedItems = null;
+        this.movedItems = null;
+    }
+    
+    // Loads a trade room from its fixed-size record, as written by toRecord().
+    public TradeRoom(@NotNull final Server server, final long offlineTime, @NotNull final String name, @NotNull final ByteBuffer record) throws IllegalArgumentException {
+        this(server, offlineTime, fromRecord(server, name, record));
+    }
+    
+    @NotNull
+    private static Configuration fromRecord(@NotNull final Server server, @NotNull final String name, @NotNull final ByteBuffer record) throws IllegalArgumentException {
+        
+        final World world = server.getWorld(BinaryCodec.getUniqueId(record, OFFSET_WORLD));
+        if (world == null) {
+            throw new IllegalArgumentException("Cannot find the world " + BinaryCodec.getUniqueId(record, OFFSET_WORLD).toString() + " for trade room " + name + ".");
+        }
+        
+        final Configuration config = new YamlConfiguration();
+        config.set(KEY_NAME, name);
+        config.set(KEY_CHEST_1, toLocation(world, record.getLong(OFFSET_CHEST_1)));
+        config.set(KEY_CHEST_2, toLocation(world, record.getLong(OFFSET_CHEST_2)));
+        config.set(KEY_REGION_1, BinaryCodec.getString(record, OFFSET_REGION_1));
+        config.set(KEY_REGION_2, BinaryCodec.getString(record, OFFSET_REGION_2));
+        
+        for (int index = 0; index < KEYS_BUTTONS.length; index++) {
+            config.set(KEYS_BUTTONS[index], toLocation(world, record.getLong(OFFSET_BUTTONS + index * 8)));
+        }
+        for (int index = 0; index < KEYS_TELEPORTS.length; index++) {
+            final int offset = OFFSET_TELEPORTS + index * TELEPORT_SIZE;
+            config.set(KEYS_TELEPORTS[index], new Location(server.getWorld(BinaryCodec.getUniqueId(record, offset)), record.getDouble(offset + 16), record.getDouble(offset + 24), record.getDouble(offset + 32), record.getFloat(offset + 40), record.getFloat(offset + 44)));
+        }
+        
+        final int status = record.get(OFFSET_STATUS);
+        if (status < 0 || status > TradeStatus.values().length) {
+            throw new IllegalArgumentException("Trade status " + status + " is not a valid trade status.");
+        } else if (status > 0) {
+            config.set(KEY_TRADE_STATUS, TradeStatus.values()[status - 1].name());
+        }
+        
+        final String trader1Name = BinaryCodec.getString(record, OFFSET_TRADER_1 + 24);
+        if (trader1Name != null) {
+            config.set(KEY_TRADER_1_UUID, BinaryCodec.getUniqueId(record, OFFSET_TRADER_1).toString());
+            config.set(KEY_TRADER_1_NAME, trader1Name);
+            config.set(KEY_TRADER_1_LOGOUT_TIME, record.getLong(OFFSET_TRADER_1 + 16));
+        }
+        final String trader2Name = BinaryCodec.getString(record, OFFSET_TRADER_2 + 24);
+        if (trader2Name != null) {
+            config.set(KEY_TRADER_2_UUID, BinaryCodec.getUniqueId(record, OFFSET_TRADER_2).toString());
+            config.set(KEY_TRADER_2_NAME, trader2Name);
+            config.set(KEY_TRADER_2_LOGOUT_TIME, record.getLong(OFFSET_TRADER_2 + 16));
+        }
+        
+        return config;
+    }
+    
+    @NotNull
+    private static Location toLocation(@NotNull final World world, final long key) {
+        return new Location(world, BlockKey.getX(key), BlockKey.getY(key), BlockKey.getZ(key));
     }
     
     @NotNull
@@ -522,8 +639,35 @@ public final class TradeRoom {
         return this.name;
     }
     
+    @Nullable
+    public World getWorld() {
+        return Bukkit.getWorld(this.worldId);
+    }
+    
+    @NotNull
+    public UUID getWorldId() {
+        return this.worldId;
+    }
+    
+    public long getChest1Key() {
+        return this.chest1Key;
+    }
+    
+    public long getChest2Key() {
+        return this.chest2Key;
+    }
+    
+    @NotNull
+    Button[] getButtons() {
+        return new Button[] {this.buttonIn1, this.buttonOut1, this.buttonLock1, this.buttonAccept1, this.buttonDeny1, this.buttonIn2, this.buttonOut2, this.buttonLock2, this.buttonAccept2, this.buttonDeny2};
+    }
+    
+    // Gets a live handle of the trade chest on side 1.
     @NotNull
-    public Chest getChest1() {
+    public Chest getChest1() throws IllegalStateException {
+        if (this.chest1 == null) {
+            this.chest1 = this.loadChest(this.chest1Key, "1");
+        }
         return this.chest1;
     }
     
@@ -542,36 +686,63 @@ public final class TradeRoom {
         return this.teleportOut1;
     }
     
-    @NotNull
-    public Location getButtonIn1() {
-        return this.buttonIn1.getLocation();
+    public long getButtonIn1() {
+        return this.buttonIn1.getKey();
     }
     
-    @NotNull
-    public Location getButtonOut1() {
-        return this.buttonOut1.getLocation();
+    public long getButtonOut1() {
+        return this.buttonOut1.getKey();
     }
     
-    @NotNull
-    public Location getButtonLock1() {
-        return this.buttonLock1.getLocation();
+    public long getButtonLock1() {
+        return this.buttonLock1.getKey();
     }
     
-    @NotNull
-    public Location getButtonAccept1() {
-        return this.buttonAccept1.getLocation();
+    public long getButtonAccept1() {
+        return this.buttonAccept1.getKey();
     }
     
-    @NotNull
-    public Location getButtonDeny1() {
-        return this.buttonDeny1.getLocation();
+    public long getButtonDeny1() {
+        return this.buttonDeny1.getKey();
     }
     
+    // Gets a live handle of the trade chest on side 2.
     @NotNull
-    public Chest getChest2() {
+    public Chest getChest2() throws IllegalStateException {
+        if (this.chest2 == null) {
+            this.chest2 = this.loadChest(this.chest2Key, "2");
+        }
         return this.chest2;
     }
     
+    @NotNull
+    private Chest loadChest(final long key, @NotNull final String number) throws IllegalStateException {
+        
+        final World world = this.getWorld();
+        if (world == null) {
+            throw new IllegalStateException("The world " + this.worldId.toString() + " of trade room " + this.name + " is not loaded.");
+        }
+        
+        // Not a snapshot, the inventory is the one of the chest in the world.
+        final BlockState state = world.getBlockAt(BlockKey.getX(key), BlockKey.getY(key), BlockKey.getZ(key)).getState(false);
+        if (!(state instanceof Chest)) {
+            throw new IllegalStateException("Trade chest " + number + " of trade room " + this.name + " is no longer a chest, found " + state.getType().name() + ".");
+        }
+        return (Chest) state;
+    }
+    
+    // Drops the cached chest handles in the given chunk, as the block entities
+    // behind them are discarded when the chunk unloads.
+    public void unloadChunk(final int chunkX, final int chunkZ) {
+        
+        if (BlockKey.getX(this.chest1Key) >> 4 == chunkX && BlockKey.getZ(this.chest1Key) >> 4 == chunkZ) {
+            this.chest1 = null;
+        }
+        if (BlockKey.getX(this.chest2Key) >> 4 == chunkX && BlockKey.getZ(this.chest2Key) >> 4 == chunkZ) {
+            this.chest2 = null;
+        }
+    }
+    
     @NotNull
     public ProtectedRegion getRegion2() {
         return this.region2;
@@ -587,29 +758,24 @@ public final class TradeRoom {
         return this.teleportOut2;
     }
     
-    @NotNull
-    public Location getButtonIn2() {
-        return this.buttonIn2.getLocation();
+    public long getButtonIn2() {
+        return this.buttonIn2.getKey();
     }
     
-    @NotNull
-    public Location getButtonOut2() {
-        return this.buttonOut2.getLocation();
+    public long getButtonOut2() {
+        return this.buttonOut2.getKey();
     }
     
-    @NotNull
-    public Location getButtonLock2() {
-        return this.buttonLock2.getLocation();
+    public long getButtonLock2() {
+        return this.buttonLock2.getKey();
     }
     
-    @NotNull
-    public Location getButtonAccept2() {
-        return this.buttonAccept2.getLocation();
+    public long getButtonAccept2() {
+        return this.buttonAccept2.getKey();
     }
     
-    @NotNull
-    public Location getButtonDeny2() {
-        return this.buttonDeny2.getLocation();
+    public long getButtonDeny2() {
+        return this.buttonDeny2.getKey();
     }
     
     @Nullable
@@ -618,7 +784,13 @@ public final class TradeRoom {
     }
     
     public void setStatus(@Nullable final TradeStatus status) {
+        
+        if (this.status == status) {
+            return;
+        }
+        
         this.status = status;
+        this.notifyListener();
     }
     
     @Nullable
@@ -628,6 +800,7 @@ public final class TradeRoom {
     
     public void setTrader1(@Nullable final Trader trader1) {
         this.trader1 = trader1;
+        this.notifyListener();
     }
     
     @Nullable
@@ -637,6 +810,47 @@ public final class TradeRoom {
     
     public void setTrader2(@Nullable final Trader trader2) {
         this.trader2 = trader2;
+        this.notifyListener();
+    }
+    
+    // Sets the listener told about every change of the status or the traders
+    // of this room.
+    public void setListener(@Nullable final Consumer<TradeRoom> listener) {
+        this.listener = listener;
+    }
+    
+    // Records the items in both chests, once both traders have locked their
+    // items in.
+    public void lockItems() {
+        
+        final ItemDigest locked = new ItemDigest();
+        locked.addAll(this.getChest1().getInventory().getStorageContents());
+        locked.addAll(this.getChest2().getInventory().getStorageContents());
+        
+        this.lockedItems = locked;
+        this.movedItems = new ItemDigest();
+    }
+    
+    // Compares the items locked into the trade with the items taken out of the
+    // chests since, and stops counting.
+    @Nullable
+    public String verifyItems() {
+        
+        final ItemDigest locked = this.lockedItems;
+        final ItemDigest moved = this.movedItems;
+        this.lockedItems = null;
+        this.movedItems = null;
+        
+        if (locked == null || moved == null || locked.matches(moved)) {
+            return null;
+        }
+        return "locked " + locked.toString() + ", moved " + moved.toString();
+    }
+    
+    private void notifyListener() {
+        if (this.listener != null) {
+            this.listener.accept(this);
+        }
     }
     
     @Nullable
@@ -655,26 +869,27 @@ public final class TradeRoom {
     public FileConfiguration getConfig() {
         
         final FileConfiguration config = new YamlConfiguration();
+        final World world = this.getWorld();
         
         config.set(KEY_NAME, this.getName());
-        config.set(KEY_CHEST_1, this.getChest1().getLocation());
+        config.set(KEY_CHEST_1, toLocation(world, this.chest1Key));
         config.set(KEY_REGION_1, this.getRegion1().getId());
         config.set(KEY_TELEPORT_IN_1, this.getTeleportIn1());
         config.set(KEY_TELEPORT_OUT_1, this.getTeleportOut1());
-        config.set(KEY_BUTTON_IN_1, this.getButtonIn1());
-        config.set(KEY_BUTTON_OUT_1, this.getButtonOut1());
-        config.set(KEY_BUTTON_LOCK_1, this.getButtonLock1());
-        config.set(KEY_BUTTON_ACCEPT_1, this.getButtonAccept1());
-        config.set(KEY_BUTTON_DENY_1, this.getButtonDeny1());
-        config.set(KEY_CHEST_2, this.getChest2().getLocation());
+        config.set(KEY_BUTTON_IN_1, toLocation(world, this.getButtonIn1()));
+        config.set(KEY_BUTTON_OUT_1, toLocation(world, this.getButtonOut1()));
+        config.set(KEY_BUTTON_LOCK_1, toLocation(world, this.getButtonLock1()));
+        config.set(KEY_BUTTON_ACCEPT_1, toLocation(world, this.getButtonAccept1()));
+        config.set(KEY_BUTTON_DENY_1, toLocation(world, this.getButtonDeny1()));
+        config.set(KEY_CHEST_2, toLocation(world, this.chest2Key));
         config.set(KEY_REGION_2, this.getRegion2().getId());
         config.set(KEY_TELEPORT_IN_2, this.getTeleportIn2());
         config.set(KEY_TELEPORT_OUT_2, this.getTeleportOut2());
-        config.set(KEY_BUTTON_IN_2, this.getButtonIn2());
-        config.set(KEY_BUTTON_OUT_2, this.getButtonOut2());
-        config.set(KEY_BUTTON_LOCK_2, this.getButtonLock2());
-        config.set(KEY_BUTTON_ACCEPT_2, this.getButtonAccept2());
-        config.set(KEY_BUTTON_DENY_2, this.getButtonDeny2());
+        config.set(KEY_BUTTON_IN_2, toLocation(world, this.getButtonIn2()));
+        config.set(KEY_BUTTON_OUT_2, toLocation(world, this.getButtonOut2()));
+        config.set(KEY_BUTTON_LOCK_2, toLocation(world, this.getButtonLock2()));
+        config.set(KEY_BUTTON_ACCEPT_2, toLocation(world, this.getButtonAccept2()));
+        config.set(KEY_BUTTON_DENY_2, toLocation(world, this.getButtonDeny2()));
         
         if (this.getStatus() != null) {
             config.set(KEY_TRADE_STATUS, this.getStatus().name());
@@ -693,86 +908,136 @@ public final class TradeRoom {
         return config;
     }
     
-    public boolean contains(@NotNull final Location location, final boolean exact) {
-        return this.containsChest(location) || this.containsButton(location, exact);
+    // Encodes this trade room into a fixed-size record.
+    @NotNull
+    public byte[] toRecord() throws IllegalArgumentException {
+        
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        
+        BinaryCodec.putUniqueId(record, OFFSET_WORLD, this.worldId);
+        record.putLong(OFFSET_CHEST_1, this.chest1Key);
+        record.putLong(OFFSET_CHEST_2, this.chest2Key);
+        BinaryCodec.putString(record, OFFSET_REGION_1, REGION_SIZE, this.region1.getId());
+        BinaryCodec.putString(record, OFFSET_REGION_2, REGION_SIZE, this.region2.getId());
+        
+        final Button[] buttons = {this.buttonIn1, this.buttonOut1, this.buttonLock1, this.buttonAccept1, this.buttonDeny1, this.buttonIn2, this.buttonOut2, this.buttonLock2, this.buttonAccept2, this.buttonDeny2};
+        for (int index = 0; index < buttons.length; index++) {
+            if (!buttons[index].getWorldId().equals(this.worldId)) {
+                throw new IllegalArgumentException("Cannot encode trade room " + this.name + ", " + KEYS_BUTTONS[index] + " is not in world " + this.worldId.toString() + ".");
+            }
+            record.putLong(OFFSET_BUTTONS + index * 8, buttons[index].getKey());
+        }
+        
+        final Location[] teleports = {this.teleportIn1, this.teleportOut1, this.teleportIn2, this.teleportOut2};
+        for (int index = 0; index < teleports.length; index++) {
+            final int offset = OFFSET_TELEPORTS + index * TELEPORT_SIZE;
+            final Location teleport = teleports[index];
+            BinaryCodec.putUniqueId(record, offset, teleport.getWorld() == null ? this.worldId : teleport.getWorld().getUID());
+            record.putDouble(offset + 16, teleport.getX());
+            record.putDouble(offset + 24, teleport.getY());
+            record.putDouble(offset + 32, teleport.getZ());
+            record.putFloat(offset + 40, teleport.getYaw());
+            record.putFloat(offset + 44, teleport.getPitch());
+        }
+        
+        record.put(OFFSET_STATUS, (byte) (this.status == null ? 0 : this.status.ordinal() + 1));
+        this.putTrader(record, OFFSET_TRADER_1, this.trader1);
+        this.putTrader(record, OFFSET_TRADER_2, this.trader2);
+        
+        return record.array();
+    }
+    
+    private void putTrader(@NotNull final ByteBuffer record, final int offset, @Nullable final Trader trader) {
+        
+        if (trader == null) {
+            return;
+        }
+        
+        BinaryCodec.putUniqueId(record, offset, trader.getUniqueId());
+        record.putLong(offset + 16, trader.getLogoutTime());
+        BinaryCodec.putString(record, offset + 24, TRADER_NAME_SIZE, trader.getName());
+    }
+    
+    public boolean contains(final long key, final boolean exact) {
+        return this.containsChest(key) || this.containsButton(key, exact);
     }
     
     @Nullable
-    public Side getSide(@NotNull final Location location) {
+    public Side getSide(final long key) {
         
-        final Side side = this.getChestSide(location);
+        final Side side = this.getChestSide(key);
         if (side != null) {
             return side;
         }
-        return this.getButtonSide(location, true);
+        return this.getButtonSide(key, true);
     }
     
-    private boolean containsChest(@NotNull final Location location) {
-        return this.getChestSide(location) != null;
+    private boolean containsChest(final long key) {
+        return this.getChestSide(key) != null;
     }
     
     @Nullable
-    public Side getChestSide(@NotNull final Location location) {
+    public Side getChestSide(final long key) {
         
-        if (this.getChest1().getLocation().equals(location)) {
+        if (this.chest1Key == key) {
             return Side.SIDE_1;
-        } else if (this.getChest2().getLocation().equals(location)) {
+        } else if (this.chest2Key == key) {
             return Side.SIDE_2;
         } else {
             return null;
         }
     }
     
-    private boolean containsButton(@NotNull final Location location, final boolean exact) {
-        return this.getButtonSide(location, exact) != null;
+    private boolean containsButton(final long key, final boolean exact) {
+        return this.getButtonSide(key, exact) != null;
     }
     
     @Nullable
-    private Side getButtonSide(@NotNull final Location location, final boolean exact) {
+    private Side getButtonSide(final long key, final boolean exact) {
         
-        if (this.buttonIn1.contains(location, exact)) {
+        if (this.buttonIn1.contains(key, exact)) {
             return Side.SIDE_1;
-        } else if (this.buttonOut1.contains(location, exact)) {
+        } else if (this.buttonOut1.contains(key, exact)) {
             return Side.SIDE_1;
-        } else if (this.buttonLock1.contains(location, exact)) {
+        } else if (this.buttonLock1.contains(key, exact)) {
             return Side.SIDE_1;
-        } else if (this.buttonAccept1.contains(location, exact)) {
+        } else if (this.buttonAccept1.contains(key, exact)) {
             return Side.SIDE_1;
-        } else if (this.buttonDeny1.contains(location, exact)) {
+        } else if (this.buttonDeny1.contains(key, exact)) {
             return Side.SIDE_1;
-        } else if (this.buttonIn2.contains(location, exact)) {
+        } else if (this.buttonIn2.contains(key, exact)) {
             return Side.SIDE_2;
-        } else if (this.buttonOut2.contains(location, exact)) {
+        } else if (this.buttonOut2.contains(key, exact)) {
             return Side.SIDE_2;
-        } else if (this.buttonLock2.contains(location, exact)) {
+        } else if (this.buttonLock2.contains(key, exact)) {
             return Side.SIDE_2;
-        } else if (this.buttonAccept2.contains(location, exact)) {
+        } else if (this.buttonAccept2.contains(key, exact)) {
             return Side.SIDE_2;
-        } else if (this.buttonDeny2.contains(location, exact)) {
+        } else if (this.buttonDeny2.contains(key, exact)) {
             return Side.SIDE_2;
         } else {
             return null;
         }
     }
     
-    public boolean isChest(@NotNull final Location location, @NotNull final Side side) {
-        return side == Side.SIDE_1 && this.getChest1().getLocation().equals(location) || side == Side.SIDE_2 && this.getChest2().getLocation().equals(location);
+    public boolean isChest(final long key, @NotNull final Side side) {
+        return side == Side.SIDE_1 && this.chest1Key == key || side == Side.SIDE_2 && this.chest2Key == key;
     }
     
-    public boolean isButtonOut(@NotNull final Location location, @NotNull final Side side) {
-        return side == Side.SIDE_1 && this.getButtonOut1().equals(location) || side == Side.SIDE_2 && this.getButtonOut2().equals(location);
+    public boolean isButtonOut(final long key, @NotNull final Side side) {
+        return side == Side.SIDE_1 && this.getButtonOut1() == key || side == Side.SIDE_2 && this.getButtonOut2() == key;
     }
     
-    public boolean isButtonLock(@NotNull final Location location, @NotNull final Side side) {
-        return side == Side.SIDE_1 && this.getButtonLock1().equals(location) || side == Side.SIDE_2 && this.getButtonLock2().equals(location);
+    public boolean isButtonLock(final long key, @NotNull final Side side) {
+        return side == Side.SIDE_1 && this.getButtonLock1() == key || side == Side.SIDE_2 && this.getButtonLock2() == key;
     }
     
-    public boolean isButtonAccept(@NotNull final Location location, @NotNull final Side side) {
-        return side == Side.SIDE_1 && this.getButtonAccept1().equals(location) || side == Side.SIDE_2 && this.getButtonAccept2().equals(location);
+    public boolean isButtonAccept(final long key, @NotNull final Side side) {
+        return side == Side.SIDE_1 && this.getButtonAccept1() == key || side == Side.SIDE_2 && this.getButtonAccept2() == key;
     }
     
-    public boolean isButtonDeny(@NotNull final Location location, @NotNull final Side side) {
-        return side == Side.SIDE_1 && this.getButtonDeny1().equals(location) || side == Side.SIDE_2 && this.getButtonDeny2().equals(location);
+    public boolean isButtonDeny(final long key, @NotNull final Side side) {
+        return side == Side.SIDE_1 && this.getButtonDeny1() == key || side == Side.SIDE_2 && this.getButtonDeny2() == key;
     }
     
     public boolean isActive() {
@@ -833,9 +1098,9 @@ public final class TradeRoom {
     public Inventory createTradeInventory(@NotNull final Server server, @NotNull final UUID uniqueId) {
         
         if (this.isTrader1(uniqueId)) {
-            return this.createTradeInventory(server, this.chest1);
+            return this.createTradeInventory(server, this.getChest1());
         } else if (this.isTrader2(uniqueId)) {
-            return this.createTradeInventory(server, this.chest2);
+            return this.createTradeInventory(server, this.getChest2());
         } else {
             return null;
         }
@@ -843,9 +1108,14 @@ public final class TradeRoom {
     
     @NotNull
     public Inventory createTradeInventory(@NotNull final Server server, @NotNull final Chest chest) {
+        return createTradeInventory(server, chest.getInventory());
+    }
+    
+    @NotNull
+    static Inventory createTradeInventory(@NotNull final Server server, @NotNull final Inventory from) {
         
         final Inventory inventory = server.createInventory(null, 45);
-        final ItemStack[] items = chest.getInventory().getStorageContents();
+        final ItemStack[] items = from.getStorageContents();
         for (int slot = 0; slot < items.length && slot < 27; slot++) {
             inventory.setItem(slot, items[slot]);
         }
@@ -879,15 +1149,15 @@ public final class TradeRoom {
         final Chest chestOther;
         
         if (this.isTrader1(self.getUniqueId())) {
-            chestSelf = this.chest1;
-            chestOther = this.chest2;
+            chestSelf = this.getChest1();
+            chestOther = this.getChest2();
         } else {
-            chestSelf = this.chest2;
-            chestOther = this.chest1;
+            chestSelf = this.getChest2();
+            chestOther = this.getChest1();
         }
         
-        final Inventory extraSelf = this.transferItems(self.getServer(), self.getInventory(), chestOther.getInventory());
-        final Inventory extraOther = this.transferItems(other.getServer(), other.getInventory(), chestSelf.getInventory());
+        final ItemStack[] extraSelf = transferItems(self, chestOther.getInventory(), this.movedItems);
+        final ItemStack[] extraOther = transferItems(other, chestSelf.getInventory(), this.movedItems);
         
         self.sendMessage("§aTrade complete!");
         other.sendMessage("§aTrade complete!");
@@ -898,7 +1168,7 @@ public final class TradeRoom {
             final Location location = self.getLocation().add(new Vector(0.0D, 1.0D, 0.0D));
             final World world = self.getWorld();
             
-            for (final ItemStack item : extraSelf.getStorageContents()) {
+            for (final ItemStack item : extraSelf) {
                 if (item != null && item.getType() != Material.AIR) {
                     world.dropItemNaturally(location, item);
                 }
@@ -910,7 +1180,7 @@ public final class TradeRoom {
             final Location location = other.getLocation().add(new Vector(0.0D, 1.0D, 0.0D));
             final World world = other.getWorld();
             
-            for (final ItemStack item : extraOther.getStorageContents()) {
+            for (final ItemStack item : extraOther) {
                 if (item != null && item.getType() != Material.AIR) {
                     world.dropItemNaturally(location, item);
                 }
@@ -919,31 +1189,26 @@ public final class TradeRoom {
     }
     
     @Nullable
-    public Inventory swapItems(@NotNull final Player self, @NotNull final Offline other) {
+    public ItemStack[] swapItems(@NotNull final Player self, @NotNull final Offline other) {
         
         final Chest chestSelf;
         final Chest chestOther;
         
         if (this.isTrader1(self.getUniqueId())) {
-            chestSelf = this.chest1;
-            chestOther = this.chest2;
+            chestSelf = this.getChest1();
+            chestOther = this.getChest2();
         } else {
-            chestSelf = this.chest2;
-            chestOther = this.chest1;
+            chestSelf = this.getChest2();
+            chestOther = this.getChest1();
         }
         
-        final Inventory otherInventory;
-        if (other.getInventory() == null) {
-            otherInventory = self.getServer().createInventory(null, 27);
-        } else {
-            otherInventory = other.getInventory();
-        }
+        final ItemStack[] otherItems = other.getItems() == null ? new ItemStack[Offline.SIZE] : other.getItems();
         
-        final Inventory extraSelf = this.transferItems(self.getServer(), self.getInventory(), chestOther.getInventory());
-        final Inventory extraOther = this.transferItems(self.getServer(), otherInventory, chestSelf.getInventory());
+        final ItemStack[] extraSelf = transferItems(self, chestOther.getInventory(), this.movedItems);
+        final ItemStack[] extraOther = transferItems(otherItems, chestSelf.getInventory(), this.movedItems);
         
         self.sendMessage("§aTrade complete!");
-        other.setInventory(otherInventory);
+        other.setItems(otherItems);
         
         if (extraSelf != null) {
             
@@ -951,7 +1216,7 @@ public final class TradeRoom {
             final Location location = self.getLocation().add(new Vector(0.0D, 1.0D, 0.0D));
             final World world = self.getWorld();
             
-            for (final ItemStack item : extraSelf.getStorageContents()) {
+            for (final ItemStack item : extraSelf) {
                 if (item != null && item.getType() != Material.AIR) {
                     world.dropItemNaturally(location, item);
                 }
@@ -967,20 +1232,20 @@ public final class TradeRoom {
     }
     
     @Nullable
-    public Inventory returnItems(@NotNull final Player self, @Nullable final Offline other) {
+    public ItemStack[] returnItems(@NotNull final Player self, @Nullable final Offline other) {
         
         this.returnItems(self);
         
         if (other == null) {
             return null;
         }
-        return this.returnItems(self.getServer(), other);
+        return this.returnItems(other);
     }
     
     public void returnItems(@NotNull final Player player) {
         
-        final Chest chest = this.isTrader1(player.getUniqueId()) ? this.chest1 : this.chest2;
-        final Inventory extra = this.transferItems(player.getServer(), player.getInventory(), chest.getInventory());
+        final Chest chest = this.isTrader1(player.getUniqueId()) ? this.getChest1() : this.getChest2();
+        final ItemStack[] extra = transferItems(player, chest.getInventory(), this.movedItems);
         
         player.sendMessage("§aReturn complete!");
         
@@ -990,7 +1255,7 @@ public final class TradeRoom {
             final Location location = player.getLocation().add(new Vector(0.0D, 1.0D, 0.0D));
             final World world = player.getWorld();
             
-            for (final ItemStack item : extra.getStorageContents()) {
+            for (final ItemStack item : extra) {
                 if (item != null && item.getType() != Material.AIR) {
                     world.dropItemNaturally(location, item);
                 }
@@ -999,20 +1264,32 @@ public final class TradeRoom {
     }
     
     @Nullable
-    public Inventory returnItems(@NotNull final Server server, @NotNull final Offline offline) {
+    public ItemStack[] returnItems(@NotNull final Offline offline) {
         
-        final Chest chest = this.isTrader1(offline.getUniqueId()) ? this.chest1 : this.chest2;
-        final Inventory inventory = offline.getInventory() == null ? server.createInventory(null, 27) : offline.getInventory();
-        final Inventory extra = this.transferItems(server, inventory, chest.getInventory());
-        offline.setInventory(inventory);
+        final Chest chest = this.isTrader1(offline.getUniqueId()) ? this.getChest1() : this.getChest2();
+        final ItemStack[] items = offline.getItems() == null ? new ItemStack[Offline.SIZE] : offline.getItems();
+        final ItemStack[] extra = transferItems(items, chest.getInventory(), this.movedItems);
+        offline.setItems(items);
         
         return extra;
     }
     
     @Nullable
-    private Inventory transferItems(@NotNull final Server server, @NotNull final Inventory to, @NotNull final Inventory from) {
+    static ItemStack[] transferItems(@NotNull final Player player, @NotNull final Inventory from, @Nullable final ItemDigest moved) {
         
+        final Inventory to = player.getInventory();
         final ItemStack[] toItems = to.getStorageContents();
+        final ItemStack[] extra = transferItems(toItems, from, moved);
+        to.setStorageContents(toItems);
+        
+        return extra;
+    }
+    
+    // Moves the items of an inventory into the given slots, stacking where
+    // possible.
+    @Nullable
+    static ItemStack[] transferItems(@NotNull final ItemStack[] toItems, @NotNull final Inventory from, @Nullable final ItemDigest digest) {
+        
         final ItemStack[] fromItems = from.getStorageContents();
         
         boolean slotOpen = true;
@@ -1046,7 +1323,14 @@ public final class TradeRoom {
                 
                 final int moveable = Math.min(fromItem.getAmount(), available);
                 final int remaining = fromItem.getAmount() - moveable;
-                toItems[t] = new ItemStack(slot.getType(), slot.getAmount() + moveable);
+                
+                // Clone the stacks, so the items keep their meta.
+                final ItemStack merged = slot.clone();
+                merged.setAmount(slot.getAmount() + moveable);
+                toItems[t] = merged;
+                if (digest != null) {
+                    digest.add(ItemDigest.key(merged), moveable);
+                }
                 
                 if (remaining == 0) {
                     fromItems[f] = null;
@@ -1054,7 +1338,8 @@ public final class TradeRoom {
                     break;
                 }
                 
-                fromItem = new ItemStack(fromItem.getType(), remaining);
+                fromItem = fromItem.clone();
+                fromItem.setAmount(remaining);
                 fromItems[f] = fromItem;
             }
             
@@ -1072,6 +1357,9 @@ public final class TradeRoom {
                 toItems[t] = fromItem;
                 fromItems[f] = null;
                 moved = true;
+                if (digest != null) {
+                    digest.add(ItemDigest.key(toItems[t]), fromItem.getAmount());
+                }
             }
             
             if (!moved) {
@@ -1079,8 +1367,6 @@ public final class TradeRoom {
             }
         }
         
-        to.setStorageContents(toItems);
-        
         boolean dropRequired = false;
         if (!slotOpen) {
             for (final ItemStack item : fromItems) {
@@ -1096,20 +1382,20 @@ public final class TradeRoom {
             return null;
         }
         
-        final ItemStack[] extraItems = new ItemStack[27];
-        for (int slot = 0; slot < 27; slot++) {
+        final ItemStack[] extraItems = new ItemStack[fromItems.length];
+        for (int slot = 0; slot < fromItems.length; slot++) {
             final ItemStack item = fromItems[slot];
             if (item != null && item.getType() != Material.AIR) {
                 extraItems[slot] = item;
                 fromItems[slot] = null;
+                if (digest != null) {
+                    digest.add(ItemDigest.key(extraItems[slot]), item.getAmount());
+                }
             }
         }
         
-        final Inventory extra = server.createInventory(null, 27);
-        extra.setStorageContents(extraItems);
         from.setStorageContents(fromItems);
-        
-        return extra;
+        return extraItems;
     }
     
     @Override
@@ -1131,10 +1417,10 @@ public final class TradeRoom {
         if (!this.getName().equals(other.getName())) {
             return false;
         }
-        if (!this.getChest1().getLocation().equals(other.getChest1().getLocation())) {
+        if (this.chest1Key != other.chest1Key || !this.worldId.equals(other.worldId)) {
             return false;
         }
-        if (!this.getChest2().getLocation().equals(other.getChest2().getLocation())) {
+        if (this.chest2Key != other.chest2Key) {
             return false;
         }
         if (!this.buttonIn1.equals(other.buttonIn1)) {
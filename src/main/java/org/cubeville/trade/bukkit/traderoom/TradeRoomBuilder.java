@@ -26,6 +26,7 @@ import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldguard.WorldGuard;
 import com.sk89q.worldguard.protection.managers.RegionManager;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.bukkit.Location;
@@ -108,6 +109,10 @@ public final class TradeRoomBuilder {
             this.player.sendMessage("§cThe trade room name cannot be blank.");
             return false;
         }
+        if (trimmed.getBytes(StandardCharsets.UTF_8).length > TradeRoom.MAX_NAME_LENGTH) {
+            this.player.sendMessage("§cThe trade room name cannot be longer than§r §6" + TradeRoom.MAX_NAME_LENGTH + "§r §ccharacters.");
+            return false;
+        }
         if (this.plugin.tradeRoomExists(trimmed)) {
             this.player.sendMessage("§cThe trade room name§r §6" + trimmed + "§r §cis already in use.");
             return false;
@@ -131,6 +136,11 @@ public final class TradeRoomBuilder {
             return false;
         }
         
+        if (name1.getBytes(StandardCharsets.UTF_8).length > TradeRoom.MAX_NAME_LENGTH || name2.getBytes(StandardCharsets.UTF_8).length > TradeRoom.MAX_NAME_LENGTH) {
+            this.player.sendMessage("§cA trade room cannot use a region with a name longer than§r §6" + TradeRoom.MAX_NAME_LENGTH + "§r §ccharacters.");
+            return false;
+        }
+        
         final RegionManager regionManager = WorldGuard.getInstance().getPlatform().getRegionContainer().get(BukkitAdapter.adapt(this.world));
         if (regionManager == null) {
             this.player.sendMessage("§cA trade room cannot be set up in the world§r §6" + this.world.getName() + "§r§c: No region managers exist.");
@@ -606,6 +616,10 @@ public final class TradeRoomBuilder {
         if (world == null) {
             return null;
         }
+        if (!world.getUID().equals(this.world.getUID())) {
+            this.player.sendMessage("§cThe " + type + " must be in the same world as the trade room.");
+            return null;
+        }
         
         final BlockState state = world.getBlockAt(location).getState();
         if (!this.isButton(state)) {
@@ -27,12 +27,13 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+// The identity of a player in a trade.
 public final class Trader {
     
     private final UUID uniqueId;
     private final String name;
     
-    private long logoutTime;
+    private volatile long logoutTime;
     
     public Trader(@NotNull final Player player) {
         this(player.getUniqueId(), player.getName(), 0L);
@@ -85,13 +86,11 @@ public final class Trader {
         }
         
         final Trader other = (Trader) object;
-        
-        if (!this.getUniqueId().equals(other.getUniqueId())) {
-            return false;
-        }
-        if (!this.getName().equalsIgnoreCase(other.getName())) {
-            return false;
-        }
-        return this.getLogoutTime() == other.getLogoutTime();
+        return this.getUniqueId().equals(other.getUniqueId());
+    }
+    
+    @Override
+    public int hashCode() {
+        return this.uniqueId.hashCode();
     }
 }
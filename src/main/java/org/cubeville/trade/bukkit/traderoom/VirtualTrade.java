@@ -0,0 +1,256 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.traderoom;
+
+import java.util.UUID;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A trade that does not use a TradeRoom.
+public final class VirtualTrade {
+    
+    private final Trader trader1;
+    private final Trader trader2;
+    private final Inventory inventory1;
+    private final Inventory inventory2;
+    
+    private TradeStatus status;
+    
+    // See TradeRoom, for the conservation check.
+    private ItemDigest lockedItems;
+    private ItemDigest movedItems;
+    
+    public VirtualTrade(@NotNull final Server server, @NotNull final Trader trader1, @NotNull final Trader trader2) {
+        this.trader1 = trader1;
+        this.trader2 = trader2;
+        this.inventory1 = server.createInventory(null, Offline.SIZE);
+        this.inventory2 = server.createInventory(null, Offline.SIZE);
+        this.status = TradeStatus.PREPARE;
+        
+        this.lockedItems = null;
+        this.movedItems = null;
+    }
+    
+    @NotNull
+    public Trader getTrader1() {
+        return this.trader1;
+    }
+    
+    @NotNull
+    public Trader getTrader2() {
+        return this.trader2;
+    }
+    
+    @Nullable
+    public Trader getTrader(@NotNull final UUID uniqueId) {
+        
+        if (this.isTrader1(uniqueId)) {
+            return this.trader1;
+        } else if (this.isTrader2(uniqueId)) {
+            return this.trader2;
+        } else {
+            return null;
+        }
+    }
+    
+    @Nullable
+    public Trader getOther(@NotNull final UUID uniqueId) {
+        
+        if (this.isTrader1(uniqueId)) {
+            return this.trader2;
+        } else if (this.isTrader2(uniqueId)) {
+            return this.trader1;
+        } else {
+            return null;
+        }
+    }
+    
+    @Nullable
+    public Inventory getInventory(@NotNull final UUID uniqueId) {
+        
+        if (this.isTrader1(uniqueId)) {
+            return this.inventory1;
+        } else if (this.isTrader2(uniqueId)) {
+            return this.inventory2;
+        } else {
+            return null;
+        }
+    }
+    
+    @NotNull
+    public TradeStatus getStatus() {
+        return this.status;
+    }
+    
+    public void setStatus(@NotNull final TradeStatus status) {
+        this.status = status;
+    }
+    
+    public boolean isTrader1(@NotNull final UUID uniqueId) {
+        return this.trader1.getUniqueId().equals(uniqueId);
+    }
+    
+    public boolean isTrader2(@NotNull final UUID uniqueId) {
+        return this.trader2.getUniqueId().equals(uniqueId);
+    }
+    
+    public boolean hasNotLocked(@NotNull final UUID uniqueId) {
+        
+        if (this.isTrader1(uniqueId)) {
+            return this.status == TradeStatus.PREPARE || this.status == TradeStatus.LOCKED_2;
+        } else if (this.isTrader2(uniqueId)) {
+            return this.status == TradeStatus.PREPARE || this.status == TradeStatus.LOCKED_1;
+        } else {
+            return false;
+        }
+    }
+    
+    public boolean hasLocked(@NotNull final UUID uniqueId) {
+        return this.isTrader1(uniqueId) && this.status == TradeStatus.LOCKED_1 || this.isTrader2(uniqueId) && this.status == TradeStatus.LOCKED_2;
+    }
+    
+    public boolean hasNotAccepted(@NotNull final UUID uniqueId) {
+        
+        if (this.isTrader1(uniqueId)) {
+            return this.status == TradeStatus.DECIDE || this.status == TradeStatus.ACCEPT_2;
+        } else if (this.isTrader2(uniqueId)) {
+            return this.status == TradeStatus.DECIDE || this.status == TradeStatus.ACCEPT_1;
+        } else {
+            return false;
+        }
+    }
+    
+    public boolean hasAccepted(@NotNull final UUID uniqueId) {
+        return this.isTrader1(uniqueId) && this.status == TradeStatus.ACCEPT_1 || this.isTrader2(uniqueId) && this.status == TradeStatus.ACCEPT_2;
+    }
+    
+    // Records the items in both inventories, see TradeRoom.lockItems().
+    public void lockItems() {
+        
+        final ItemDigest locked = new ItemDigest();
+        locked.addAll(this.inventory1.getStorageContents());
+        locked.addAll(this.inventory2.getStorageContents());
+        
+        this.lockedItems = locked;
+        this.movedItems = new ItemDigest();
+    }
+    
+    // Compares the items locked into the trade with the items taken out of the
+    // inventories since, see TradeRoom.verifyItems().
+    @Nullable
+    public String verifyItems() {
+        
+        final ItemDigest locked = this.lockedItems;
+        final ItemDigest moved = this.movedItems;
+        this.lockedItems = null;
+        this.movedItems = null;
+        
+        if (locked == null || moved == null || locked.matches(moved)) {
+            return null;
+        }
+        return "locked " + locked.toString() + ", moved " + moved.toString();
+    }
+    
+    @Nullable
+    public Inventory createTradeInventory(@NotNull final Server server, @NotNull final UUID uniqueId) {
+        
+        final Inventory inventory = this.getInventory(uniqueId);
+        return inventory == null ? null : TradeRoom.createTradeInventory(server, inventory);
+    }
+    
+    public void swapItems(@NotNull final Player self, @NotNull final Player other) {
+        
+        final Inventory inventorySelf = this.getInventory(self.getUniqueId());
+        final Inventory inventoryOther = this.getInventory(other.getUniqueId());
+        
+        final ItemStack[] extraSelf = TradeRoom.transferItems(self, inventoryOther, this.movedItems);
+        final ItemStack[] extraOther = TradeRoom.transferItems(other, inventorySelf, this.movedItems);
+        
+        self.sendMessage("§aTrade complete!");
+        other.sendMessage("§aTrade complete!");
+        
+        this.dropItems(self, extraSelf, "§6There were items sent to you that could not be put in your inventory. Be sure to pick them up.");
+        this.dropItems(other, extraOther, "§6There were items sent to you that could not be put in your inventory. Be sure to pick them up.");
+    }
+    
+    @Nullable
+    public ItemStack[] swapItems(@NotNull final Player self, @NotNull final Offline other) {
+        
+        final Inventory inventorySelf = this.getInventory(self.getUniqueId());
+        final Inventory inventoryOther = this.getInventory(other.getUniqueId());
+        
+        final ItemStack[] otherItems = other.getItems() == null ? new ItemStack[Offline.SIZE] : other.getItems();
+        
+        final ItemStack[] extraSelf = TradeRoom.transferItems(self, inventoryOther, this.movedItems);
+        final ItemStack[] extraOther = TradeRoom.transferItems(otherItems, inventorySelf, this.movedItems);
+        
+        self.sendMessage("§aTrade complete!");
+        other.setItems(otherItems);
+        
+        this.dropItems(self, extraSelf, "§6There were items sent to you that could not be put in your inventory. Be sure to pick them up.");
+        return extraOther;
+    }
+    
+    public void returnItems(@NotNull final Player player) {
+        
+        final ItemStack[] extra = TradeRoom.transferItems(player, this.getInventory(player.getUniqueId()), this.movedItems);
+        
+        player.sendMessage("§aReturn complete!");
+        this.dropItems(player, extra, "§6There were items returned to you that could not be put in your inventory. Be sure to pick them up.");
+    }
+    
+    @Nullable
+    public ItemStack[] returnItems(@NotNull final Offline offline) {
+        
+        final ItemStack[] items = offline.getItems() == null ? new ItemStack[Offline.SIZE] : offline.getItems();
+        final ItemStack[] extra = TradeRoom.transferItems(items, this.getInventory(offline.getUniqueId()), this.movedItems);
+        offline.setItems(items);
+        
+        return extra;
+    }
+    
+    private void dropItems(@NotNull final Player player, @Nullable final ItemStack[] items, @NotNull final String message) {
+        
+        if (items == null) {
+            return;
+        }
+        
+        player.sendMessage(message);
+        final Location location = player.getLocation().add(new Vector(0.0D, 1.0D, 0.0D));
+        final World world = player.getWorld();
+        
+        for (final ItemStack item : items) {
+            if (item != null && item.getType() != Material.AIR) {
+                world.dropItemNaturally(location, item);
+            }
+        }
+    }
+}
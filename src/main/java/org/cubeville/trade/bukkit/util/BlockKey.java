@@ -0,0 +1,60 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.util;
+
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.jetbrains.annotations.NotNull;
+
+// Packs block coordinates into a single long, using 26 bits each for X and Z
+// and 12 bits for Y (the same layout as the vanilla block position).
+public final class BlockKey {
+    
+    private BlockKey() {
+        // Do nothing.
+    }
+    
+    public static long of(final int x, final int y, final int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | ((long) y & 0xFFFL);
+    }
+    
+    public static long of(@NotNull final Location location) {
+        return of(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+    
+    public static long of(@NotNull final Block block) {
+        return of(block.getX(), block.getY(), block.getZ());
+    }
+    
+    public static int getX(final long key) {
+        return (int) (key >> 38);
+    }
+    
+    public static int getY(final long key) {
+        return (int) (key << 52 >> 52);
+    }
+    
+    public static int getZ(final long key) {
+        return (int) (key << 26 >> 38);
+    }
+}
@@ -0,0 +1,127 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.util;
+
+import java.util.Arrays;
+
+// An open-addressing hash set of primitive long values (usually block keys),
+// so membership checks never box.
+public final class LongHashSet {
+    
+    // 0 marks an empty slot, so the value 0 itself is tracked separately.
+    private long[] values;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+    
+    public LongHashSet() {
+        this.values = new long[16];
+        this.mask = 15;
+        this.size = 0;
+        this.containsZero = false;
+    }
+    
+    private static int hash(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+    
+    public boolean contains(final long value) {
+        
+        if (value == 0L) {
+            return this.containsZero;
+        }
+        
+        int slot = hash(value) & this.mask;
+        long current;
+        while ((current = this.values[slot]) != 0L) {
+            if (current == value) {
+                return true;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return false;
+    }
+    
+    public boolean add(final long value) {
+        
+        if (value == 0L) {
+            if (this.containsZero) {
+                return false;
+            }
+            this.containsZero = true;
+            this.size++;
+            return true;
+        }
+        
+        int slot = hash(value) & this.mask;
+        long current;
+        while ((current = this.values[slot]) != 0L) {
+            if (current == value) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        
+        this.values[slot] = value;
+        this.size++;
+        
+        // Keep the table at most half full, so probe chains stay short.
+        if (this.size * 2 > this.values.length) {
+            this.resize();
+        }
+        return true;
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    public void clear() {
+        Arrays.fill(this.values, 0L);
+        this.size = 0;
+        this.containsZero = false;
+    }
+    
+    private void resize() {
+        
+        final long[] oldValues = this.values;
+        
+        this.values = new long[oldValues.length * 2];
+        this.mask = this.values.length - 1;
+        
+        for (final long value : oldValues) {
+            if (value == 0L) {
+                continue;
+            }
+            int slot = hash(value) & this.mask;
+            while (this.values[slot] != 0L) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.values[slot] = value;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.util;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// An open-addressing hash map from primitive long keys (usually block keys) to
+// non-null values, so lookups never box the key.
+public final class LongObjectMap<V> {
+    
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    
+    public LongObjectMap() {
+        this.keys = new long[16];
+        this.values = new Object[16];
+        this.mask = 15;
+        this.size = 0;
+    }
+    
+    private static int hash(final long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+    
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        
+        int slot = hash(key) & this.mask;
+        Object value;
+        while ((value = this.values[slot]) != null) {
+            if (this.keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return null;
+    }
+    
+    public boolean containsKey(final long key) {
+        return this.get(key) != null;
+    }
+    
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(final long key, @NotNull final V value) {
+        
+        int slot = hash(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                final V previous = (V) this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+        
+        // Keep the table at most half full, so probe chains stay short.
+        if (this.size * 2 > this.keys.length) {
+            this.resize();
+        }
+        return null;
+    }
+    
+    @Nullable
+    public V putIfAbsent(final long key, @NotNull final V value) {
+        
+        final V previous = this.get(key);
+        if (previous != null) {
+            return previous;
+        }
+        this.put(key, value);
+        return null;
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+    
+    private void resize() {
+        
+        final long[] oldKeys = this.keys;
+        final Object[] oldValues = this.values;
+        
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new Object[oldValues.length * 2];
+        this.mask = this.keys.length - 1;
+        
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldValues[index] == null) {
+                continue;
+            }
+            int slot = hash(oldKeys[index]) & this.mask;
+            while (this.values[slot] != null) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = oldKeys[index];
+            this.values[slot] = oldValues[index];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.jetbrains.annotations.NotNull;
+
+// A token bucket per player, kept in a fixed-size table so memory does not
+// grow with the number of players.
+public final class RateLimiter {
+    
+    private static final int TOKEN_BITS = 16;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1L;
+    private static final long TOKEN = 1000L;
+    
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long capacity;
+    private final long refillPerSecond;
+    private final long origin;
+    
+    public RateLimiter(final int slots, final int capacity, final int refillPerSecond) {
+        
+        if (slots < 1 || slots > 1 << 30) {
+            throw new IllegalArgumentException("Slots must be between 1 and " + (1 << 30) + ", found " + slots);
+        }
+        if (capacity < 1 || capacity * TOKEN > TOKEN_MASK) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (TOKEN_MASK / TOKEN) + ", found " + capacity);
+        }
+        if (refillPerSecond < 1) {
+            throw new IllegalArgumentException("Refill rate must be positive, found " + refillPerSecond);
+        }
+        
+        final int size = Integer.highestOneBit(slots) == slots ? slots : Integer.highestOneBit(slots) << 1;
+        this.buckets = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.capacity = capacity * TOKEN;
+        this.refillPerSecond = refillPerSecond;
+        this.origin = System.nanoTime();
+    }
+    
+    private static int hash(@NotNull final UUID uniqueId) {
+        long hash = uniqueId.getMostSignificantBits() ^ uniqueId.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+    
+    // Takes a token from the bucket of the given player.
+    public boolean tryAcquire(@NotNull final UUID uniqueId) {
+        
+        final int slot = hash(uniqueId) & this.mask;
+        
+        // Milliseconds since creation, offset by 1 so a used bucket is never 0.
+        final long now = (System.nanoTime() - this.origin) / 1000000L + 1L;
+        
+        while (true) {
+            
+            final long bucket = this.buckets.get(slot);
+            final long tokens;
+            if (bucket == 0L) {
+                tokens = this.capacity;
+            } else {
+                final long elapsed = Math.max(now - (bucket >>> TOKEN_BITS), 0L);
+                tokens = Math.min((bucket & TOKEN_MASK) + elapsed * this.refillPerSecond, this.capacity);
+            }
+            
+            // Leave the bucket as it is, so the refill keeps counting from the
+            // last successful take.
+            if (tokens < TOKEN) {
+                return false;
+            }
+            
+            if (this.buckets.compareAndSet(slot, bucket, now << TOKEN_BITS | (tokens - TOKEN))) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/* 
+ * This file is part of CVTrade.
+ * 
+ * CVTrade Bukkit plugin for Minecraft Bukkit servers.
+ * 
+ * Copyright (C) 2021-2024 Matt Ciolkosz (https://github.com/mciolkosz/)
+ * Copyright (C) 2021-2024 Cubeville (https://www.cubeville.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cubeville.trade.bukkit.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// A bounded queue for any number of producers and a single consumer, without
+// locks.
+public final class RingBuffer<E> {
+    
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private final AtomicLong head;
+    private final AtomicLong dropped;
+    
+    public RingBuffer(final int capacity) {
+        
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (1 << 30) + ", found " + capacity);
+        }
+        
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<E>(size);
+        this.mask = size - 1;
+        this.tail = new AtomicLong(0L);
+        this.head = new AtomicLong(0L);
+        this.dropped = new AtomicLong(0L);
+    }
+    
+    // Adds an element, from any thread.
+    public boolean offer(@NotNull final E element) {
+        
+        while (true) {
+            
+            final long tail = this.tail.get();
+            if (tail - this.head.get() > this.mask) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+            
+            if (this.tail.compareAndSet(tail, tail + 1L)) {
+                this.slots.lazySet((int) (tail & this.mask), element);
+                return true;
+            }
+        }
+    }
+    
+    // Takes the oldest element.
+    @Nullable
+    public E poll() {
+        
+        final long head = this.head.get();
+        final int index = (int) (head & this.mask);
+        final E element = this.slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        
+        this.slots.lazySet(index, null);
+        this.head.lazySet(head + 1L);
+        return element;
+    }
+    
+    public boolean isEmpty() {
+        return this.head.get() == this.tail.get();
+    }
+    
+    public long getDropped() {
+        return this.dropped.get();
+    }
+}